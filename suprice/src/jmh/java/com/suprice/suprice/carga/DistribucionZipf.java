@@ -0,0 +1,51 @@
+package com.suprice.suprice.carga;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Distribución de Zipf sobre {@code n} artículos: el artículo de rango {@code k} se elige con probabilidad
+ * proporcional a {@code 1 / k^s}. Los rangos se asignan a los artículos con una permutación fija de la semilla, de modo
+ * que los más consultados no sean los primeros de la tabla y dos ejecuciones con la misma semilla elijan la misma
+ * secuencia.
+ */
+final class DistribucionZipf {
+
+        private final double[] acumulada;
+        private final int[] articuloPorRango;
+
+        DistribucionZipf(int articulos, double exponente, long semilla) {
+                if (articulos < 1) {
+                        throw new IllegalArgumentException("Se requiere al menos un artículo");
+                }
+                acumulada = new double[articulos];
+                double suma = 0;
+                for (int rango = 0; rango < articulos; rango++) {
+                        suma += 1.0 / Math.pow(rango + 1, exponente);
+                        acumulada[rango] = suma;
+                }
+                for (int rango = 0; rango < articulos; rango++) {
+                        acumulada[rango] /= suma;
+                }
+                articuloPorRango = new int[articulos];
+                for (int i = 0; i < articulos; i++) {
+                        articuloPorRango[i] = i;
+                }
+                Random azar = new Random(semilla);
+                for (int i = articulos - 1; i > 0; i--) {
+                        int j = azar.nextInt(i + 1);
+                        int temporal = articuloPorRango[i];
+                        articuloPorRango[i] = articuloPorRango[j];
+                        articuloPorRango[j] = temporal;
+                }
+        }
+
+        /**
+         * @return índice del artículo elegido, entre 0 y {@code n - 1}.
+         */
+        int siguiente(Random azar) {
+                int posicion = Arrays.binarySearch(acumulada, azar.nextDouble());
+                int rango = posicion >= 0 ? posicion : Math.min(-posicion - 1, acumulada.length - 1);
+                return articuloPorRango[rango];
+        }
+}
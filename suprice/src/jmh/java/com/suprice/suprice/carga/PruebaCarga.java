@@ -0,0 +1,343 @@
+package com.suprice.suprice.carga;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.suprice.suprice.SupriceApplication;
+import com.suprice.suprice.carga.ResultadoCarga.ParametrosCarga;
+import com.suprice.suprice.servicio.BaseDatosSustituta;
+import com.suprice.suprice.servicio.FirmadorTokens;
+import com.suprice.suprice.servicio.PoolConexionesFirebird;
+
+/**
+ * Generador de carga para {@code POST /api/productos/consultar}. Cada usuario simulado inicia sesión en
+ * {@code /api/autenticacion/iniciar} y consulta productos elegidos con una distribución de Zipf, uno tras otro como
+ * un verificador de precios, durante el calentamiento y la ventana de medición. Solo se miden las solicitudes que
+ * inician dentro de la ventana.
+ * <p>
+ * Sin {@code --url} levanta la aplicación en este proceso con {@link BaseDatosSustituta} en lugar de Firebird; con
+ * {@code --url} consulta un servidor en ejecución y los códigos se leen de {@code --codigos} (uno por línea, del más
+ * al menos consultado).
+ * <p>
+ * Opciones ({@code --nombre=valor}): {@code sistema} (SAE), {@code usuarios} (16), {@code duracion} (60 s),
+ * {@code calentamiento} (15 s), {@code articulos} (20000), {@code zipf} (1.0), {@code alternas} (0.2, proporción de
+ * consultas por código de barras), {@code pausa-ms} (0), {@code semilla} (42), {@code usuario}, {@code contrasena},
+ * {@code url}, {@code ruta-version}, {@code ruta-empresa}, {@code sufijo} (01), {@code codigos},
+ * {@code resultado} (carga-resultados.json) y {@code comparar} (resultado anterior). Las opciones con punto, como
+ * {@code --suprice.consultas.maximo-por-empresa=32}, se pasan como propiedades a la aplicación iniciada en el proceso.
+ */
+public final class PruebaCarga {
+
+        private static final ObjectMapper JSON = new ObjectMapper();
+
+        private PruebaCarga() {
+        }
+
+        public static void main(String[] args) throws Exception {
+                Map<String, String> opciones = leerOpciones(args);
+                String url = opciones.get("url");
+                String sistema = opciones.getOrDefault("sistema", "SAE").toUpperCase();
+                int articulos = Integer.parseInt(opciones.getOrDefault("articulos", "20000"));
+                BaseDatosSustituta base = null;
+                ConfigurableApplicationContext contexto = null;
+                try {
+                        String rutaVersion;
+                        String rutaEmpresa;
+                        String[] principales;
+                        String[] alternas;
+                        if (url == null) {
+                                base = BaseDatosSustituta.crear(articulos);
+                                contexto = iniciarAplicacion(base, opciones);
+                                url = "http://localhost:" + contexto.getEnvironment().getProperty("local.server.port");
+                                rutaEmpresa = base.carpetaEmpresa().toString();
+                                rutaVersion = base.carpetaEmpresa().getParent().toString();
+                                principales = new String[articulos];
+                                alternas = new String[articulos];
+                                for (int i = 0; i < articulos; i++) {
+                                        boolean sae = "SAE".equals(sistema);
+                                        principales[i] = sae ? BaseDatosSustituta.claveSae(i) : BaseDatosSustituta.claveCaja(i);
+                                        alternas[i] = sae ? BaseDatosSustituta.codigoBarrasSae(i)
+                                                        : BaseDatosSustituta.codigoBarrasCaja(i);
+                                }
+                        } else {
+                                rutaEmpresa = requerida(opciones, "ruta-empresa");
+                                rutaVersion = opciones.getOrDefault("ruta-version", rutaEmpresa);
+                                principales = Files.readAllLines(Path.of(requerida(opciones, "codigos"))).stream()
+                                                .map(String::trim).filter(codigo -> !codigo.isEmpty()).toArray(String[]::new);
+                                alternas = principales;
+                                articulos = principales.length;
+                        }
+                        ParametrosCarga parametros = new ParametrosCarga(base != null ? "sustituta" : url, sistema,
+                                        Integer.parseInt(opciones.getOrDefault("usuarios", "16")),
+                                        Integer.parseInt(opciones.getOrDefault("duracion", "60")),
+                                        Integer.parseInt(opciones.getOrDefault("calentamiento", "15")), articulos,
+                                        Double.parseDouble(opciones.getOrDefault("zipf", "1.0")),
+                                        base != null ? Double.parseDouble(opciones.getOrDefault("alternas", "0.2")) : 0,
+                                        Long.parseLong(opciones.getOrDefault("pausa-ms", "0")),
+                                        Long.parseLong(opciones.getOrDefault("semilla", "42")));
+                        Map<String, Object> plantilla = new LinkedHashMap<>();
+                        plantilla.put("sistema", sistema);
+                        plantilla.put("rutaVersion", rutaVersion);
+                        plantilla.put("rutaEmpresa", rutaEmpresa);
+                        plantilla.put("sufijoTablas", opciones.getOrDefault("sufijo", BaseDatosSustituta.SUFIJO));
+                        plantilla.put("incluirImpuestos", true);
+                        Cuerpos cuerpos = new Cuerpos(plantilla, principales, alternas);
+
+                        ResultadoCarga resultado = ejecutar(URI.create(url), parametros, cuerpos,
+                                        opciones.getOrDefault("usuario", "admin"), opciones.getOrDefault("contrasena", "]mYMI&Rep711"));
+                        resultado.imprimir(System.out);
+                        Path archivo = Path.of(opciones.getOrDefault("resultado", "carga-resultados.json"));
+                        String comparar = opciones.get("comparar");
+                        if (comparar != null) {
+                                resultado.comparar(ResultadoCarga.leer(Path.of(comparar)), System.out);
+                        }
+                        resultado.guardar(archivo);
+                        System.out.println("Resultado guardado en " + archivo.toAbsolutePath());
+                } finally {
+                        if (contexto != null) {
+                                contexto.close();
+                        }
+                        if (base != null) {
+                                base.close();
+                        }
+                }
+                System.exit(0);
+        }
+
+        private static ResultadoCarga ejecutar(URI destino, ParametrosCarga parametros, Cuerpos cuerpos, String usuario,
+                        String contrasena) throws Exception {
+                HttpClient cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                                .connectTimeout(Duration.ofSeconds(10)).build();
+                DistribucionZipf distribucion = new DistribucionZipf(parametros.articulos(), parametros.exponenteZipf(),
+                                parametros.semilla());
+                String credenciales = JSON.writeValueAsString(Map.of("nombreUsuario", usuario, "contrasena", contrasena));
+                List<String> cookies = new ArrayList<>();
+                for (int i = 0; i < parametros.usuarios(); i++) {
+                        cookies.add(iniciarSesion(cliente, destino, credenciales));
+                }
+
+                long inicio = System.nanoTime();
+                long inicioMedicion = inicio + parametros.calentamientoS() * 1_000_000_000L;
+                long fin = inicioMedicion + parametros.duracionS() * 1_000_000_000L;
+                List<UsuarioSimulado> usuarios = new ArrayList<>();
+                CountDownLatch terminados = new CountDownLatch(parametros.usuarios());
+                for (int i = 0; i < parametros.usuarios(); i++) {
+                        UsuarioSimulado simulado = new UsuarioSimulado(cliente, destino.resolve("/api/productos/consultar"),
+                                        cookies.get(i), cuerpos, distribucion, new Random(parametros.semilla() + i), parametros,
+                                        inicioMedicion, fin);
+                        usuarios.add(simulado);
+                        Thread hilo = new Thread(() -> {
+                                try {
+                                        simulado.run();
+                                } finally {
+                                        terminados.countDown();
+                                }
+                        }, "carga-" + i);
+                        hilo.setDaemon(true);
+                        hilo.start();
+                }
+                System.out.printf("%d usuarios consultando %s; calentamiento de %d s y medición de %d s%n",
+                                parametros.usuarios(), destino, parametros.calentamientoS(), parametros.duracionS());
+                terminados.await();
+
+                int total = usuarios.stream().mapToInt(simulado -> simulado.medidas).sum();
+                long[] latencias = new long[total];
+                int posicion = 0;
+                long errores = 0;
+                Map<Integer, Long> codigos = new TreeMap<>();
+                for (UsuarioSimulado simulado : usuarios) {
+                        System.arraycopy(simulado.latencias, 0, latencias, posicion, simulado.medidas);
+                        posicion += simulado.medidas;
+                        errores += simulado.errores;
+                        simulado.codigos.forEach((codigo, cantidad) -> codigos.merge(codigo, cantidad, Long::sum));
+                }
+                return ResultadoCarga.calcular(parametros, latencias, errores, codigos);
+        }
+
+        /**
+         * @return encabezado {@code Cookie} con la sesión iniciada o el token firmado.
+         */
+        private static String iniciarSesion(HttpClient cliente, URI destino, String credenciales) throws Exception {
+                HttpRequest solicitud = HttpRequest.newBuilder(destino.resolve("/api/autenticacion/iniciar"))
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString(credenciales))
+                                .build();
+                HttpResponse<String> respuesta = cliente.send(solicitud, HttpResponse.BodyHandlers.ofString());
+                if (respuesta.statusCode() != 200) {
+                        throw new IllegalStateException("No fue posible iniciar sesión (" + respuesta.statusCode() + "): "
+                                        + respuesta.body());
+                }
+                return respuesta.headers().allValues("Set-Cookie").stream()
+                                .map(cookie -> cookie.split(";", 2)[0])
+                                .filter(cookie -> cookie.startsWith("JSESSIONID=")
+                                                || cookie.startsWith(FirmadorTokens.COOKIE + "="))
+                                .findFirst()
+                                .orElseThrow(() -> new IllegalStateException("El servidor no devolvió la cookie de sesión"));
+        }
+
+        private static ConfigurableApplicationContext iniciarAplicacion(BaseDatosSustituta base,
+                        Map<String, String> opciones) {
+                PoolConexionesFirebird sustituto = new PoolConexionesFirebird(4, 32, 300_000, 1_800_000, 5_000) {
+                        @Override
+                        public Connection obtenerConexion(Path rutaBd) throws SQLException {
+                                return base.obtenerConexion();
+                        }
+                };
+                List<String> argumentos = new ArrayList<>(List.of("--server.port=0", "--spring.main.banner-mode=off"));
+                opciones.forEach((nombre, valor) -> {
+                        if (nombre.contains(".")) {
+                                argumentos.add("--" + nombre + "=" + valor);
+                        }
+                });
+                return new SpringApplicationBuilder(SupriceApplication.class)
+                                .initializers(contexto -> ((GenericApplicationContext) contexto).registerBean(
+                                                "poolConexionesSustituta", PoolConexionesFirebird.class, () -> sustituto,
+                                                definicion -> definicion.setPrimary(true)))
+                                .run(argumentos.toArray(String[]::new));
+        }
+
+        private static Map<String, String> leerOpciones(String[] args) {
+                Map<String, String> opciones = new HashMap<>();
+                for (String argumento : args) {
+                        if (!argumento.startsWith("--") || !argumento.contains("=")) {
+                                throw new IllegalArgumentException("Opción no válida: " + argumento + " (se espera --nombre=valor)");
+                        }
+                        String[] partes = argumento.substring(2).split("=", 2);
+                        opciones.put(partes[0], partes[1]);
+                }
+                return opciones;
+        }
+
+        private static String requerida(Map<String, String> opciones, String nombre) {
+                String valor = opciones.get(nombre);
+                if (valor == null || valor.isBlank()) {
+                        throw new IllegalArgumentException("Con --url se requiere --" + nombre);
+                }
+                return valor;
+        }
+
+        /**
+         * Cuerpos JSON ya serializados de la consulta de cada artículo por su clave principal y por su clave alterna.
+         */
+        private static final class Cuerpos {
+                private final byte[][] principales;
+                private final byte[][] alternas;
+
+                Cuerpos(Map<String, Object> plantilla, String[] codigosPrincipales, String[] codigosAlternos)
+                                throws Exception {
+                        principales = serializar(plantilla, codigosPrincipales);
+                        alternas = codigosAlternos == codigosPrincipales ? principales : serializar(plantilla, codigosAlternos);
+                }
+
+                private static byte[][] serializar(Map<String, Object> plantilla, String[] codigos) throws Exception {
+                        byte[][] cuerpos = new byte[codigos.length][];
+                        Map<String, Object> cuerpo = new LinkedHashMap<>(plantilla);
+                        for (int i = 0; i < codigos.length; i++) {
+                                cuerpo.put("codigoProducto", codigos[i]);
+                                cuerpos[i] = JSON.writeValueAsString(cuerpo).getBytes(StandardCharsets.UTF_8);
+                        }
+                        return cuerpos;
+                }
+        }
+
+        private static final class UsuarioSimulado implements Runnable {
+                private final HttpClient cliente;
+                private final URI consulta;
+                private final String cookie;
+                private final Cuerpos cuerpos;
+                private final DistribucionZipf distribucion;
+                private final Random azar;
+                private final ParametrosCarga parametros;
+                private final long inicioMedicion;
+                private final long fin;
+                private final Map<Integer, Long> codigos = new HashMap<>();
+                private long[] latencias = new long[4096];
+                private int medidas;
+                private long errores;
+
+                UsuarioSimulado(HttpClient cliente, URI consulta, String cookie, Cuerpos cuerpos,
+                                DistribucionZipf distribucion, Random azar, ParametrosCarga parametros, long inicioMedicion,
+                                long fin) {
+                        this.cliente = cliente;
+                        this.consulta = consulta;
+                        this.cookie = cookie;
+                        this.cuerpos = cuerpos;
+                        this.distribucion = distribucion;
+                        this.azar = azar;
+                        this.parametros = parametros;
+                        this.inicioMedicion = inicioMedicion;
+                        this.fin = fin;
+                }
+
+                @Override
+                public void run() {
+                        long ahora;
+                        while ((ahora = System.nanoTime()) < fin) {
+                                int articulo = distribucion.siguiente(azar);
+                                byte[] cuerpo = azar.nextDouble() < parametros.proporcionAlternas() ? cuerpos.alternas[articulo]
+                                                : cuerpos.principales[articulo];
+                                HttpRequest solicitud = HttpRequest.newBuilder(consulta)
+                                                .header("Content-Type", "application/json")
+                                                .header("Cookie", cookie)
+                                                .timeout(Duration.ofSeconds(30))
+                                                .POST(HttpRequest.BodyPublishers.ofByteArray(cuerpo))
+                                                .build();
+                                int estado;
+                                try {
+                                        estado = cliente.send(solicitud, HttpResponse.BodyHandlers.discarding()).statusCode();
+                                } catch (Exception ex) {
+                                        estado = -1;
+                                }
+                                long latencia = System.nanoTime() - ahora;
+                                if (ahora >= inicioMedicion) {
+                                        registrar(estado, latencia);
+                                }
+                                if (parametros.pausaMs() > 0) {
+                                        try {
+                                                Thread.sleep(parametros.pausaMs());
+                                        } catch (InterruptedException ex) {
+                                                Thread.currentThread().interrupt();
+                                                return;
+                                        }
+                                }
+                        }
+                }
+
+                /**
+                 * Un código 404 es una respuesta válida (producto no localizado); cualquier otro fuera de 2xx, o un error
+                 * de red ({@code -1}), cuenta como error.
+                 */
+                private void registrar(int estado, long latencia) {
+                        if (medidas == latencias.length) {
+                                latencias = Arrays.copyOf(latencias, medidas * 2);
+                        }
+                        latencias[medidas++] = latencia;
+                        codigos.merge(estado, 1L, Long::sum);
+                        if (estado != 404 && (estado < 200 || estado >= 300)) {
+                                errores++;
+                        }
+                }
+        }
+}
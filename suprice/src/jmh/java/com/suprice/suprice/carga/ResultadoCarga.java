@@ -0,0 +1,109 @@
+package com.suprice.suprice.carga;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Resultado de una prueba de carga junto con los parámetros que la produjeron, para poder compararla con otra
+ * ejecución.
+ */
+record ResultadoCarga(ParametrosCarga parametros, String fecha, String jvm, int procesadores, long solicitudes,
+                long errores, Map<Integer, Long> codigos, double solicitudesPorSegundo, double promedioMs, double p50Ms,
+                double p95Ms, double p99Ms, double maximoMs) {
+
+        private static final ObjectMapper JSON = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+        /**
+         * Calcula las estadísticas a partir de las latencias medidas.
+         *
+         * @param latenciasNanos latencias de las solicitudes de la ventana de medición; se ordena en el lugar.
+         */
+        static ResultadoCarga calcular(ParametrosCarga parametros, long[] latenciasNanos, long errores,
+                        Map<Integer, Long> codigos) {
+                Arrays.sort(latenciasNanos);
+                double suma = 0;
+                for (long latencia : latenciasNanos) {
+                        suma += latencia;
+                }
+                int total = latenciasNanos.length;
+                return new ResultadoCarga(parametros, OffsetDateTime.now().toString(),
+                                Runtime.version().toString(), Runtime.getRuntime().availableProcessors(), total, errores, codigos,
+                                total / (double) parametros.duracionS(), total == 0 ? 0 : milisegundos(suma / total),
+                                percentil(latenciasNanos, 50), percentil(latenciasNanos, 95), percentil(latenciasNanos, 99),
+                                total == 0 ? 0 : milisegundos(latenciasNanos[total - 1]));
+        }
+
+        /**
+         * Percentil por rango más cercano, en milisegundos.
+         */
+        private static double percentil(long[] ordenadas, double percentil) {
+                if (ordenadas.length == 0) {
+                        return 0;
+                }
+                int rango = (int) Math.ceil(percentil / 100.0 * ordenadas.length);
+                return milisegundos(ordenadas[Math.max(0, rango - 1)]);
+        }
+
+        private static double milisegundos(double nanos) {
+                return nanos / 1_000_000.0;
+        }
+
+        static ResultadoCarga leer(Path archivo) throws IOException {
+                return JSON.readValue(archivo.toFile(), ResultadoCarga.class);
+        }
+
+        void guardar(Path archivo) throws IOException {
+                Path carpeta = archivo.toAbsolutePath().getParent();
+                if (carpeta != null) {
+                        Files.createDirectories(carpeta);
+                }
+                JSON.writeValue(archivo.toFile(), this);
+        }
+
+        void imprimir(PrintStream salida) {
+                salida.printf("Sistema %s, %d usuarios, %d s (+%d s de calentamiento), %d artículos, Zipf s=%.2f, semilla %d%n",
+                                parametros.sistema(), parametros.usuarios(), parametros.duracionS(), parametros.calentamientoS(),
+                                parametros.articulos(), parametros.exponenteZipf(), parametros.semilla());
+                salida.printf("Solicitudes: %d (%.1f/s), errores: %d, códigos: %s%n", solicitudes, solicitudesPorSegundo,
+                                errores, codigos);
+                salida.printf("Latencia (ms): promedio %.3f  p50 %.3f  p95 %.3f  p99 %.3f  máximo %.3f%n", promedioMs, p50Ms,
+                                p95Ms, p99Ms, maximoMs);
+        }
+
+        /**
+         * Muestra la variación de cada indicador respecto de una ejecución anterior. Advierte si los parámetros no
+         * coinciden, porque entonces los resultados no son comparables.
+         */
+        void comparar(ResultadoCarga base, PrintStream salida) {
+                if (!Objects.equals(parametros, base.parametros())) {
+                        salida.println("Advertencia: los parámetros difieren de la ejecución base (" + base.parametros() + ")");
+                }
+                salida.printf("Comparación con %s:%n", base.fecha());
+                fila(salida, "solicitudes/s", base.solicitudesPorSegundo(), solicitudesPorSegundo);
+                fila(salida, "p50 ms", base.p50Ms(), p50Ms);
+                fila(salida, "p95 ms", base.p95Ms(), p95Ms);
+                fila(salida, "p99 ms", base.p99Ms(), p99Ms);
+                fila(salida, "errores", base.errores(), errores);
+        }
+
+        private static void fila(PrintStream salida, String indicador, double anterior, double actual) {
+                String variacion = anterior == 0 ? "n/d" : String.format("%+.1f %%", (actual - anterior) * 100 / anterior);
+                salida.printf("  %-14s %12.3f -> %12.3f  (%s)%n", indicador, anterior, actual, variacion);
+        }
+
+        /**
+         * Parámetros que determinan la carga generada.
+         */
+        record ParametrosCarga(String destino, String sistema, int usuarios, int duracionS, int calentamientoS,
+                        int articulos, double exponenteZipf, double proporcionAlternas, long pausaMs, long semilla) {
+        }
+}
@@ -0,0 +1,42 @@
+package com.suprice.suprice.servicio;
+
+import java.sql.Connection;
+import java.sql.Types;
+
+import org.h2.api.AggregateFunction;
+
+/**
+ * Equivalente en H2 del agregado {@code LIST(valor, separador)} de Firebird que usa la consulta combinada de SAE.
+ */
+public class AgregadoLista implements AggregateFunction {
+
+        private final StringBuilder resultado = new StringBuilder();
+        private boolean vacio = true;
+
+        @Override
+        public void init(Connection conexion) {
+        }
+
+        @Override
+        public int getType(int[] tiposEntrada) {
+                return Types.VARCHAR;
+        }
+
+        @Override
+        public void add(Object valor) {
+                Object[] argumentos = valor instanceof Object[] arreglo ? arreglo : new Object[] { valor, "," };
+                if (argumentos[0] == null) {
+                        return;
+                }
+                if (!vacio) {
+                        resultado.append(argumentos.length > 1 && argumentos[1] != null ? argumentos[1] : ",");
+                }
+                resultado.append(argumentos[0]);
+                vacio = false;
+        }
+
+        @Override
+        public Object getResult() {
+                return vacio ? null : resultado.toString();
+        }
+}
@@ -0,0 +1,239 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Random;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Base H2 en memoria con las tablas SAE (sufijo {@code 01}) y Caja que consultan los servicios, usada en lugar de
+ * Firebird por las pruebas de rendimiento. Registra {@code LIST} y {@code ASCII_CHAR} para que la consulta combinada
+ * de SAE se ejecute sin cambios.
+ */
+public final class BaseDatosSustituta implements AutoCloseable {
+
+        public static final String SUFIJO = "01";
+
+        private static final int ESQUEMAS = 5;
+        private static final int LISTAS_PRECIO = 3;
+        private static final int ALMACENES = 2;
+
+        private final HikariDataSource origen;
+        private final Path carpetaEmpresa;
+        private final int articulos;
+
+        private BaseDatosSustituta(HikariDataSource origen, Path carpetaEmpresa, int articulos) {
+                this.origen = origen;
+                this.carpetaEmpresa = carpetaEmpresa;
+                this.articulos = articulos;
+        }
+
+        /**
+         * Crea la base con la cantidad de artículos indicada en SAE y en Caja, además de una carpeta de empresa con
+         * un {@code .fdb} vacío para que {@link ServicioRutasEmpresa} la localice.
+         */
+        public static BaseDatosSustituta crear(int articulos) throws Exception {
+                HikariConfig configuracion = new HikariConfig();
+                configuracion.setPoolName("sustituta-h2");
+                configuracion.setJdbcUrl("jdbc:h2:mem:suprice" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+                configuracion.setMaximumPoolSize(8);
+                HikariDataSource origen = new HikariDataSource(configuracion);
+                Path carpeta = Files.createTempDirectory("suprice-rendimiento");
+                Files.createFile(carpeta.resolve("EMPRESA" + SUFIJO + ".FDB"));
+                BaseDatosSustituta base = new BaseDatosSustituta(origen, carpeta, articulos);
+                try (Connection conexion = origen.getConnection()) {
+                        base.crearEsquema(conexion);
+                        base.poblarSae(conexion);
+                        base.poblarCaja(conexion);
+                }
+                return base;
+        }
+
+        public Connection obtenerConexion() throws SQLException {
+                return origen.getConnection();
+        }
+
+        public Path carpetaEmpresa() {
+                return carpetaEmpresa;
+        }
+
+        public static String claveSae(int indice) {
+                return String.format("A%07d", indice);
+        }
+
+        public static String codigoBarrasSae(int indice) {
+                return String.format("75010%08d", indice);
+        }
+
+        public static String claveCaja(int indice) {
+                return String.format("C%07d", indice);
+        }
+
+        public static String codigoBarrasCaja(int indice) {
+                return String.format("75020%08d", indice);
+        }
+
+        public int articulos() {
+                return articulos;
+        }
+
+        /**
+         * Equivalente de {@code ASCII_CHAR} de Firebird.
+         */
+        public static String caracterAscii(int codigo) {
+                return String.valueOf((char) codigo);
+        }
+
+        @Override
+        public void close() throws Exception {
+                origen.close();
+                Files.deleteIfExists(carpetaEmpresa.resolve("EMPRESA" + SUFIJO + ".FDB"));
+                Files.deleteIfExists(carpetaEmpresa);
+        }
+
+        private void crearEsquema(Connection conexion) throws SQLException {
+                try (Statement sentencia = conexion.createStatement()) {
+                        sentencia.execute("CREATE ALIAS ASCII_CHAR FOR '" + BaseDatosSustituta.class.getName() + ".caracterAscii'");
+                        sentencia.execute("CREATE AGGREGATE LIST FOR '" + AgregadoLista.class.getName() + "'");
+                        sentencia.execute("CREATE TABLE INVE" + SUFIJO + " (CVE_ART VARCHAR(16) PRIMARY KEY, DESCR VARCHAR(40),"
+                                        + " EXIST DOUBLE PRECISION, CVE_ESQIMPU INTEGER, CVE_IMAGEN VARCHAR(30), VERSION_SINC TIMESTAMP)");
+                        sentencia.execute("CREATE TABLE CVES_ALTER" + SUFIJO + " (CVE_ART VARCHAR(16), CVE_ALTER VARCHAR(16),"
+                                        + " PRIMARY KEY (CVE_ART, CVE_ALTER))");
+                        sentencia.execute("CREATE INDEX IX_CVES_ALTER" + SUFIJO + " ON CVES_ALTER" + SUFIJO + " (CVE_ALTER)");
+                        sentencia.execute("CREATE TABLE PRECIO_X_PROD" + SUFIJO + " (CVE_ART VARCHAR(16), CVE_PRECIO INTEGER,"
+                                        + " PRECIO DOUBLE PRECISION, PRIMARY KEY (CVE_ART, CVE_PRECIO))");
+                        sentencia.execute("CREATE TABLE MULT" + SUFIJO + " (CVE_ART VARCHAR(16), CVE_ALM INTEGER,"
+                                        + " EXIST DOUBLE PRECISION, PRIMARY KEY (CVE_ART, CVE_ALM))");
+                        sentencia.execute("CREATE TABLE IMPU" + SUFIJO + " (CVE_ESQIMPU INTEGER PRIMARY KEY,"
+                                        + " IMPUESTO1 DOUBLE PRECISION, IMPUESTO2 DOUBLE PRECISION, IMPUESTO3 DOUBLE PRECISION,"
+                                        + " IMPUESTO4 DOUBLE PRECISION, IMP1APLICA INTEGER, IMP2APLICA INTEGER, IMP3APLICA INTEGER,"
+                                        + " IMP4APLICA INTEGER)");
+                        sentencia.execute("CREATE TABLE CATINVEN (PRODUCTO VARCHAR(20) PRIMARY KEY, DESCRIPCIO VARCHAR(40),"
+                                        + " EXISTENCIA DOUBLE PRECISION, ESQIMP VARCHAR(10), CLVALTER1 VARCHAR(20), CLVALTER2 VARCHAR(20),"
+                                        + " CLVALTER3 VARCHAR(20), PRECIOP DOUBLE PRECISION, PRECIO2 DOUBLE PRECISION,"
+                                        + " PRECIO3 DOUBLE PRECISION, PRECIO4 DOUBLE PRECISION, IMAGEN VARCHAR(30))");
+                        sentencia.execute("CREATE TABLE EXIST (PRODUCTO VARCHAR(20), TIENDA VARCHAR(10),"
+                                        + " EXISTIENDA DOUBLE PRECISION, PRIMARY KEY (PRODUCTO, TIENDA))");
+                        sentencia.execute("CREATE TABLE ESQIMP (CLAVE VARCHAR(10) PRIMARY KEY, PORCEN1 DOUBLE PRECISION,"
+                                        + " PORCEN2 DOUBLE PRECISION, PORCEN3 DOUBLE PRECISION, PORCEN4 DOUBLE PRECISION,"
+                                        + " APLICA1 INTEGER, APLICA2 INTEGER, APLICA3 INTEGER, APLICA4 INTEGER)");
+                }
+        }
+
+        /**
+         * Esquemas típicos: exento, IVA, IVA con IEPS compuesto, IVA con retención y cuatro impuestos compuestos.
+         */
+        private static final double[][] PORCENTAJES = { { 0, 0, 0, 0 }, { 0, 0, 0, 16 }, { 8, 0, 0, 16 },
+                        { 0, -10.6667, 0, 16 }, { 8, 3, 1.5, 16 } };
+        private static final int[][] REGLAS = { { 0, 0, 0, 0 }, { 0, 0, 0, 0 }, { 0, 0, 0, 1 }, { 0, 0, 0, 0 },
+                        { 0, 1, 2, 3 } };
+
+        private void poblarSae(Connection conexion) throws SQLException {
+                Random azar = new Random(42);
+                Timestamp marca = new Timestamp(System.currentTimeMillis());
+                try (PreparedStatement esquemas = conexion.prepareStatement("INSERT INTO IMPU" + SUFIJO
+                                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                                PreparedStatement inventario = conexion.prepareStatement("INSERT INTO INVE" + SUFIJO
+                                                + " VALUES (?, ?, ?, ?, ?, ?)");
+                                PreparedStatement alternas = conexion.prepareStatement("INSERT INTO CVES_ALTER" + SUFIJO
+                                                + " VALUES (?, ?)");
+                                PreparedStatement precios = conexion.prepareStatement("INSERT INTO PRECIO_X_PROD" + SUFIJO
+                                                + " VALUES (?, ?, ?)");
+                                PreparedStatement existencias = conexion.prepareStatement("INSERT INTO MULT" + SUFIJO
+                                                + " VALUES (?, ?, ?)")) {
+                        for (int i = 0; i < ESQUEMAS; i++) {
+                                esquemas.setInt(1, i + 1);
+                                for (int j = 0; j < 4; j++) {
+                                        esquemas.setDouble(2 + j, PORCENTAJES[i][j]);
+                                        esquemas.setInt(6 + j, REGLAS[i][j]);
+                                }
+                                esquemas.addBatch();
+                        }
+                        esquemas.executeBatch();
+                        for (int i = 0; i < articulos; i++) {
+                                String clave = claveSae(i);
+                                inventario.setString(1, clave);
+                                inventario.setString(2, "ARTICULO DE PRUEBA " + i);
+                                inventario.setDouble(3, azar.nextInt(500));
+                                inventario.setInt(4, 1 + azar.nextInt(ESQUEMAS));
+                                inventario.setString(5, null);
+                                inventario.setTimestamp(6, marca);
+                                inventario.addBatch();
+                                alternas.setString(1, clave);
+                                alternas.setString(2, codigoBarrasSae(i));
+                                alternas.addBatch();
+                                double precio = Math.round((5 + azar.nextDouble() * 2000) * 100) / 100.0;
+                                for (int lista = 1; lista <= LISTAS_PRECIO; lista++) {
+                                        precios.setString(1, clave);
+                                        precios.setInt(2, lista);
+                                        precios.setDouble(3, Math.round(precio * (1 - 0.05 * (lista - 1)) * 100) / 100.0);
+                                        precios.addBatch();
+                                }
+                                for (int almacen = 1; almacen <= ALMACENES; almacen++) {
+                                        existencias.setString(1, clave);
+                                        existencias.setInt(2, almacen);
+                                        existencias.setDouble(3, azar.nextInt(250));
+                                        existencias.addBatch();
+                                }
+                                if (i % 1000 == 999) {
+                                        ejecutar(inventario, alternas, precios, existencias);
+                                }
+                        }
+                        ejecutar(inventario, alternas, precios, existencias);
+                }
+        }
+
+        private void poblarCaja(Connection conexion) throws SQLException {
+                Random azar = new Random(43);
+                try (PreparedStatement esquemas = conexion.prepareStatement("INSERT INTO ESQIMP VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                                PreparedStatement inventario = conexion.prepareStatement(
+                                                "INSERT INTO CATINVEN VALUES (?, ?, ?, ?, ?, NULL, NULL, ?, ?, ?, ?, NULL)");
+                                PreparedStatement existencias = conexion.prepareStatement("INSERT INTO EXIST VALUES (?, ?, ?)")) {
+                        for (int i = 0; i < ESQUEMAS; i++) {
+                                esquemas.setString(1, String.valueOf(i + 1));
+                                for (int j = 0; j < 4; j++) {
+                                        esquemas.setDouble(2 + j, PORCENTAJES[i][j]);
+                                        esquemas.setInt(6 + j, REGLAS[i][j]);
+                                }
+                                esquemas.addBatch();
+                        }
+                        esquemas.executeBatch();
+                        for (int i = 0; i < articulos; i++) {
+                                String clave = claveCaja(i);
+                                inventario.setString(1, clave);
+                                inventario.setString(2, "PRODUCTO DE PRUEBA " + i);
+                                inventario.setDouble(3, azar.nextInt(500));
+                                inventario.setString(4, String.valueOf(1 + azar.nextInt(ESQUEMAS)));
+                                inventario.setString(5, codigoBarrasCaja(i));
+                                double precio = Math.round((5 + azar.nextDouble() * 2000) * 100) / 100.0;
+                                for (int lista = 0; lista < 4; lista++) {
+                                        inventario.setDouble(6 + lista, Math.round(precio * (1 - 0.05 * lista) * 100) / 100.0);
+                                }
+                                inventario.addBatch();
+                                for (int tienda = 1; tienda <= ALMACENES; tienda++) {
+                                        existencias.setString(1, clave);
+                                        existencias.setString(2, "T" + tienda);
+                                        existencias.setDouble(3, azar.nextInt(250));
+                                        existencias.addBatch();
+                                }
+                                if (i % 1000 == 999) {
+                                        ejecutar(inventario, existencias);
+                                }
+                        }
+                        ejecutar(inventario, existencias);
+                }
+        }
+
+        private static void ejecutar(PreparedStatement... sentencias) throws SQLException {
+                for (PreparedStatement sentencia : sentencias) {
+                        sentencia.executeBatch();
+                }
+        }
+}
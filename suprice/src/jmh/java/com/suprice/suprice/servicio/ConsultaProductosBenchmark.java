@@ -0,0 +1,169 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.suprice.suprice.modelo.EstadisticaCatalogoDTO;
+import com.suprice.suprice.modelo.ProductoConsultadoDTO;
+import com.suprice.suprice.modelo.SolicitudConsultaProducto;
+import com.suprice.suprice.modelo.TipoSistemaAspel;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Mide la consulta completa de un producto SAE o Caja (localización de la base, conexión, sentencias preparadas,
+ * esquema de impuestos y armado del DTO) sobre {@link BaseDatosSustituta}. La mitad de los códigos consultados son
+ * claves alternas para incluir su resolución. Con {@code modoCatalogo} los artículos se atienden desde la instantánea
+ * del catálogo en el heap ({@code MEMORIA}) o mapeada en un archivo ({@code MAPEADO}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsultaProductosBenchmark {
+
+        private static final int ARTICULOS = 20_000;
+        private static final int CODIGOS = 1024;
+
+        @Param({ "SAE", "CAJA" })
+        public TipoSistemaAspel sistema;
+
+        @Param({ "true", "false" })
+        public boolean consultaCombinada;
+
+        @Param({ "NINGUNO", "MEMORIA", "MAPEADO" })
+        public String modoCatalogo;
+
+        private BaseDatosSustituta base;
+        private Path carpetaMiniaturas;
+        private Path carpetaCatalogos;
+        private ServicioClavesAlternas clavesAlternas;
+        private ServicioCatalogoProductos catalogo;
+        private ServicioConsultaProductos servicio;
+        private SolicitudConsultaProducto[] solicitudes;
+        private int siguiente;
+
+        @Setup(Level.Trial)
+        public void preparar() throws Exception {
+                base = BaseDatosSustituta.crear(ARTICULOS);
+                carpetaMiniaturas = Files.createTempDirectory("suprice-miniaturas");
+                carpetaCatalogos = Files.createTempDirectory("suprice-catalogos");
+                PoolConexionesFirebird pool = new PoolConexionesFirebird(4, 32, 300_000, 1_800_000, 5_000) {
+                        @Override
+                        public Connection obtenerConexion(Path rutaBd) throws SQLException {
+                                return base.obtenerConexion();
+                        }
+                };
+                ServicioRutasEmpresa rutas = new ServicioRutasEmpresa(256, 30_000);
+                CacheSentenciasPreparadas sentencias = new CacheSentenciasPreparadas(32);
+                catalogo = new ServicioCatalogoProductos(pool, rutas, !"NINGUNO".equals(modoCatalogo), 4, 900_000,
+                                "VERSION_SINC", List.of(), "MAPEADO".equals(modoCatalogo), carpetaCatalogos.toString());
+                clavesAlternas = new ServicioClavesAlternas(pool, sentencias, true, 8, 900_000, "VERSION_SINC");
+                ServicioMiniaturas miniaturas = new ServicioMiniaturas(List.of(64, 200, 400), 200, 32,
+                                carpetaMiniaturas.toString(), 512, 2);
+                servicio = new ServicioConsultaProductos(pool, rutas, sentencias, catalogo, clavesAlternas,
+                                new ServicioImagenesProducto(rutas, miniaturas), new InterruptoresFirebird(true, 20, 5, 50, 30_000, 1),
+                                new CacheEsquemasImpuestos(true, 600_000, 5_000, 64),
+                                new MetricasConsulta(new SimpleMeterRegistry(), 100), consultaCombinada);
+
+                String rutaEmpresa = base.carpetaEmpresa().toString();
+                solicitudes = new SolicitudConsultaProducto[CODIGOS];
+                for (int i = 0; i < CODIGOS; i++) {
+                        int indice = (int) ((i * 7919L) % ARTICULOS);
+                        boolean alterna = i % 2 == 1;
+                        String codigo = sistema == TipoSistemaAspel.SAE
+                                        ? (alterna ? BaseDatosSustituta.codigoBarrasSae(indice) : BaseDatosSustituta.claveSae(indice))
+                                        : (alterna ? BaseDatosSustituta.codigoBarrasCaja(indice)
+                                                        : BaseDatosSustituta.claveCaja(indice));
+                        solicitudes[i] = new SolicitudConsultaProducto(sistema, rutaEmpresa, rutaEmpresa,
+                                        BaseDatosSustituta.SUFIJO, codigo, true);
+                }
+                esperarCatalogo();
+                esperarClavesAlternas();
+                for (SolicitudConsultaProducto solicitud : solicitudes) {
+                        if (servicio.consultarProducto(solicitud).isEmpty()) {
+                                throw new IllegalStateException("La base sustituta no devolvió " + solicitud.codigoProducto());
+                        }
+                }
+        }
+
+        /**
+         * La primera consulta programa la carga de la instantánea en segundo plano; se espera a que termine para medir
+         * solo las consultas atendidas desde ella.
+         */
+        private void esperarCatalogo() throws InterruptedException {
+                if ("NINGUNO".equals(modoCatalogo)) {
+                        return;
+                }
+                servicio.consultarProducto(solicitudes[0]);
+                long limite = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+                while (catalogo.obtenerEstadisticas().stream().noneMatch(EstadisticaCatalogoDTO::cargado)) {
+                        if (System.nanoTime() > limite) {
+                                throw new IllegalStateException("El catálogo no se cargó a tiempo");
+                        }
+                        Thread.sleep(50);
+                }
+        }
+
+        /**
+         * Mientras se construye el índice de claves alternas, Caja rechaza los códigos que no son clave principal; se
+         * espera a que esté listo antes de validar las respuestas.
+         */
+        private void esperarClavesAlternas() throws InterruptedException {
+                long limite = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+                while (clavesAlternas.obtenerEstadisticas().stream().noneMatch(estadistica -> estadistica.construidoEn() != null)) {
+                        try {
+                                servicio.consultarProducto(solicitudes[1]);
+                        } catch (IndiceEnPreparacionException ex) {
+                                // La consulta solo programa la construcción del índice.
+                        }
+                        if (System.nanoTime() > limite) {
+                                throw new IllegalStateException("El índice de claves alternas no se construyó a tiempo");
+                        }
+                        Thread.sleep(50);
+                }
+        }
+
+        @TearDown(Level.Trial)
+        public void cerrar() throws Exception {
+                clavesAlternas.detener();
+                catalogo.detener();
+                base.close();
+                Files.deleteIfExists(carpetaMiniaturas);
+                try (Stream<Path> archivos = Files.list(carpetaCatalogos)) {
+                        for (Path archivo : archivos.toList()) {
+                                Files.deleteIfExists(archivo);
+                        }
+                }
+                Files.deleteIfExists(carpetaCatalogos);
+        }
+
+        @Benchmark
+        public Optional<ProductoConsultadoDTO> consultarProducto() {
+                SolicitudConsultaProducto solicitud = solicitudes[siguiente];
+                siguiente = (siguiente + 1) & (CODIGOS - 1);
+                return servicio.consultarProducto(solicitud);
+        }
+}
@@ -0,0 +1,69 @@
+package com.suprice.suprice.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide {@link IndiceBusqueda} sobre un catálogo sintético de descripciones en español. {@code consulta} cubre una
+ * palabra completa, un prefijo corto, varias palabras con acentos omitidos y una palabra mal escrita.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BusquedaBenchmark {
+
+        private static final String[] PRODUCTOS = { "Leche", "Galletas", "Refresco", "Jabón", "Detergente", "Café",
+                        "Azúcar", "Aceite", "Arroz", "Frijol", "Atún", "Papel", "Shampoo", "Cereal", "Yogur", "Piña", "Jugo",
+                        "Harina", "Sal", "Chile", "Salsa", "Mayonesa", "Pañal", "Crema", "Queso", "Jamón", "Tortillas", "Agua" };
+        private static final String[] MARCAS = { "La Costeña", "Lala", "Gamesa", "Nestlé", "Bimbo", "Herdez", "Zote",
+                        "Ariel", "Coca-Cola", "Jumex", "Kellogg's", "Maseca", "Dolores", "Great Value", "Alpura", "Sabritas" };
+        private static final String[] VARIANTES = { "entera", "deslactosada", "light", "natural", "original", "mango",
+                        "fresa", "chocolate", "vainilla", "limón", "picante", "integral", "clásico", "familiar", "económico" };
+        private static final String[] PRESENTACIONES = { "1 L", "500 ml", "2 L", "250 g", "1 kg", "900 g", "12 pzas",
+                        "355 ml", "600 ml", "400 g", "20 kg", "3 pack" };
+
+        @Param({ "100000", "1000000" })
+        public int articulos;
+
+        @Param({ "galletas", "cho", "leche entera lala", "chocolte" })
+        public String consulta;
+
+        private IndiceBusqueda indice;
+
+        @Setup(Level.Trial)
+        public void preparar() {
+                Random aleatorio = new Random(42);
+                IndiceBusqueda.Constructor constructor = IndiceBusqueda.constructor();
+                for (int i = 0; i < articulos; i++) {
+                        String descripcion = elegir(aleatorio, PRODUCTOS) + " " + elegir(aleatorio, MARCAS) + " "
+                                        + elegir(aleatorio, VARIANTES) + " " + elegir(aleatorio, PRESENTACIONES) + " M" + (i % 5000);
+                        constructor.agregar(String.format("A%07d", i), descripcion);
+                }
+                indice = constructor.construir();
+        }
+
+        private static String elegir(Random aleatorio, String[] opciones) {
+                return opciones[aleatorio.nextInt(opciones.length)];
+        }
+
+        @Benchmark
+        public IndiceBusqueda.Resultado buscar() {
+                return indice.buscar(consulta, 0, 20);
+        }
+}
@@ -0,0 +1,104 @@
+package com.suprice.suprice.util;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compara {@link UtilidadesImpuestos} con {@link EvaluadorImpuestos} para las combinaciones de impuestos más comunes
+ * en los catálogos de Aspel. Los resultados se expresan por precio calculado.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImpuestosBenchmark {
+
+        private static final int PRECIOS = 1000;
+
+        /**
+         * {@code EXENTO}: sin impuestos; {@code IVA}: 16 %; {@code IEPS_IVA}: IEPS 8 % con IVA sobre la base más el
+         * IEPS; {@code CUATRO}: cuatro impuestos, cada uno sobre la base más los anteriores.
+         */
+        @Param({ "EXENTO", "IVA", "IEPS_IVA", "CUATRO" })
+        public String combinacion;
+
+        private List<BigDecimal> porcentajes;
+        private List<Integer> reglas;
+        private EvaluadorImpuestos evaluador;
+        private BigDecimal[] precios;
+        private long[] preciosEscalados;
+        private long[] impuestosEscalados;
+        private int siguiente;
+
+        @Setup
+        public void preparar() {
+                switch (combinacion) {
+                case "EXENTO" -> definir(List.of("0", "0", "0", "0"), List.of(0, 0, 0, 0));
+                case "IVA" -> definir(List.of("0", "0", "0", "16"), List.of(0, 0, 0, 0));
+                case "IEPS_IVA" -> definir(List.of("8", "0", "0", "16"), List.of(0, 0, 0, 1));
+                case "CUATRO" -> definir(List.of("8", "3", "1.5", "16"), List.of(0, 1, 2, 3));
+                default -> throw new IllegalArgumentException("Combinación desconocida: " + combinacion);
+                }
+                evaluador = EvaluadorImpuestos.compilar(porcentajes.get(0), porcentajes.get(1), porcentajes.get(2),
+                                porcentajes.get(3), reglas.get(0), reglas.get(1), reglas.get(2), reglas.get(3));
+                Random azar = new Random(7);
+                precios = new BigDecimal[PRECIOS];
+                preciosEscalados = new long[PRECIOS];
+                impuestosEscalados = new long[PRECIOS];
+                for (int i = 0; i < PRECIOS; i++) {
+                        precios[i] = BigDecimal.valueOf(500 + azar.nextInt(2_000_000), 2);
+                        preciosEscalados[i] = precios[i].movePointRight(4).longValueExact();
+                }
+        }
+
+        @Benchmark
+        public BigDecimal utilidadesImpuestos() {
+                return UtilidadesImpuestos.calcularTotalImpuestos(siguientePrecio(), porcentajes, reglas);
+        }
+
+        @Benchmark
+        public BigDecimal evaluador() {
+                return evaluador.calcular(siguientePrecio());
+        }
+
+        @Benchmark
+        @OperationsPerInvocation(PRECIOS)
+        public BigDecimal[] evaluadorLote() {
+                return evaluador.calcular(precios);
+        }
+
+        @Benchmark
+        @OperationsPerInvocation(PRECIOS)
+        public long[] evaluadorLoteEscalado() {
+                evaluador.calcular(preciosEscalados, impuestosEscalados);
+                return impuestosEscalados;
+        }
+
+        private BigDecimal siguientePrecio() {
+                BigDecimal precio = precios[siguiente];
+                siguiente = siguiente + 1 == PRECIOS ? 0 : siguiente + 1;
+                return precio;
+        }
+
+        private void definir(List<String> valores, List<Integer> reglasImpuestos) {
+                porcentajes = valores.stream().map(BigDecimal::new).toList();
+                reglas = reglasImpuestos;
+        }
+}
@@ -1,7 +1,13 @@
 export const MENSAJE_ERROR_CONEXION =
   'No fue posible conectar con el servidor. Verifique que el servicio de backend esté en ejecución.';
 
+export const MENSAJE_TIEMPO_AGOTADO =
+  'La consulta tardó demasiado en responder. Intente de nuevo en unos momentos.';
+
 export const obtenerMensajeDesdeError = (error: unknown, mensajePorDefecto: string): string => {
+  if (error instanceof DOMException && (error.name === 'AbortError' || error.name === 'TimeoutError')) {
+    return MENSAJE_TIEMPO_AGOTADO;
+  }
   if (error instanceof TypeError) {
     return MENSAJE_ERROR_CONEXION;
   }
@@ -15,7 +21,7 @@ export const obtenerMensajeDesdeRespuesta = async (
   respuesta: Response,
   mensajePorDefecto: string
 ): Promise<string> => {
-  if (respuesta.status >= 500) {
+  if (respuesta.status >= 500 && respuesta.status !== 503 && respuesta.status !== 504) {
     return MENSAJE_ERROR_CONEXION;
   }
   try {
@@ -43,12 +43,17 @@ interface ProductoConsultadoDTO {
   existenciaTotal: number;
   existencias: ExistenciaDetalleDTO[];
   precios: PrecioProductoDTO[];
-  imagenBase64?: string | null;
+  urlImagen?: string | null;
   impuestosIncluidos: boolean;
 }
 
 type TipoSistemaAspel = 'SAE' | 'CAJA';
 
+// El servidor cancela la consulta a los 10 s (suprice.consultas.plazo-ms) y responde 504; se reintenta una vez y
+// el navegador deja de esperar si tampoco llega esa respuesta.
+const REINTENTOS_POR_PLAZO = 1;
+const ESPERA_MAXIMA_CONSULTA_MS = 15000;
+
 const PrincipalVista = () => {
   const { usuario, actualizarUsuario } = useContext(SesionContexto);
   const navigate = useNavigate();
@@ -178,6 +183,27 @@ const PrincipalVista = () => {
     }, 10000);
   };
 
+  const solicitarProducto = async (cuerpo: string): Promise<Response> => {
+    const controlador = new AbortController();
+    const temporizador = window.setTimeout(
+      () => controlador.abort(new DOMException('Tiempo agotado', 'TimeoutError')),
+      ESPERA_MAXIMA_CONSULTA_MS
+    );
+    try {
+      return await fetch('/api/productos/consultar', {
+        method: 'POST',
+        headers: {
+          'Content-Type': 'application/json'
+        },
+        credentials: 'include',
+        body: cuerpo,
+        signal: controlador.signal
+      });
+    } finally {
+      window.clearTimeout(temporizador);
+    }
+  };
+
   const consultarProducto = async () => {
     if (!empresaSeleccionada || !versionSeleccionada || !sistemaSeleccionado) {
       Notification.show('Seleccione sistema, versión y empresa.', { duration: 3000, position: 'bottom-center' });
@@ -187,22 +213,19 @@ const PrincipalVista = () => {
       Notification.show('Ingrese un código de producto.', { duration: 2000, position: 'bottom-center' });
       return;
     }
+    const cuerpo = JSON.stringify({
+      sistema: sistemaSeleccionado,
+      rutaVersion: versionSeleccionada.ruta,
+      rutaEmpresa: empresaSeleccionada.ruta,
+      sufijoTablas: empresaSeleccionada.sufijoTablas,
+      codigoProducto: codigoProducto.trim(),
+      incluirImpuestos
+    });
     try {
-      const respuesta = await fetch('/api/productos/consultar', {
-        method: 'POST',
-        headers: {
-          'Content-Type': 'application/json'
-        },
-        credentials: 'include',
-        body: JSON.stringify({
-          sistema: sistemaSeleccionado,
-          rutaVersion: versionSeleccionada.ruta,
-          rutaEmpresa: empresaSeleccionada.ruta,
-          sufijoTablas: empresaSeleccionada.sufijoTablas,
-          codigoProducto: codigoProducto.trim(),
-          incluirImpuestos
-        })
-      });
+      let respuesta = await solicitarProducto(cuerpo);
+      for (let intento = 0; respuesta.status === 504 && intento < REINTENTOS_POR_PLAZO; intento++) {
+        respuesta = await solicitarProducto(cuerpo);
+      }
       if (!respuesta.ok) {
         const mensaje = await obtenerMensajeDesdeRespuesta(
           respuesta,
@@ -387,9 +410,9 @@ const PrincipalVista = () => {
               <p>Existencia total: {producto.existenciaTotal.toFixed(2)}</p>
               {tablaExistencias}
             </div>
-            {producto.imagenBase64 && (
+            {producto.urlImagen && (
               <img
-                src={producto.imagenBase64}
+                src={producto.urlImagen}
                 alt={producto.descripcion}
                 style={{ maxWidth: '200px', borderRadius: 'var(--lumo-border-radius-m)' }}
               />
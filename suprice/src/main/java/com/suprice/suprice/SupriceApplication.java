@@ -3,12 +3,14 @@ package com.suprice.suprice;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Aplicación principal de Suprice encargada de inicializar el contexto de Spring Boot.
  */
 @SpringBootApplication
 @EnableAsync
+@EnableScheduling
 public class SupriceApplication {
 
         public static void main(String[] args) {
@@ -5,32 +5,72 @@ import java.nio.file.Paths;
 
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteDataSource;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
 /**
  * Configuración general de beans reutilizables dentro de la aplicación.
+ * <p>
+ * La base SQLite de usuarios se abre en modo WAL con dos pools: uno de una sola conexión para las escrituras, que
+ * así nunca compiten entre sí por el candado del archivo, y otro de solo lectura cuyas conexiones leen en paralelo
+ * mientras se escribe.
  */
 @Configuration
 public class ConfiguracionAplicacion {
 
+        private static final Logger LOGGER = LoggerFactory.getLogger(ConfiguracionAplicacion.class);
+
+        private static final String MIGRACIONES_USUARIOS = "db/usuarios";
+
+        private final Path rutaUsuarios;
+        private final int lectores;
+        private final int esperaOcupadaMs;
+        private final long esperaConexionMs;
+
+        public ConfiguracionAplicacion(@Value("${suprice.usuarios.bd.ruta:usuarios.db}") String rutaUsuarios,
+                        @Value("${suprice.usuarios.bd.lectores:4}") int lectores,
+                        @Value("${suprice.usuarios.bd.espera-ocupada-ms:5000}") int esperaOcupadaMs,
+                        @Value("${suprice.usuarios.bd.espera-conexion-ms:5000}") long esperaConexionMs) {
+                this.rutaUsuarios = Paths.get(rutaUsuarios).toAbsolutePath();
+                this.lectores = Math.max(1, lectores);
+                this.esperaOcupadaMs = Math.max(0, esperaOcupadaMs);
+                this.esperaConexionMs = Math.max(250, esperaConexionMs);
+        }
+
         /**
-         * Genera el origen de datos para la base SQLite que almacena los usuarios del sistema.
+         * Genera el origen de datos de escritura para la base SQLite que almacena los usuarios del sistema y aplica
+         * las migraciones pendientes de {@code db/usuarios} antes de entregarlo.
          *
          * @return {@link DataSource} configurado para SQLite.
          */
-        @Bean
+        @Bean(destroyMethod = "close")
         @Primary
         public DataSource origenDatosSqlite() {
-                Path ruta = Paths.get("usuarios.db").toAbsolutePath();
-                SQLiteDataSource dataSource = new SQLiteDataSource();
-                dataSource.setUrl("jdbc:sqlite:" + ruta);
-                return dataSource;
+                HikariDataSource origen = crearPool("sqlite-escritura", 1, false);
+                int version = new MigradorEsquemaSqlite(origen, MIGRACIONES_USUARIOS).migrar();
+                LOGGER.info("Base de usuarios {} en modo WAL con esquema versión {} y {} lectores", rutaUsuarios, version,
+                                lectores);
+                return origen;
         }
 
+        /**
+         * Origen de datos de solo lectura para la base de usuarios.
+         */
+        @Bean(destroyMethod = "close")
+        public DataSource origenDatosSqliteLectura() {
+                return crearPool("sqlite-lectura", lectores, true);
+        }
 
         /**
          * Proporciona una {@link JdbcTemplate} ligada al origen de datos SQLite.
@@ -39,7 +79,43 @@ public class ConfiguracionAplicacion {
          * @return plantilla JDBC lista para uso.
          */
         @Bean
+        @Primary
         public JdbcTemplate plantillaSqlite(DataSource dataSource) {
-            return new JdbcTemplate(dataSource);
+                return new JdbcTemplate(dataSource);
+        }
+
+        /**
+         * Plantilla JDBC para consultas sobre el pool de lectura; no admite escrituras.
+         */
+        @Bean
+        public JdbcTemplate plantillaSqliteLectura(@Qualifier("origenDatosSqliteLectura") DataSource dataSource) {
+                return new JdbcTemplate(dataSource);
+        }
+
+        /**
+         * {@code busy_timeout} hace que SQLite reintente durante la espera en lugar de fallar con
+         * {@code SQLITE_BUSY} mientras otro proceso escribe, y las transacciones {@code IMMEDIATE} toman el candado
+         * de escritura al comenzar para no fallar al pasar de lectura a escritura. En WAL basta {@code NORMAL} para
+         * que una caída del sistema no corrompa la base.
+         */
+        private HikariDataSource crearPool(String nombre, int maximo, boolean soloLectura) {
+                SQLiteConfig configuracionSqlite = new SQLiteConfig();
+                configuracionSqlite.setJournalMode(SQLiteConfig.JournalMode.WAL);
+                configuracionSqlite.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+                configuracionSqlite.setBusyTimeout(esperaOcupadaMs);
+                configuracionSqlite.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+                SQLiteDataSource sqlite = new SQLiteDataSource(configuracionSqlite);
+                sqlite.setUrl("jdbc:sqlite:" + rutaUsuarios);
+
+                HikariConfig configuracion = new HikariConfig();
+                configuracion.setPoolName(nombre);
+                configuracion.setDataSource(sqlite);
+                configuracion.setMaximumPoolSize(maximo);
+                configuracion.setMinimumIdle(1);
+                configuracion.setConnectionTimeout(esperaConexionMs);
+                if (soloLectura) {
+                        configuracion.setConnectionInitSql("PRAGMA query_only = 1");
+                }
+                return new HikariDataSource(configuracion);
         }
 }
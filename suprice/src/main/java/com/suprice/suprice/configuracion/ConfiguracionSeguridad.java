@@ -1,22 +1,38 @@
 package com.suprice.suprice.configuracion;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authorization.AuthenticatedAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationManagers;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.IpAddressAuthorizationManager;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.security.web.authentication.AnonymousAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import com.suprice.suprice.servicio.FirmadorTokens;
+
 /**
- * Configura la seguridad de la aplicación utilizando sesiones y reglas específicas para las rutas.
+ * Configura la seguridad de la aplicación utilizando sesiones y reglas específicas para las rutas. Con
+ * {@code suprice.sesion.token.habilitado} la cadena se vuelve sin estado y autentica cada petición con el token
+ * firmado por {@link FirmadorTokens}, de modo que varias instancias pueden atender al mismo usuario.
+ * <p>
+ * Las métricas de {@code /actuator/prometheus} incluyen los nombres de las empresas, por lo que solo se entregan a
+ * usuarios autenticados o a las direcciones de {@code suprice.metricas.redes-permitidas}.
  */
 @Configuration
 @EnableWebSecurity
@@ -27,7 +43,9 @@ public class ConfiguracionSeguridad {
                         "/VAADIN/**", "/frontend/**", "/images/**", "/icons/**", "/line-awesome/**", "/favicon.ico" };
 
         @Bean
-        public SecurityFilterChain cadenaFiltros(HttpSecurity http) throws Exception {
+        public SecurityFilterChain cadenaFiltros(HttpSecurity http, FirmadorTokens firmadorTokens,
+                        @Value("${suprice.metricas.redes-permitidas:127.0.0.1/32,::1/128}") List<String> redesMetricas)
+                        throws Exception {
                 http.csrf(csrf -> csrf.disable());
                 http.cors(Customizer.withDefaults());
                 http.headers(headers -> headers.frameOptions(frame -> frame.sameOrigin()));
@@ -36,13 +54,33 @@ public class ConfiguracionSeguridad {
                                 .requestMatchers(HttpMethod.POST, "/api/autenticacion/iniciar").permitAll()
                                 .requestMatchers(HttpMethod.POST, "/api/autenticacion/cerrar").permitAll()
                                 .requestMatchers(HttpMethod.GET, "/api/autenticacion/usuario-actual").permitAll()
+                                .requestMatchers(HttpMethod.GET, "/actuator/health", "/actuator/health/**").permitAll()
+                                .requestMatchers(HttpMethod.GET, "/actuator/prometheus").access(accesoMetricas(redesMetricas))
                                 .anyRequest().authenticated());
                 http.httpBasic(basic -> basic.disable());
                 http.formLogin(form -> form.disable());
-                http.logout(cierre -> cierre.logoutUrl("/api/autenticacion/cerrar").deleteCookies("JSESSIONID"));
+                http.logout(cierre -> cierre.logoutUrl("/api/autenticacion/cerrar")
+                                .deleteCookies("JSESSIONID", FirmadorTokens.COOKIE));
+                if (firmadorTokens.estaHabilitado()) {
+                        http.sessionManagement(sesiones -> sesiones.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+                        http.addFilterBefore(new FiltroTokenSesion(firmadorTokens), AnonymousAuthenticationFilter.class);
+                }
                 return http.build();
         }
 
+        private static AuthorizationManager<RequestAuthorizationContext> accesoMetricas(List<String> redes) {
+                List<AuthorizationManager<RequestAuthorizationContext>> permitidos = new ArrayList<>();
+                permitidos.add(AuthenticatedAuthorizationManager.authenticated());
+                for (String red : redes) {
+                        if (!red.isBlank()) {
+                                permitidos.add(IpAddressAuthorizationManager.hasIpAddress(red.trim()));
+                        }
+                }
+                @SuppressWarnings("unchecked")
+                AuthorizationManager<RequestAuthorizationContext>[] arreglo = permitidos.toArray(AuthorizationManager[]::new);
+                return AuthorizationManagers.anyOf(arreglo);
+        }
+
         @Bean
         public PasswordEncoder codificadorContrasenas() {
                 return new BCryptPasswordEncoder();
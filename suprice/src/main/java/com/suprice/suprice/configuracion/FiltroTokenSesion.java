@@ -0,0 +1,64 @@
+package com.suprice.suprice.configuracion;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.suprice.suprice.servicio.FirmadorTokens;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Autentica cada petición con el token firmado de la cookie {@link FirmadorTokens#COOKIE} o del encabezado
+ * {@code Authorization: Bearer}. Un token ausente, alterado o vencido deja la petición sin autenticar.
+ * <p>
+ * No es un bean para que Spring Boot no lo registre también fuera de la cadena de seguridad.
+ */
+class FiltroTokenSesion extends OncePerRequestFilter {
+
+        private static final String PREFIJO_BEARER = "Bearer ";
+
+        private final FirmadorTokens firmador;
+
+        FiltroTokenSesion(FirmadorTokens firmador) {
+                this.firmador = firmador;
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain cadena)
+                        throws ServletException, IOException {
+                firmador.verificar(leerToken(request)).ifPresent(sesion -> {
+                        SecurityContext contexto = SecurityContextHolder.createEmptyContext();
+                        contexto.setAuthentication(UsernamePasswordAuthenticationToken.authenticated(sesion, null,
+                                        List.of(new SimpleGrantedAuthority("ROLE_" + sesion.getRol().name()))));
+                        SecurityContextHolder.setContext(contexto);
+                });
+                cadena.doFilter(request, response);
+        }
+
+        private static String leerToken(HttpServletRequest request) {
+                String autorizacion = request.getHeader(HttpHeaders.AUTHORIZATION);
+                if (autorizacion != null && autorizacion.startsWith(PREFIJO_BEARER)) {
+                        return autorizacion.substring(PREFIJO_BEARER.length()).trim();
+                }
+                Cookie[] cookies = request.getCookies();
+                if (cookies != null) {
+                        for (Cookie cookie : cookies) {
+                                if (FirmadorTokens.COOKIE.equals(cookie.getName())) {
+                                        return cookie.getValue();
+                                }
+                        }
+                }
+                return null;
+        }
+}
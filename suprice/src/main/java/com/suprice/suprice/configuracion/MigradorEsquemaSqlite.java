@@ -0,0 +1,114 @@
+package com.suprice.suprice.configuracion;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+/**
+ * Aplica al iniciar los scripts {@code V<n>__<descripcion>.sql} de una carpeta del classpath cuya versión sea mayor
+ * que el {@code PRAGMA user_version} de la base. Cada script se ejecuta en su propia transacción junto con el
+ * cambio de {@code user_version}, de modo que una migración fallida no deja la base a medias.
+ */
+final class MigradorEsquemaSqlite {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(MigradorEsquemaSqlite.class);
+
+        private static final Pattern NOMBRE_SCRIPT = Pattern.compile("V(\\d+)__.+\\.sql");
+
+        private final DataSource origen;
+        private final String carpeta;
+
+        /**
+         * @param origen  origen de datos con permiso de escritura.
+         * @param carpeta carpeta del classpath con los scripts, por ejemplo {@code db/usuarios}.
+         */
+        MigradorEsquemaSqlite(DataSource origen, String carpeta) {
+                this.origen = origen;
+                this.carpeta = carpeta;
+        }
+
+        /**
+         * @return versión del esquema tras aplicar las migraciones pendientes.
+         * @throws IllegalStateException si un script no puede leerse o ejecutarse.
+         */
+        int migrar() {
+                List<Migracion> migraciones = buscarMigraciones();
+                try (Connection conexion = origen.getConnection()) {
+                        int actual = leerVersion(conexion);
+                        for (Migracion migracion : migraciones) {
+                                if (migracion.version() <= actual) {
+                                        continue;
+                                }
+                                aplicar(conexion, migracion);
+                                actual = migracion.version();
+                                LOGGER.info("Esquema SQLite actualizado a la versión {} ({})", actual,
+                                                migracion.script().getFilename());
+                        }
+                        return actual;
+                } catch (SQLException ex) {
+                        throw new IllegalStateException("No fue posible migrar el esquema de " + carpeta, ex);
+                }
+        }
+
+        private void aplicar(Connection conexion, Migracion migracion) throws SQLException {
+                boolean autoCommit = conexion.getAutoCommit();
+                conexion.setAutoCommit(false);
+                try {
+                        ScriptUtils.executeSqlScript(conexion, new EncodedResource(migracion.script(), "UTF-8"));
+                        try (Statement sentencia = conexion.createStatement()) {
+                                sentencia.execute("PRAGMA user_version = " + migracion.version());
+                        }
+                        conexion.commit();
+                } catch (SQLException | RuntimeException ex) {
+                        conexion.rollback();
+                        throw ex;
+                } finally {
+                        conexion.setAutoCommit(autoCommit);
+                }
+        }
+
+        private List<Migracion> buscarMigraciones() {
+                try {
+                        Resource[] scripts = new PathMatchingResourcePatternResolver()
+                                        .getResources("classpath*:" + carpeta + "/V*__*.sql");
+                        return Stream.of(scripts)
+                                        .map(script -> {
+                                                Matcher coincidencia = NOMBRE_SCRIPT.matcher(String.valueOf(script.getFilename()));
+                                                return coincidencia.matches()
+                                                                ? new Migracion(Integer.parseInt(coincidencia.group(1)), script)
+                                                                : null;
+                                        })
+                                        .filter(migracion -> migracion != null)
+                                        .sorted(Comparator.comparingInt(Migracion::version))
+                                        .toList();
+                } catch (IOException ex) {
+                        throw new IllegalStateException("No fue posible leer los scripts de " + carpeta, ex);
+                }
+        }
+
+        private static int leerVersion(Connection conexion) throws SQLException {
+                try (Statement sentencia = conexion.createStatement();
+                                ResultSet resultado = sentencia.executeQuery("PRAGMA user_version")) {
+                        return resultado.next() ? resultado.getInt(1) : 0;
+                }
+        }
+
+        private record Migracion(int version, Resource script) {
+        }
+}
@@ -1,9 +1,19 @@
 package com.suprice.suprice.endpoint;
 
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -17,8 +27,12 @@ import com.suprice.suprice.modelo.RolUsuario;
 import com.suprice.suprice.modelo.UsuarioDTO;
 import com.suprice.suprice.modelo.UsuarioEntidad;
 import com.suprice.suprice.modelo.UsuarioSesion;
+import com.suprice.suprice.servicio.AutenticacionSaturadaException;
+import com.suprice.suprice.servicio.FirmadorTokens;
 import com.suprice.suprice.servicio.ServicioUsuarios;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import jakarta.validation.Valid;
 
@@ -33,59 +47,95 @@ public class AutenticacionControlador {
         public static final String SESION_USUARIO = "USUARIO_AUTENTICADO";
 
         private final ServicioUsuarios servicioUsuarios;
+        private final FirmadorTokens firmadorTokens;
+        private final SecurityContextRepository repositorioContexto = new HttpSessionSecurityContextRepository();
 
-        public AutenticacionControlador(ServicioUsuarios servicioUsuarios) {
+        public AutenticacionControlador(ServicioUsuarios servicioUsuarios, FirmadorTokens firmadorTokens) {
                 this.servicioUsuarios = servicioUsuarios;
+                this.firmadorTokens = firmadorTokens;
         }
 
+        /**
+         * Valida las credenciales y registra al usuario tanto en la sesión como en el contexto de Spring Security,
+         * que es el que autoriza el resto de las rutas de {@code /api}. El identificador de sesión se renueva para
+         * evitar la fijación de sesión. El usuario se busca una sola vez y la contraseña se verifica en el pool acotado
+         * de {@code VerificadorContrasenas}; si está saturado se responde {@code 503} con {@code Retry-After}.
+         * <p>
+         * Con {@code suprice.sesion.token.habilitado} no se crea sesión: se entrega un token firmado en la cookie
+         * {@link FirmadorTokens#COOKIE} que cualquier instancia verifica por sí misma.
+         */
         @PostMapping("/iniciar")
         public ResponseEntity<?> iniciarSesion(@Valid @RequestBody CredencialesInicioSesion credenciales,
-                        HttpSession session) {
-                Optional<UsuarioEntidad> usuarioOpt = servicioUsuarios.buscarUsuario(credenciales.nombreUsuario());
+                        HttpServletRequest request, HttpServletResponse response) {
+                Optional<UsuarioEntidad> usuarioOpt;
+                try {
+                        usuarioOpt = servicioUsuarios.autenticar(credenciales.nombreUsuario(), credenciales.contrasena());
+                } catch (AutenticacionSaturadaException ex) {
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getReintentarEnSegundos()))
+                                        .body(new RespuestaOperacionDTO(false, ex.getMessage()));
+                }
                 if (usuarioOpt.isEmpty()) {
                         return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                                         .body(new RespuestaOperacionDTO(false, "Credenciales incorrectas"));
                 }
                 UsuarioEntidad usuario = usuarioOpt.get();
-                if (!servicioUsuarios.validarCredenciales(credenciales.nombreUsuario(), credenciales.contrasena())) {
-                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                                        .body(new RespuestaOperacionDTO(false, "Credenciales incorrectas"));
-                }
                 UsuarioSesion sesion = new UsuarioSesion(usuario.nombreUsuario(), usuario.rol());
-                session.setAttribute(SESION_USUARIO, sesion);
-                return ResponseEntity.ok(new UsuarioDTO(usuario.nombreUsuario(), usuario.rol()));
+                UsuarioDTO respuesta = new UsuarioDTO(usuario.nombreUsuario(), usuario.rol());
+                if (firmadorTokens.estaHabilitado()) {
+                        return ResponseEntity.ok()
+                                        .header(HttpHeaders.SET_COOKIE, cookieToken(firmadorTokens.emitir(sesion),
+                                                        firmadorTokens.vigenciaSegundos(), request).toString())
+                                        .body(respuesta);
+                }
+                if (request.getSession(false) != null) {
+                        request.changeSessionId();
+                }
+                request.getSession().setAttribute(SESION_USUARIO, sesion);
+                SecurityContext contexto = SecurityContextHolder.createEmptyContext();
+                contexto.setAuthentication(UsernamePasswordAuthenticationToken.authenticated(sesion, null,
+                                List.of(new SimpleGrantedAuthority("ROLE_" + usuario.rol().name()))));
+                SecurityContextHolder.setContext(contexto);
+                repositorioContexto.saveContext(contexto, request, response);
+                return ResponseEntity.ok(respuesta);
         }
 
         @PostMapping("/cerrar")
-        public ResponseEntity<RespuestaOperacionDTO> cerrarSesion(HttpSession session) {
-                session.invalidate();
-                return ResponseEntity.ok(new RespuestaOperacionDTO(true, "Sesión cerrada"));
+        public ResponseEntity<RespuestaOperacionDTO> cerrarSesion(HttpServletRequest request) {
+                HttpSession session = request.getSession(false);
+                if (session != null) {
+                        session.invalidate();
+                }
+                return ResponseEntity.ok()
+                                .header(HttpHeaders.SET_COOKIE, cookieToken("", 0, request).toString())
+                                .body(new RespuestaOperacionDTO(true, "Sesión cerrada"));
         }
 
         @GetMapping("/usuario-actual")
-        public ResponseEntity<?> obtenerUsuarioActual(HttpSession session) {
-                Object atributoSesion = session.getAttribute(SESION_USUARIO);
-                if (!(atributoSesion instanceof UsuarioSesion sesion)) {
-                        if (atributoSesion != null) {
-                                session.removeAttribute(SESION_USUARIO);
-                        }
-                        return ResponseEntity.ok().body(null);
-                }
-                return ResponseEntity.ok(new UsuarioDTO(sesion.getNombreUsuario(), sesion.getRol()));
+        public ResponseEntity<?> obtenerUsuarioActual(HttpServletRequest request) {
+                return obtenerSesion(request)
+                                .<ResponseEntity<?>>map(sesion -> ResponseEntity
+                                                .ok(new UsuarioDTO(sesion.getNombreUsuario(), sesion.getRol())))
+                                .orElseGet(() -> ResponseEntity.ok().body(null));
         }
 
-        public static boolean esAdministrador(HttpSession session) {
-                Object atributoSesion = session.getAttribute(SESION_USUARIO);
-                if (!(atributoSesion instanceof UsuarioSesion sesion)) {
-                        if (atributoSesion != null) {
-                                session.removeAttribute(SESION_USUARIO);
-                        }
-                        return false;
-                }
-                return sesion.getRol() == RolUsuario.ADMINISTRADOR;
+        public static boolean esAdministrador(HttpServletRequest request) {
+                return obtenerSesion(request).map(sesion -> sesion.getRol() == RolUsuario.ADMINISTRADOR).orElse(false);
         }
 
-        public static Optional<UsuarioSesion> obtenerSesion(HttpSession session) {
+        /**
+         * Obtiene el usuario autenticado por token, que el filtro de seguridad deja en el contexto, o en su defecto
+         * el guardado en la sesión.
+         */
+        public static Optional<UsuarioSesion> obtenerSesion(HttpServletRequest request) {
+                Authentication autenticacion = SecurityContextHolder.getContext().getAuthentication();
+                if (autenticacion != null && autenticacion.getPrincipal() instanceof UsuarioSesion sesion) {
+                        return Optional.of(sesion);
+                }
+                HttpSession session = request.getSession(false);
+                if (session == null) {
+                        return Optional.empty();
+                }
                 Object atributoSesion = session.getAttribute(SESION_USUARIO);
                 if (atributoSesion instanceof UsuarioSesion sesion) {
                         return Optional.of(sesion);
@@ -95,4 +145,14 @@ public class AutenticacionControlador {
                 }
                 return Optional.empty();
         }
+
+        private static ResponseCookie cookieToken(String valor, long vigenciaSegundos, HttpServletRequest request) {
+                return ResponseCookie.from(FirmadorTokens.COOKIE, valor)
+                                .httpOnly(true)
+                                .secure(request.isSecure())
+                                .sameSite("Lax")
+                                .path("/")
+                                .maxAge(vigenciaSegundos)
+                                .build();
+        }
 }
@@ -14,7 +14,7 @@ import com.suprice.suprice.modelo.TipoSistemaAspel;
 import com.suprice.suprice.modelo.VersionSistemaDTO;
 import com.suprice.suprice.servicio.ServicioConfiguracionAspel;
 
-import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpServletRequest;
 
 /**
  * Expone servicios REST para obtener versiones y empresas disponibles de los sistemas Aspel.
@@ -30,16 +30,16 @@ public class ConfiguracionControlador {
         }
 
         @GetMapping("/sistemas")
-        public ResponseEntity<List<TipoSistemaAspel>> obtenerSistemas(HttpSession session) {
-                if (AutenticacionControlador.obtenerSesion(session).isEmpty()) {
+        public ResponseEntity<List<TipoSistemaAspel>> obtenerSistemas(HttpServletRequest request) {
+                if (AutenticacionControlador.obtenerSesion(request).isEmpty()) {
                         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
                 }
                 return ResponseEntity.ok(List.of(TipoSistemaAspel.SAE, TipoSistemaAspel.CAJA));
         }
 
         @GetMapping("/versiones")
-        public ResponseEntity<?> obtenerVersiones(HttpSession session, @RequestParam TipoSistemaAspel sistema) {
-                if (AutenticacionControlador.obtenerSesion(session).isEmpty()) {
+        public ResponseEntity<?> obtenerVersiones(HttpServletRequest request, @RequestParam TipoSistemaAspel sistema) {
+                if (AutenticacionControlador.obtenerSesion(request).isEmpty()) {
                         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
                 }
                 List<VersionSistemaDTO> versiones = servicioConfiguracionAspel.listarVersiones(sistema);
@@ -47,9 +47,9 @@ public class ConfiguracionControlador {
         }
 
         @GetMapping("/empresas")
-        public ResponseEntity<?> obtenerEmpresas(HttpSession session, @RequestParam TipoSistemaAspel sistema,
+        public ResponseEntity<?> obtenerEmpresas(HttpServletRequest request, @RequestParam TipoSistemaAspel sistema,
                         @RequestParam String rutaVersion) {
-                if (AutenticacionControlador.obtenerSesion(session).isEmpty()) {
+                if (AutenticacionControlador.obtenerSesion(request).isEmpty()) {
                         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
                 }
                 List<EmpresaSistemaDTO> empresas = servicioConfiguracionAspel.listarEmpresas(sistema, rutaVersion);
@@ -1,27 +1,71 @@
 package com.suprice.suprice.endpoint;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.suprice.suprice.modelo.FormatoExportacion;
+import com.suprice.suprice.modelo.ProductoConsultadoDTO;
 import com.suprice.suprice.modelo.RespuestaOperacionDTO;
+import com.suprice.suprice.modelo.ResultadoBusquedaDTO;
+import com.suprice.suprice.modelo.ResultadoLoteDTO;
+import com.suprice.suprice.modelo.SolicitudBusquedaProducto;
+import com.suprice.suprice.modelo.SolicitudConsultaLote;
 import com.suprice.suprice.modelo.SolicitudConsultaProducto;
+import com.suprice.suprice.modelo.SolicitudExportacionPrecios;
+import com.suprice.suprice.modelo.TipoSistemaAspel;
 import com.suprice.suprice.modelo.UsuarioSesion;
+import com.suprice.suprice.servicio.BaseDatosNoDisponibleException;
+import com.suprice.suprice.servicio.ConsultaRechazadaException;
+import com.suprice.suprice.servicio.EjecutorConsultas;
+import com.suprice.suprice.servicio.IndiceEnPreparacionException;
+import com.suprice.suprice.servicio.InterruptoresFirebird;
+import com.suprice.suprice.servicio.MetricasConsulta;
+import com.suprice.suprice.servicio.MetricasConsulta.Fase;
+import com.suprice.suprice.servicio.PlazoVencidoException;
+import com.suprice.suprice.servicio.ServicioBusquedaProductos;
+import com.suprice.suprice.servicio.ServicioConsultaLote;
 import com.suprice.suprice.servicio.ServicioConsultaProductos;
+import com.suprice.suprice.servicio.ServicioExportacionPrecios;
+import com.suprice.suprice.servicio.ServicioImagenesProducto;
+import com.suprice.suprice.servicio.ServicioImagenesProducto.ImagenProducto;
+import com.suprice.suprice.servicio.ServicioMiniaturas;
+import com.suprice.suprice.servicio.ServicioMiniaturas.Miniatura;
+import com.suprice.suprice.util.UtilidadesRutas;
 
-import jakarta.annotation.PostConstruct;
-import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 
 /**
@@ -33,40 +77,89 @@ import jakarta.validation.Valid;
 public class ConsultaProductosControlador {
 
         private static final Logger LOGGER = LoggerFactory.getLogger(ConsultaProductosControlador.class);
+        private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+        private static final MediaType CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
 
         private final ServicioConsultaProductos servicioConsultaProductos;
-        private ThreadPoolTaskExecutor ejecutor;
+        private final ServicioConsultaLote servicioConsultaLote;
+        private final ServicioBusquedaProductos servicioBusqueda;
+        private final ServicioExportacionPrecios servicioExportacion;
+        private final ServicioImagenesProducto servicioImagenes;
+        private final ServicioMiniaturas servicioMiniaturas;
+        private final ObjectMapper objectMapper;
+        private final EjecutorConsultas ejecutorConsultas;
+        private final InterruptoresFirebird interruptores;
+        private final MetricasConsulta metricas;
+        private final CacheControl cacheImagenes;
 
-        public ConsultaProductosControlador(ServicioConsultaProductos servicioConsultaProductos) {
+        public ConsultaProductosControlador(ServicioConsultaProductos servicioConsultaProductos,
+                        ServicioConsultaLote servicioConsultaLote, ServicioBusquedaProductos servicioBusqueda,
+                        ServicioExportacionPrecios servicioExportacion, ServicioImagenesProducto servicioImagenes,
+                        ServicioMiniaturas servicioMiniaturas, EjecutorConsultas ejecutorConsultas,
+                        InterruptoresFirebird interruptores, MetricasConsulta metricas, ObjectMapper objectMapper,
+                        @Value("${suprice.imagenes.vigencia-cache-s:86400}") long vigenciaCacheImagenes) {
                 this.servicioConsultaProductos = servicioConsultaProductos;
-        }
-
-        @PostConstruct
-        public void configurarEjecutor() {
-                ejecutor = new ThreadPoolTaskExecutor();
-                ejecutor.setCorePoolSize(4);
-                ejecutor.setMaxPoolSize(8);
-                ejecutor.setQueueCapacity(20);
-                ejecutor.setThreadNamePrefix("consulta-producto-");
-                ejecutor.initialize();
+                this.servicioConsultaLote = servicioConsultaLote;
+                this.servicioBusqueda = servicioBusqueda;
+                this.servicioExportacion = servicioExportacion;
+                this.servicioImagenes = servicioImagenes;
+                this.servicioMiniaturas = servicioMiniaturas;
+                this.ejecutorConsultas = ejecutorConsultas;
+                this.interruptores = interruptores;
+                this.metricas = metricas;
+                this.objectMapper = objectMapper;
+                this.cacheImagenes = CacheControl.maxAge(Duration.ofSeconds(vigenciaCacheImagenes)).cachePrivate();
         }
 
         @PostMapping("/consultar")
         public CompletableFuture<ResponseEntity<Object>> consultarProducto(
                         @Valid @RequestBody SolicitudConsultaProducto solicitud,
-                        HttpSession session) {
-                Optional<UsuarioSesion> sesion = AutenticacionControlador.obtenerSesion(session);
+                        HttpServletRequest request) {
+                Optional<UsuarioSesion> sesion = AutenticacionControlador.obtenerSesion(request);
                 if (sesion.isEmpty()) {
                         return CompletableFuture
                                         .completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).<Object>build());
                 }
-                return CompletableFuture.supplyAsync(() -> servicioConsultaProductos.consultarProducto(solicitud), ejecutor)
+                return ejecutorConsultas
+                                .ejecutar(solicitud.rutaEmpresa(), () -> servicioConsultaProductos.consultarProducto(solicitud))
                                 .thenApply(resultado -> resultado
-                                                .map(producto -> ResponseEntity.ok().body((Object) producto))
+                                                .map(producto -> ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                                                                .body((Object) serializar(solicitud, producto)))
                                                 .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
                                                                 .<Object>body(new RespuestaOperacionDTO(false,
                                                                                 "Producto no localizado en la base de datos"))))
                                 .exceptionally(ex -> {
+                                        Throwable causa = ex instanceof CompletionException && ex.getCause() != null
+                                                        ? ex.getCause()
+                                                        : ex;
+                                        if (causa instanceof ConsultaRechazadaException rechazo) {
+                                                LOGGER.warn("Consulta de {} rechazada: {}", solicitud.rutaEmpresa(), rechazo.getMessage());
+                                                return ResponseEntity
+                                                                .status(rechazo.isLimiteEmpresa() ? HttpStatus.TOO_MANY_REQUESTS
+                                                                                : HttpStatus.SERVICE_UNAVAILABLE)
+                                                                .header(HttpHeaders.RETRY_AFTER,
+                                                                                String.valueOf(rechazo.getReintentarEnSegundos()))
+                                                                .<Object>body(new RespuestaOperacionDTO(false, rechazo.getMessage()));
+                                        }
+                                        if (causa instanceof BaseDatosNoDisponibleException noDisponible) {
+                                                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                                                .header(HttpHeaders.RETRY_AFTER,
+                                                                                String.valueOf(noDisponible.getReintentarEnSegundos()))
+                                                                .<Object>body(new RespuestaOperacionDTO(false, noDisponible.getMessage()));
+                                        }
+                                        if (causa instanceof IndiceEnPreparacionException enPreparacion) {
+                                                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                                                .header(HttpHeaders.RETRY_AFTER,
+                                                                                String.valueOf(enPreparacion.getReintentarEnSegundos()))
+                                                                .<Object>body(new RespuestaOperacionDTO(false, enPreparacion.getMessage()));
+                                        }
+                                        if (causa instanceof PlazoVencidoException) {
+                                                LOGGER.warn("Consulta del producto {} en {} excedió su plazo", solicitud.codigoProducto(),
+                                                                solicitud.rutaEmpresa());
+                                                return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                                                                .<Object>body(new RespuestaOperacionDTO(false,
+                                                                                "La base de datos de la empresa tardó demasiado en responder; intente de nuevo"));
+                                        }
                                         LOGGER.error("Error consultando producto {}: {}", solicitud.codigoProducto(),
                                                         ex.getMessage());
 
@@ -77,7 +170,191 @@ public class ConsultaProductosControlador {
                                 });
         }
 
+        /**
+         * Serializa el producto dentro del controlador para registrar su duración como la fase
+         * {@link Fase#SERIALIZACION} de la consulta.
+         */
+        private byte[] serializar(SolicitudConsultaProducto solicitud, ProductoConsultadoDTO producto) {
+                long inicio = System.nanoTime();
+                try {
+                        return objectMapper.writeValueAsBytes(producto);
+                } catch (JsonProcessingException ex) {
+                        throw new UncheckedIOException(ex);
+                } finally {
+                        metricas.registrar(Fase.SERIALIZACION, solicitud.sistema(), solicitud.rutaEmpresa(),
+                                        System.nanoTime() - inicio);
+                }
+        }
+
+        /**
+         * Consulta varios códigos de una misma empresa y responde en formato NDJSON, un {@link ResultadoLoteDTO} por
+         * línea en el orden recibido, escribiendo cada bloque en cuanto se lee de Firebird. Cada bloque pasa por el
+         * límite de la empresa, su plazo y el interruptor de la base; si alguno lo rechaza, la respuesta se corta.
+         */
+        @PostMapping("/consultar-lote")
+        public ResponseEntity<?> consultarLote(@Valid @RequestBody SolicitudConsultaLote solicitud, HttpServletRequest request) {
+                if (AutenticacionControlador.obtenerSesion(request).isEmpty()) {
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+                }
+                Optional<Path> rutaBd = servicioConsultaLote.localizarBaseDatos(solicitud);
+                if (rutaBd.isEmpty()) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                        .body(new RespuestaOperacionDTO(false, "No se localizó la base de datos de la empresa"));
+                }
+                if (!interruptores.permiteConsultas(rutaBd.get())) {
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                        .body(new RespuestaOperacionDTO(false, "La base de datos de la empresa no responde"));
+                }
+                StreamingResponseBody cuerpo = salida -> {
+                        try {
+                                servicioConsultaLote.consultarLote(solicitud, rutaBd.get(), resultados -> {
+                                        for (ResultadoLoteDTO resultado : resultados) {
+                                                salida.write(objectMapper.writeValueAsBytes(resultado));
+                                                salida.write('\n');
+                                        }
+                                        salida.flush();
+                                });
+                        } catch (SQLException ex) {
+                                LOGGER.error("Error consultando lote de {} códigos en {}: {}", solicitud.codigosProducto().size(),
+                                                rutaBd.get(), ex.getMessage());
+                                throw new IOException("Consulta por lote interrumpida", ex);
+                        } catch (ConsultaRechazadaException | BaseDatosNoDisponibleException | PlazoVencidoException ex) {
+                                LOGGER.warn("Lote de {} códigos en {} interrumpido: {}", solicitud.codigosProducto().size(),
+                                                rutaBd.get(), ex.getMessage());
+                                throw new IOException("Consulta por lote interrumpida", ex);
+                        }
+                };
+                return ResponseEntity.ok().contentType(NDJSON).body(cuerpo);
+        }
+
+        /**
+         * Busca productos por palabras de su descripción o clave en el índice en memoria de la empresa. Mientras el
+         * índice se construye responde {@code 503} con {@code Retry-After}.
+         */
+        @PostMapping("/buscar")
+        public ResponseEntity<?> buscarProductos(@Valid @RequestBody SolicitudBusquedaProducto solicitud,
+                        HttpServletRequest request) {
+                if (AutenticacionControlador.obtenerSesion(request).isEmpty()) {
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+                }
+                if (!servicioBusqueda.estaHabilitada()) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                        .body(new RespuestaOperacionDTO(false, "La búsqueda por descripción está deshabilitada"));
+                }
+                Optional<Path> rutaBd = servicioBusqueda.localizarBaseDatos(solicitud);
+                if (rutaBd.isEmpty()) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                        .body(new RespuestaOperacionDTO(false, "No se localizó la base de datos de la empresa"));
+                }
+                Optional<ResultadoBusquedaDTO> resultado = servicioBusqueda.buscar(solicitud, rutaBd.get());
+                if (resultado.isEmpty()) {
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                        .header(HttpHeaders.RETRY_AFTER, "2")
+                                        .body(new RespuestaOperacionDTO(false,
+                                                        "El índice de búsqueda de la empresa se está preparando; intente de nuevo"));
+                }
+                return ResponseEntity.ok(resultado.get());
+        }
+
+        /**
+         * Exporta la lista de precios completa de la empresa en CSV o NDJSON, con impuestos aplicados, escribiendo cada
+         * precio en cuanto se lee de Firebird. Si el cliente acepta gzip, la respuesta se comprime conforme se escribe.
+         * Si la empresa ya tiene el máximo de exportaciones en curso responde {@code 429} con {@code Retry-After}.
+         */
+        @PostMapping("/exportar-precios")
+        public ResponseEntity<?> exportarPrecios(@Valid @RequestBody SolicitudExportacionPrecios solicitud,
+                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String aceptaCodificacion,
+                        HttpServletRequest request) {
+                if (AutenticacionControlador.obtenerSesion(request).isEmpty()) {
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+                }
+                Optional<Path> rutaBd = servicioExportacion.localizarBaseDatos(solicitud);
+                if (rutaBd.isEmpty()) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                        .body(new RespuestaOperacionDTO(false, "No se localizó la base de datos de la empresa"));
+                }
+                if (!interruptores.permiteConsultas(rutaBd.get())) {
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                        .body(new RespuestaOperacionDTO(false, "La base de datos de la empresa no responde"));
+                }
+                try {
+                        servicioExportacion.reservar(rutaBd.get());
+                } catch (ConsultaRechazadaException rechazo) {
+                        LOGGER.warn("Exportación de {} rechazada: {}", rutaBd.get(), rechazo.getMessage());
+                        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(rechazo.getReintentarEnSegundos()))
+                                        .body(new RespuestaOperacionDTO(false, rechazo.getMessage()));
+                }
+                boolean comprimida = servicioExportacion.debeComprimir(aceptaCodificacion);
+                StreamingResponseBody cuerpo = salida -> {
+                        try {
+                                servicioExportacion.exportar(solicitud, rutaBd.get(), salida, comprimida);
+                        } catch (SQLException ex) {
+                                LOGGER.error("Error exportando la lista de precios de {}: {}", rutaBd.get(), ex.getMessage());
+                                throw new IOException("Exportación de precios interrumpida", ex);
+                        } catch (BaseDatosNoDisponibleException ex) {
+                                LOGGER.warn("Exportación de {} interrumpida: {}", rutaBd.get(), ex.getMessage());
+                                throw new IOException("Exportación de precios interrumpida", ex);
+                        } finally {
+                                servicioExportacion.liberar(rutaBd.get());
+                        }
+                };
+                boolean csv = solicitud.formato() == FormatoExportacion.CSV;
+                String archivo = "precios-" + solicitud.sistema().name().toLowerCase(Locale.ROOT)
+                                + (solicitud.sistema() == TipoSistemaAspel.SAE ? "-" + solicitud.sufijoTablas() : "")
+                                + (csv ? ".csv" : ".ndjson");
+                ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok()
+                                .contentType(csv ? CSV : NDJSON)
+                                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(archivo).build()
+                                                .toString())
+                                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+                if (comprimida) {
+                        respuesta.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+                }
+                return respuesta.body(cuerpo);
+        }
+
+        /**
+         * Entrega la imagen de un producto como recurso binario, o su miniatura cuando se indica {@code tamano}.
+         * Spring responde {@code 304 Not Modified} cuando {@code If-None-Match} o {@code If-Modified-Since} coinciden
+         * con el archivo actual.
+         */
+        @GetMapping("/imagen")
+        public ResponseEntity<Resource> obtenerImagen(@RequestParam String empresa, @RequestParam String clave,
+                        @RequestParam(required = false) Integer tamano, HttpServletRequest request) {
+                if (AutenticacionControlador.obtenerSesion(request).isEmpty()) {
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+                }
+                if (tamano != null && !servicioMiniaturas.esTamanoPermitido(tamano)) {
+                        return ResponseEntity.badRequest().build();
+                }
+                Optional<ImagenProducto> imagen = servicioImagenes.localizar(empresa, clave);
+                if (imagen.isEmpty()) {
+                        return ResponseEntity.notFound().build();
+                }
+                ImagenProducto archivo = imagen.get();
+                ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok()
+                                .lastModified(archivo.modificacion())
+                                .cacheControl(cacheImagenes);
+                if (tamano == null) {
+                        return respuesta.contentType(MediaType.parseMediaType(archivo.tipo()))
+                                        .contentLength(archivo.tamano())
+                                        .eTag(archivo.etiqueta())
+                                        .body(new FileSystemResource(archivo.archivo()));
+                }
+                try {
+                        Miniatura miniatura = servicioMiniaturas.obtener(UtilidadesRutas.aPath(empresa), clave, archivo, tamano);
+                        return respuesta.contentType(MediaType.parseMediaType(miniatura.tipo()))
+                                        .contentLength(miniatura.datos().length)
+                                        .eTag(archivo.etiqueta(tamano))
+                                        .body(new ByteArrayResource(miniatura.datos()));
+                } catch (IOException ex) {
+                        LOGGER.warn("No fue posible generar la miniatura de {}: {}", archivo.archivo(), ex.getMessage());
+                        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+                }
+        }
+
         public Executor obtenerEjecutor() {
-                return ejecutor;
+                return ejecutorConsultas.obtenerEjecutor();
         }
 }
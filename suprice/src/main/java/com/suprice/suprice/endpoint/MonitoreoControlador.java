@@ -0,0 +1,211 @@
+package com.suprice.suprice.endpoint;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.suprice.suprice.modelo.RespuestaOperacionDTO;
+import com.suprice.suprice.servicio.CacheEsquemasImpuestos;
+import com.suprice.suprice.servicio.CacheSentenciasPreparadas;
+import com.suprice.suprice.servicio.EjecutorConsultas;
+import com.suprice.suprice.servicio.InterruptoresFirebird;
+import com.suprice.suprice.servicio.PoolConexionesFirebird;
+import com.suprice.suprice.servicio.ServicioBusquedaProductos;
+import com.suprice.suprice.servicio.ServicioCatalogoProductos;
+import com.suprice.suprice.servicio.ServicioClavesAlternas;
+import com.suprice.suprice.servicio.ServicioConfiguracionAspel;
+import com.suprice.suprice.servicio.ServicioMiniaturas;
+import com.suprice.suprice.servicio.ServicioRutasEmpresa;
+import com.suprice.suprice.servicio.ServicioUsuarios;
+import com.suprice.suprice.util.UtilidadesRutas;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Expone al administrador el estado interno de los recursos compartidos de la aplicación.
+ */
+@RestController
+@RequestMapping("/api/monitoreo")
+public class MonitoreoControlador {
+
+        private final PoolConexionesFirebird poolConexiones;
+        private final CacheSentenciasPreparadas cacheSentencias;
+        private final ServicioCatalogoProductos servicioCatalogo;
+        private final ServicioClavesAlternas servicioClavesAlternas;
+        private final ServicioBusquedaProductos servicioBusqueda;
+        private final ServicioMiniaturas servicioMiniaturas;
+        private final EjecutorConsultas ejecutorConsultas;
+        private final InterruptoresFirebird interruptores;
+        private final CacheEsquemasImpuestos cacheEsquemas;
+        private final ServicioRutasEmpresa servicioRutas;
+        private final ServicioUsuarios servicioUsuarios;
+        private final ServicioConfiguracionAspel servicioConfiguracionAspel;
+
+        public MonitoreoControlador(PoolConexionesFirebird poolConexiones, CacheSentenciasPreparadas cacheSentencias,
+                        ServicioCatalogoProductos servicioCatalogo, ServicioClavesAlternas servicioClavesAlternas,
+                        ServicioBusquedaProductos servicioBusqueda,
+                        ServicioMiniaturas servicioMiniaturas, EjecutorConsultas ejecutorConsultas,
+                        InterruptoresFirebird interruptores, CacheEsquemasImpuestos cacheEsquemas,
+                        ServicioRutasEmpresa servicioRutas, ServicioUsuarios servicioUsuarios,
+                        ServicioConfiguracionAspel servicioConfiguracionAspel) {
+                this.poolConexiones = poolConexiones;
+                this.cacheSentencias = cacheSentencias;
+                this.servicioCatalogo = servicioCatalogo;
+                this.servicioClavesAlternas = servicioClavesAlternas;
+                this.servicioBusqueda = servicioBusqueda;
+                this.servicioMiniaturas = servicioMiniaturas;
+                this.ejecutorConsultas = ejecutorConsultas;
+                this.interruptores = interruptores;
+                this.cacheEsquemas = cacheEsquemas;
+                this.servicioRutas = servicioRutas;
+                this.servicioUsuarios = servicioUsuarios;
+                this.servicioConfiguracionAspel = servicioConfiguracionAspel;
+        }
+
+        @GetMapping("/conexiones")
+        public ResponseEntity<?> obtenerConexiones(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(poolConexiones.obtenerEstadisticas());
+        }
+
+        @GetMapping("/sentencias")
+        public ResponseEntity<?> obtenerSentencias(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(cacheSentencias.obtenerEstadisticas());
+        }
+
+        @GetMapping("/catalogos")
+        public ResponseEntity<?> obtenerCatalogos(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(servicioCatalogo.obtenerEstadisticas());
+        }
+
+        @GetMapping("/claves-alternas")
+        public ResponseEntity<?> obtenerClavesAlternas(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(servicioClavesAlternas.obtenerEstadisticas());
+        }
+
+        @GetMapping("/busqueda")
+        public ResponseEntity<?> obtenerBusqueda(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(servicioBusqueda.obtenerEstadisticas());
+        }
+
+        @GetMapping("/miniaturas")
+        public ResponseEntity<?> obtenerMiniaturas(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(servicioMiniaturas.obtenerEstadisticas());
+        }
+
+        @GetMapping("/consultas")
+        public ResponseEntity<?> obtenerConsultas(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(ejecutorConsultas.obtenerEstadisticas());
+        }
+
+        @GetMapping("/interruptores")
+        public ResponseEntity<?> obtenerInterruptores(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(interruptores.obtenerEstadisticas());
+        }
+
+        @GetMapping("/esquemas-impuestos")
+        public ResponseEntity<?> obtenerEsquemasImpuestos(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(cacheEsquemas.obtenerEstadisticas());
+        }
+
+        @GetMapping("/autenticacion")
+        public ResponseEntity<?> obtenerAutenticacion(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(servicioUsuarios.obtenerEstadisticas());
+        }
+
+        /**
+         * Descarta los esquemas de impuestos en memoria de una empresa, o de todas si no se indica, para que se lean
+         * de nuevo en la siguiente consulta.
+         */
+        @PostMapping("/esquemas-impuestos/invalidar")
+        public ResponseEntity<?> invalidarEsquemasImpuestos(@RequestParam(required = false) String rutaEmpresa,
+                        HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                if (rutaEmpresa == null || rutaEmpresa.isBlank()) {
+                        int descartadas = cacheEsquemas.invalidar(null);
+                        return ResponseEntity.ok(new RespuestaOperacionDTO(true,
+                                        "Se descartaron los esquemas de impuestos de " + descartadas + " tablas"));
+                }
+                Path carpeta = UtilidadesRutas.aPath(rutaEmpresa);
+                Optional<Path> rutaBd = carpeta != null ? servicioRutas.localizarBaseDatos(carpeta) : Optional.empty();
+                if (rutaBd.isEmpty()) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                        .body(new RespuestaOperacionDTO(false, "No se localizó la base de datos de la empresa"));
+                }
+                int descartadas = cacheEsquemas.invalidar(rutaBd.get());
+                return ResponseEntity.ok(new RespuestaOperacionDTO(true,
+                                "Se descartaron los esquemas de impuestos de " + descartadas + " tablas"));
+        }
+
+        @GetMapping("/instalaciones")
+        public ResponseEntity<?> obtenerInstalaciones(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                return ResponseEntity.ok(servicioConfiguracionAspel.obtenerEstadisticas());
+        }
+
+        /**
+         * Recorre de inmediato la carpeta base de Aspel, útil cuando reside en un recurso de red que no notifica
+         * los cambios.
+         */
+        @PostMapping("/instalaciones/reescanear")
+        public ResponseEntity<?> reescanearInstalaciones(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
+                }
+                servicioConfiguracionAspel.reescanear();
+                return ResponseEntity.ok(servicioConfiguracionAspel.obtenerEstadisticas());
+        }
+}
@@ -18,7 +18,7 @@ import com.suprice.suprice.modelo.RespuestaOperacionDTO;
 import com.suprice.suprice.modelo.UsuarioDTO;
 import com.suprice.suprice.servicio.ServicioUsuarios;
 
-import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 
 /**
@@ -36,8 +36,8 @@ public class UsuariosControlador {
         }
 
         @GetMapping
-        public ResponseEntity<?> listarUsuarios(HttpSession session) {
-                if (!AutenticacionControlador.esAdministrador(session)) {
+        public ResponseEntity<?> listarUsuarios(HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
                         return ResponseEntity.status(HttpStatus.FORBIDDEN)
                                         .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
                 }
@@ -47,8 +47,8 @@ public class UsuariosControlador {
 
         @PostMapping
         public ResponseEntity<RespuestaOperacionDTO> crearUsuario(@Valid @RequestBody PeticionUsuarioAdmin peticion,
-                        HttpSession session) {
-                if (!AutenticacionControlador.esAdministrador(session)) {
+                        HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
                         return ResponseEntity.status(HttpStatus.FORBIDDEN)
                                         .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
                 }
@@ -59,8 +59,8 @@ public class UsuariosControlador {
 
         @DeleteMapping("/{nombreUsuario}")
         public ResponseEntity<RespuestaOperacionDTO> eliminarUsuario(@PathVariable String nombreUsuario,
-                        HttpSession session) {
-                if (!AutenticacionControlador.esAdministrador(session)) {
+                        HttpServletRequest request) {
+                if (!AutenticacionControlador.esAdministrador(request)) {
                         return ResponseEntity.status(HttpStatus.FORBIDDEN)
                                         .body(new RespuestaOperacionDTO(false, "No cuenta con permisos"));
                 }
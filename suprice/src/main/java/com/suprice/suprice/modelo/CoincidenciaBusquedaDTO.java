@@ -0,0 +1,7 @@
+package com.suprice.suprice.modelo;
+
+/**
+ * Producto encontrado por una búsqueda; la clave se usa después para consultar su detalle.
+ */
+public record CoincidenciaBusquedaDTO(String codigo, String descripcion, int puntuacion) {
+}
@@ -0,0 +1,11 @@
+package com.suprice.suprice.modelo;
+
+import java.time.Instant;
+
+/**
+ * Estado del índice de búsqueda por descripción de una empresa.
+ */
+public record EstadisticaBusquedaDTO(TipoSistemaAspel sistema, String rutaBaseDatos, String sufijoTablas,
+                boolean construido, int articulos, int palabras, int cambiosRecientes, Instant construidoEn,
+                Instant marcaCambios) {
+}
@@ -0,0 +1,12 @@
+package com.suprice.suprice.modelo;
+
+import java.time.Instant;
+
+/**
+ * Estado de la instantánea en memoria del catálogo de una empresa. {@code archivoMapeado} es el archivo que respalda
+ * los artículos cuando el catálogo está mapeado en memoria, o {@code null} si residen en el heap.
+ */
+public record EstadisticaCatalogoDTO(TipoSistemaAspel sistema, String rutaBaseDatos, String sufijoTablas,
+                boolean cargado, int articulos, int esquemasImpuestos, Instant cargadoEn, Instant marcaCambios,
+                String archivoMapeado) {
+}
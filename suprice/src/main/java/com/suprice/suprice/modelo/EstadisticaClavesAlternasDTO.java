@@ -0,0 +1,10 @@
+package com.suprice.suprice.modelo;
+
+import java.time.Instant;
+
+/**
+ * Estado del índice en memoria de claves alternas de una empresa.
+ */
+public record EstadisticaClavesAlternasDTO(TipoSistemaAspel sistema, String rutaBaseDatos, String tabla, int claves,
+                int clavesRecientes, Instant construidoEn, Instant marcaCambios) {
+}
@@ -0,0 +1,8 @@
+package com.suprice.suprice.modelo;
+
+/**
+ * Estado del interruptor de circuito de una base de datos Firebird y los resultados de su ventana actual.
+ */
+public record EstadisticaInterruptorDTO(String rutaBaseDatos, String estado, int llamadasEnVentana, int fallosEnVentana,
+                long aperturas, long rechazadas, long reintentoEnSegundos) {
+}
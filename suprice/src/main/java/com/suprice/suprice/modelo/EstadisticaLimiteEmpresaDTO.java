@@ -0,0 +1,7 @@
+package com.suprice.suprice.modelo;
+
+/**
+ * Consultas en curso, en espera y rechazadas de una empresa.
+ */
+public record EstadisticaLimiteEmpresaDTO(String rutaEmpresa, int maximo, int enUso, int enEspera, long rechazadas) {
+}
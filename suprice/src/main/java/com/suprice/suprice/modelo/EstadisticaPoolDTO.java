@@ -0,0 +1,8 @@
+package com.suprice.suprice.modelo;
+
+/**
+ * Estado del pool de conexiones de una base de datos Firebird.
+ */
+public record EstadisticaPoolDTO(String rutaBaseDatos, int maximo, int activas, int inactivas, int totales,
+                int enEspera) {
+}
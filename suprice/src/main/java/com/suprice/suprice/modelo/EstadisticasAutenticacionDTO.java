@@ -0,0 +1,9 @@
+package com.suprice.suprice.modelo;
+
+/**
+ * Ocupación de la caché de usuarios y del pool de verificación de contraseñas.
+ */
+public record EstadisticasAutenticacionDTO(int usuariosEnCache, int maximoUsuarios, long vigenciaMs, long aciertos,
+                long cargas, int hilosVerificacion, int verificacionesEnCurso, int verificacionesEnCola,
+                long rechazadas) {
+}
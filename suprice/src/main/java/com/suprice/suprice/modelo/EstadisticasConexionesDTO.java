@@ -0,0 +1,9 @@
+package com.suprice.suprice.modelo;
+
+import java.util.List;
+
+/**
+ * Resumen global de las conexiones Firebird abiertas por Suprice.
+ */
+public record EstadisticasConexionesDTO(int limiteGlobal, int enUso, int enEspera, List<EstadisticaPoolDTO> pools) {
+}
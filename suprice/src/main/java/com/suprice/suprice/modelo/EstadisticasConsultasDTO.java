@@ -0,0 +1,11 @@
+package com.suprice.suprice.modelo;
+
+import java.util.List;
+
+/**
+ * Modo de ejecución de las consultas de productos, consultas canceladas por plazo y ocupación de los límites por
+ * empresa.
+ */
+public record EstadisticasConsultasDTO(boolean hilosVirtuales, long plazoMs, long rechazadasPorSaturacion,
+                long vencidas, List<EstadisticaLimiteEmpresaDTO> empresas) {
+}
@@ -0,0 +1,8 @@
+package com.suprice.suprice.modelo;
+
+/**
+ * Ocupación y efectividad de la caché de esquemas de impuestos.
+ */
+public record EstadisticasEsquemasImpuestosDTO(boolean habilitada, int tablas, int maximoTablas, long vigenciaMs,
+                long aciertos, long cargas) {
+}
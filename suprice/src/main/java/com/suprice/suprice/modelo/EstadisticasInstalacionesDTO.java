@@ -0,0 +1,10 @@
+package com.suprice.suprice.modelo;
+
+import java.time.Instant;
+
+/**
+ * Estado del índice de versiones y empresas Aspel instaladas.
+ */
+public record EstadisticasInstalacionesDTO(String rutaBase, boolean observandoCambios, int versiones, int empresas,
+                int empresasConBaseDatos, long escaneos, Instant ultimoEscaneo, long duracionUltimoEscaneoMs) {
+}
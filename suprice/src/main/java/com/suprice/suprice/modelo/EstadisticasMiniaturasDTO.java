@@ -0,0 +1,11 @@
+package com.suprice.suprice.modelo;
+
+import java.util.List;
+
+/**
+ * Estado de las cachés de miniaturas de imágenes de producto.
+ */
+public record EstadisticasMiniaturasDTO(List<Integer> tamanos, int elementosMemoria, long bytesMemoria,
+                long bytesMemoriaMaximo, String carpetaDisco, long bytesDisco, long bytesDiscoMaximo, long aciertosMemoria,
+                long aciertosDisco, long generadas) {
+}
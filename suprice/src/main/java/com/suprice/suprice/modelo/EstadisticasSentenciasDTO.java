@@ -0,0 +1,8 @@
+package com.suprice.suprice.modelo;
+
+/**
+ * Uso de la caché de sentencias preparadas sobre las conexiones Firebird.
+ */
+public record EstadisticasSentenciasDTO(int conexiones, int sentencias, int maximoPorConexion, long aciertos,
+                long fallos) {
+}
@@ -0,0 +1,9 @@
+package com.suprice.suprice.modelo;
+
+/**
+ * Formatos en los que se exporta la lista de precios de una empresa.
+ */
+public enum FormatoExportacion {
+        CSV,
+        NDJSON
+}
@@ -4,7 +4,7 @@ import java.math.BigDecimal;
 import java.util.List;
 
 /**
- * Resultado completo de una consulta de producto.
+ * Resultado completo de una consulta de producto. La imagen se descarga por separado desde {@code urlImagen}.
  */
 public record ProductoConsultadoDTO(
                 String codigo,
@@ -14,6 +14,6 @@ public record ProductoConsultadoDTO(
                 BigDecimal existenciaTotal,
                 List<ExistenciaDetalleDTO> existencias,
                 List<PrecioProductoDTO> precios,
-                String imagenBase64,
+                String urlImagen,
                 boolean impuestosIncluidos) {
 }
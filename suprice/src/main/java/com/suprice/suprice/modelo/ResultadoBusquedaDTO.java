@@ -0,0 +1,9 @@
+package com.suprice.suprice.modelo;
+
+import java.util.List;
+
+/**
+ * Página de resultados de una búsqueda de productos, ordenada de mayor a menor relevancia.
+ */
+public record ResultadoBusquedaDTO(int total, int pagina, int tamanoPagina, List<CoincidenciaBusquedaDTO> coincidencias) {
+}
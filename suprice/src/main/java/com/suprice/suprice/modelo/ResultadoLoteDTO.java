@@ -0,0 +1,10 @@
+package com.suprice.suprice.modelo;
+
+/**
+ * Resultado de un código dentro de una consulta por lote. El producto no incluye imagen. {@code pendiente} indica que
+ * el código no es clave principal y no pudo resolverse como clave alterna porque el índice de la empresa se está
+ * preparando; debe consultarse de nuevo.
+ */
+public record ResultadoLoteDTO(String codigoSolicitado, boolean encontrado, ProductoConsultadoDTO producto,
+                boolean pendiente) {
+}
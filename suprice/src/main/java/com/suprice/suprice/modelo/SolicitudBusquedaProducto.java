@@ -0,0 +1,22 @@
+package com.suprice.suprice.modelo;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Búsqueda de productos de una empresa por palabras de su descripción o clave. {@code tamanoPagina} en cero usa el
+ * tamaño predeterminado.
+ */
+public record SolicitudBusquedaProducto(
+                @NotNull TipoSistemaAspel sistema,
+                @NotBlank String rutaVersion,
+                @NotBlank String rutaEmpresa,
+                @NotBlank @Pattern(regexp = "\\d{2}") String sufijoTablas,
+                @NotBlank @Size(max = 200) String texto,
+                @Min(0) @Max(10000) int pagina,
+                @Min(0) @Max(100) int tamanoPagina) {
+}
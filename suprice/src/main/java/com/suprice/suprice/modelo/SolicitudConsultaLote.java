@@ -0,0 +1,21 @@
+package com.suprice.suprice.modelo;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Representa una consulta de varios productos de una misma empresa.
+ */
+public record SolicitudConsultaLote(
+                @NotNull TipoSistemaAspel sistema,
+                @NotBlank String rutaVersion,
+                @NotBlank String rutaEmpresa,
+                @NotBlank @Pattern(regexp = "\\d{2}") String sufijoTablas,
+                @NotEmpty @Size(max = 100000) List<@NotBlank String> codigosProducto,
+                boolean incluirImpuestos) {
+}
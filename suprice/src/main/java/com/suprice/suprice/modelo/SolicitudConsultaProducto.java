@@ -2,6 +2,7 @@ package com.suprice.suprice.modelo;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 
 /**
  * Representa los datos necesarios para realizar la consulta de un producto.
@@ -10,7 +11,7 @@ public record SolicitudConsultaProducto(
                 @NotNull TipoSistemaAspel sistema,
                 @NotBlank String rutaVersion,
                 @NotBlank String rutaEmpresa,
-                @NotBlank String sufijoTablas,
+                @NotBlank @Pattern(regexp = "\\d{2}") String sufijoTablas,
                 @NotBlank String codigoProducto,
                 boolean incluirImpuestos) {
 }
@@ -0,0 +1,16 @@
+package com.suprice.suprice.modelo;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+
+/**
+ * Exportación de la lista de precios completa de una empresa, con impuestos aplicados.
+ */
+public record SolicitudExportacionPrecios(
+                @NotNull TipoSistemaAspel sistema,
+                @NotBlank String rutaVersion,
+                @NotBlank String rutaEmpresa,
+                @NotBlank @Pattern(regexp = "\\d{2}") String sufijoTablas,
+                @NotNull FormatoExportacion formato) {
+}
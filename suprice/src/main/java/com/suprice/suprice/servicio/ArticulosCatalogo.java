@@ -0,0 +1,61 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.suprice.suprice.servicio.InstantaneaCatalogo.Articulo;
+
+/**
+ * Almacenamiento de los artículos de una {@link InstantaneaCatalogo}: un mapa en el heap o un archivo mapeado en
+ * memoria ({@link CatalogoMapeado}) para catálogos muy grandes.
+ */
+interface ArticulosCatalogo {
+
+        /**
+         * @param clave clave principal sin espacios.
+         * @return artículo o {@code null} si no existe.
+         */
+        Articulo buscar(String clave);
+
+        int tamano();
+
+        /**
+         * Devuelve una copia con los artículos indicados agregados o reemplazados.
+         *
+         * @param cambios artículos modificados indexados por su clave principal sin espacios.
+         */
+        ArticulosCatalogo conCambios(Map<String, Articulo> cambios);
+
+        /**
+         * @return archivo que respalda los artículos o {@code null} si residen en el heap.
+         */
+        default Path archivo() {
+                return null;
+        }
+
+        static ArticulosCatalogo enMemoria(Map<String, Articulo> articulos) {
+                return new EnMemoria(articulos);
+        }
+
+        record EnMemoria(Map<String, Articulo> articulos) implements ArticulosCatalogo {
+
+                @Override
+                public Articulo buscar(String clave) {
+                        return articulos.get(clave);
+                }
+
+                @Override
+                public int tamano() {
+                        return articulos.size();
+                }
+
+                @Override
+                public ArticulosCatalogo conCambios(Map<String, Articulo> cambios) {
+                        Map<String, Articulo> copia = new HashMap<>(articulos);
+                        copia.putAll(cambios);
+                        return new EnMemoria(Collections.unmodifiableMap(copia));
+                }
+        }
+}
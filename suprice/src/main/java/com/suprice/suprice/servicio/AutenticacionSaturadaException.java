@@ -0,0 +1,21 @@
+package com.suprice.suprice.servicio;
+
+/**
+ * Indica que un inicio de sesión no se atendió porque las verificaciones de contraseña en curso ocupan todos los
+ * hilos y la cola de {@link VerificadorContrasenas}, o porque no terminó dentro de la espera configurada.
+ */
+public class AutenticacionSaturadaException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long reintentarEnSegundos;
+
+        public AutenticacionSaturadaException(String mensaje, long reintentarEnSegundos) {
+                super(mensaje);
+                this.reintentarEnSegundos = reintentarEnSegundos;
+        }
+
+        public long getReintentarEnSegundos() {
+                return reintentarEnSegundos;
+        }
+}
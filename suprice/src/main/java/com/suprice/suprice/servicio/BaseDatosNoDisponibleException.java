@@ -0,0 +1,24 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.file.Path;
+
+/**
+ * Indica que una consulta se rechazó sin conectar porque el interruptor de su base de datos está abierto. No
+ * captura la pila de llamadas para que el rechazo cueste lo mismo que una comparación.
+ */
+public class BaseDatosNoDisponibleException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long reintentarEnSegundos;
+
+        public BaseDatosNoDisponibleException(Path rutaBd, long reintentarEnSegundos) {
+                super("La base de datos " + rutaBd.getFileName() + " no responde; se reintentará en " + reintentarEnSegundos
+                                + " s", null, false, false);
+                this.reintentarEnSegundos = reintentarEnSegundos;
+        }
+
+        public long getReintentarEnSegundos() {
+                return reintentarEnSegundos;
+        }
+}
@@ -0,0 +1,206 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.suprice.suprice.modelo.EstadisticasEsquemasImpuestosDTO;
+import com.suprice.suprice.util.CacheLru;
+
+/**
+ * Conserva en memoria los esquemas de impuestos de cada empresa. Cada tabla ({@code IMPUxx} de SAE o {@code esqimp}
+ * de Caja) se lee completa en una sola consulta y se vuelve a leer al vencer su vigencia, al invalidarla o cuando se
+ * pide una clave que no conoce.
+ */
+@Component
+public class CacheEsquemasImpuestos {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(CacheEsquemasImpuestos.class);
+
+        private static final String TABLA_CAJA = "esqimp";
+
+        private final boolean habilitada;
+        private final long vigenciaNanos;
+        private final long recargaMinimaNanos;
+        private final CacheLru<ClaveTabla, Entrada> entradas;
+        private final LongAdder aciertos = new LongAdder();
+        private final LongAdder cargas = new LongAdder();
+
+        public CacheEsquemasImpuestos(@Value("${suprice.impuestos.cache.habilitada:true}") boolean habilitada,
+                        @Value("${suprice.impuestos.cache.vigencia-ms:600000}") long vigenciaMs,
+                        @Value("${suprice.impuestos.cache.recarga-minima-ms:5000}") long recargaMinimaMs,
+                        @Value("${suprice.impuestos.cache.maximo-empresas:64}") int maximoEmpresas) {
+                this.habilitada = habilitada;
+                this.vigenciaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, vigenciaMs));
+                this.recargaMinimaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, recargaMinimaMs));
+                this.entradas = new CacheLru<>(Math.max(1, maximoEmpresas));
+        }
+
+        /**
+         * Obtiene un esquema de la tabla de impuestos SAE de la empresa.
+         *
+         * @param conexion conexión abierta a la base de la empresa, usada solo si hay que leer la tabla.
+         * @param rutaBd   archivo {@code .fdb} de la empresa.
+         * @param tablas   tablas SAE de la empresa.
+         * @param clave    clave del esquema del producto.
+         * @return esquema encontrado o uno sin impuestos.
+         * @throws SQLException cuando no es posible leer la tabla de impuestos.
+         */
+        public EsquemaImpuestos obtenerSae(Connection conexion, Path rutaBd, TablasSae tablas, String clave)
+                        throws SQLException {
+                return obtener(conexion, new ClaveTabla(rutaBd, tablas.impuestos()), clave);
+        }
+
+        /**
+         * Obtiene un esquema de la tabla {@code esqimp} de Aspel Caja.
+         *
+         * @see #obtenerSae(Connection, Path, TablasSae, String)
+         */
+        public EsquemaImpuestos obtenerCaja(Connection conexion, Path rutaBd, String clave) throws SQLException {
+                return obtener(conexion, new ClaveTabla(rutaBd, TABLA_CAJA), clave);
+        }
+
+        /**
+         * Obtiene todos los esquemas de la tabla SAE de la empresa, para aplicarlos a muchos artículos sin volver a
+         * consultar la base por cada uno.
+         *
+         * @see #obtenerSae(Connection, Path, TablasSae, String)
+         */
+        public Map<String, EsquemaImpuestos> obtenerTodosSae(Connection conexion, Path rutaBd, TablasSae tablas)
+                        throws SQLException {
+                return obtenerTodos(conexion, new ClaveTabla(rutaBd, tablas.impuestos()));
+        }
+
+        /**
+         * Obtiene todos los esquemas de la tabla {@code esqimp} de Aspel Caja.
+         *
+         * @see #obtenerTodosSae(Connection, Path, TablasSae)
+         */
+        public Map<String, EsquemaImpuestos> obtenerTodosCaja(Connection conexion, Path rutaBd) throws SQLException {
+                return obtenerTodos(conexion, new ClaveTabla(rutaBd, TABLA_CAJA));
+        }
+
+        /**
+         * Descarta los esquemas de una base para que la siguiente consulta los vuelva a leer.
+         *
+         * @param rutaBd archivo {@code .fdb} o {@code null} para descartar todos.
+         * @return cantidad de tablas descartadas.
+         */
+        public int invalidar(Path rutaBd) {
+                if (rutaBd == null) {
+                        int total = entradas.tamano();
+                        entradas.limpiar();
+                        return total;
+                }
+                Path normalizada = rutaBd.toAbsolutePath().normalize();
+                return entradas.eliminarSi(clave -> clave.rutaBd().equals(normalizada));
+        }
+
+        public EstadisticasEsquemasImpuestosDTO obtenerEstadisticas() {
+                return new EstadisticasEsquemasImpuestosDTO(habilitada, entradas.tamano(), entradas.capacidad(),
+                                TimeUnit.NANOSECONDS.toMillis(vigenciaNanos), aciertos.sum(), cargas.sum());
+        }
+
+        private EsquemaImpuestos obtener(Connection conexion, ClaveTabla claveTabla, String clave) throws SQLException {
+                if (clave == null || clave.isBlank()) {
+                        return EsquemaImpuestos.vacio();
+                }
+                String claveEsquema = clave.trim();
+                if (!habilitada) {
+                        return leerTabla(conexion, claveTabla.tabla()).getOrDefault(claveEsquema, EsquemaImpuestos.vacio());
+                }
+                ClaveTabla normalizada = claveTabla.normalizar();
+                Entrada entrada = entradas.obtener(normalizada);
+                long ahora = System.nanoTime();
+                if (entrada != null && ahora - entrada.cargadaEn() < vigenciaNanos) {
+                        EsquemaImpuestos esquema = entrada.esquemas().get(claveEsquema);
+                        if (esquema != null || ahora - entrada.cargadaEn() < recargaMinimaNanos) {
+                                aciertos.increment();
+                                return esquema != null ? esquema : EsquemaImpuestos.vacio();
+                        }
+                }
+                return recargar(conexion, normalizada, entrada).esquemas().getOrDefault(claveEsquema,
+                                EsquemaImpuestos.vacio());
+        }
+
+        private Map<String, EsquemaImpuestos> obtenerTodos(Connection conexion, ClaveTabla claveTabla) throws SQLException {
+                if (!habilitada) {
+                        return leerTabla(conexion, claveTabla.tabla());
+                }
+                ClaveTabla normalizada = claveTabla.normalizar();
+                Entrada entrada = entradas.obtener(normalizada);
+                if (entrada != null && System.nanoTime() - entrada.cargadaEn() < vigenciaNanos) {
+                        aciertos.increment();
+                        return entrada.esquemas();
+                }
+                return recargar(conexion, normalizada, entrada).esquemas();
+        }
+
+        /**
+         * Lee de nuevo la tabla. Si falla y se tenía una copia anterior, se sigue usando hasta el siguiente intento.
+         */
+        private Entrada recargar(Connection conexion, ClaveTabla claveTabla, Entrada anterior) throws SQLException {
+                try {
+                        Entrada nueva = new Entrada(leerTabla(conexion, claveTabla.tabla()), System.nanoTime());
+                        entradas.guardar(claveTabla, nueva);
+                        LOGGER.debug("Esquemas de impuestos de {} ({}) cargados: {}", claveTabla.rutaBd(), claveTabla.tabla(),
+                                        nueva.esquemas().size());
+                        return nueva;
+                } catch (SQLException ex) {
+                        if (anterior == null || PlazoConsulta.vencidoEnHiloActual()) {
+                                throw ex;
+                        }
+                        LOGGER.warn("No fue posible recargar los esquemas de impuestos de {}; se usará la copia anterior: {}",
+                                        claveTabla.rutaBd(), ex.getMessage());
+                        return anterior;
+                }
+        }
+
+        private Map<String, EsquemaImpuestos> leerTabla(Connection conexion, String tabla) throws SQLException {
+                cargas.increment();
+                boolean caja = TABLA_CAJA.equals(tabla);
+                String sql = caja
+                                ? "SELECT clave, porcen1, porcen2, porcen3, porcen4, aplica1, aplica2, aplica3, aplica4 FROM esqimp"
+                                : "SELECT cve_esqimpu, impuesto1, impuesto2, impuesto3, impuesto4, imp1aplica, imp2aplica, imp3aplica, imp4aplica FROM "
+                                                + tabla;
+                Map<String, EsquemaImpuestos> esquemas = new HashMap<>();
+                try (PreparedStatement ps = conexion.prepareStatement(sql)) {
+                        PlazoConsulta plazo = PlazoConsulta.actual().orElse(null);
+                        if (plazo != null) {
+                                ps.setQueryTimeout(plazo.segundosRestantes());
+                                plazo.registrar(ps);
+                        }
+                        try (ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) {
+                                        String clave = rs.getString(1);
+                                        if (clave != null) {
+                                                esquemas.put(clave.trim(),
+                                                                caja ? EsquemaImpuestos.desdeCaja(rs) : EsquemaImpuestos.desdeSae(rs));
+                                        }
+                                }
+                        }
+                }
+                return Map.copyOf(esquemas);
+        }
+
+        private record ClaveTabla(Path rutaBd, String tabla) {
+
+                ClaveTabla normalizar() {
+                        return new ClaveTabla(rutaBd.toAbsolutePath().normalize(), tabla);
+                }
+        }
+
+        private record Entrada(Map<String, EsquemaImpuestos> esquemas, long cargadaEn) {
+        }
+}
@@ -0,0 +1,109 @@
+package com.suprice.suprice.servicio;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.suprice.suprice.modelo.EstadisticasSentenciasDTO;
+import com.suprice.suprice.util.CacheLru;
+
+/**
+ * Conserva las sentencias preparadas de cada conexión física Firebird para evitar que el servidor vuelva a
+ * analizar y planear el mismo SQL en cada consulta.
+ * <p>
+ * Las sentencias devueltas pertenecen a la caché: el llamador debe cerrar sus {@code ResultSet}, pero nunca la
+ * sentencia. Si el hilo atiende una consulta con {@link PlazoConsulta}, la sentencia recibe como
+ * {@code queryTimeout} el tiempo restante y queda registrada para cancelarse al vencer el plazo.
+ */
+@Component
+public class CacheSentenciasPreparadas {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(CacheSentenciasPreparadas.class);
+
+        private final int maximoPorConexion;
+        private final Map<Connection, CacheLru<String, PreparedStatement>> sentenciasPorConexion = new ConcurrentHashMap<>();
+        private final LongAdder aciertos = new LongAdder();
+        private final LongAdder fallos = new LongAdder();
+
+        public CacheSentenciasPreparadas(@Value("${suprice.firebird.sentencias.maximo-por-conexion:32}") int maximoPorConexion) {
+                this.maximoPorConexion = maximoPorConexion;
+        }
+
+        /**
+         * Obtiene la sentencia preparada para el SQL indicado sobre la conexión física subyacente.
+         *
+         * @param conexion conexión obtenida del pool.
+         * @param sql      sentencia con los nombres de tabla ya resueltos.
+         * @return sentencia lista para asignar parámetros.
+         * @throws SQLException cuando Firebird no puede preparar la sentencia.
+         */
+        public PreparedStatement preparar(Connection conexion, String sql) throws SQLException {
+                Connection fisica = conexion.isWrapperFor(Connection.class) ? conexion.unwrap(Connection.class) : conexion;
+                CacheLru<String, PreparedStatement> sentencias = sentenciasPorConexion.get(fisica);
+                if (sentencias == null) {
+                        descartarConexionesCerradas();
+                        sentencias = sentenciasPorConexion.computeIfAbsent(fisica,
+                                        clave -> new CacheLru<>(maximoPorConexion, (texto, sentencia) -> cerrar(sentencia)));
+                }
+                PreparedStatement sentencia = sentencias.obtener(sql);
+                if (sentencia != null && !sentencia.isClosed()) {
+                        aciertos.increment();
+                } else {
+                        fallos.increment();
+                        sentencia = fisica.prepareStatement(sql);
+                        sentencias.guardar(sql, sentencia);
+                }
+                aplicarPlazo(sentencia);
+                return sentencia;
+        }
+
+        public EstadisticasSentenciasDTO obtenerEstadisticas() {
+                int totalSentencias = sentenciasPorConexion.values().stream().mapToInt(CacheLru::tamano).sum();
+                return new EstadisticasSentenciasDTO(sentenciasPorConexion.size(), totalSentencias, maximoPorConexion,
+                                aciertos.sum(), fallos.sum());
+        }
+
+        /**
+         * Las sentencias se comparten entre consultas, por lo que el límite se asigna en cada uso y se restablece
+         * cuando la consulta actual no tiene plazo.
+         */
+        private void aplicarPlazo(PreparedStatement sentencia) throws SQLException {
+                PlazoConsulta plazo = PlazoConsulta.actual().orElse(null);
+                if (plazo == null) {
+                        sentencia.setQueryTimeout(0);
+                        return;
+                }
+                if (plazo.vencido()) {
+                        throw new SQLTimeoutException("El plazo de la consulta venció antes de ejecutar la sentencia");
+                }
+                sentencia.setQueryTimeout(plazo.segundosRestantes());
+                plazo.registrar(sentencia);
+        }
+
+        private void descartarConexionesCerradas() {
+                sentenciasPorConexion.keySet().removeIf(conexion -> {
+                        try {
+                                return conexion.isClosed();
+                        } catch (SQLException ex) {
+                                return true;
+                        }
+                });
+        }
+
+        private void cerrar(PreparedStatement sentencia) {
+                try {
+                        sentencia.close();
+                } catch (SQLException ex) {
+                        LOGGER.debug("No fue posible cerrar una sentencia desalojada: {}", ex.getMessage());
+                }
+        }
+}
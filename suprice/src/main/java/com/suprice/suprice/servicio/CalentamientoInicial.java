@@ -0,0 +1,310 @@
+package com.suprice.suprice.servicio;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.suprice.suprice.modelo.EmpresaSistemaDTO;
+import com.suprice.suprice.modelo.SolicitudConsultaProducto;
+import com.suprice.suprice.modelo.TipoSistemaAspel;
+import com.suprice.suprice.modelo.VersionSistemaDTO;
+import com.suprice.suprice.util.UtilidadesRutas;
+
+/**
+ * Prepara las empresas configuradas antes de que la aplicación se declare lista: abre conexiones en su pool
+ * Firebird, lee sus esquemas de impuestos, ejercita el cálculo de impuestos y consulta por el camino completo los
+ * artículos vendidos más recientemente, lo que prepara las sentencias, resuelve claves alternas e imágenes y compila
+ * el código de la consulta.
+ * <p>
+ * Se publica como el indicador de salud {@code calentamiento}, incluido en el grupo {@code readiness}: responde
+ * {@code OUT_OF_SERVICE} mientras trabaja y {@code UP} al terminar o al agotar su tiempo máximo, aunque alguna
+ * empresa haya fallado.
+ */
+@Component("calentamiento")
+public class CalentamientoInicial implements HealthIndicator {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(CalentamientoInicial.class);
+
+        private static final Pattern COLUMNA_VALIDA = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+        private static final String TODAS = "*";
+        private static final int ITERACIONES_IMPUESTOS = 20000;
+        private static final BigDecimal[] PRECIOS_MUESTRA = { new BigDecimal("1.00"), new BigDecimal("19.90"),
+                        new BigDecimal("149.50"), new BigDecimal("1234.56") };
+
+        private enum Estado {
+                PENDIENTE, EN_CURSO, TERMINADO
+        }
+
+        private final ServicioConfiguracionAspel servicioConfiguracionAspel;
+        private final ServicioRutasEmpresa servicioRutas;
+        private final PoolConexionesFirebird poolConexiones;
+        private final CacheEsquemasImpuestos cacheEsquemas;
+        private final ServicioConsultaProductos servicioConsulta;
+        private final boolean habilitado;
+        private final List<String> empresas;
+        private final int conexiones;
+        private final int articulos;
+        private final long tiempoMaximoNanos;
+        private final String columnaOrdenSae;
+
+        private volatile Estado estado = Estado.PENDIENTE;
+        private volatile long inicioNanos;
+        private volatile long duracionMs;
+        private volatile int empresasTotales;
+        private final AtomicInteger empresasCalentadas = new AtomicInteger();
+        private final AtomicInteger articulosConsultados = new AtomicInteger();
+        private final List<String> empresasFallidas = new CopyOnWriteArrayList<>();
+
+        public CalentamientoInicial(ServicioConfiguracionAspel servicioConfiguracionAspel,
+                        ServicioRutasEmpresa servicioRutas, PoolConexionesFirebird poolConexiones,
+                        CacheEsquemasImpuestos cacheEsquemas, ServicioConsultaProductos servicioConsulta,
+                        @Value("${suprice.calentamiento.habilitado:false}") boolean habilitado,
+                        @Value("${suprice.calentamiento.empresas:}") List<String> empresas,
+                        @Value("${suprice.calentamiento.conexiones:2}") int conexiones,
+                        @Value("${suprice.calentamiento.articulos:100}") int articulos,
+                        @Value("${suprice.calentamiento.tiempo-maximo-ms:120000}") long tiempoMaximoMs,
+                        @Value("${suprice.calentamiento.columna-orden-sae:FCH_ULTVTA}") String columnaOrdenSae) {
+                if (columnaOrdenSae != null && !columnaOrdenSae.isBlank()
+                                && !COLUMNA_VALIDA.matcher(columnaOrdenSae.trim()).matches()) {
+                        throw new IllegalArgumentException("Columna de orden no válida: " + columnaOrdenSae);
+                }
+                this.servicioConfiguracionAspel = servicioConfiguracionAspel;
+                this.servicioRutas = servicioRutas;
+                this.poolConexiones = poolConexiones;
+                this.cacheEsquemas = cacheEsquemas;
+                this.servicioConsulta = servicioConsulta;
+                this.habilitado = habilitado;
+                this.empresas = empresas;
+                this.conexiones = Math.max(1, conexiones);
+                this.articulos = Math.max(0, articulos);
+                this.tiempoMaximoNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, tiempoMaximoMs));
+                this.columnaOrdenSae = columnaOrdenSae != null ? columnaOrdenSae.trim() : "";
+        }
+
+        /**
+         * Calienta en un hilo propio para que {@code /actuator/health/liveness} responda mientras tanto.
+         */
+        @EventListener(ApplicationReadyEvent.class)
+        public void iniciar() {
+                if (!habilitado) {
+                        estado = Estado.TERMINADO;
+                        return;
+                }
+                inicioNanos = System.nanoTime();
+                estado = Estado.EN_CURSO;
+                Thread hilo = new Thread(this::calentar, "calentamiento");
+                hilo.setDaemon(true);
+                hilo.start();
+        }
+
+        @Override
+        public Health health() {
+                if (!habilitado) {
+                        return Health.up().withDetail("habilitado", false).build();
+                }
+                Estado actual = estado;
+                boolean agotado = actual == Estado.EN_CURSO && System.nanoTime() - inicioNanos > tiempoMaximoNanos;
+                Health.Builder salud = actual == Estado.TERMINADO || agotado ? Health.up() : Health.outOfService();
+                Map<String, Object> detalles = new LinkedHashMap<>();
+                detalles.put("estado", actual.name());
+                detalles.put("empresas", empresasTotales);
+                detalles.put("empresasCalentadas", empresasCalentadas.get());
+                detalles.put("articulosConsultados", articulosConsultados.get());
+                if (!empresasFallidas.isEmpty()) {
+                        detalles.put("empresasFallidas", List.copyOf(empresasFallidas));
+                }
+                if (actual == Estado.TERMINADO) {
+                        detalles.put("duracionMs", duracionMs);
+                }
+                if (agotado) {
+                        detalles.put("tiempoAgotado", true);
+                }
+                return salud.withDetails(detalles).build();
+        }
+
+        private void calentar() {
+                try {
+                        List<EmpresaCalentamiento> lista = resolverEmpresas();
+                        empresasTotales = lista.size();
+                        for (EmpresaCalentamiento empresa : lista) {
+                                try {
+                                        calentarEmpresa(empresa);
+                                        empresasCalentadas.incrementAndGet();
+                                } catch (Exception ex) {
+                                        empresasFallidas.add(empresa.ruta().toString());
+                                        LOGGER.warn("No fue posible calentar la empresa {}: {}", empresa.ruta(), ex.getMessage());
+                                }
+                        }
+                } finally {
+                        duracionMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioNanos);
+                        estado = Estado.TERMINADO;
+                        LOGGER.info("Calentamiento terminado en {} ms: {} de {} empresas y {} artículos consultados", duracionMs,
+                                        empresasCalentadas.get(), empresasTotales, articulosConsultados.get());
+                }
+        }
+
+        private void calentarEmpresa(EmpresaCalentamiento empresa) throws SQLException {
+                long inicio = System.nanoTime();
+                Path rutaBd = servicioRutas.localizarBaseDatos(empresa.ruta())
+                                .orElseThrow(() -> new IllegalStateException("No se localizó la base de datos"));
+                TablasSae tablas = empresa.sistema() == TipoSistemaAspel.SAE ? TablasSae.conSufijo(empresa.sufijo()) : null;
+                Collection<EsquemaImpuestos> esquemas;
+                List<String> claves;
+                // Las conexiones se piden a la vez para que el pool quede con todas abiertas al devolverlas.
+                List<Connection> abiertas = new ArrayList<>(conexiones);
+                try {
+                        for (int i = 0; i < conexiones; i++) {
+                                abiertas.add(poolConexiones.obtenerConexion(rutaBd));
+                        }
+                        Connection conexion = abiertas.get(0);
+                        esquemas = tablas != null ? cacheEsquemas.obtenerTodosSae(conexion, rutaBd, tablas).values()
+                                        : cacheEsquemas.obtenerTodosCaja(conexion, rutaBd).values();
+                        claves = leerArticulos(conexion, tablas);
+                } finally {
+                        for (Connection conexion : abiertas) {
+                                cerrar(conexion);
+                        }
+                }
+                ejercitarImpuestos(esquemas);
+                for (String clave : claves) {
+                        try {
+                                servicioConsulta.consultarProducto(new SolicitudConsultaProducto(empresa.sistema(),
+                                                empresa.rutaVersion(), empresa.ruta().toString(), empresa.sufijo(), clave, true));
+                        } catch (IndiceEnPreparacionException ex) {
+                                // Clave vendida que ya no existe: en Caja se resolvería como alterna cuando el índice esté listo.
+                        }
+                        articulosConsultados.incrementAndGet();
+                }
+                LOGGER.info("Empresa {} calentada en {} ms: {} conexiones, {} esquemas de impuestos y {} artículos",
+                                empresa.ruta(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio), abiertas.size(),
+                                esquemas.size(), claves.size());
+        }
+
+        /**
+         * En SAE se toman los artículos con venta más reciente; si la columna de orden no existe en el esquema se
+         * toman los primeros que entregue la base.
+         */
+        private List<String> leerArticulos(Connection conexion, TablasSae tablas) throws SQLException {
+                if (articulos == 0) {
+                        return List.of();
+                }
+                if (tablas == null) {
+                        return leerClaves(conexion, "SELECT producto FROM catinven");
+                }
+                String sql = "SELECT cve_art FROM " + tablas.productos();
+                if (!columnaOrdenSae.isEmpty()) {
+                        try {
+                                return leerClaves(conexion, sql + " ORDER BY " + columnaOrdenSae + " DESC NULLS LAST");
+                        } catch (SQLException ex) {
+                                LOGGER.debug("No fue posible ordenar por {}: {}", columnaOrdenSae, ex.getMessage());
+                        }
+                }
+                return leerClaves(conexion, sql);
+        }
+
+        private List<String> leerClaves(Connection conexion, String sql) throws SQLException {
+                List<String> claves = new ArrayList<>(articulos);
+                try (PreparedStatement sentencia = conexion.prepareStatement(sql)) {
+                        sentencia.setMaxRows(articulos);
+                        try (ResultSet rs = sentencia.executeQuery()) {
+                                while (rs.next()) {
+                                        String clave = rs.getString(1);
+                                        if (clave != null && !clave.isBlank()) {
+                                                claves.add(clave.trim());
+                                        }
+                                }
+                        }
+                }
+                return claves;
+        }
+
+        private static void ejercitarImpuestos(Collection<EsquemaImpuestos> esquemas) {
+                if (esquemas.isEmpty()) {
+                        return;
+                }
+                int repeticiones = Math.max(1, ITERACIONES_IMPUESTOS / esquemas.size());
+                for (EsquemaImpuestos esquema : esquemas) {
+                        for (int i = 0; i < repeticiones; i++) {
+                                esquema.calcularImpuestos(PRECIOS_MUESTRA);
+                        }
+                }
+        }
+
+        /**
+         * Interpreta {@code suprice.calentamiento.empresas}: entradas {@code SISTEMA|rutaEmpresa|sufijo} o {@code *}
+         * para todas las empresas indexadas por {@link ServicioConfiguracionAspel}.
+         */
+        private List<EmpresaCalentamiento> resolverEmpresas() {
+                List<EmpresaCalentamiento> lista = new ArrayList<>();
+                for (String entrada : empresas) {
+                        String texto = entrada.trim();
+                        if (texto.isEmpty()) {
+                                continue;
+                        }
+                        if (TODAS.equals(texto)) {
+                                agregarIndexadas(lista);
+                                continue;
+                        }
+                        String[] partes = texto.split("\\|");
+                        try {
+                                TipoSistemaAspel sistema = TipoSistemaAspel.valueOf(partes[0].trim().toUpperCase());
+                                Path ruta = partes.length > 1 ? UtilidadesRutas.aPath(partes[1].trim()) : null;
+                                String sufijo = partes.length > 2 ? partes[2].trim() : "01";
+                                if (ruta == null || !TablasSae.esSufijoPermitido(sufijo)) {
+                                        LOGGER.warn("Entrada de calentamiento no válida: {}", entrada);
+                                        continue;
+                                }
+                                Path version = ruta.getParent() != null ? ruta.getParent() : ruta;
+                                lista.add(new EmpresaCalentamiento(sistema, version.toString(), ruta, sufijo));
+                        } catch (IllegalArgumentException ex) {
+                                LOGGER.warn("Entrada de calentamiento no válida: {}", entrada);
+                        }
+                }
+                return lista;
+        }
+
+        private void agregarIndexadas(List<EmpresaCalentamiento> lista) {
+                for (TipoSistemaAspel sistema : TipoSistemaAspel.values()) {
+                        for (VersionSistemaDTO version : servicioConfiguracionAspel.listarVersiones(sistema)) {
+                                for (EmpresaSistemaDTO empresa : servicioConfiguracionAspel.listarEmpresas(sistema, version.ruta())) {
+                                        Path ruta = UtilidadesRutas.aPath(empresa.ruta());
+                                        if (ruta != null && servicioRutas.localizarBaseDatos(ruta).isPresent()) {
+                                                lista.add(new EmpresaCalentamiento(sistema, version.ruta(), ruta, empresa.sufijoTablas()));
+                                        }
+                                }
+                        }
+                }
+        }
+
+        private static void cerrar(Connection conexion) {
+                try {
+                        conexion.close();
+                } catch (SQLException ex) {
+                        LOGGER.debug("No fue posible devolver la conexión al pool: {}", ex.getMessage());
+                }
+        }
+
+        private record EmpresaCalentamiento(TipoSistemaAspel sistema, String rutaVersion, Path ruta, String sufijo) {
+        }
+}
@@ -0,0 +1,400 @@
+package com.suprice.suprice.servicio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.suprice.suprice.servicio.InstantaneaCatalogo.Articulo;
+import com.suprice.suprice.servicio.InstantaneaCatalogo.PrecioLista;
+
+/**
+ * Artículos del catálogo guardados fuera del heap en un archivo mapeado en memoria. Solo se crean objetos para el
+ * artículo encontrado; la búsqueda compara la clave directamente contra los bytes del archivo.
+ * <p>
+ * Estructura del archivo (enteros big-endian):
+ * <ul>
+ * <li>Encabezado de {@value #TAMANO_ENCABEZADO} bytes: firma, versión, artículos, capacidad del índice e inicio de
+ * cada sección.</li>
+ * <li>Índice de direccionamiento abierto con sondeo lineal: por casilla, dispersión de la clave y número de registro
+ * más uno (cero indica casilla libre).</li>
+ * <li>Registros de {@value #TAMANO_REGISTRO} bytes: posición de la clave, código, descripción, esquema de impuestos,
+ * imagen y primer alterno dentro de los textos, primer precio, cantidad de precios y cantidad de alternos.</li>
+ * <li>Precios de {@value #TAMANO_PRECIO} bytes: lista, escala y valor sin escala.</li>
+ * <li>Textos UTF-8 precedidos por su longitud.</li>
+ * </ul>
+ * Los cambios incrementales se guardan en el heap sobre el archivo hasta la siguiente recarga completa, que escribe
+ * un archivo nuevo y lo sustituye.
+ */
+final class CatalogoMapeado implements ArticulosCatalogo {
+
+        static final String EXTENSION = ".catalogo";
+
+        private static final int FIRMA = 0x5350_4341;
+        private static final int VERSION = 1;
+        private static final int TAMANO_ENCABEZADO = 32;
+        private static final int TAMANO_CASILLA = 8;
+        private static final int TAMANO_REGISTRO = 32;
+        private static final int TAMANO_PRECIO = 16;
+        private static final int SIN_TEXTO = -1;
+
+        private static final int CAMPO_CLAVE = 0;
+        private static final int CAMPO_CODIGO = 4;
+        private static final int CAMPO_DESCRIPCION = 8;
+        private static final int CAMPO_IMPUESTOS = 12;
+        private static final int CAMPO_IMAGEN = 16;
+        private static final int CAMPO_ALTERNOS = 20;
+        private static final int CAMPO_PRECIOS = 24;
+        private static final int CAMPO_CANTIDAD_PRECIOS = 28;
+        private static final int CAMPO_CANTIDAD_ALTERNOS = 30;
+
+        private final Path archivo;
+        private final ByteBuffer datos;
+        private final int articulos;
+        private final int mascara;
+        private final int inicioIndice;
+        private final int inicioRegistros;
+        private final int inicioPrecios;
+        private final int inicioTextos;
+        private final Map<String, Articulo> cambios;
+        private final int tamano;
+
+        private CatalogoMapeado(Path archivo, ByteBuffer datos, Map<String, Articulo> cambios) {
+                this.archivo = archivo;
+                this.datos = datos;
+                if (datos.getInt(0) != FIRMA || datos.getInt(4) != VERSION) {
+                        throw new IllegalStateException("Archivo de catálogo no válido: " + archivo);
+                }
+                this.articulos = datos.getInt(8);
+                this.mascara = datos.getInt(12) - 1;
+                this.inicioIndice = TAMANO_ENCABEZADO;
+                this.inicioRegistros = datos.getInt(16);
+                this.inicioPrecios = datos.getInt(20);
+                this.inicioTextos = datos.getInt(24);
+                this.cambios = cambios;
+                int nuevos = 0;
+                for (String clave : cambios.keySet()) {
+                        if (localizar(clave) < 0) {
+                                nuevos++;
+                        }
+                }
+                this.tamano = articulos + nuevos;
+        }
+
+        /**
+         * Mapea un archivo de catálogo en modo de solo lectura.
+         */
+        static CatalogoMapeado abrir(Path archivo) throws IOException {
+                try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+                        return new CatalogoMapeado(archivo, canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()),
+                                        Map.of());
+                }
+        }
+
+        /**
+         * Inicia la escritura de un catálogo nuevo en la carpeta indicada.
+         *
+         * @param prefijo prefijo del nombre del archivo, que identifica a la empresa.
+         */
+        static Escritor escritor(Path carpeta, String prefijo) throws IOException {
+                Files.createDirectories(carpeta);
+                return new Escritor(carpeta, prefijo);
+        }
+
+        @Override
+        public Articulo buscar(String clave) {
+                if (clave == null) {
+                        return null;
+                }
+                Articulo cambio = cambios.get(clave);
+                if (cambio != null) {
+                        return cambio;
+                }
+                int registro = localizar(clave);
+                return registro >= 0 ? leerArticulo(registro) : null;
+        }
+
+        @Override
+        public int tamano() {
+                return tamano;
+        }
+
+        @Override
+        public ArticulosCatalogo conCambios(Map<String, Articulo> nuevos) {
+                Map<String, Articulo> combinados = new HashMap<>(cambios);
+                combinados.putAll(nuevos);
+                return new CatalogoMapeado(archivo, datos, Collections.unmodifiableMap(combinados));
+        }
+
+        @Override
+        public Path archivo() {
+                return archivo;
+        }
+
+        private int localizar(String clave) {
+                if (articulos == 0) {
+                        return -1;
+                }
+                byte[] bytes = clave.getBytes(StandardCharsets.UTF_8);
+                int dispersion = dispersar(clave);
+                int indice = dispersion & mascara;
+                while (true) {
+                        int casilla = inicioIndice + indice * TAMANO_CASILLA;
+                        int registro = datos.getInt(casilla + 4);
+                        if (registro == 0) {
+                                return -1;
+                        }
+                        if (datos.getInt(casilla) == dispersion
+                                        && textoIgual(datos.getInt(posicionRegistro(registro - 1) + CAMPO_CLAVE), bytes)) {
+                                return registro - 1;
+                        }
+                        indice = (indice + 1) & mascara;
+                }
+        }
+
+        private boolean textoIgual(int posicion, byte[] bytes) {
+                int inicio = inicioTextos + posicion;
+                int longitud = Short.toUnsignedInt(datos.getShort(inicio));
+                if (longitud != bytes.length) {
+                        return false;
+                }
+                for (int i = 0; i < longitud; i++) {
+                        if (datos.get(inicio + 2 + i) != bytes[i]) {
+                                return false;
+                        }
+                }
+                return true;
+        }
+
+        private Articulo leerArticulo(int registro) {
+                int posicion = posicionRegistro(registro);
+                int cantidadAlternos = Short.toUnsignedInt(datos.getShort(posicion + CAMPO_CANTIDAD_ALTERNOS));
+                List<String> alternos = new ArrayList<>(cantidadAlternos);
+                int alterno = datos.getInt(posicion + CAMPO_ALTERNOS);
+                for (int i = 0; i < cantidadAlternos; i++) {
+                        alternos.add(leerTexto(alterno));
+                        alterno += 2 + Short.toUnsignedInt(datos.getShort(inicioTextos + alterno));
+                }
+                int cantidadPrecios = Short.toUnsignedInt(datos.getShort(posicion + CAMPO_CANTIDAD_PRECIOS));
+                List<PrecioLista> precios = new ArrayList<>(cantidadPrecios);
+                int precio = inicioPrecios + datos.getInt(posicion + CAMPO_PRECIOS) * TAMANO_PRECIO;
+                for (int i = 0; i < cantidadPrecios; i++, precio += TAMANO_PRECIO) {
+                        precios.add(new PrecioLista(datos.getInt(precio),
+                                        BigDecimal.valueOf(datos.getLong(precio + 8), datos.getInt(precio + 4))));
+                }
+                return new Articulo(leerTexto(datos.getInt(posicion + CAMPO_CODIGO)),
+                                leerTexto(datos.getInt(posicion + CAMPO_DESCRIPCION)),
+                                leerTexto(datos.getInt(posicion + CAMPO_IMPUESTOS)),
+                                leerTexto(datos.getInt(posicion + CAMPO_IMAGEN)), List.copyOf(alternos), List.copyOf(precios));
+        }
+
+        private String leerTexto(int posicion) {
+                if (posicion == SIN_TEXTO) {
+                        return null;
+                }
+                int inicio = inicioTextos + posicion;
+                byte[] bytes = new byte[Short.toUnsignedInt(datos.getShort(inicio))];
+                datos.get(inicio + 2, bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int posicionRegistro(int registro) {
+                return inicioRegistros + registro * TAMANO_REGISTRO;
+        }
+
+        private static int dispersar(String clave) {
+                int hash = clave.hashCode();
+                return hash ^ (hash >>> 16);
+        }
+
+        /**
+         * Escribe los artículos en archivos temporales por sección y al terminar los une con el índice en un archivo
+         * temporal que se renombra de forma atómica, de modo que nunca se abre un catálogo incompleto.
+         */
+        static final class Escritor implements AutoCloseable {
+
+                private final Path carpeta;
+                private final Path destino;
+                private final Path registros;
+                private final Path precios;
+                private final Path textos;
+                private final DataOutputStream salidaRegistros;
+                private final DataOutputStream salidaPrecios;
+                private final DataOutputStream salidaTextos;
+                private final Map<String, Integer> textosRepetidos = new HashMap<>();
+                private int[] dispersiones = new int[1024];
+                private int articulos;
+                private int cantidadPrecios;
+                private long tamanoTextos;
+                private boolean terminado;
+
+                private Escritor(Path carpeta, String prefijo) throws IOException {
+                        this.carpeta = carpeta;
+                        this.destino = Files.createTempFile(carpeta, prefijo + "-", EXTENSION + ".tmp");
+                        this.registros = Files.createTempFile(carpeta, prefijo + "-registros-", EXTENSION + ".tmp");
+                        this.precios = Files.createTempFile(carpeta, prefijo + "-precios-", EXTENSION + ".tmp");
+                        this.textos = Files.createTempFile(carpeta, prefijo + "-textos-", EXTENSION + ".tmp");
+                        this.salidaRegistros = abrirSalida(registros);
+                        this.salidaPrecios = abrirSalida(precios);
+                        this.salidaTextos = abrirSalida(textos);
+                }
+
+                private static DataOutputStream abrirSalida(Path archivo) throws IOException {
+                        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(archivo), 1 << 16));
+                }
+
+                void agregar(Articulo articulo) throws IOException {
+                        if (articulo.precios().size() > 0xFFFF || articulo.alternos().size() > 0xFFFF) {
+                                throw new IllegalArgumentException("Demasiados precios o alternos en " + articulo.codigo());
+                        }
+                        String clave = articulo.codigo().trim();
+                        int posicionClave = escribirTexto(clave);
+                        int posicionCodigo = articulo.codigo().equals(clave) ? posicionClave : escribirTexto(articulo.codigo());
+                        int descripcion = escribirTexto(articulo.descripcion());
+                        int impuestos = escribirTextoRepetido(articulo.claveImpuestos());
+                        int imagen = escribirTexto(articulo.claveImagen());
+                        int alternos = articulo.alternos().isEmpty() ? SIN_TEXTO : (int) tamanoTextos;
+                        for (String alterno : articulo.alternos()) {
+                                escribirTexto(alterno);
+                        }
+                        salidaRegistros.writeInt(posicionClave);
+                        salidaRegistros.writeInt(posicionCodigo);
+                        salidaRegistros.writeInt(descripcion);
+                        salidaRegistros.writeInt(impuestos);
+                        salidaRegistros.writeInt(imagen);
+                        salidaRegistros.writeInt(alternos);
+                        salidaRegistros.writeInt(cantidadPrecios);
+                        salidaRegistros.writeShort(articulo.precios().size());
+                        salidaRegistros.writeShort(articulo.alternos().size());
+                        for (PrecioLista precio : articulo.precios()) {
+                                salidaPrecios.writeInt(precio.lista());
+                                salidaPrecios.writeInt(precio.precio().scale());
+                                salidaPrecios.writeLong(precio.precio().unscaledValue().longValueExact());
+                                cantidadPrecios++;
+                        }
+                        if (articulos == dispersiones.length) {
+                                dispersiones = Arrays.copyOf(dispersiones, articulos * 2);
+                        }
+                        dispersiones[articulos++] = dispersar(clave);
+                }
+
+                /**
+                 * Une las secciones, publica el archivo y lo abre.
+                 */
+                CatalogoMapeado terminar() throws IOException {
+                        salidaRegistros.close();
+                        salidaPrecios.close();
+                        salidaTextos.close();
+                        int capacidad = Integer.highestOneBit(Math.max(4, (int) (articulos / 0.6)) - 1) << 1;
+                        long inicioRegistros = TAMANO_ENCABEZADO + (long) capacidad * TAMANO_CASILLA;
+                        long inicioPrecios = inicioRegistros + (long) articulos * TAMANO_REGISTRO;
+                        long inicioTextos = inicioPrecios + (long) cantidadPrecios * TAMANO_PRECIO;
+                        if (inicioTextos + tamanoTextos > Integer.MAX_VALUE) {
+                                throw new IllegalStateException("El catálogo excede el tamaño máximo de un archivo mapeado");
+                        }
+                        ByteBuffer indice = ByteBuffer.allocate((int) inicioRegistros);
+                        indice.putInt(FIRMA).putInt(VERSION).putInt(articulos).putInt(capacidad)
+                                        .putInt((int) inicioRegistros).putInt((int) inicioPrecios).putInt((int) inicioTextos);
+                        int mascara = capacidad - 1;
+                        for (int registro = 0; registro < articulos; registro++) {
+                                int casilla = dispersiones[registro] & mascara;
+                                while (indice.getInt(TAMANO_ENCABEZADO + casilla * TAMANO_CASILLA + 4) != 0) {
+                                        casilla = (casilla + 1) & mascara;
+                                }
+                                indice.putInt(TAMANO_ENCABEZADO + casilla * TAMANO_CASILLA, dispersiones[registro]);
+                                indice.putInt(TAMANO_ENCABEZADO + casilla * TAMANO_CASILLA + 4, registro + 1);
+                        }
+                        indice.rewind();
+                        try (FileChannel salida = FileChannel.open(destino, StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                                while (indice.hasRemaining()) {
+                                        salida.write(indice);
+                                }
+                                for (Path seccion : List.of(registros, precios, textos)) {
+                                        try (FileChannel entrada = FileChannel.open(seccion, StandardOpenOption.READ)) {
+                                                long copiados = 0;
+                                                long tamano = entrada.size();
+                                                while (copiados < tamano) {
+                                                        copiados += entrada.transferTo(copiados, tamano - copiados, salida);
+                                                }
+                                        }
+                                }
+                                salida.force(true);
+                        }
+                        String nombre = destino.getFileName().toString();
+                        Path publicado = carpeta.resolve(nombre.substring(0, nombre.length() - ".tmp".length()));
+                        Files.move(destino, publicado, StandardCopyOption.ATOMIC_MOVE);
+                        terminado = true;
+                        return abrir(publicado);
+                }
+
+                private int escribirTextoRepetido(String texto) throws IOException {
+                        if (texto == null) {
+                                return SIN_TEXTO;
+                        }
+                        Integer posicion = textosRepetidos.get(texto);
+                        if (posicion == null) {
+                                posicion = escribirTexto(texto);
+                                textosRepetidos.put(texto, posicion);
+                        }
+                        return posicion;
+                }
+
+                private int escribirTexto(String texto) throws IOException {
+                        if (texto == null) {
+                                return SIN_TEXTO;
+                        }
+                        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+                        if (bytes.length > 0xFFFF) {
+                                throw new IllegalArgumentException("Texto demasiado largo para el catálogo: " + bytes.length);
+                        }
+                        if (tamanoTextos > Integer.MAX_VALUE - bytes.length - 2) {
+                                throw new IllegalStateException("El catálogo excede el tamaño máximo de un archivo mapeado");
+                        }
+                        int posicion = (int) tamanoTextos;
+                        salidaTextos.writeShort(bytes.length);
+                        salidaTextos.write(bytes);
+                        tamanoTextos += 2 + bytes.length;
+                        return posicion;
+                }
+
+                /**
+                 * Elimina los archivos temporales y, si no se terminó, también el catálogo parcial.
+                 */
+                @Override
+                public void close() throws IOException {
+                        salidaRegistros.close();
+                        salidaPrecios.close();
+                        salidaTextos.close();
+                        IOException error = null;
+                        for (Path temporal : terminado ? List.of(registros, precios, textos)
+                                        : List.of(registros, precios, textos, destino)) {
+                                try {
+                                        Files.deleteIfExists(temporal);
+                                } catch (IOException ex) {
+                                        if (error == null) {
+                                                error = ex;
+                                        } else {
+                                                error.addSuppressed(ex);
+                                        }
+                                }
+                        }
+                        if (error != null) {
+                                throw error;
+                        }
+                }
+        }
+}
@@ -0,0 +1,30 @@
+package com.suprice.suprice.servicio;
+
+/**
+ * Indica que una consulta no se atendió porque la empresa ya tiene el máximo de consultas simultáneas, o porque el
+ * servidor completo está saturado, y no se liberó un lugar dentro de la espera configurada.
+ */
+public class ConsultaRechazadaException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean limiteEmpresa;
+        private final long reintentarEnSegundos;
+
+        public ConsultaRechazadaException(String mensaje, boolean limiteEmpresa, long reintentarEnSegundos) {
+                super(mensaje);
+                this.limiteEmpresa = limiteEmpresa;
+                this.reintentarEnSegundos = reintentarEnSegundos;
+        }
+
+        /**
+         * @return {@code true} si se alcanzó el límite de la empresa; {@code false} si se saturó el servidor.
+         */
+        public boolean isLimiteEmpresa() {
+                return limiteEmpresa;
+        }
+
+        public long getReintentarEnSegundos() {
+                return reintentarEnSegundos;
+        }
+}
@@ -0,0 +1,327 @@
+package com.suprice.suprice.servicio;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.suprice.suprice.modelo.EstadisticaLimiteEmpresaDTO;
+import com.suprice.suprice.modelo.EstadisticasConsultasDTO;
+import com.suprice.suprice.util.UtilidadesRutas;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Ejecuta las consultas de productos fuera del hilo de la petición, limitando cuántas puede atender al mismo tiempo
+ * cada empresa para que una base de datos lenta no acapare los hilos que necesitan las demás.
+ * <p>
+ * Cuando la JVM ofrece hilos virtuales (Java 21 o posterior) y {@code suprice.consultas.hilos-virtuales} está
+ * activo, cada consulta corre en su propio hilo virtual; en otro caso se usa un pool de hilos de plataforma con
+ * tamaño y cola configurables. El lugar en el límite de la empresa se obtiene antes de entregar la consulta al
+ * ejecutor: las consultas que esperan a su empresa quedan en una cola propia del compartimento y no ocupan hilos
+ * del pool.
+ * <p>
+ * Los compartimentos se identifican por el archivo {@code .fdb} de la empresa, de modo que solo existe uno por base
+ * de datos real; las rutas sin base de datos comparten un mismo compartimento.
+ * <p>
+ * Cada consulta tiene un {@link PlazoConsulta} de {@code suprice.consultas.plazo-ms}: al vencer, el resultado falla
+ * con {@link PlazoVencidoException} sin esperar a la tarea y sus sentencias se cancelan en Firebird.
+ * <p>
+ * Publica en Micrometer las consultas en ejecución, en cola y esperando el límite de su empresa, además de las
+ * rechazadas y vencidas ({@code suprice.consultas.*}).
+ */
+@Component
+public class EjecutorConsultas implements MeterBinder {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(EjecutorConsultas.class);
+
+        private static final String SIN_BASE_DATOS = "(sin base de datos)";
+
+        private final ServicioRutasEmpresa servicioRutas;
+        private final ExecutorService ejecutor;
+        private final boolean hilosVirtuales;
+        private final int maximoPorEmpresa;
+        private final long esperaEmpresaMs;
+        private final long reintentarEnSegundos;
+        private final long plazoMs;
+        private final Executor vencimientos;
+        private final Map<String, Compartimento> compartimentos = new ConcurrentHashMap<>();
+        private final LongAdder rechazadasPorSaturacion = new LongAdder();
+        private final LongAdder vencidas = new LongAdder();
+        private final AtomicInteger enEjecucion = new AtomicInteger();
+
+        public EjecutorConsultas(ServicioRutasEmpresa servicioRutas,
+                        @Value("${suprice.consultas.hilos-virtuales:true}") boolean usarHilosVirtuales,
+                        @Value("${suprice.consultas.hilos-maximos:64}") int hilosMaximos,
+                        @Value("${suprice.consultas.cola-maxima:256}") int colaMaxima,
+                        @Value("${suprice.consultas.maximo-por-empresa:8}") int maximoPorEmpresa,
+                        @Value("${suprice.consultas.espera-empresa-ms:2000}") long esperaEmpresaMs,
+                        @Value("${suprice.consultas.plazo-ms:10000}") long plazoMs) {
+                this.servicioRutas = servicioRutas;
+                ExecutorService virtual = usarHilosVirtuales ? crearEjecutorVirtual() : null;
+                this.hilosVirtuales = virtual != null;
+                this.ejecutor = virtual != null ? virtual : crearEjecutorPlataforma(hilosMaximos, colaMaxima);
+                this.maximoPorEmpresa = Math.max(1, maximoPorEmpresa);
+                this.esperaEmpresaMs = Math.max(0, esperaEmpresaMs);
+                this.reintentarEnSegundos = Math.max(1, (this.esperaEmpresaMs + 999) / 1000);
+                this.plazoMs = Math.max(1, plazoMs);
+                this.vencimientos = CompletableFuture.delayedExecutor(this.plazoMs, TimeUnit.MILLISECONDS);
+                LOGGER.info("Consultas de productos con {} y hasta {} simultáneas por empresa",
+                                hilosVirtuales ? "hilos virtuales" : "pool de " + hilosMaximos + " hilos", this.maximoPorEmpresa);
+        }
+
+        /**
+         * Programa una consulta de la empresa indicada. Si la empresa ya tiene el máximo de consultas en curso, la
+         * consulta espera en la cola de su compartimento hasta {@code suprice.consultas.espera-empresa-ms}, sin
+         * exceder su plazo, a que se libere un lugar.
+         *
+         * @param rutaEmpresa carpeta de la empresa consultada.
+         * @param tarea       consulta a ejecutar.
+         * @return resultado futuro; falla con {@link ConsultaRechazadaException} si no pudo atenderse o con
+         *         {@link PlazoVencidoException} si no terminó a tiempo.
+         */
+        public <T> CompletableFuture<T> ejecutar(String rutaEmpresa, Supplier<T> tarea) {
+                Compartimento compartimento = compartimentos.computeIfAbsent(claveCompartimento(rutaEmpresa),
+                                Compartimento::new);
+                PlazoConsulta plazo = PlazoConsulta.iniciar(plazoMs);
+                CompletableFuture<T> resultado = new CompletableFuture<>();
+                Espera espera = new Espera(() -> despachar(compartimento, plazo, tarea, resultado));
+                if (compartimento.semaforo.tryAcquire()) {
+                        if (!espera.iniciar()) {
+                                compartimento.liberar();
+                        }
+                } else {
+                        compartimento.esperas.add(espera);
+                        CompletableFuture.delayedExecutor(Math.min(esperaEmpresaMs, plazo.restanteMs()), TimeUnit.MILLISECONDS)
+                                        .execute(() -> {
+                                                if (espera.descartar()) {
+                                                        compartimento.esperas.remove(espera);
+                                                        compartimento.rechazadas.increment();
+                                                        resultado.completeExceptionally(new ConsultaRechazadaException(
+                                                                        "La empresa está atendiendo el máximo de consultas simultáneas", true,
+                                                                        reintentarEnSegundos));
+                                                }
+                                        });
+                        compartimento.atenderEsperas();
+                }
+                vencimientos.execute(() -> {
+                        if (resultado.completeExceptionally(new PlazoVencidoException())) {
+                                vencidas.increment();
+                                plazo.cancelar();
+                                LOGGER.warn("Consulta de {} cancelada al vencer su plazo de {} ms", rutaEmpresa, plazoMs);
+                        }
+                });
+                return resultado;
+        }
+
+        /**
+         * Entrega al ejecutor una consulta que ya tiene su lugar en el compartimento; el lugar se libera al terminar.
+         *
+         * @return {@code false} si la consulta ya había concluido o el ejecutor la rechazó, en cuyo caso quien llama
+         *         debe liberar el lugar.
+         */
+        private <T> boolean despachar(Compartimento compartimento, PlazoConsulta plazo, Supplier<T> tarea,
+                        CompletableFuture<T> resultado) {
+                if (resultado.isDone()) {
+                        return false;
+                }
+                try {
+                        CompletableFuture.supplyAsync(() -> plazo.ejecutar(() -> {
+                                enEjecucion.incrementAndGet();
+                                try {
+                                        return tarea.get();
+                                } finally {
+                                        enEjecucion.decrementAndGet();
+                                }
+                        }), ejecutor).whenComplete((valor, error) -> {
+                                compartimento.liberar();
+                                if (error != null) {
+                                        resultado.completeExceptionally(error);
+                                } else {
+                                        resultado.complete(valor);
+                                }
+                        });
+                        return true;
+                } catch (RejectedExecutionException ex) {
+                        rechazadasPorSaturacion.increment();
+                        resultado.completeExceptionally(new ConsultaRechazadaException(
+                                        "El servidor está atendiendo el máximo de consultas", false, reintentarEnSegundos));
+                        return false;
+                }
+        }
+
+        public Executor obtenerEjecutor() {
+                return ejecutor;
+        }
+
+        public EstadisticasConsultasDTO obtenerEstadisticas() {
+                List<EstadisticaLimiteEmpresaDTO> empresas = compartimentos.values().stream()
+                                .map(compartimento -> new EstadisticaLimiteEmpresaDTO(compartimento.rutaEmpresa, maximoPorEmpresa,
+                                                maximoPorEmpresa - compartimento.semaforo.availablePermits(),
+                                                compartimento.esperas.size(), compartimento.rechazadas.sum()))
+                                .sorted(Comparator.comparing(EstadisticaLimiteEmpresaDTO::rutaEmpresa))
+                                .toList();
+                return new EstadisticasConsultasDTO(hilosVirtuales, plazoMs, rechazadasPorSaturacion.sum(), vencidas.sum(),
+                                empresas);
+        }
+
+        @Override
+        public void bindTo(MeterRegistry registro) {
+                Gauge.builder("suprice.consultas.activas", enEjecucion, AtomicInteger::get)
+                                .description("Consultas de productos en ejecución")
+                                .register(registro);
+                Gauge.builder("suprice.consultas.cola", this, EjecutorConsultas::tareasEnCola)
+                                .description("Consultas esperando un hilo del pool")
+                                .register(registro);
+                Gauge.builder("suprice.consultas.espera.empresa", this, EjecutorConsultas::esperandoEmpresa)
+                                .description("Consultas esperando un lugar en el límite de su empresa")
+                                .register(registro);
+                FunctionCounter.builder("suprice.consultas.rechazadas", rechazadasPorSaturacion, LongAdder::sum)
+                                .description("Consultas rechazadas")
+                                .tag("motivo", "saturacion")
+                                .register(registro);
+                FunctionCounter.builder("suprice.consultas.rechazadas", this, EjecutorConsultas::rechazadasPorEmpresa)
+                                .description("Consultas rechazadas")
+                                .tag("motivo", "limite_empresa")
+                                .register(registro);
+                FunctionCounter.builder("suprice.consultas.vencidas", vencidas, LongAdder::sum)
+                                .description("Consultas canceladas al vencer su plazo")
+                                .register(registro);
+                if (ejecutor instanceof ThreadPoolExecutor) {
+                        new ExecutorServiceMetrics(ejecutor, "consultas-productos", Tags.empty()).bindTo(registro);
+                }
+        }
+
+        @PreDestroy
+        public void detener() {
+                ejecutor.shutdown();
+        }
+
+        private double tareasEnCola() {
+                return ejecutor instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0;
+        }
+
+        private double esperandoEmpresa() {
+                return compartimentos.values().stream().mapToInt(compartimento -> compartimento.esperas.size())
+                                .sum();
+        }
+
+        private double rechazadasPorEmpresa() {
+                return compartimentos.values().stream().mapToLong(compartimento -> compartimento.rechazadas.sum()).sum();
+        }
+
+        private String claveCompartimento(String rutaEmpresa) {
+                Path ruta = UtilidadesRutas.aPath(rutaEmpresa);
+                if (ruta == null) {
+                        return SIN_BASE_DATOS;
+                }
+                return servicioRutas.localizarBaseDatos(ruta).map(Path::toString).orElse(SIN_BASE_DATOS);
+        }
+
+        /**
+         * Obtiene {@code Executors.newVirtualThreadPerTaskExecutor()} por reflexión para seguir compilando con Java 17.
+         */
+        private static ExecutorService crearEjecutorVirtual() {
+                try {
+                        Method fabrica = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                        return (ExecutorService) fabrica.invoke(null);
+                } catch (ReflectiveOperationException ex) {
+                        LOGGER.info("La JVM {} no ofrece hilos virtuales; se usará un pool de hilos de plataforma",
+                                        Runtime.version());
+                        return null;
+                }
+        }
+
+        private static ExecutorService crearEjecutorPlataforma(int hilosMaximos, int colaMaxima) {
+                int hilos = Math.max(1, hilosMaximos);
+                AtomicInteger contador = new AtomicInteger();
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS,
+                                new LinkedBlockingQueue<>(Math.max(1, colaMaxima)), tarea -> {
+                                        Thread hilo = new Thread(tarea, "consulta-producto-" + contador.incrementAndGet());
+                                        hilo.setDaemon(true);
+                                        return hilo;
+                                }, new ThreadPoolExecutor.AbortPolicy());
+                pool.allowCoreThreadTimeOut(true);
+                return pool;
+        }
+
+        /**
+         * Consulta esperando lugar en su compartimento. Solo una de {@link #iniciar()} o {@link #descartar()} tiene
+         * efecto.
+         */
+        private static final class Espera {
+                private final BooleanSupplier despacho;
+                private final AtomicBoolean resuelta = new AtomicBoolean();
+
+                Espera(BooleanSupplier despacho) {
+                        this.despacho = despacho;
+                }
+
+                /**
+                 * @return {@code true} si la consulta se entregó al ejecutor y ocupa el lugar obtenido.
+                 */
+                boolean iniciar() {
+                        return resuelta.compareAndSet(false, true) && despacho.getAsBoolean();
+                }
+
+                boolean descartar() {
+                        return resuelta.compareAndSet(false, true);
+                }
+        }
+
+        private final class Compartimento {
+                private final String rutaEmpresa;
+                private final Semaphore semaforo = new Semaphore(maximoPorEmpresa);
+                private final ConcurrentLinkedQueue<Espera> esperas = new ConcurrentLinkedQueue<>();
+                private final LongAdder rechazadas = new LongAdder();
+
+                Compartimento(String rutaEmpresa) {
+                        this.rutaEmpresa = rutaEmpresa;
+                }
+
+                void liberar() {
+                        semaforo.release();
+                        atenderEsperas();
+                }
+
+                /**
+                 * Entrega lugares libres a las consultas en espera. Se llama tanto al liberar un lugar como al encolar
+                 * una consulta, de modo que ninguna queda esperando con lugares disponibles.
+                 */
+                void atenderEsperas() {
+                        while (!esperas.isEmpty() && semaforo.tryAcquire()) {
+                                Espera espera = esperas.poll();
+                                if (espera == null || !espera.iniciar()) {
+                                        semaforo.release();
+                                }
+                        }
+                }
+        }
+}
@@ -0,0 +1,58 @@
+package com.suprice.suprice.servicio;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.suprice.suprice.util.EvaluadorImpuestos;
+
+/**
+ * Porcentajes y reglas de aplicación de los cuatro impuestos de un esquema Aspel, compilados en un
+ * {@link EvaluadorImpuestos} al leer el esquema.
+ */
+final class EsquemaImpuestos {
+
+        private static final EsquemaImpuestos VACIO = new EsquemaImpuestos(EvaluadorImpuestos.sinImpuestos());
+
+        private final EvaluadorImpuestos evaluador;
+
+        EsquemaImpuestos(BigDecimal impuesto1, BigDecimal impuesto2, BigDecimal impuesto3, BigDecimal impuesto4,
+                        Integer regla1, Integer regla2, Integer regla3, Integer regla4) {
+                this(EvaluadorImpuestos.compilar(impuesto1, impuesto2, impuesto3, impuesto4, regla1 != null ? regla1 : 0,
+                                regla2 != null ? regla2 : 0, regla3 != null ? regla3 : 0, regla4 != null ? regla4 : 0));
+        }
+
+        private EsquemaImpuestos(EvaluadorImpuestos evaluador) {
+                this.evaluador = evaluador;
+        }
+
+        static EsquemaImpuestos vacio() {
+                return VACIO;
+        }
+
+        /**
+         * Lee un esquema desde la fila actual de la tabla {@code IMPU} de Aspel SAE.
+         */
+        static EsquemaImpuestos desdeSae(ResultSet rs) throws SQLException {
+                return new EsquemaImpuestos(rs.getBigDecimal("impuesto1"), rs.getBigDecimal("impuesto2"),
+                                rs.getBigDecimal("impuesto3"), rs.getBigDecimal("impuesto4"), rs.getInt("imp1aplica"),
+                                rs.getInt("imp2aplica"), rs.getInt("imp3aplica"), rs.getInt("imp4aplica"));
+        }
+
+        /**
+         * Lee un esquema desde la fila actual de la tabla {@code esqimp} de Aspel Caja.
+         */
+        static EsquemaImpuestos desdeCaja(ResultSet rs) throws SQLException {
+                return new EsquemaImpuestos(rs.getBigDecimal("porcen1"), rs.getBigDecimal("porcen2"),
+                                rs.getBigDecimal("porcen3"), rs.getBigDecimal("porcen4"), rs.getInt("aplica1"),
+                                rs.getInt("aplica2"), rs.getInt("aplica3"), rs.getInt("aplica4"));
+        }
+
+        BigDecimal calcularImpuestos(BigDecimal precioBase) {
+                return evaluador.calcular(precioBase);
+        }
+
+        BigDecimal[] calcularImpuestos(BigDecimal[] preciosBase) {
+                return evaluador.calcular(preciosBase);
+        }
+}
@@ -0,0 +1,139 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.suprice.suprice.modelo.RolUsuario;
+import com.suprice.suprice.modelo.UsuarioSesion;
+
+/**
+ * Emite y verifica los tokens de sesión firmados con HMAC-SHA256 que sustituyen a la {@code HttpSession} cuando
+ * {@code suprice.sesion.token.habilitado} está activo. El token lleva el usuario, su rol y su vencimiento, por lo que
+ * cualquier instancia con la misma clave lo verifica sin consultar ningún almacenamiento.
+ * <p>
+ * Formato: {@code vencimiento.rol.usuario.firma}, con el usuario y la firma en Base64 URL sin relleno y el
+ * vencimiento en segundos desde la época.
+ */
+@Component
+public class FirmadorTokens {
+
+        /** Cookie en la que el navegador guarda el token. */
+        public static final String COOKIE = "SUPRICE_TOKEN";
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(FirmadorTokens.class);
+
+        private static final String ALGORITMO = "HmacSHA256";
+        private static final int LONGITUD_MINIMA_CLAVE = 32;
+        private static final Base64.Encoder CODIFICADOR = Base64.getUrlEncoder().withoutPadding();
+        private static final Base64.Decoder DECODIFICADOR = Base64.getUrlDecoder();
+
+        private final boolean habilitado;
+        private final SecretKeySpec clave;
+        private final long vigenciaSegundos;
+        private final ThreadLocal<Mac> firmadores;
+
+        public FirmadorTokens(@Value("${suprice.sesion.token.habilitado:false}") boolean habilitado,
+                        @Value("${suprice.sesion.token.clave:}") String claveBase64,
+                        @Value("${suprice.sesion.token.vigencia-ms:43200000}") long vigenciaMs) {
+                this.habilitado = habilitado;
+                this.clave = new SecretKeySpec(obtenerClave(habilitado, claveBase64), ALGORITMO);
+                this.vigenciaSegundos = Math.max(1, Duration.ofMillis(vigenciaMs).toSeconds());
+                this.firmadores = ThreadLocal.withInitial(this::crearFirmador);
+        }
+
+        public boolean estaHabilitado() {
+                return habilitado;
+        }
+
+        public long vigenciaSegundos() {
+                return vigenciaSegundos;
+        }
+
+        /**
+         * @return token firmado que vence tras {@code suprice.sesion.token.vigencia-ms}.
+         */
+        public String emitir(UsuarioSesion sesion) {
+                long vence = System.currentTimeMillis() / 1000 + vigenciaSegundos;
+                String contenido = vence + "." + sesion.getRol().name() + "."
+                                + CODIFICADOR.encodeToString(sesion.getNombreUsuario().getBytes(StandardCharsets.UTF_8));
+                return contenido + "." + CODIFICADOR.encodeToString(firmar(contenido));
+        }
+
+        /**
+         * Comprueba la firma y el vencimiento del token.
+         *
+         * @return usuario del token, o vacío si está mal formado, alterado o vencido.
+         */
+        public Optional<UsuarioSesion> verificar(String token) {
+                if (token == null || token.isEmpty()) {
+                        return Optional.empty();
+                }
+                int ultimoPunto = token.lastIndexOf('.');
+                if (ultimoPunto <= 0) {
+                        return Optional.empty();
+                }
+                String contenido = token.substring(0, ultimoPunto);
+                try {
+                        byte[] firma = DECODIFICADOR.decode(token.substring(ultimoPunto + 1));
+                        if (!MessageDigest.isEqual(firma, firmar(contenido))) {
+                                return Optional.empty();
+                        }
+                        String[] campos = contenido.split("\\.", -1);
+                        if (campos.length != 3 || Long.parseLong(campos[0]) < System.currentTimeMillis() / 1000) {
+                                return Optional.empty();
+                        }
+                        return Optional.of(new UsuarioSesion(new String(DECODIFICADOR.decode(campos[2]), StandardCharsets.UTF_8),
+                                        RolUsuario.valueOf(campos[1])));
+                } catch (IllegalArgumentException ex) {
+                        return Optional.empty();
+                }
+        }
+
+        private byte[] firmar(String contenido) {
+                return firmadores.get().doFinal(contenido.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private Mac crearFirmador() {
+                try {
+                        Mac mac = Mac.getInstance(ALGORITMO);
+                        mac.init(clave);
+                        return mac;
+                } catch (GeneralSecurityException ex) {
+                        throw new IllegalStateException("No fue posible inicializar " + ALGORITMO, ex);
+                }
+        }
+
+        /**
+         * Sin clave configurada se genera una aleatoria: los tokens solo sirven en esta instancia y hasta reiniciarla.
+         */
+        private static byte[] obtenerClave(boolean habilitado, String claveBase64) {
+                if (claveBase64 == null || claveBase64.isBlank()) {
+                        if (habilitado) {
+                                LOGGER.warn("suprice.sesion.token.clave no está configurada; se usará una clave aleatoria y los "
+                                                + "tokens no serán válidos en otras instancias ni tras reiniciar");
+                        }
+                        byte[] aleatoria = new byte[LONGITUD_MINIMA_CLAVE];
+                        new SecureRandom().nextBytes(aleatoria);
+                        return aleatoria;
+                }
+                byte[] clave = Base64.getDecoder().decode(claveBase64.trim());
+                if (clave.length < LONGITUD_MINIMA_CLAVE) {
+                        throw new IllegalArgumentException(
+                                        "suprice.sesion.token.clave debe tener al menos " + LONGITUD_MINIMA_CLAVE + " bytes en Base64");
+                }
+                return clave;
+        }
+}
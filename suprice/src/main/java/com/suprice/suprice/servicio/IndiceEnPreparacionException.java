@@ -0,0 +1,24 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.file.Path;
+
+/**
+ * Indica que una consulta necesita un índice en memoria de la empresa que aún se está construyendo y que no puede
+ * responderse sin recorrer la tabla en Firebird. No captura la pila de llamadas.
+ */
+public class IndiceEnPreparacionException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long reintentarEnSegundos;
+
+        public IndiceEnPreparacionException(String indice, Path rutaBd, long reintentarEnSegundos) {
+                super("El índice de " + indice + " de " + rutaBd.getFileName() + " se está preparando; intente de nuevo",
+                                null, false, false);
+                this.reintentarEnSegundos = reintentarEnSegundos;
+        }
+
+        public long getReintentarEnSegundos() {
+                return reintentarEnSegundos;
+        }
+}
@@ -0,0 +1,37 @@
+package com.suprice.suprice.servicio;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copia inmutable de los artículos, precios, claves alternas y esquemas de impuestos de una empresa.
+ *
+ * @param articulos artículos indexados por su clave principal, en el heap o en un archivo mapeado.
+ * @param esquemas  esquemas de impuestos indexados por su clave.
+ * @param marca     valor más reciente de la columna de cambios al momento de la carga, o {@code null}.
+ * @param cargadaEn momento en que se realizó la última carga completa.
+ */
+record InstantaneaCatalogo(ArticulosCatalogo articulos, Map<String, EsquemaImpuestos> esquemas, Timestamp marca,
+                Instant cargadaEn) {
+
+        Articulo buscar(String codigo) {
+                return codigo != null ? articulos.buscar(codigo.trim()) : null;
+        }
+
+        EsquemaImpuestos esquema(String clave) {
+                if (clave == null || clave.isBlank()) {
+                        return EsquemaImpuestos.vacio();
+                }
+                return esquemas.getOrDefault(clave.trim(), EsquemaImpuestos.vacio());
+        }
+
+        record Articulo(String codigo, String descripcion, String claveImpuestos, String claveImagen,
+                        List<String> alternos, List<PrecioLista> precios) {
+        }
+
+        record PrecioLista(int lista, BigDecimal precio) {
+        }
+}
@@ -0,0 +1,221 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.suprice.suprice.modelo.EstadisticaInterruptorDTO;
+
+/**
+ * Interruptor de circuito por base de datos Firebird. Cuando una parte suficiente de las últimas consultas a un
+ * {@code .fdb} falla por conexión o por tiempo, el interruptor se abre y las consultas siguientes se rechazan sin
+ * intentar conectar; pasada la espera configurada se permite una consulta de prueba que lo cierra o lo vuelve a abrir.
+ */
+@Component
+public class InterruptoresFirebird {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(InterruptoresFirebird.class);
+
+        /**
+         * Estado de un interruptor.
+         */
+        public enum Estado {
+                CERRADO, ABIERTO, SEMIABIERTO
+        }
+
+        private final boolean habilitado;
+        private final int ventana;
+        private final int minimoLlamadas;
+        private final int tasaFallosPorcentaje;
+        private final long esperaAbiertoNanos;
+        private final int pruebasSemiabierto;
+        private final Map<Path, Interruptor> interruptores = new ConcurrentHashMap<>();
+
+        public InterruptoresFirebird(@Value("${suprice.interruptor.habilitado:true}") boolean habilitado,
+                        @Value("${suprice.interruptor.ventana:20}") int ventana,
+                        @Value("${suprice.interruptor.minimo-llamadas:5}") int minimoLlamadas,
+                        @Value("${suprice.interruptor.tasa-fallos:50}") int tasaFallosPorcentaje,
+                        @Value("${suprice.interruptor.espera-abierto-ms:30000}") long esperaAbiertoMs,
+                        @Value("${suprice.interruptor.pruebas-semiabierto:1}") int pruebasSemiabierto) {
+                this.habilitado = habilitado;
+                this.ventana = Math.max(1, ventana);
+                this.minimoLlamadas = Math.max(1, Math.min(this.ventana, minimoLlamadas));
+                this.tasaFallosPorcentaje = Math.max(1, Math.min(100, tasaFallosPorcentaje));
+                this.esperaAbiertoNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, esperaAbiertoMs));
+                this.pruebasSemiabierto = Math.max(1, pruebasSemiabierto);
+        }
+
+        /**
+         * Autoriza una consulta a la base indicada. Cada autorización debe terminar con
+         * {@link #registrar(Path, boolean)}.
+         *
+         * @param rutaBd ruta del archivo {@code .fdb}.
+         * @throws BaseDatosNoDisponibleException si el interruptor está abierto o ya hay pruebas en curso.
+         */
+        public void autorizar(Path rutaBd) {
+                if (habilitado) {
+                        obtener(rutaBd).autorizar();
+                }
+        }
+
+        /**
+         * Indica, sin reservar una prueba, si la base aceptaría consultas en este momento.
+         */
+        public boolean permiteConsultas(Path rutaBd) {
+                if (!habilitado) {
+                        return true;
+                }
+                Interruptor interruptor = interruptores.get(normalizar(rutaBd));
+                return interruptor == null || interruptor.permiteConsultas();
+        }
+
+        /**
+         * Registra el resultado de una consulta autorizada.
+         *
+         * @param rutaBd ruta del archivo {@code .fdb}.
+         * @param fallo  {@code true} si la base no respondió (error de conexión o plazo vencido).
+         */
+        public void registrar(Path rutaBd, boolean fallo) {
+                if (habilitado) {
+                        obtener(rutaBd).registrar(fallo);
+                }
+        }
+
+        /**
+         * Indica si el error de una consulta autorizada cuenta como fallo de la base: solo los errores de conexión y los
+         * plazos vencidos. Un error de SQL significa que la base sí respondió, y la falta de conexiones libres sin un
+         * error de conexión detrás es saturación local.
+         */
+        public static boolean esFallo(SQLException ex) {
+                boolean saturacion = ex instanceof SQLTransientConnectionException && ex.getCause() == null;
+                return (esErrorDeConexion(ex) && !saturacion) || PlazoConsulta.vencidoEnHiloActual();
+        }
+
+        public static boolean esErrorDeConexion(SQLException ex) {
+                String estado = ex.getSQLState();
+                return ex instanceof SQLTransientConnectionException || ex instanceof SQLNonTransientConnectionException
+                                || ex instanceof SQLTimeoutException || (estado != null && estado.startsWith("08"));
+        }
+
+        public List<EstadisticaInterruptorDTO> obtenerEstadisticas() {
+                return interruptores.values().stream()
+                                .map(Interruptor::estadistica)
+                                .sorted(Comparator.comparing(EstadisticaInterruptorDTO::rutaBaseDatos))
+                                .toList();
+        }
+
+        private Interruptor obtener(Path rutaBd) {
+                return interruptores.computeIfAbsent(normalizar(rutaBd), Interruptor::new);
+        }
+
+        private static Path normalizar(Path rutaBd) {
+                return rutaBd.toAbsolutePath().normalize();
+        }
+
+        private final class Interruptor {
+                private final Path rutaBd;
+                private final boolean[] resultados = new boolean[ventana];
+                private int posicion;
+                private int llamadas;
+                private int fallos;
+                private Estado estado = Estado.CERRADO;
+                private long abiertoDesde;
+                private int pruebasEnCurso;
+                private long aperturas;
+                private long rechazadas;
+
+                Interruptor(Path rutaBd) {
+                        this.rutaBd = rutaBd;
+                }
+
+                synchronized void autorizar() {
+                        if (estado == Estado.ABIERTO && System.nanoTime() - abiertoDesde >= esperaAbiertoNanos) {
+                                estado = Estado.SEMIABIERTO;
+                                pruebasEnCurso = 0;
+                                LOGGER.info("Interruptor de {} semiabierto; se probará la conexión", rutaBd);
+                        }
+                        if (estado == Estado.ABIERTO || (estado == Estado.SEMIABIERTO && pruebasEnCurso >= pruebasSemiabierto)) {
+                                rechazadas++;
+                                throw new BaseDatosNoDisponibleException(rutaBd, segundosParaReintentar());
+                        }
+                        if (estado == Estado.SEMIABIERTO) {
+                                pruebasEnCurso++;
+                        }
+                }
+
+                synchronized boolean permiteConsultas() {
+                        return estado != Estado.ABIERTO || System.nanoTime() - abiertoDesde >= esperaAbiertoNanos;
+                }
+
+                synchronized void registrar(boolean fallo) {
+                        if (estado == Estado.SEMIABIERTO) {
+                                pruebasEnCurso = Math.max(0, pruebasEnCurso - 1);
+                                if (fallo) {
+                                        abrir();
+                                } else {
+                                        estado = Estado.CERRADO;
+                                        reiniciarVentana();
+                                        LOGGER.info("Interruptor de {} cerrado; la base volvió a responder", rutaBd);
+                                }
+                                return;
+                        }
+                        if (estado == Estado.ABIERTO) {
+                                return;
+                        }
+                        if (llamadas == ventana && resultados[posicion]) {
+                                fallos--;
+                        }
+                        resultados[posicion] = fallo;
+                        posicion = (posicion + 1) % ventana;
+                        llamadas = Math.min(ventana, llamadas + 1);
+                        if (fallo) {
+                                fallos++;
+                        }
+                        if (llamadas >= minimoLlamadas && fallos * 100 >= tasaFallosPorcentaje * llamadas) {
+                                abrir();
+                        }
+                }
+
+                private void abrir() {
+                        estado = Estado.ABIERTO;
+                        abiertoDesde = System.nanoTime();
+                        aperturas++;
+                        reiniciarVentana();
+                        LOGGER.warn("Interruptor de {} abierto; se rechazarán consultas durante {} ms", rutaBd,
+                                        TimeUnit.NANOSECONDS.toMillis(esperaAbiertoNanos));
+                }
+
+                private void reiniciarVentana() {
+                        Arrays.fill(resultados, false);
+                        posicion = 0;
+                        llamadas = 0;
+                        fallos = 0;
+                }
+
+                private long segundosParaReintentar() {
+                        long restante = estado == Estado.ABIERTO ? esperaAbiertoNanos - (System.nanoTime() - abiertoDesde) : 0;
+                        return Math.max(1, (TimeUnit.NANOSECONDS.toMillis(restante) + 999) / 1000);
+                }
+
+                synchronized EstadisticaInterruptorDTO estadistica() {
+                        Estado actual = estado == Estado.ABIERTO && System.nanoTime() - abiertoDesde >= esperaAbiertoNanos
+                                        ? Estado.SEMIABIERTO
+                                        : estado;
+                        return new EstadisticaInterruptorDTO(rutaBd.toString(), actual.name(), llamadas, fallos, aperturas,
+                                        rechazadas, actual == Estado.ABIERTO ? segundosParaReintentar() : 0);
+                }
+        }
+}
@@ -0,0 +1,233 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.suprice.suprice.modelo.TipoSistemaAspel;
+import com.suprice.suprice.util.UtilidadesRutas;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Mide el tiempo de cada fase de la consulta de un producto. Todas las métricas llevan las etiquetas {@code sistema}
+ * (SAE o CAJA) y {@code empresa} (versión y carpeta de la empresa, por ejemplo {@code SAE90/Empresa01}):
+ * <ul>
+ * <li>{@code suprice.consulta.producto}: consulta completa, con la etiqueta {@code resultado}.</li>
+ * <li>{@code suprice.consulta.fase}: tiempo de cada {@link Fase}, con la etiqueta {@code fase}.</li>
+ * </ul>
+ * Las fases se acumulan durante la consulta y se registran una sola vez al terminar, de modo que las que se repiten
+ * (por ejemplo el cálculo de impuestos de cada lista de precios) suman su tiempo en una sola observación.
+ * <p>
+ * La ruta de la empresa la envía el cliente, por lo que solo se usa como etiqueta después de
+ * {@link #confirmarEmpresa(Path)}, es decir, cuando se localizó su base de datos; hasta entonces la etiqueta es
+ * {@code desconocida}. A partir de {@code suprice.metricas.maximo-empresas} empresas distintas las nuevas se agrupan
+ * en {@code otras}, de modo que el número de series queda acotado.
+ */
+@Component
+public class MetricasConsulta {
+
+        public static final String METRICA_CONSULTA = "suprice.consulta.producto";
+        public static final String METRICA_FASE = "suprice.consulta.fase";
+
+        private static final ThreadLocal<Medicion> ACTUAL = new ThreadLocal<>();
+        private static final Fase[] FASES = Fase.values();
+        private static final String EMPRESA_DESCONOCIDA = "desconocida";
+        private static final String OTRAS_EMPRESAS = "otras";
+
+        /**
+         * Fases medidas de una consulta.
+         */
+        public enum Fase {
+                LOCALIZAR_BASE_DATOS,
+                CONEXION,
+                CONSULTA_PRODUCTO,
+                CONSULTA_ALTERNOS,
+                CONSULTA_PRECIOS,
+                CONSULTA_EXISTENCIAS,
+                CONSULTA_IMPUESTOS,
+                CONSULTA_COMBINADA,
+                RESOLVER_CLAVE_ALTERNA,
+                CALCULO_IMPUESTOS,
+                IMAGEN,
+                SERIALIZACION;
+
+                private final String etiqueta = name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Resultado con que termina una consulta.
+         */
+        public enum Resultado {
+                ENCONTRADO,
+                NO_ENCONTRADO,
+                VENCIDA,
+                NO_DISPONIBLE,
+                ERROR;
+
+                private final String etiqueta = name().toLowerCase(Locale.ROOT);
+        }
+
+        private final MeterRegistry registro;
+        private final int maximoEmpresas;
+        private final Set<String> empresasEtiquetadas = ConcurrentHashMap.newKeySet();
+
+        public MetricasConsulta(MeterRegistry registro,
+                        @Value("${suprice.metricas.maximo-empresas:100}") int maximoEmpresas) {
+                this.registro = registro;
+                this.maximoEmpresas = Math.max(1, maximoEmpresas);
+        }
+
+        /**
+         * Inicia la medición de una consulta y la asocia al hilo actual hasta cerrarla. La empresa queda como
+         * {@code desconocida} hasta {@link #confirmarEmpresa(Path)}.
+         */
+        public Medicion iniciar(TipoSistemaAspel sistema) {
+                Medicion medicion = new Medicion(etiquetaSistema(sistema), ACTUAL.get());
+                ACTUAL.set(medicion);
+                return medicion;
+        }
+
+        /**
+         * Etiqueta la consulta del hilo actual con la empresa, una vez localizada su base de datos.
+         */
+        public void confirmarEmpresa(Path rutaEmpresa) {
+                Medicion medicion = ACTUAL.get();
+                if (medicion == null) {
+                        return;
+                }
+                String nombre = nombreEmpresa(rutaEmpresa);
+                if (empresasEtiquetadas.contains(nombre)) {
+                        medicion.empresa = nombre;
+                        return;
+                }
+                synchronized (empresasEtiquetadas) {
+                        if (empresasEtiquetadas.size() < maximoEmpresas) {
+                                empresasEtiquetadas.add(nombre);
+                        }
+                }
+                medicion.empresa = empresasEtiquetadas.contains(nombre) ? nombre : OTRAS_EMPRESAS;
+        }
+
+        /**
+         * Ejecuta la operación sumando su duración a la fase indicada de la consulta del hilo actual. Sin una
+         * consulta en curso solo la ejecuta.
+         */
+        public <T, E extends Exception> T medir(Fase fase, Operacion<T, E> operacion) throws E {
+                Medicion medicion = ACTUAL.get();
+                if (medicion == null) {
+                        return operacion.ejecutar();
+                }
+                long inicio = System.nanoTime();
+                try {
+                        return operacion.ejecutar();
+                } finally {
+                        medicion.acumular(fase, System.nanoTime() - inicio);
+                }
+        }
+
+        /**
+         * Registra directamente la duración de una fase ejecutada fuera de la consulta, como la serialización de la
+         * respuesta. Solo etiqueta con la empresa si alguna consulta ya la confirmó.
+         */
+        public void registrar(Fase fase, TipoSistemaAspel sistema, String rutaEmpresa, long nanos) {
+                String nombre = nombreEmpresa(UtilidadesRutas.aPath(rutaEmpresa));
+                String empresa = empresasEtiquetadas.contains(nombre) ? nombre : EMPRESA_DESCONOCIDA;
+                temporizadorFase(Tags.of("sistema", etiquetaSistema(sistema), "empresa", empresa), fase)
+                                .record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        private Timer temporizadorFase(Tags etiquetas, Fase fase) {
+                return Timer.builder(METRICA_FASE)
+                                .description("Tiempo de cada fase de la consulta de un producto")
+                                .tags(etiquetas)
+                                .tag("fase", fase.etiqueta)
+                                .register(registro);
+        }
+
+        private static String etiquetaSistema(TipoSistemaAspel sistema) {
+                return sistema != null ? sistema.name() : "DESCONOCIDO";
+        }
+
+        /**
+         * Usa la carpeta de la versión y la de la empresa para distinguir empresas con el mismo nombre en versiones
+         * diferentes sin exponer la ruta completa.
+         */
+        private static String nombreEmpresa(Path ruta) {
+                if (ruta == null || ruta.getFileName() == null) {
+                        return EMPRESA_DESCONOCIDA;
+                }
+                Path version = ruta.getParent() != null ? ruta.getParent().getFileName() : null;
+                return version != null ? version + "/" + ruta.getFileName() : ruta.getFileName().toString();
+        }
+
+        /**
+         * Operación medida; puede lanzar la excepción verificada de su tipo.
+         */
+        @FunctionalInterface
+        public interface Operacion<T, E extends Exception> {
+                T ejecutar() throws E;
+        }
+
+        /**
+         * Medición de una consulta en curso. Al cerrarla registra la duración total y la de cada fase utilizada.
+         */
+        public final class Medicion implements AutoCloseable {
+
+                private final String sistema;
+                private final Medicion anterior;
+                private final long inicio = System.nanoTime();
+                private final long[] nanosPorFase = new long[FASES.length];
+                private final boolean[] fasesUsadas = new boolean[FASES.length];
+                private Resultado resultado;
+                private String empresa = EMPRESA_DESCONOCIDA;
+
+                private Medicion(String sistema, Medicion anterior) {
+                        this.sistema = sistema;
+                        this.anterior = anterior;
+                }
+
+                /**
+                 * Indica el resultado de la consulta; solo se conserva el primero.
+                 */
+                public void concluir(Resultado resultado) {
+                        if (this.resultado == null) {
+                                this.resultado = resultado;
+                        }
+                }
+
+                private void acumular(Fase fase, long nanos) {
+                        nanosPorFase[fase.ordinal()] += nanos;
+                        fasesUsadas[fase.ordinal()] = true;
+                }
+
+                @Override
+                public void close() {
+                        long duracion = System.nanoTime() - inicio;
+                        if (anterior != null) {
+                                ACTUAL.set(anterior);
+                        } else {
+                                ACTUAL.remove();
+                        }
+                        Tags etiquetas = Tags.of("sistema", sistema, "empresa", empresa);
+                        Timer.builder(METRICA_CONSULTA)
+                                        .description("Tiempo total de la consulta de un producto")
+                                        .tags(etiquetas)
+                                        .tag("resultado", (resultado != null ? resultado : Resultado.ERROR).etiqueta)
+                                        .register(registro)
+                                        .record(duracion, TimeUnit.NANOSECONDS);
+                        for (Fase fase : FASES) {
+                                if (fasesUsadas[fase.ordinal()]) {
+                                        temporizadorFase(etiquetas, fase).record(nanosPorFase[fase.ordinal()], TimeUnit.NANOSECONDS);
+                                }
+                        }
+                }
+        }
+}
@@ -0,0 +1,137 @@
+package com.suprice.suprice.servicio;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tiempo límite de una consulta de producto. Mientras la consulta corre queda asociado a su hilo para que la espera
+ * de conexión y el {@code queryTimeout} de cada sentencia usen solo el tiempo restante; al vencer, las sentencias en
+ * curso se cancelan en el servidor.
+ */
+public final class PlazoConsulta {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(PlazoConsulta.class);
+        private static final ThreadLocal<PlazoConsulta> ACTUAL = new ThreadLocal<>();
+
+        private final long vencimientoNanos;
+        private final List<Statement> enCurso = new ArrayList<>();
+        private boolean cancelado;
+        private boolean terminado;
+
+        private PlazoConsulta(long vencimientoNanos) {
+                this.vencimientoNanos = vencimientoNanos;
+        }
+
+        /**
+         * Inicia un plazo que vence dentro de los milisegundos indicados.
+         */
+        public static PlazoConsulta iniciar(long milisegundos) {
+                return new PlazoConsulta(System.nanoTime() + Math.max(0, milisegundos) * 1_000_000L);
+        }
+
+        /**
+         * @return plazo de la consulta que se ejecuta en el hilo actual, si lo hay.
+         */
+        public static Optional<PlazoConsulta> actual() {
+                return Optional.ofNullable(ACTUAL.get());
+        }
+
+        /**
+         * @return {@code true} si el hilo actual atiende una consulta cuyo plazo ya venció o fue cancelada.
+         */
+        public static boolean vencidoEnHiloActual() {
+                PlazoConsulta plazo = ACTUAL.get();
+                return plazo != null && plazo.vencido();
+        }
+
+        /**
+         * Ejecuta la tarea con este plazo asociado al hilo actual y, al terminar, deja de cancelar sus sentencias.
+         */
+        public <T> T ejecutar(Supplier<T> tarea) {
+                ACTUAL.set(this);
+                try {
+                        if (vencido()) {
+                                throw new PlazoVencidoException();
+                        }
+                        return tarea.get();
+                } finally {
+                        ACTUAL.remove();
+                        terminar();
+                }
+        }
+
+        /**
+         * Deja de cancelar las sentencias registradas por la consulta del hilo actual. Debe llamarse antes de devolver
+         * su conexión al pool: las sentencias preparadas se comparten en caché con la conexión y, una vez devuelta, la
+         * cancelación alcanzaría a la consulta que la tome después.
+         */
+        public static void liberarSentenciasEnHiloActual() {
+                PlazoConsulta plazo = ACTUAL.get();
+                if (plazo != null) {
+                        plazo.liberarSentencias();
+                }
+        }
+
+        public long restanteMs() {
+                return Math.max(0, (vencimientoNanos - System.nanoTime()) / 1_000_000L);
+        }
+
+        /**
+         * @return segundos restantes redondeados hacia arriba, como espera {@link Statement#setQueryTimeout(int)}.
+         */
+        public int segundosRestantes() {
+                return (int) Math.max(1, (restanteMs() + 999) / 1000);
+        }
+
+        public synchronized boolean vencido() {
+                return cancelado || System.nanoTime() - vencimientoNanos >= 0;
+        }
+
+        /**
+         * Registra una sentencia que está por ejecutarse para cancelarla si el plazo vence antes de que termine.
+         */
+        public synchronized void registrar(Statement sentencia) throws SQLException {
+                if (terminado) {
+                        return;
+                }
+                if (cancelado) {
+                        sentencia.cancel();
+                        return;
+                }
+                enCurso.add(sentencia);
+        }
+
+        /**
+         * Cancela las sentencias registradas de una consulta que sigue en curso.
+         */
+        public synchronized void cancelar() {
+                if (terminado || cancelado) {
+                        return;
+                }
+                cancelado = true;
+                for (Statement sentencia : enCurso) {
+                        try {
+                                sentencia.cancel();
+                        } catch (SQLException | RuntimeException ex) {
+                                LOGGER.debug("No fue posible cancelar una sentencia vencida: {}", ex.getMessage());
+                        }
+                }
+                enCurso.clear();
+        }
+
+        private synchronized void liberarSentencias() {
+                enCurso.clear();
+        }
+
+        private synchronized void terminar() {
+                terminado = true;
+                enCurso.clear();
+        }
+}
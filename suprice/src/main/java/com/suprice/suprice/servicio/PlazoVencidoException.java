@@ -0,0 +1,17 @@
+package com.suprice.suprice.servicio;
+
+/**
+ * Indica que una consulta no terminó dentro de su {@link PlazoConsulta}; puede reintentarse.
+ */
+public class PlazoVencidoException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public PlazoVencidoException() {
+                super("La consulta excedió el tiempo máximo de espera");
+        }
+
+        public PlazoVencidoException(Throwable causa) {
+                super("La consulta excedió el tiempo máximo de espera", causa);
+        }
+}
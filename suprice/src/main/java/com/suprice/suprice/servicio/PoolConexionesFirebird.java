@@ -0,0 +1,180 @@
+package com.suprice.suprice.servicio;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.suprice.suprice.modelo.EstadisticaPoolDTO;
+import com.suprice.suprice.modelo.EstadisticasConexionesDTO;
+import com.suprice.suprice.util.UtilidadesRutas;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Mantiene un pool de conexiones Firebird por cada base de datos de empresa y un límite global compartido.
+ */
+@Component
+public class PoolConexionesFirebird {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(PoolConexionesFirebird.class);
+
+        private final String host;
+        private final String puerto;
+        private final String usuario;
+        private final String contrasena;
+
+        private final int maximoPorBase;
+        private final int maximoGlobal;
+        private final long inactividadMaximaMs;
+        private final long vidaMaximaMs;
+        private final long esperaConexionMs;
+
+        private final Semaphore permisosGlobales;
+        private final Map<Path, HikariDataSource> pools = new ConcurrentHashMap<>();
+
+        public PoolConexionesFirebird(@Value("${suprice.firebird.pool.maximo-por-base:4}") int maximoPorBase,
+                        @Value("${suprice.firebird.pool.maximo-global:32}") int maximoGlobal,
+                        @Value("${suprice.firebird.pool.inactividad-maxima-ms:300000}") long inactividadMaximaMs,
+                        @Value("${suprice.firebird.pool.vida-maxima-ms:1800000}") long vidaMaximaMs,
+                        @Value("${suprice.firebird.pool.espera-conexion-ms:5000}") long esperaConexionMs) {
+                this.host = System.getenv().getOrDefault("FIREBIRD_HOST", "localhost");
+                this.puerto = System.getenv().getOrDefault("FIREBIRD_PORT", "3050");
+                this.usuario = System.getenv().getOrDefault("FIREBIRD_USUARIO", "SYSDBA");
+                this.contrasena = System.getenv().getOrDefault("FIREBIRD_CONTRASENA", "masterkey");
+                this.maximoPorBase = Math.max(1, maximoPorBase);
+                this.maximoGlobal = Math.max(1, maximoGlobal);
+                this.inactividadMaximaMs = inactividadMaximaMs;
+                this.vidaMaximaMs = vidaMaximaMs;
+                this.esperaConexionMs = esperaConexionMs;
+                this.permisosGlobales = new Semaphore(this.maximoGlobal, true);
+        }
+
+        /**
+         * Obtiene una conexión del pool correspondiente a la base indicada. Al cerrarla se devuelve al pool y se
+         * libera su lugar dentro del límite global.
+         *
+         * @param rutaBd ruta del archivo {@code .fdb}.
+         * @return conexión lista para usarse.
+         * @throws SQLException cuando no es posible obtener una conexión dentro del tiempo de espera.
+         */
+        public Connection obtenerConexion(Path rutaBd) throws SQLException {
+                long espera = PlazoConsulta.actual().map(plazo -> Math.min(esperaConexionMs, plazo.restanteMs()))
+                                .orElse(esperaConexionMs);
+                try {
+                        if (!permisosGlobales.tryAcquire(espera, TimeUnit.MILLISECONDS)) {
+                                if (PlazoConsulta.vencidoEnHiloActual()) {
+                                        throw new SQLTimeoutException("El plazo de la consulta venció esperando una conexión Firebird");
+                                }
+                                throw new SQLTransientConnectionException(
+                                                "Se alcanzó el límite global de " + maximoGlobal + " conexiones Firebird");
+                        }
+                } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLTransientConnectionException("Espera de conexión Firebird interrumpida", ex);
+                }
+                try {
+                        HikariDataSource origen = pools.computeIfAbsent(rutaBd.toAbsolutePath().normalize(), this::crearPool);
+                        Connection conexion = origen.getConnection();
+                        if (PlazoConsulta.vencidoEnHiloActual()) {
+                                conexion.close();
+                                throw new SQLTimeoutException("El plazo de la consulta venció esperando una conexión Firebird");
+                        }
+                        return envolver(conexion);
+                } catch (SQLException | RuntimeException ex) {
+                        permisosGlobales.release();
+                        throw ex;
+                }
+        }
+
+        /**
+         * Resume el estado de cada pool para dimensionar los límites configurados.
+         *
+         * @return estadísticas globales y por base de datos.
+         */
+        public EstadisticasConexionesDTO obtenerEstadisticas() {
+                List<EstadisticaPoolDTO> estadisticas = pools.entrySet().stream()
+                                .map(entrada -> convertirEstadistica(entrada.getKey(), entrada.getValue()))
+                                .sorted(Comparator.comparing(EstadisticaPoolDTO::rutaBaseDatos))
+                                .toList();
+                return new EstadisticasConexionesDTO(maximoGlobal, maximoGlobal - permisosGlobales.availablePermits(),
+                                permisosGlobales.getQueueLength(), estadisticas);
+        }
+
+        @PreDestroy
+        public void cerrar() {
+                pools.values().forEach(HikariDataSource::close);
+                pools.clear();
+        }
+
+        private HikariDataSource crearPool(Path rutaBd) {
+                HikariConfig configuracion = new HikariConfig();
+                configuracion.setPoolName("firebird-" + rutaBd.getFileName());
+                configuracion.setDriverClassName("org.firebirdsql.jdbc.FBDriver");
+                configuracion.setJdbcUrl(String.format("jdbc:firebirdsql://%s:%s%s", host, puerto,
+                                UtilidadesRutas.normalizarParaConexion(rutaBd)));
+                configuracion.setUsername(usuario);
+                configuracion.setPassword(contrasena);
+                configuracion.addDataSourceProperty("encoding", "UTF8");
+                configuracion.addDataSourceProperty("connectTimeout", String.valueOf(Math.max(1, (esperaConexionMs + 999) / 1000)));
+                configuracion.setReadOnly(true);
+                configuracion.setMinimumIdle(0);
+                configuracion.setMaximumPoolSize(maximoPorBase);
+                configuracion.setIdleTimeout(inactividadMaximaMs);
+                configuracion.setMaxLifetime(vidaMaximaMs);
+                configuracion.setConnectionTimeout(esperaConexionMs);
+                LOGGER.info("Creando pool de conexiones Firebird para {} (máximo {})", rutaBd, maximoPorBase);
+                return new HikariDataSource(configuracion);
+        }
+
+        private Connection envolver(Connection conexion) {
+                AtomicBoolean liberada = new AtomicBoolean();
+                InvocationHandler manejador = (proxy, metodo, argumentos) -> {
+                        if ("close".equals(metodo.getName()) && metodo.getParameterCount() == 0) {
+                                try {
+                                        conexion.close();
+                                } finally {
+                                        if (liberada.compareAndSet(false, true)) {
+                                                permisosGlobales.release();
+                                        }
+                                }
+                                return null;
+                        }
+                        try {
+                                return metodo.invoke(conexion, argumentos);
+                        } catch (InvocationTargetException ex) {
+                                throw ex.getCause();
+                        }
+                };
+                return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                new Class<?>[] { Connection.class }, manejador);
+        }
+
+        private EstadisticaPoolDTO convertirEstadistica(Path rutaBd, HikariDataSource origen) {
+                HikariPoolMXBean pool = origen.getHikariPoolMXBean();
+                if (pool == null) {
+                        return new EstadisticaPoolDTO(rutaBd.toString(), maximoPorBase, 0, 0, 0, 0);
+                }
+                return new EstadisticaPoolDTO(rutaBd.toString(), maximoPorBase, pool.getActiveConnections(),
+                                pool.getIdleConnections(), pool.getTotalConnections(), pool.getThreadsAwaitingConnection());
+        }
+}
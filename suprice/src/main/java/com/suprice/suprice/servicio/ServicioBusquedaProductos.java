@@ -0,0 +1,308 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.suprice.suprice.modelo.CoincidenciaBusquedaDTO;
+import com.suprice.suprice.modelo.EstadisticaBusquedaDTO;
+import com.suprice.suprice.modelo.ResultadoBusquedaDTO;
+import com.suprice.suprice.modelo.SolicitudBusquedaProducto;
+import com.suprice.suprice.modelo.TipoSistemaAspel;
+import com.suprice.suprice.util.IndiceBusqueda;
+import com.suprice.suprice.util.UtilidadesRutas;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Busca productos por palabras de su descripción ({@code descr} en SAE, {@code descripcio} en Caja) o de su clave
+ * con un {@link IndiceBusqueda} en memoria por empresa, sin ejecutar {@code LIKE} en Firebird.
+ * <p>
+ * El índice se construye en segundo plano al primer uso; mientras tanto la búsqueda responde vacío. En SAE se
+ * incorporan los artículos modificados según la columna de cambios de {@code INVE} y el índice se reconstruye por
+ * completo cada {@code suprice.busqueda.intervalo-recarga-ms} (la única actualización en Aspel Caja), o antes si los
+ * cambios acumulados superan {@value #MAXIMO_CAMBIOS}.
+ * <p>
+ * Un artículo borrado de {@code INVE} no deja marca en la columna de cambios y contarlos en cada revisión recorrería
+ * la tabla completa en Firebird, por lo que los borrados se descartan en la reconstrucción completa; mientras tanto
+ * pueden aparecer en los resultados y su consulta por clave responde que no existe.
+ * <p>
+ * El tiempo de cada búsqueda se publica en {@code suprice.busqueda.productos}.
+ */
+@Service
+public class ServicioBusquedaProductos {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(ServicioBusquedaProductos.class);
+
+        public static final String METRICA_BUSQUEDA = "suprice.busqueda.productos";
+
+        private static final Pattern COLUMNA_VALIDA = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+        private static final int TAMANO_LECTURA = 2000;
+        private static final int MAXIMO_CAMBIOS = 10_000;
+        private static final int TAMANO_PAGINA = 20;
+
+        private final PoolConexionesFirebird poolConexiones;
+        private final ServicioRutasEmpresa servicioRutas;
+        private final MeterRegistry registro;
+        private final boolean habilitado;
+        private final int maximoEmpresas;
+        private final long intervaloRecargaMs;
+        private final String columnaMarcaSae;
+
+        private final Map<String, EstadoIndice> indices = new ConcurrentHashMap<>();
+        private final ExecutorService ejecutorCarga = Executors.newSingleThreadExecutor(tarea -> {
+                Thread hilo = new Thread(tarea, "busqueda-carga");
+                hilo.setDaemon(true);
+                return hilo;
+        });
+
+        public ServicioBusquedaProductos(PoolConexionesFirebird poolConexiones, ServicioRutasEmpresa servicioRutas,
+                        MeterRegistry registro, @Value("${suprice.busqueda.habilitado:true}") boolean habilitado,
+                        @Value("${suprice.busqueda.maximo-empresas:4}") int maximoEmpresas,
+                        @Value("${suprice.busqueda.intervalo-recarga-ms:900000}") long intervaloRecargaMs,
+                        @Value("${suprice.catalogo.columna-marca-sae:VERSION_SINC}") String columnaMarcaSae) {
+                this.poolConexiones = poolConexiones;
+                this.servicioRutas = servicioRutas;
+                this.registro = registro;
+                this.habilitado = habilitado;
+                this.maximoEmpresas = Math.max(1, maximoEmpresas);
+                this.intervaloRecargaMs = intervaloRecargaMs;
+                if (columnaMarcaSae != null && !columnaMarcaSae.isBlank()
+                                && !COLUMNA_VALIDA.matcher(columnaMarcaSae.trim()).matches()) {
+                        throw new IllegalArgumentException("Columna de cambios no válida: " + columnaMarcaSae);
+                }
+                this.columnaMarcaSae = columnaMarcaSae != null ? columnaMarcaSae.trim() : "";
+        }
+
+        public boolean estaHabilitada() {
+                return habilitado;
+        }
+
+        /**
+         * Localiza la base de datos de la empresa de la búsqueda.
+         *
+         * @return archivo {@code .fdb} o vacío si la empresa o el sufijo no son válidos.
+         */
+        public Optional<Path> localizarBaseDatos(SolicitudBusquedaProducto solicitud) {
+                Path rutaEmpresa = UtilidadesRutas.aPath(solicitud.rutaEmpresa());
+                if (rutaEmpresa == null) {
+                        return Optional.empty();
+                }
+                if (solicitud.sistema() == TipoSistemaAspel.SAE && !TablasSae.esSufijoPermitido(solicitud.sufijoTablas())) {
+                        LOGGER.warn("Sufijo de tablas no permitido: {}", solicitud.sufijoTablas());
+                        return Optional.empty();
+                }
+                return servicioRutas.localizarBaseDatos(rutaEmpresa);
+        }
+
+        /**
+         * Busca en el índice de la empresa. Si aún no existe, programa su construcción y responde vacío.
+         *
+         * @param solicitud búsqueda solicitada.
+         * @param rutaBd    archivo {@code .fdb} de la empresa.
+         * @return página de resultados o vacío mientras el índice se construye o si la búsqueda está deshabilitada.
+         */
+        public Optional<ResultadoBusquedaDTO> buscar(SolicitudBusquedaProducto solicitud, Path rutaBd) {
+                if (!habilitado) {
+                        return Optional.empty();
+                }
+                String sufijo = solicitud.sistema() == TipoSistemaAspel.SAE ? solicitud.sufijoTablas() : "";
+                EstadoIndice estado = indices.computeIfAbsent(solicitud.sistema() + "|" + rutaBd + "|" + sufijo,
+                                llave -> new EstadoIndice(solicitud.sistema(), rutaBd, sufijo));
+                estado.ultimoUso = System.currentTimeMillis();
+                IndiceBusqueda indice = estado.indice;
+                if (indice == null) {
+                        programar(estado);
+                        limitarEmpresas();
+                        return Optional.empty();
+                }
+                long inicio = System.nanoTime();
+                int tamano = solicitud.tamanoPagina() > 0 ? solicitud.tamanoPagina() : TAMANO_PAGINA;
+                IndiceBusqueda.Resultado resultado = indice.buscar(solicitud.texto(), solicitud.pagina() * tamano, tamano);
+                Timer.builder(METRICA_BUSQUEDA)
+                                .description("Tiempo de la búsqueda de productos por descripción")
+                                .tag("sistema", solicitud.sistema().name())
+                                .register(registro)
+                                .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+                return Optional.of(new ResultadoBusquedaDTO(resultado.total(), solicitud.pagina(), tamano,
+                                resultado.coincidencias().stream()
+                                                .map(coincidencia -> new CoincidenciaBusquedaDTO(coincidencia.codigo(),
+                                                                coincidencia.descripcion(), coincidencia.puntuacion()))
+                                                .toList()));
+        }
+
+        public List<EstadisticaBusquedaDTO> obtenerEstadisticas() {
+                return indices.values().stream()
+                                .map(estado -> {
+                                        IndiceBusqueda indice = estado.indice;
+                                        return new EstadisticaBusquedaDTO(estado.sistema, estado.rutaBd.toString(), estado.sufijo,
+                                                        indice != null, indice != null ? indice.articulos() : 0,
+                                                        indice != null ? indice.palabras() : 0, indice != null ? indice.cambios() : 0,
+                                                        estado.construidoEn, estado.marca != null ? estado.marca.toInstant() : null);
+                                })
+                                .sorted(Comparator.comparing(EstadisticaBusquedaDTO::rutaBaseDatos))
+                                .toList();
+        }
+
+        /**
+         * Incorpora los cambios recientes de cada índice o lo reconstruye cuando venció su vigencia.
+         */
+        @Scheduled(fixedDelayString = "${suprice.busqueda.intervalo-revision-ms:60000}",
+                        initialDelayString = "${suprice.busqueda.intervalo-revision-ms:60000}")
+        public void revisarCambios() {
+                if (!habilitado) {
+                        return;
+                }
+                indices.values().stream().filter(estado -> estado.indice != null).forEach(this::programar);
+        }
+
+        @PreDestroy
+        public void detener() {
+                ejecutorCarga.shutdownNow();
+        }
+
+        private void programar(EstadoIndice estado) {
+                if (!estado.enProceso.compareAndSet(false, true)) {
+                        return;
+                }
+                try {
+                        ejecutorCarga.execute(() -> {
+                                try (Connection conexion = poolConexiones.obtenerConexion(estado.rutaBd)) {
+                                        IndiceBusqueda actual = estado.indice;
+                                        if (actual == null || actual.cambios() > MAXIMO_CAMBIOS
+                                                        || System.currentTimeMillis() - estado.construidoEn.toEpochMilli() >= intervaloRecargaMs) {
+                                                construir(estado, conexion);
+                                        } else if (estado.sistema == TipoSistemaAspel.SAE) {
+                                                incorporarCambiosSae(estado, conexion);
+                                        }
+                                } catch (SQLException | RuntimeException ex) {
+                                        LOGGER.warn("No fue posible actualizar el índice de búsqueda de {}: {}", estado.rutaBd,
+                                                        ex.getMessage());
+                                } finally {
+                                        estado.enProceso.set(false);
+                                }
+                        });
+                } catch (RuntimeException ex) {
+                        estado.enProceso.set(false);
+                        LOGGER.warn("No fue posible programar el índice de búsqueda de {}: {}", estado.rutaBd, ex.getMessage());
+                }
+        }
+
+        private void construir(EstadoIndice estado, Connection conexion) throws SQLException {
+                long inicio = System.currentTimeMillis();
+                Timestamp marca = null;
+                String sql = "SELECT producto AS clave, descripcio AS descripcion FROM catinven";
+                if (estado.sistema == TipoSistemaAspel.SAE) {
+                        TablasSae tablas = TablasSae.conSufijo(estado.sufijo);
+                        marca = leerMarcaSae(conexion, tablas);
+                        sql = "SELECT cve_art AS clave, descr AS descripcion FROM " + tablas.productos();
+                }
+                IndiceBusqueda.Constructor constructor = IndiceBusqueda.constructor();
+                try (PreparedStatement ps = prepararLectura(conexion, sql); ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                                constructor.agregar(rs.getString("clave"), rs.getString("descripcion"));
+                        }
+                }
+                IndiceBusqueda indice = constructor.construir();
+                estado.indice = indice;
+                estado.marca = marca;
+                estado.construidoEn = Instant.now();
+                LOGGER.info("Índice de búsqueda {} de {} construido con {} artículos y {} palabras en {} ms", estado.sistema,
+                                estado.rutaBd, indice.articulos(), indice.palabras(), System.currentTimeMillis() - inicio);
+        }
+
+        /**
+         * Agrega al índice las descripciones de los artículos SAE modificados desde la última revisión.
+         */
+        private void incorporarCambiosSae(EstadoIndice estado, Connection conexion) throws SQLException {
+                Timestamp anterior = estado.marca;
+                if (anterior == null) {
+                        return;
+                }
+                TablasSae tablas = TablasSae.conSufijo(estado.sufijo);
+                Timestamp marca = leerMarcaSae(conexion, tablas);
+                if (marca == null || !marca.after(anterior)) {
+                        return;
+                }
+                Map<String, String> cambios = new HashMap<>();
+                String sql = "SELECT cve_art, descr FROM " + tablas.productos() + " WHERE " + columnaMarcaSae + " > ?";
+                try (PreparedStatement ps = prepararLectura(conexion, sql)) {
+                        ps.setTimestamp(1, anterior);
+                        try (ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) {
+                                        cambios.put(rs.getString("cve_art").trim(), rs.getString("descr"));
+                                }
+                        }
+                }
+                estado.indice = estado.indice.conCambios(cambios);
+                estado.marca = marca;
+        }
+
+        private Timestamp leerMarcaSae(Connection conexion, TablasSae tablas) {
+                if (columnaMarcaSae.isEmpty()) {
+                        return null;
+                }
+                String sql = "SELECT MAX(" + columnaMarcaSae + ") FROM " + tablas.productos();
+                try (PreparedStatement ps = conexion.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+                        return rs.next() ? rs.getTimestamp(1) : null;
+                } catch (SQLException ex) {
+                        LOGGER.debug("No se pudo leer la columna de cambios {} de {}: {}", columnaMarcaSae, tablas.productos(),
+                                        ex.getMessage());
+                        return null;
+                }
+        }
+
+        private PreparedStatement prepararLectura(Connection conexion, String sql) throws SQLException {
+                PreparedStatement ps = conexion.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(TAMANO_LECTURA);
+                return ps;
+        }
+
+        private void limitarEmpresas() {
+                while (indices.size() > maximoEmpresas) {
+                        indices.entrySet().stream()
+                                        .min(Comparator.comparingLong(entrada -> entrada.getValue().ultimoUso))
+                                        .ifPresent(entrada -> indices.remove(entrada.getKey()));
+                }
+        }
+
+        private static final class EstadoIndice {
+                private final TipoSistemaAspel sistema;
+                private final Path rutaBd;
+                private final String sufijo;
+                private final AtomicBoolean enProceso = new AtomicBoolean();
+                private volatile IndiceBusqueda indice;
+                private volatile Timestamp marca;
+                private volatile Instant construidoEn;
+                private volatile long ultimoUso = System.currentTimeMillis();
+
+                EstadoIndice(TipoSistemaAspel sistema, Path rutaBd, String sufijo) {
+                        this.sistema = sistema;
+                        this.rutaBd = rutaBd;
+                        this.sufijo = sufijo;
+                }
+        }
+}
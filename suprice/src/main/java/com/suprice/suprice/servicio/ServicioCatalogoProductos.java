@@ -0,0 +1,512 @@
+package com.suprice.suprice.servicio;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.suprice.suprice.modelo.EstadisticaCatalogoDTO;
+import com.suprice.suprice.modelo.TipoSistemaAspel;
+import com.suprice.suprice.servicio.InstantaneaCatalogo.Articulo;
+import com.suprice.suprice.servicio.InstantaneaCatalogo.PrecioLista;
+import com.suprice.suprice.util.UtilidadesDecimales;
+import com.suprice.suprice.util.UtilidadesRutas;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Mantiene instantáneas en memoria del catálogo de artículos de las empresas consultadas para responder sin
+ * consultar Firebird. Las existencias no forman parte de la instantánea y siempre se leen en vivo.
+ * <p>
+ * Cada instantánea se carga en segundo plano al primer uso (o al arrancar, si la empresa está en
+ * {@code suprice.catalogo.precargar}) y se mantiene vigente revisando periódicamente la columna de cambios de
+ * {@code INVE}; además se recarga por completo cada {@code suprice.catalogo.intervalo-recarga-ms}.
+ * <p>
+ * Con {@code suprice.catalogo.mapeado.habilitado} los artículos de cada recarga completa se escriben en un archivo
+ * nuevo de {@code suprice.catalogo.mapeado.carpeta} que se mapea en memoria y sustituye al anterior, de modo que los
+ * catálogos con millones de artículos no ocupan el heap.
+ */
+@Service
+public class ServicioCatalogoProductos {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(ServicioCatalogoProductos.class);
+
+        private static final Pattern COLUMNA_VALIDA = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+        private static final int TAMANO_LECTURA = 2000;
+
+        private final PoolConexionesFirebird poolConexiones;
+        private final ServicioRutasEmpresa servicioRutas;
+        private final boolean habilitado;
+        private final int maximoEmpresas;
+        private final long intervaloRecargaMs;
+        private final String columnaMarcaSae;
+        private final List<String> precargar;
+        private final boolean mapeado;
+        private final Path carpetaMapeados;
+
+        private final Map<String, EstadoCatalogo> catalogos = new ConcurrentHashMap<>();
+        private final ExecutorService ejecutorCarga = Executors.newSingleThreadExecutor(tarea -> {
+                Thread hilo = new Thread(tarea, "catalogo-carga");
+                hilo.setDaemon(true);
+                return hilo;
+        });
+
+        public ServicioCatalogoProductos(PoolConexionesFirebird poolConexiones, ServicioRutasEmpresa servicioRutas,
+                        @Value("${suprice.catalogo.habilitado:false}") boolean habilitado,
+                        @Value("${suprice.catalogo.maximo-empresas:4}") int maximoEmpresas,
+                        @Value("${suprice.catalogo.intervalo-recarga-ms:900000}") long intervaloRecargaMs,
+                        @Value("${suprice.catalogo.columna-marca-sae:VERSION_SINC}") String columnaMarcaSae,
+                        @Value("${suprice.catalogo.precargar:}") List<String> precargar,
+                        @Value("${suprice.catalogo.mapeado.habilitado:false}") boolean mapeado,
+                        @Value("${suprice.catalogo.mapeado.carpeta:catalogos}") String carpetaMapeados) {
+                this.poolConexiones = poolConexiones;
+                this.servicioRutas = servicioRutas;
+                this.habilitado = habilitado;
+                this.maximoEmpresas = Math.max(1, maximoEmpresas);
+                this.intervaloRecargaMs = intervaloRecargaMs;
+                if (columnaMarcaSae != null && !columnaMarcaSae.isBlank()
+                                && !COLUMNA_VALIDA.matcher(columnaMarcaSae.trim()).matches()) {
+                        throw new IllegalArgumentException("Columna de cambios no válida: " + columnaMarcaSae);
+                }
+                this.columnaMarcaSae = columnaMarcaSae != null ? columnaMarcaSae.trim() : "";
+                this.precargar = precargar;
+                this.mapeado = mapeado;
+                this.carpetaMapeados = Path.of(carpetaMapeados).toAbsolutePath();
+        }
+
+        /**
+         * Devuelve la instantánea vigente de la empresa. Si aún no existe, programa su carga y responde vacío para
+         * que la consulta continúe en vivo.
+         *
+         * @param sistema sistema Aspel.
+         * @param rutaBd  archivo {@code .fdb} de la empresa.
+         * @param sufijo  sufijo de tablas (solo SAE).
+         * @return instantánea cargada o vacío.
+         */
+        public Optional<InstantaneaCatalogo> obtener(TipoSistemaAspel sistema, Path rutaBd, String sufijo) {
+                if (!habilitado) {
+                        return Optional.empty();
+                }
+                EstadoCatalogo estado = catalogos.computeIfAbsent(clave(sistema, rutaBd, sufijo),
+                                llave -> new EstadoCatalogo(sistema, rutaBd, sistema == TipoSistemaAspel.SAE ? sufijo : ""));
+                estado.ultimoUso = System.currentTimeMillis();
+                InstantaneaCatalogo instantanea = estado.instantanea;
+                if (instantanea == null) {
+                        programar(estado);
+                        limitarEmpresas();
+                }
+                return Optional.ofNullable(instantanea);
+        }
+
+        public List<EstadisticaCatalogoDTO> obtenerEstadisticas() {
+                return catalogos.values().stream()
+                                .map(estado -> {
+                                        InstantaneaCatalogo instantanea = estado.instantanea;
+                                        return new EstadisticaCatalogoDTO(estado.sistema, estado.rutaBd.toString(), estado.sufijo,
+                                                        instantanea != null, instantanea != null ? instantanea.articulos().tamano() : 0,
+                                                        instantanea != null ? instantanea.esquemas().size() : 0,
+                                                        instantanea != null ? instantanea.cargadaEn() : null,
+                                                        instantanea != null && instantanea.marca() != null
+                                                                        ? instantanea.marca().toInstant()
+                                                                        : null,
+                                                        instantanea != null && instantanea.articulos().archivo() != null
+                                                                        ? instantanea.articulos().archivo().toString()
+                                                                        : null);
+                                })
+                                .sorted(Comparator.comparing(EstadisticaCatalogoDTO::rutaBaseDatos))
+                                .toList();
+        }
+
+        @EventListener(ApplicationReadyEvent.class)
+        public void precargarEmpresas() {
+                if (!habilitado) {
+                        return;
+                }
+                for (String entrada : precargar) {
+                        String[] partes = entrada.trim().split("\\|");
+                        if (partes.length < 2) {
+                                LOGGER.warn("Entrada de precarga de catálogo no válida: {}", entrada);
+                                continue;
+                        }
+                        try {
+                                TipoSistemaAspel sistema = TipoSistemaAspel.valueOf(partes[0].trim().toUpperCase());
+                                String sufijo = partes.length > 2 ? partes[2].trim() : "";
+                                Path rutaEmpresa = UtilidadesRutas.aPath(partes[1].trim());
+                                if (rutaEmpresa == null || (sistema == TipoSistemaAspel.SAE && !TablasSae.esSufijoPermitido(sufijo))) {
+                                        LOGGER.warn("Entrada de precarga de catálogo no válida: {}", entrada);
+                                        continue;
+                                }
+                                servicioRutas.localizarBaseDatos(rutaEmpresa)
+                                                .ifPresentOrElse(rutaBd -> obtener(sistema, rutaBd, sufijo),
+                                                                () -> LOGGER.warn("No se localizó base de datos para precargar {}", rutaEmpresa));
+                        } catch (IllegalArgumentException ex) {
+                                LOGGER.warn("Entrada de precarga de catálogo no válida: {}", entrada);
+                        }
+                }
+        }
+
+        /**
+         * Revisa periódicamente si las instantáneas cargadas deben actualizarse.
+         */
+        @Scheduled(fixedDelayString = "${suprice.catalogo.intervalo-revision-ms:60000}",
+                        initialDelayString = "${suprice.catalogo.intervalo-revision-ms:60000}")
+        public void revisarCambios() {
+                if (!habilitado) {
+                        return;
+                }
+                catalogos.values().stream().filter(estado -> estado.instantanea != null).forEach(this::programar);
+        }
+
+        @PreDestroy
+        public void detener() {
+                ejecutorCarga.shutdownNow();
+        }
+
+        private void programar(EstadoCatalogo estado) {
+                if (!estado.enProceso.compareAndSet(false, true)) {
+                        return;
+                }
+                try {
+                        ejecutorCarga.execute(() -> {
+                                try {
+                                        actualizar(estado);
+                                } finally {
+                                        estado.enProceso.set(false);
+                                }
+                        });
+                } catch (RuntimeException ex) {
+                        estado.enProceso.set(false);
+                        LOGGER.warn("No fue posible programar la carga del catálogo {}: {}", estado.rutaBd, ex.getMessage());
+                }
+        }
+
+        private void actualizar(EstadoCatalogo estado) {
+                InstantaneaCatalogo anterior = estado.instantanea;
+                long inicio = System.currentTimeMillis();
+                try (Connection conexion = poolConexiones.obtenerConexion(estado.rutaBd)) {
+                        boolean recargar = anterior == null
+                                        || inicio - anterior.cargadaEn().toEpochMilli() >= intervaloRecargaMs;
+                        InstantaneaCatalogo nueva;
+                        if (estado.sistema == TipoSistemaAspel.SAE) {
+                                TablasSae tablas = TablasSae.conSufijo(estado.sufijo);
+                                nueva = recargar ? cargarSae(conexion, tablas, estado) : actualizarSae(conexion, tablas, anterior);
+                        } else {
+                                nueva = recargar ? cargarCaja(conexion, estado) : anterior;
+                        }
+                        if (nueva != anterior) {
+                                estado.instantanea = nueva;
+                                LOGGER.info("Catálogo {} de {} {} con {} artículos en {} ms", estado.sistema, estado.rutaBd,
+                                                recargar ? "cargado" : "actualizado", nueva.articulos().tamano(),
+                                                System.currentTimeMillis() - inicio);
+                                if (mapeado) {
+                                        eliminarArchivosSinUso();
+                                }
+                        }
+                } catch (SQLException | IOException | RuntimeException ex) {
+                        LOGGER.warn("No fue posible cargar el catálogo {} de {}: {}", estado.sistema, estado.rutaBd,
+                                        ex.getMessage());
+                }
+        }
+
+        private InstantaneaCatalogo cargarSae(Connection conexion, TablasSae tablas, EstadoCatalogo estado)
+                        throws SQLException, IOException {
+                Timestamp marca = leerMarcaSae(conexion, tablas);
+                ArticulosCatalogo articulos = construirArticulos(estado,
+                                receptor -> leerArticulosSae(conexion, tablas, null, receptor));
+                return new InstantaneaCatalogo(articulos, leerEsquemasSae(conexion, tablas), marca, Instant.now());
+        }
+
+        /**
+         * Entrega los artículos leídos a un mapa en el heap o, con el catálogo mapeado, a un archivo nuevo que se
+         * publica de forma atómica al terminar.
+         */
+        private ArticulosCatalogo construirArticulos(EstadoCatalogo estado, LectorArticulos lector)
+                        throws SQLException, IOException {
+                if (!mapeado) {
+                        Map<String, Articulo> articulos = new HashMap<>();
+                        lector.leer(articulo -> articulos.put(articulo.codigo().trim(), articulo));
+                        return ArticulosCatalogo.enMemoria(Collections.unmodifiableMap(articulos));
+                }
+                try (CatalogoMapeado.Escritor escritor = CatalogoMapeado.escritor(carpetaMapeados, prefijoArchivo(estado))) {
+                        lector.leer(escritor::agregar);
+                        return escritor.terminar();
+                }
+        }
+
+        /**
+         * Elimina los archivos de catálogo que ya no respaldan ninguna instantánea. En Windows un archivo sigue
+         * bloqueado mientras alguna consulta en curso lo tenga mapeado; en ese caso se reintenta en la siguiente
+         * actualización.
+         */
+        private void eliminarArchivosSinUso() {
+                Set<Path> enUso = catalogos.values().stream()
+                                .map(estado -> estado.instantanea)
+                                .filter(Objects::nonNull)
+                                .map(instantanea -> instantanea.articulos().archivo())
+                                .filter(Objects::nonNull)
+                                .collect(Collectors.toSet());
+                try (DirectoryStream<Path> archivos = Files.newDirectoryStream(carpetaMapeados,
+                                "*" + CatalogoMapeado.EXTENSION)) {
+                        for (Path archivo : archivos) {
+                                if (!enUso.contains(archivo)) {
+                                        try {
+                                                Files.deleteIfExists(archivo);
+                                        } catch (IOException ex) {
+                                                LOGGER.debug("No se pudo eliminar el catálogo anterior {}: {}", archivo, ex.getMessage());
+                                        }
+                                }
+                        }
+                } catch (IOException ex) {
+                        LOGGER.debug("No se pudo revisar la carpeta de catálogos {}: {}", carpetaMapeados, ex.getMessage());
+                }
+        }
+
+        private static String prefijoArchivo(EstadoCatalogo estado) {
+                return estado.sistema.name().toLowerCase() + "-"
+                                + Integer.toHexString(clave(estado.sistema, estado.rutaBd, estado.sufijo).hashCode());
+        }
+
+        private InstantaneaCatalogo actualizarSae(Connection conexion, TablasSae tablas, InstantaneaCatalogo anterior)
+                        throws SQLException, IOException {
+                if (anterior.marca() == null) {
+                        return anterior;
+                }
+                Timestamp marca = leerMarcaSae(conexion, tablas);
+                if (marca == null || !marca.after(anterior.marca())) {
+                        return anterior;
+                }
+                Map<String, Articulo> cambios = new HashMap<>();
+                leerArticulosSae(conexion, tablas, anterior.marca(), articulo -> cambios.put(articulo.codigo().trim(), articulo));
+                return new InstantaneaCatalogo(anterior.articulos().conCambios(cambios), leerEsquemasSae(conexion, tablas),
+                                marca, anterior.cargadaEn());
+        }
+
+        private Timestamp leerMarcaSae(Connection conexion, TablasSae tablas) {
+                if (columnaMarcaSae.isEmpty()) {
+                        return null;
+                }
+                String sql = "SELECT MAX(" + columnaMarcaSae + ") FROM " + tablas.productos();
+                try (PreparedStatement ps = conexion.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+                        return rs.next() ? rs.getTimestamp(1) : null;
+                } catch (SQLException ex) {
+                        LOGGER.debug("No se pudo leer la columna de cambios {} de {}: {}", columnaMarcaSae, tablas.productos(),
+                                        ex.getMessage());
+                        return null;
+                }
+        }
+
+        /**
+         * Lee los artículos SAE con sus precios y claves alternas. Cuando se indica {@code desde}, solo se leen los
+         * artículos cuya columna de cambios es posterior a ese valor.
+         * <p>
+         * Artículos, precios y claves alternas se recorren con tres cursores ordenados por {@code cve_art} y se unen
+         * renglón por renglón, de modo que cada artículo se entrega al receptor en cuanto se completa, sin acumular
+         * tablas en el heap. Los detalles se unen con el artículo y se ordenan por su {@code cve_art}, con la misma
+         * intercalación que el cursor principal. Los cursores se abren en una transacción de solo lectura porque en
+         * autocommit Jaybird cierra los cursores abiertos al ejecutar otra sentencia.
+         */
+        private void leerArticulosSae(Connection conexion, TablasSae tablas, Timestamp desde, ReceptorArticulos receptor)
+                        throws SQLException, IOException {
+                String filtro = desde != null ? " WHERE i." + columnaMarcaSae + " > ?" : "";
+                String sqlArticulos = "SELECT i.cve_art, i.descr, i.cve_esqimpu, i.cve_imagen FROM " + tablas.productos() + " i"
+                                + filtro + " ORDER BY i.cve_art";
+                String sqlPrecios = "SELECT i.cve_art, p.cve_precio, p.precio FROM " + tablas.precios() + " p JOIN "
+                                + tablas.productos() + " i ON i.cve_art = p.cve_art" + filtro + " ORDER BY i.cve_art, p.cve_precio";
+                String sqlAlternos = "SELECT i.cve_art, a.cve_alter FROM " + tablas.alternos() + " a JOIN "
+                                + tablas.productos() + " i ON i.cve_art = a.cve_art" + filtro + " ORDER BY i.cve_art";
+                boolean autoCommit = conexion.getAutoCommit();
+                conexion.setAutoCommit(false);
+                try (PreparedStatement psArticulos = prepararLectura(conexion, sqlArticulos, desde);
+                                PreparedStatement psPrecios = prepararLectura(conexion, sqlPrecios, desde);
+                                PreparedStatement psAlternos = prepararLectura(conexion, sqlAlternos, desde);
+                                ResultSet articulos = psArticulos.executeQuery();
+                                ResultSet rsPrecios = psPrecios.executeQuery();
+                                ResultSet rsAlternos = psAlternos.executeQuery()) {
+                        CursorDetalle<PrecioLista> precios = new CursorDetalle<>(rsPrecios, rs -> {
+                                BigDecimal precio = UtilidadesDecimales.normalizarDouble(rs.getBigDecimal("precio"));
+                                return new PrecioLista(rs.getInt("cve_precio"), precio != null ? precio : BigDecimal.ZERO);
+                        });
+                        CursorDetalle<String> alternos = new CursorDetalle<>(rsAlternos, rs -> {
+                                String alterno = rs.getString("cve_alter");
+                                return alterno != null && !alterno.isBlank() ? alterno.trim() : null;
+                        });
+                        while (articulos.next()) {
+                                String codigo = articulos.getString("cve_art");
+                                String clave = codigo.trim();
+                                receptor.agregar(new Articulo(codigo, articulos.getString("descr"),
+                                                articulos.getString("cve_esqimpu"), articulos.getString("cve_imagen"),
+                                                alternos.tomar(clave), precios.tomar(clave)));
+                        }
+                } finally {
+                        conexion.setAutoCommit(autoCommit);
+                }
+        }
+
+        private Map<String, EsquemaImpuestos> leerEsquemasSae(Connection conexion, TablasSae tablas) throws SQLException {
+                String sql = "SELECT cve_esqimpu, impuesto1, impuesto2, impuesto3, impuesto4, imp1aplica, imp2aplica, imp3aplica, imp4aplica FROM "
+                                + tablas.impuestos();
+                Map<String, EsquemaImpuestos> esquemas = new HashMap<>();
+                try (PreparedStatement ps = conexion.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                                esquemas.put(rs.getString("cve_esqimpu").trim(), EsquemaImpuestos.desdeSae(rs));
+                        }
+                }
+                return Map.copyOf(esquemas);
+        }
+
+        private InstantaneaCatalogo cargarCaja(Connection conexion, EstadoCatalogo estado)
+                        throws SQLException, IOException {
+                ArticulosCatalogo articulos = construirArticulos(estado, receptor -> leerArticulosCaja(conexion, receptor));
+                Map<String, EsquemaImpuestos> esquemas = new HashMap<>();
+                String sqlEsquemas = "SELECT clave, porcen1, porcen2, porcen3, porcen4, aplica1, aplica2, aplica3, aplica4 FROM esqimp";
+                try (PreparedStatement ps = conexion.prepareStatement(sqlEsquemas); ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                                esquemas.put(rs.getString("clave").trim(), EsquemaImpuestos.desdeCaja(rs));
+                        }
+                }
+                return new InstantaneaCatalogo(articulos, Map.copyOf(esquemas), null, Instant.now());
+        }
+
+        private void leerArticulosCaja(Connection conexion, ReceptorArticulos receptor) throws SQLException, IOException {
+                String sql = "SELECT producto, descripcio, esqimp, clvalter1, clvalter2, clvalter3, preciop, precio2, precio3, precio4, imagen FROM catinven";
+                try (PreparedStatement ps = prepararLectura(conexion, sql, null); ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                                List<String> alternos = new ArrayList<>(3);
+                                for (String columna : List.of("clvalter1", "clvalter2", "clvalter3")) {
+                                        String valor = rs.getString(columna);
+                                        if (valor != null && !valor.isBlank()) {
+                                                alternos.add(valor.trim());
+                                        }
+                                }
+                                List<PrecioLista> precios = new ArrayList<>(4);
+                                List<String> columnasPrecio = List.of("preciop", "precio2", "precio3", "precio4");
+                                for (int i = 0; i < columnasPrecio.size(); i++) {
+                                        BigDecimal precio = UtilidadesDecimales
+                                                        .normalizarDouble(rs.getBigDecimal(columnasPrecio.get(i)));
+                                        precios.add(new PrecioLista(i + 1, precio != null ? precio : BigDecimal.ZERO));
+                                }
+                                receptor.agregar(new Articulo(rs.getString("producto"), rs.getString("descripcio"),
+                                                rs.getString("esqimp"), rs.getString("imagen"), List.copyOf(alternos),
+                                                List.copyOf(precios)));
+                        }
+                }
+        }
+
+        private PreparedStatement prepararLectura(Connection conexion, String sql, Timestamp desde) throws SQLException {
+                PreparedStatement ps = conexion.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(TAMANO_LECTURA);
+                if (desde != null) {
+                        ps.setTimestamp(1, desde);
+                }
+                return ps;
+        }
+
+        private void limitarEmpresas() {
+                while (catalogos.size() > maximoEmpresas) {
+                        catalogos.entrySet().stream()
+                                        .min(Comparator.comparingLong(entrada -> entrada.getValue().ultimoUso))
+                                        .ifPresent(entrada -> catalogos.remove(entrada.getKey()));
+                }
+        }
+
+        private static String clave(TipoSistemaAspel sistema, Path rutaBd, String sufijo) {
+                return sistema + "|" + rutaBd + "|" + (sistema == TipoSistemaAspel.SAE ? sufijo : "");
+        }
+
+        @FunctionalInterface
+        private interface LectorRenglon<T> {
+                T leer(ResultSet rs) throws SQLException;
+        }
+
+        /**
+         * Cursor de detalle ordenado por {@code cve_art} que avanza a la par del cursor de artículos.
+         */
+        private static final class CursorDetalle<T> {
+                private final ResultSet rs;
+                private final LectorRenglon<T> lector;
+                private String claveActual;
+
+                CursorDetalle(ResultSet rs, LectorRenglon<T> lector) throws SQLException {
+                        this.rs = rs;
+                        this.lector = lector;
+                        avanzar();
+                }
+
+                /**
+                 * Toma los renglones del artículo indicado; si el cursor ya va en otro artículo devuelve una lista vacía.
+                 */
+                List<T> tomar(String clave) throws SQLException {
+                        if (claveActual == null || !claveActual.equals(clave)) {
+                                return List.of();
+                        }
+                        List<T> renglones = new ArrayList<>();
+                        while (claveActual != null && claveActual.equals(clave)) {
+                                T renglon = lector.leer(rs);
+                                if (renglon != null) {
+                                        renglones.add(renglon);
+                                }
+                                avanzar();
+                        }
+                        return List.copyOf(renglones);
+                }
+
+                private void avanzar() throws SQLException {
+                        claveActual = rs.next() ? rs.getString("cve_art").trim() : null;
+                }
+        }
+
+        @FunctionalInterface
+        private interface ReceptorArticulos {
+                void agregar(Articulo articulo) throws IOException;
+        }
+
+        @FunctionalInterface
+        private interface LectorArticulos {
+                void leer(ReceptorArticulos receptor) throws SQLException, IOException;
+        }
+
+        private static final class EstadoCatalogo {
+                private final TipoSistemaAspel sistema;
+                private final Path rutaBd;
+                private final String sufijo;
+                private final AtomicBoolean enProceso = new AtomicBoolean();
+                private volatile InstantaneaCatalogo instantanea;
+                private volatile long ultimoUso = System.currentTimeMillis();
+
+                EstadoCatalogo(TipoSistemaAspel sistema, Path rutaBd, String sufijo) {
+                        this.sistema = sistema;
+                        this.rutaBd = rutaBd;
+                        this.sufijo = sufijo;
+                }
+        }
+}
@@ -0,0 +1,377 @@
+package com.suprice.suprice.servicio;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.suprice.suprice.modelo.EstadisticaClavesAlternasDTO;
+import com.suprice.suprice.modelo.TipoSistemaAspel;
+import com.suprice.suprice.util.IndiceHashCompacto;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Resuelve códigos de barras y claves alternas hacia la clave principal del artículo mediante un índice en memoria
+ * por empresa, construido a partir de {@code CVES_ALTER} (SAE) o de {@code clvalter1..3} (Caja).
+ * <p>
+ * La primera consulta que necesita el índice programa su construcción en segundo plano, de modo que no espera la
+ * lectura completa de la tabla ni ocupa su conexión con ella. Mientras tanto, SAE resuelve con una consulta por
+ * igualdad sobre {@code CVES_ALTER} y Caja responde con {@link IndiceEnPreparacionException}. Después el índice se
+ * mantiene en segundo plano: en SAE se agregan las claves de los artículos modificados según la columna de cambios de
+ * {@code INVE} y, para claves aún desconocidas, se consulta {@code CVES_ALTER} por igualdad. Periódicamente se
+ * reconstruye completo para descartar claves eliminadas. Nunca se ejecutan búsquedas con {@code LIKE} ni recorridos
+ * por clave alterna.
+ */
+@Service
+public class ServicioClavesAlternas {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(ServicioClavesAlternas.class);
+
+        private static final Pattern COLUMNA_VALIDA = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+        private static final int TAMANO_LECTURA = 2000;
+        private static final int MAXIMO_RECIENTES = 10_000;
+        private static final long REINTENTAR_EN_SEGUNDOS = 2;
+
+        private final PoolConexionesFirebird poolConexiones;
+        private final CacheSentenciasPreparadas sentencias;
+        private final boolean habilitado;
+        private final int maximoEmpresas;
+        private final long intervaloRecargaMs;
+        private final String columnaMarcaSae;
+
+        private final Map<String, EstadoIndice> indices = new ConcurrentHashMap<>();
+        private final ExecutorService ejecutorCarga = Executors.newSingleThreadExecutor(tarea -> {
+                Thread hilo = new Thread(tarea, "claves-alternas-carga");
+                hilo.setDaemon(true);
+                return hilo;
+        });
+
+        public ServicioClavesAlternas(PoolConexionesFirebird poolConexiones, CacheSentenciasPreparadas sentencias,
+                        @Value("${suprice.claves-alternas.habilitado:true}") boolean habilitado,
+                        @Value("${suprice.claves-alternas.maximo-empresas:8}") int maximoEmpresas,
+                        @Value("${suprice.claves-alternas.intervalo-recarga-ms:900000}") long intervaloRecargaMs,
+                        @Value("${suprice.catalogo.columna-marca-sae:VERSION_SINC}") String columnaMarcaSae) {
+                this.poolConexiones = poolConexiones;
+                this.sentencias = sentencias;
+                this.habilitado = habilitado;
+                this.maximoEmpresas = Math.max(1, maximoEmpresas);
+                this.intervaloRecargaMs = intervaloRecargaMs;
+                if (columnaMarcaSae != null && !columnaMarcaSae.isBlank()
+                                && !COLUMNA_VALIDA.matcher(columnaMarcaSae.trim()).matches()) {
+                        throw new IllegalArgumentException("Columna de cambios no válida: " + columnaMarcaSae);
+                }
+                this.columnaMarcaSae = columnaMarcaSae != null ? columnaMarcaSae.trim() : "";
+        }
+
+        /**
+         * Obtiene la clave principal SAE asociada a una clave alterna.
+         *
+         * @param rutaBd   archivo {@code .fdb} de la empresa.
+         * @param tablas   tablas SAE de la empresa.
+         * @param conexion conexión abierta para consultar una clave desconocida.
+         * @param clave    código capturado.
+         * @return clave principal o vacío si la clave alterna no existe.
+         * @throws SQLException cuando Firebird no responde.
+         */
+        public Optional<String> resolverSae(Path rutaBd, TablasSae tablas, Connection conexion, String clave)
+                        throws SQLException {
+                if (!habilitado || clave == null || clave.isBlank()) {
+                        return Optional.empty();
+                }
+                String buscada = clave.trim();
+                EstadoIndice estado = obtenerEstado(TipoSistemaAspel.SAE, rutaBd, tablas.alternos(), tablas.productos());
+                asegurarIndice(estado);
+                String principal = estado.buscar(buscada);
+                if (principal != null) {
+                        return Optional.of(principal);
+                }
+                String sql = "SELECT cve_art FROM " + tablas.alternos() + " WHERE cve_alter = ?";
+                PreparedStatement ps = sentencias.preparar(conexion, sql);
+                ps.setString(1, buscada);
+                try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                                principal = rs.getString("cve_art").trim();
+                                estado.agregarReciente(buscada, principal);
+                        }
+                }
+                return Optional.ofNullable(principal);
+        }
+
+        /**
+         * Obtiene la clave principal de Aspel Caja asociada a una clave alterna. Las columnas {@code clvalter1..3} no
+         * están indexadas en Firebird, por lo que solo se responde desde el índice en memoria.
+         *
+         * @param rutaBd archivo {@code .fdb} de la empresa.
+         * @param clave  código capturado.
+         * @return clave principal o vacío si la clave alterna no existe.
+         * @throws IndiceEnPreparacionException mientras el índice de la empresa se construye.
+         */
+        public Optional<String> resolverCaja(Path rutaBd, String clave) {
+                if (!habilitado || clave == null || clave.isBlank()) {
+                        return Optional.empty();
+                }
+                EstadoIndice estado = obtenerEstado(TipoSistemaAspel.CAJA, rutaBd, "catinven", "catinven");
+                if (!asegurarIndice(estado)) {
+                        throw new IndiceEnPreparacionException("claves alternas", rutaBd, REINTENTAR_EN_SEGUNDOS);
+                }
+                return Optional.ofNullable(estado.buscar(clave.trim()));
+        }
+
+        /**
+         * Resuelve desde el índice en memoria las claves alternas SAE de un bloque de códigos, sin consultar Firebird.
+         *
+         * @return clave principal de cada código encontrado, o vacío si el índice de la empresa aún no está listo.
+         */
+        public Optional<Map<String, String>> resolverEnIndiceSae(Path rutaBd, TablasSae tablas, Collection<String> claves) {
+                return resolverEnIndice(obtenerEstado(TipoSistemaAspel.SAE, rutaBd, tablas.alternos(), tablas.productos()),
+                                claves);
+        }
+
+        /**
+         * Resuelve desde el índice en memoria las claves alternas Caja de un bloque de códigos, sin consultar Firebird.
+         *
+         * @return clave principal de cada código encontrado, o vacío si el índice de la empresa aún no está listo.
+         */
+        public Optional<Map<String, String>> resolverEnIndiceCaja(Path rutaBd, Collection<String> claves) {
+                return resolverEnIndice(obtenerEstado(TipoSistemaAspel.CAJA, rutaBd, "catinven", "catinven"), claves);
+        }
+
+        private Optional<Map<String, String>> resolverEnIndice(EstadoIndice estado, Collection<String> claves) {
+                if (!habilitado) {
+                        return Optional.of(Map.of());
+                }
+                if (!asegurarIndice(estado)) {
+                        return Optional.empty();
+                }
+                Map<String, String> principales = new HashMap<>();
+                for (String clave : claves) {
+                        String principal = clave != null && !clave.isBlank() ? estado.buscar(clave.trim()) : null;
+                        if (principal != null) {
+                                principales.put(clave, principal);
+                        }
+                }
+                return Optional.of(principales);
+        }
+
+        public List<EstadisticaClavesAlternasDTO> obtenerEstadisticas() {
+                return indices.values().stream()
+                                .map(estado -> new EstadisticaClavesAlternasDTO(estado.sistema, estado.rutaBd.toString(),
+                                                estado.tabla, estado.indice != null ? estado.indice.tamano() : 0,
+                                                estado.recientes.size(), estado.construidoEn,
+                                                estado.marca != null ? estado.marca.toInstant() : null))
+                                .sorted(Comparator.comparing(EstadisticaClavesAlternasDTO::rutaBaseDatos))
+                                .toList();
+        }
+
+        /**
+         * Incorpora los cambios recientes de cada índice o lo reconstruye cuando venció su vigencia.
+         */
+        @Scheduled(fixedDelayString = "${suprice.claves-alternas.intervalo-revision-ms:60000}",
+                        initialDelayString = "${suprice.claves-alternas.intervalo-revision-ms:60000}")
+        public void revisarCambios() {
+                indices.values().stream().filter(estado -> estado.indice != null).forEach(this::programar);
+        }
+
+        @PreDestroy
+        public void detener() {
+                ejecutorCarga.shutdownNow();
+        }
+
+        private EstadoIndice obtenerEstado(TipoSistemaAspel sistema, Path rutaBd, String tabla, String tablaProductos) {
+                EstadoIndice estado = indices.computeIfAbsent(sistema + "|" + rutaBd + "|" + tabla,
+                                llave -> new EstadoIndice(sistema, rutaBd, tabla, tablaProductos));
+                estado.ultimoUso = System.currentTimeMillis();
+                if (indices.size() > maximoEmpresas) {
+                        limitarEmpresas();
+                }
+                return estado;
+        }
+
+        /**
+         * @return {@code true} si el índice de la empresa está listo; si no, programa su construcción.
+         */
+        private boolean asegurarIndice(EstadoIndice estado) {
+                if (estado.indice != null) {
+                        return true;
+                }
+                programar(estado);
+                return false;
+        }
+
+        private void programar(EstadoIndice estado) {
+                if (!estado.enProceso.compareAndSet(false, true)) {
+                        return;
+                }
+                try {
+                        ejecutorCarga.execute(() -> {
+                                try (Connection conexion = poolConexiones.obtenerConexion(estado.rutaBd)) {
+                                        if (estado.indice == null
+                                                        || System.currentTimeMillis() - estado.construidoEn.toEpochMilli() >= intervaloRecargaMs) {
+                                                construir(estado, conexion);
+                                        } else if (estado.sistema == TipoSistemaAspel.SAE) {
+                                                incorporarCambiosSae(estado, conexion);
+                                        }
+                                } catch (SQLException | RuntimeException ex) {
+                                        LOGGER.warn("No fue posible actualizar las claves alternas de {}: {}", estado.rutaBd,
+                                                        ex.getMessage());
+                                } finally {
+                                        estado.enProceso.set(false);
+                                }
+                        });
+                } catch (RuntimeException ex) {
+                        estado.enProceso.set(false);
+                        LOGGER.warn("No fue posible programar las claves alternas de {}: {}", estado.rutaBd, ex.getMessage());
+                }
+        }
+
+        private void construir(EstadoIndice estado, Connection conexion) throws SQLException {
+                long inicio = System.currentTimeMillis();
+                Timestamp marca = estado.sistema == TipoSistemaAspel.SAE ? leerMarcaSae(conexion, estado.tablaProductos) : null;
+                IndiceHashCompacto.Constructor constructor = IndiceHashCompacto.constructor();
+                if (estado.sistema == TipoSistemaAspel.SAE) {
+                        String sql = "SELECT cve_alter, cve_art FROM " + estado.tabla;
+                        try (PreparedStatement ps = prepararLectura(conexion, sql); ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) {
+                                        agregar(constructor, rs.getString("cve_alter"), rs.getString("cve_art"));
+                                }
+                        }
+                } else {
+                        String sql = "SELECT producto, clvalter1, clvalter2, clvalter3 FROM catinven"
+                                        + " WHERE clvalter1 IS NOT NULL OR clvalter2 IS NOT NULL OR clvalter3 IS NOT NULL";
+                        try (PreparedStatement ps = prepararLectura(conexion, sql); ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) {
+                                        String producto = rs.getString("producto");
+                                        agregar(constructor, rs.getString("clvalter1"), producto);
+                                        agregar(constructor, rs.getString("clvalter2"), producto);
+                                        agregar(constructor, rs.getString("clvalter3"), producto);
+                                }
+                        }
+                }
+                IndiceHashCompacto indice = constructor.construir();
+                estado.reemplazar(indice, marca);
+                LOGGER.info("Índice de claves alternas {} de {} construido con {} claves en {} ms", estado.sistema,
+                                estado.rutaBd, indice.tamano(), System.currentTimeMillis() - inicio);
+        }
+
+        /**
+         * Agrega al índice las claves alternas de los artículos SAE modificados desde la última revisión.
+         */
+        private void incorporarCambiosSae(EstadoIndice estado, Connection conexion) throws SQLException {
+                Timestamp anterior = estado.marca;
+                if (anterior == null) {
+                        return;
+                }
+                Timestamp marca = leerMarcaSae(conexion, estado.tablaProductos);
+                if (marca == null || !marca.after(anterior)) {
+                        return;
+                }
+                String sql = "SELECT a.cve_alter, a.cve_art FROM " + estado.tabla + " a JOIN "
+                                + estado.tablaProductos + " i ON i.cve_art = a.cve_art WHERE i." + columnaMarcaSae + " > ?";
+                try (PreparedStatement ps = prepararLectura(conexion, sql)) {
+                        ps.setTimestamp(1, anterior);
+                        try (ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) {
+                                        String alterna = rs.getString("cve_alter");
+                                        if (alterna != null && !alterna.isBlank()) {
+                                                estado.agregarReciente(alterna.trim(), rs.getString("cve_art").trim());
+                                        }
+                                }
+                        }
+                }
+                estado.marca = marca;
+        }
+
+        private Timestamp leerMarcaSae(Connection conexion, String tablaProductos) {
+                if (columnaMarcaSae.isEmpty()) {
+                        return null;
+                }
+                String sql = "SELECT MAX(" + columnaMarcaSae + ") FROM " + tablaProductos;
+                try (PreparedStatement ps = conexion.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+                        return rs.next() ? rs.getTimestamp(1) : null;
+                } catch (SQLException ex) {
+                        LOGGER.debug("No se pudo leer la columna de cambios {}: {}", columnaMarcaSae, ex.getMessage());
+                        return null;
+                }
+        }
+
+        private static void agregar(IndiceHashCompacto.Constructor constructor, String alterna, String principal) {
+                if (alterna != null && !alterna.isBlank() && principal != null) {
+                        constructor.agregar(alterna.trim(), principal.trim());
+                }
+        }
+
+        private PreparedStatement prepararLectura(Connection conexion, String sql) throws SQLException {
+                PreparedStatement ps = conexion.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(TAMANO_LECTURA);
+                return ps;
+        }
+
+        private void limitarEmpresas() {
+                while (indices.size() > maximoEmpresas) {
+                        indices.entrySet().stream()
+                                        .min(Comparator.comparingLong(entrada -> entrada.getValue().ultimoUso))
+                                        .ifPresent(entrada -> indices.remove(entrada.getKey()));
+                }
+        }
+
+        private static final class EstadoIndice {
+                private final TipoSistemaAspel sistema;
+                private final Path rutaBd;
+                private final String tabla;
+                private final String tablaProductos;
+                private final AtomicBoolean enProceso = new AtomicBoolean();
+                private final Map<String, String> recientes = new ConcurrentHashMap<>();
+                private volatile IndiceHashCompacto indice;
+                private volatile Timestamp marca;
+                private volatile Instant construidoEn;
+                private volatile long ultimoUso = System.currentTimeMillis();
+
+                EstadoIndice(TipoSistemaAspel sistema, Path rutaBd, String tabla, String tablaProductos) {
+                        this.sistema = sistema;
+                        this.rutaBd = rutaBd;
+                        this.tabla = tabla;
+                        this.tablaProductos = tablaProductos;
+                }
+
+                String buscar(String clave) {
+                        String principal = recientes.get(clave);
+                        IndiceHashCompacto actual = indice;
+                        return principal != null || actual == null ? principal : actual.buscar(clave);
+                }
+
+                void agregarReciente(String clave, String principal) {
+                        if (recientes.size() >= MAXIMO_RECIENTES) {
+                                recientes.clear();
+                        }
+                        recientes.put(clave, principal);
+                }
+
+                void reemplazar(IndiceHashCompacto nuevo, Timestamp nuevaMarca) {
+                        indice = nuevo;
+                        marca = nuevaMarca;
+                        construidoEn = Instant.now();
+                        recientes.clear();
+                }
+        }
+}
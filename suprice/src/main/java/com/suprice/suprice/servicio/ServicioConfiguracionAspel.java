@@ -1,31 +1,56 @@
 package com.suprice.suprice.servicio;
 
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.suprice.suprice.modelo.EmpresaSistemaDTO;
+import com.suprice.suprice.modelo.EstadisticasInstalacionesDTO;
 import com.suprice.suprice.modelo.TipoSistemaAspel;
 import com.suprice.suprice.modelo.VersionSistemaDTO;
 import com.suprice.suprice.util.UtilidadesRutas;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
 /**
  * Localiza versiones y empresas disponibles de los sistemas Aspel instalados en el equipo.
+ * <p>
+ * La carpeta base se recorre una vez al iniciar y el resultado se publica como un índice inmutable que se sustituye
+ * completo en cada nuevo recorrido, de modo que las consultas nunca leen el disco ni ven un índice a medias. Un
+ * {@link WatchService} sobre la base, las versiones y las empresas provoca un nuevo recorrido cuando aparecen o
+ * desaparecen carpetas; como los recursos compartidos de red no siempre notifican cambios, también se recorre
+ * periódicamente. Cada recorrido entrega a {@link ServicioRutasEmpresa} la base {@code .fdb} de cada empresa.
  */
 @Service
 public class ServicioConfiguracionAspel {
@@ -33,77 +58,283 @@ public class ServicioConfiguracionAspel {
         private static final Logger LOGGER = LoggerFactory.getLogger(ServicioConfiguracionAspel.class);
 
         private static final Pattern SUFIJO_EMPRESA = Pattern.compile(".*?(\\d{2})$");
+        private static final String CARPETA_EMPRESAS = "Empresas";
+        private static final long AGRUPACION_EVENTOS_MS = 500;
 
         private final Path rutaBase;
+        private final boolean observarCambios;
+        private final ServicioRutasEmpresa servicioRutas;
+
+        private volatile IndiceInstalaciones indice = IndiceInstalaciones.VACIO;
+        private volatile WatchService observador;
+        private boolean baseDisponible = true;
+        private final AtomicBoolean escaneoPendiente = new AtomicBoolean();
+        private final LongAdder escaneos = new LongAdder();
+        private final ExecutorService ejecutorEscaneo = Executors.newSingleThreadExecutor(tarea -> {
+                Thread hilo = new Thread(tarea, "aspel-escaneo");
+                hilo.setDaemon(true);
+                return hilo;
+        });
 
-        private final Map<TipoSistemaAspel, List<VersionSistemaDTO>> cacheVersiones = new ConcurrentHashMap<>();
-        private final Map<String, List<EmpresaSistemaDTO>> cacheEmpresas = new ConcurrentHashMap<>();
+        public ServicioConfiguracionAspel(ServicioRutasEmpresa servicioRutas,
+                        @Value("${suprice.aspel.ruta-base:}") String rutaBase,
+                        @Value("${suprice.aspel.observar-cambios:true}") boolean observarCambios) {
+                String rutaConfigurada = rutaBase != null && !rutaBase.isBlank() ? rutaBase
+                                : System.getenv().getOrDefault("ASPBASE",
+                                                "C:\\Program Files (x86)\\Common Files\\Aspel\\Sistemas Aspel");
+                this.rutaBase = Paths.get(rutaConfigurada).toAbsolutePath().normalize();
+                this.observarCambios = observarCambios;
+                this.servicioRutas = servicioRutas;
+        }
 
-        public ServicioConfiguracionAspel() {
-                String rutaAmbiente = System.getenv().getOrDefault("ASPBASE",
-                                "C:\\Program Files (x86)\\Common Files\\Aspel\\Sistemas Aspel");
-                this.rutaBase = Paths.get(rutaAmbiente).toAbsolutePath();
+        @PostConstruct
+        public void iniciar() {
+                if (observarCambios) {
+                        iniciarObservador();
+                }
+                reescanear();
         }
 
         public List<VersionSistemaDTO> listarVersiones(TipoSistemaAspel sistema) {
-                return cacheVersiones.computeIfAbsent(sistema, this::cargarVersiones);
+                return indice.versiones().getOrDefault(sistema, List.of());
         }
 
+        /**
+         * Solo responde las versiones presentes en el índice; una ruta desconocida devuelve una lista vacía sin
+         * recorrer el disco.
+         */
         public List<EmpresaSistemaDTO> listarEmpresas(TipoSistemaAspel sistema, String rutaVersion) {
-                String clave = sistema.name() + "|" + rutaVersion;
-                return cacheEmpresas.computeIfAbsent(clave, key -> cargarEmpresas(rutaVersion));
+                Path carpetaVersion = UtilidadesRutas.aPath(rutaVersion);
+                VersionIndexada version = carpetaVersion != null ? indice.empresasPorVersion().get(carpetaVersion) : null;
+                if (version == null || version.sistema() != sistema) {
+                        return List.of();
+                }
+                return version.empresas();
+        }
+
+        /**
+         * Recorre de nuevo la carpeta base y sustituye el índice.
+         */
+        public synchronized void reescanear() {
+                long inicio = System.nanoTime();
+                IndiceInstalaciones anterior = indice;
+                IndiceInstalaciones nuevo = escanear(anterior, inicio);
+                indice = nuevo;
+                escaneos.increment();
+                actualizarRutas(anterior, nuevo);
+                LOGGER.debug("Instalaciones Aspel indexadas en {} ms: {} versiones y {} empresas", nuevo.duracionMs(),
+                                nuevo.empresasPorVersion().size(), nuevo.empresas().size());
+        }
+
+        /**
+         * Recorrido periódico de respaldo para los cambios que el sistema de archivos no notifica.
+         */
+        @Scheduled(fixedDelayString = "${suprice.aspel.intervalo-revision-ms:300000}",
+                        initialDelayString = "${suprice.aspel.intervalo-revision-ms:300000}")
+        public void revisarCambios() {
+                programarEscaneo();
+        }
+
+        public EstadisticasInstalacionesDTO obtenerEstadisticas() {
+                IndiceInstalaciones actual = indice;
+                int versiones = actual.versiones().values().stream().mapToInt(List::size).sum();
+                int conBaseDatos = (int) actual.empresas().values().stream()
+                                .filter(empresa -> empresa.baseDatos() != null)
+                                .count();
+                return new EstadisticasInstalacionesDTO(rutaBase.toString(), observador != null, versiones,
+                                actual.empresas().size(), conBaseDatos, escaneos.sum(), actual.escaneadoEn(),
+                                actual.duracionMs());
         }
 
-        private List<VersionSistemaDTO> cargarVersiones(TipoSistemaAspel sistema) {
+        @PreDestroy
+        public void detener() {
+                ejecutorEscaneo.shutdownNow();
+                WatchService actual = observador;
+                observador = null;
+                if (actual != null) {
+                        try {
+                                actual.close();
+                        } catch (IOException ex) {
+                                LOGGER.debug("No fue posible cerrar el observador de {}: {}", rutaBase, ex.getMessage());
+                        }
+                }
+        }
+
+        private void programarEscaneo() {
+                if (!escaneoPendiente.compareAndSet(false, true)) {
+                        return;
+                }
+                try {
+                        ejecutorEscaneo.execute(() -> {
+                                escaneoPendiente.set(false);
+                                try {
+                                        reescanear();
+                                } catch (RuntimeException ex) {
+                                        LOGGER.error("Error al indexar las instalaciones Aspel en {}: {}", rutaBase, ex.getMessage());
+                                }
+                        });
+                } catch (RejectedExecutionException ex) {
+                        escaneoPendiente.set(false);
+                }
+        }
+
+        private IndiceInstalaciones escanear(IndiceInstalaciones anterior, long inicio) {
                 if (!Files.isDirectory(rutaBase)) {
-                        LOGGER.warn("La ruta base {} no existe o no es accesible", rutaBase);
-                        return List.of();
+                        if (baseDisponible) {
+                                LOGGER.warn("La ruta base {} no existe o no es accesible", rutaBase);
+                                baseDisponible = false;
+                        }
+                        return IndiceInstalaciones.vacio(inicio);
                 }
-                try (Stream<Path> stream = Files.list(rutaBase)) {
-                        List<VersionSistemaDTO> versiones = stream.filter(Files::isDirectory)
-                                        .filter(path -> coincideSistema(path.getFileName().toString(), sistema))
-                                        .sorted(Comparator.comparing(Path::getFileName).reversed())
-                                        .map(path -> new VersionSistemaDTO(path.getFileName().toString(), path.toAbsolutePath().toString()))
-                                        .collect(Collectors.toCollection(ArrayList::new));
-                        return versiones;
-                } catch (IOException ex) {
-                        LOGGER.error("Error al listar versiones del sistema {}: {}", sistema, ex.getMessage());
-                        return List.of();
+                baseDisponible = true;
+                observar(rutaBase);
+                Map<TipoSistemaAspel, List<VersionSistemaDTO>> versiones = new EnumMap<>(TipoSistemaAspel.class);
+                Map<Path, VersionIndexada> empresasPorVersion = new HashMap<>();
+                Map<Path, EmpresaIndexada> empresas = new HashMap<>();
+                List<Path> carpetasVersion = listarCarpetas(rutaBase);
+                carpetasVersion.sort(Comparator.comparing(Path::getFileName).reversed());
+                for (Path carpetaVersion : carpetasVersion) {
+                        TipoSistemaAspel sistema = sistemaDe(carpetaVersion.getFileName().toString());
+                        if (sistema == null) {
+                                continue;
+                        }
+                        versiones.computeIfAbsent(sistema, clave -> new ArrayList<>())
+                                        .add(new VersionSistemaDTO(carpetaVersion.getFileName().toString(), carpetaVersion.toString()));
+                        observar(carpetaVersion);
+                        Path carpetaEmpresas = localizarCarpetaEmpresas(carpetaVersion).orElse(carpetaVersion);
+                        observar(carpetaEmpresas);
+                        List<EmpresaSistemaDTO> empresasVersion = new ArrayList<>();
+                        for (Path carpetaEmpresa : listarCarpetas(carpetaEmpresas)) {
+                                observar(carpetaEmpresa);
+                                EmpresaSistemaDTO empresa = new EmpresaSistemaDTO(carpetaEmpresa.getFileName().toString(),
+                                                carpetaEmpresa.toString(), obtenerSufijo(carpetaEmpresa));
+                                empresas.put(carpetaEmpresa,
+                                                new EmpresaIndexada(empresa, resolverBaseDatos(carpetaEmpresa, anterior)));
+                                empresasVersion.add(empresa);
+                        }
+                        empresasVersion.sort(Comparator.comparing(EmpresaSistemaDTO::nombre));
+                        empresasPorVersion.put(carpetaVersion, new VersionIndexada(sistema, List.copyOf(empresasVersion)));
                 }
+                versiones.replaceAll((sistema, lista) -> List.copyOf(lista));
+                return new IndiceInstalaciones(versiones, Map.copyOf(empresasPorVersion), Map.copyOf(empresas),
+                                Instant.now(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
         }
 
-        private boolean coincideSistema(String nombreCarpeta, TipoSistemaAspel sistema) {
-                String mayusculas = nombreCarpeta.toUpperCase();
-                return mayusculas.startsWith(sistema.name());
+        /**
+         * Conserva la base del recorrido anterior mientras siga existiendo, para no volver a recorrer la carpeta de
+         * cada empresa en cada cambio.
+         */
+        private static Path resolverBaseDatos(Path carpetaEmpresa, IndiceInstalaciones anterior) {
+                EmpresaIndexada previa = anterior.empresas().get(carpetaEmpresa);
+                if (previa != null && previa.baseDatos() != null && Files.isRegularFile(previa.baseDatos())) {
+                        return previa.baseDatos();
+                }
+                return UtilidadesRutas.buscarArchivoPorExtension(carpetaEmpresa, ".fdb").orElse(null);
         }
 
-        private List<EmpresaSistemaDTO> cargarEmpresas(String rutaVersion) {
-                Path carpetaVersion = UtilidadesRutas.aPath(rutaVersion);
-                if (carpetaVersion == null || !Files.isDirectory(carpetaVersion)) {
-                        LOGGER.warn("La ruta de versión {} no es válida", rutaVersion);
-                        return List.of();
+        /**
+         * Descarta en {@link ServicioRutasEmpresa} las empresas cuya base cambió o desapareció y le entrega la base
+         * de las demás.
+         */
+        private void actualizarRutas(IndiceInstalaciones anterior, IndiceInstalaciones nuevo) {
+                anterior.empresas().forEach((carpeta, empresa) -> {
+                        EmpresaIndexada actual = nuevo.empresas().get(carpeta);
+                        if (actual == null || !Objects.equals(actual.baseDatos(), empresa.baseDatos())) {
+                                servicioRutas.invalidar(carpeta);
+                        }
+                });
+                nuevo.empresas().forEach((carpeta, empresa) -> {
+                        if (empresa.baseDatos() != null) {
+                                servicioRutas.precargar(carpeta, empresa.baseDatos());
+                        }
+                });
+        }
+
+        private void iniciarObservador() {
+                try {
+                        observador = FileSystems.getDefault().newWatchService();
+                } catch (IOException | UnsupportedOperationException ex) {
+                        LOGGER.warn("No fue posible observar {}; se recorrerá solo periódicamente: {}", rutaBase, ex.getMessage());
+                        return;
                 }
-                Path carpetaEmpresas = localizarCarpetaEmpresas(carpetaVersion).orElse(carpetaVersion);
-                try (Stream<Path> stream = Files.list(carpetaEmpresas)) {
-                        return stream.filter(Files::isDirectory)
-                                        .map(path -> new EmpresaSistemaDTO(path.getFileName().toString(),
-                                                        path.toAbsolutePath().toString(), obtenerSufijo(path)))
-                                        .sorted(Comparator.comparing(EmpresaSistemaDTO::nombre))
-                                        .collect(Collectors.toList());
+                Thread hilo = new Thread(this::atenderEventos, "aspel-observador");
+                hilo.setDaemon(true);
+                hilo.start();
+        }
+
+        /**
+         * Los eventos que llegan juntos (por ejemplo, al copiar una empresa completa) se agrupan en un solo
+         * recorrido.
+         */
+        private void atenderEventos() {
+                try {
+                        while (true) {
+                                WatchService actual = observador;
+                                if (actual == null) {
+                                        return;
+                                }
+                                descartarEventos(actual.take());
+                                WatchKey siguiente;
+                                while ((siguiente = actual.poll(AGRUPACION_EVENTOS_MS, TimeUnit.MILLISECONDS)) != null) {
+                                        descartarEventos(siguiente);
+                                }
+                                programarEscaneo();
+                        }
+                } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                } catch (ClosedWatchServiceException ex) {
+                        LOGGER.debug("Observador de {} cerrado", rutaBase);
+                }
+        }
+
+        private static void descartarEventos(WatchKey clave) {
+                clave.pollEvents();
+                clave.reset();
+        }
+
+        /**
+         * Registrar de nuevo una carpeta ya observada devuelve la misma clave, por lo que basta con hacerlo en cada
+         * recorrido para cubrir las carpetas nuevas.
+         */
+        private void observar(Path carpeta) {
+                WatchService actual = observador;
+                if (actual == null) {
+                        return;
+                }
+                try {
+                        carpeta.register(actual, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+                } catch (IOException | ClosedWatchServiceException ex) {
+                        LOGGER.debug("No fue posible observar {}: {}", carpeta, ex.getMessage());
+                }
+        }
+
+        private static List<Path> listarCarpetas(Path carpeta) {
+                try (Stream<Path> stream = Files.list(carpeta)) {
+                        return stream.filter(Files::isDirectory).collect(ArrayList::new, List::add, List::addAll);
                 } catch (IOException ex) {
-                        LOGGER.error("No fue posible listar empresas en {}: {}", carpetaEmpresas, ex.getMessage());
-                        return List.of();
+                        LOGGER.error("No fue posible listar las carpetas de {}: {}", carpeta, ex.getMessage());
+                        return new ArrayList<>();
+                }
+        }
+
+        private static TipoSistemaAspel sistemaDe(String nombreCarpeta) {
+                String mayusculas = nombreCarpeta.toUpperCase();
+                for (TipoSistemaAspel sistema : TipoSistemaAspel.values()) {
+                        if (mayusculas.startsWith(sistema.name())) {
+                                return sistema;
+                        }
                 }
+                return null;
         }
 
-        private Optional<Path> localizarCarpetaEmpresas(Path carpetaVersion) {
-                Path empresas = carpetaVersion.resolve("Empresas");
+        private static Optional<Path> localizarCarpetaEmpresas(Path carpetaVersion) {
+                Path empresas = carpetaVersion.resolve(CARPETA_EMPRESAS);
                 if (Files.isDirectory(empresas)) {
                         return Optional.of(empresas);
                 }
                 try (Stream<Path> stream = Files.walk(carpetaVersion, 2)) {
                         return stream.filter(Files::isDirectory)
-                                        .filter(path -> path.getFileName().toString().equalsIgnoreCase("Empresas"))
+                                        .filter(path -> path.getFileName().toString().equalsIgnoreCase(CARPETA_EMPRESAS))
                                         .findFirst();
                 } catch (IOException ex) {
                         LOGGER.warn("No se localizaron carpetas de empresas en {}: {}", carpetaVersion, ex.getMessage());
@@ -111,7 +342,7 @@ public class ServicioConfiguracionAspel {
                 }
         }
 
-        private String obtenerSufijo(Path carpetaEmpresa) {
+        private static String obtenerSufijo(Path carpetaEmpresa) {
                 String nombre = carpetaEmpresa.getFileName().toString();
                 Matcher matcher = SUFIJO_EMPRESA.matcher(nombre);
                 if (matcher.matches()) {
@@ -120,11 +351,21 @@ public class ServicioConfiguracionAspel {
                 return "01";
         }
 
-        public void limpiarCacheVersiones() {
-                cacheVersiones.clear();
+        private record VersionIndexada(TipoSistemaAspel sistema, List<EmpresaSistemaDTO> empresas) {
+        }
+
+        private record EmpresaIndexada(EmpresaSistemaDTO empresa, Path baseDatos) {
         }
 
-        public void limpiarCacheEmpresas() {
-                cacheEmpresas.clear();
+        private record IndiceInstalaciones(Map<TipoSistemaAspel, List<VersionSistemaDTO>> versiones,
+                        Map<Path, VersionIndexada> empresasPorVersion, Map<Path, EmpresaIndexada> empresas, Instant escaneadoEn,
+                        long duracionMs) {
+
+                static final IndiceInstalaciones VACIO = new IndiceInstalaciones(Map.of(), Map.of(), Map.of(), null, 0);
+
+                static IndiceInstalaciones vacio(long inicio) {
+                        return new IndiceInstalaciones(Map.of(), Map.of(), Map.of(), Instant.now(),
+                                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+                }
         }
 }
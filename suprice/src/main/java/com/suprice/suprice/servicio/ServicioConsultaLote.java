@@ -0,0 +1,446 @@
+package com.suprice.suprice.servicio;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.suprice.suprice.modelo.ExistenciaDetalleDTO;
+import com.suprice.suprice.modelo.PrecioProductoDTO;
+import com.suprice.suprice.modelo.ProductoConsultadoDTO;
+import com.suprice.suprice.modelo.ResultadoLoteDTO;
+import com.suprice.suprice.modelo.SolicitudConsultaLote;
+import com.suprice.suprice.modelo.TipoSistemaAspel;
+import com.suprice.suprice.servicio.InstantaneaCatalogo.PrecioLista;
+import com.suprice.suprice.util.UtilidadesDecimales;
+import com.suprice.suprice.util.UtilidadesRutas;
+
+/**
+ * Consulta muchos productos de una misma empresa por bloques de claves con {@code IN (...)}, entregando cada bloque
+ * en cuanto se lee para no acumular el lote completo en memoria.
+ * <p>
+ * Cada bloque es una consulta más de la empresa: pasa por su límite en {@link EjecutorConsultas}, tiene su propio
+ * {@link PlazoConsulta} y su resultado se registra en {@link InterruptoresFirebird}. La conexión se toma al leer el
+ * bloque y se devuelve antes de escribirlo, de modo que un cliente lento no retiene conexiones de la empresa.
+ */
+@Service
+public class ServicioConsultaLote {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(ServicioConsultaLote.class);
+
+        /** Firebird admite como máximo 1500 elementos en una lista {@code IN}. */
+        private static final int MAXIMO_BLOQUE = 1500;
+
+        private final PoolConexionesFirebird poolConexiones;
+        private final ServicioRutasEmpresa servicioRutas;
+        private final CacheSentenciasPreparadas sentencias;
+        private final ServicioClavesAlternas servicioClavesAlternas;
+        private final CacheEsquemasImpuestos cacheEsquemas;
+        private final EjecutorConsultas ejecutorConsultas;
+        private final InterruptoresFirebird interruptores;
+        private final int tamanoBloque;
+        private final String marcadores;
+
+        public ServicioConsultaLote(PoolConexionesFirebird poolConexiones, ServicioRutasEmpresa servicioRutas,
+                        CacheSentenciasPreparadas sentencias, ServicioClavesAlternas servicioClavesAlternas,
+                        CacheEsquemasImpuestos cacheEsquemas, EjecutorConsultas ejecutorConsultas,
+                        InterruptoresFirebird interruptores, @Value("${suprice.lote.tamano-bloque:500}") int tamanoBloque) {
+                this.poolConexiones = poolConexiones;
+                this.servicioRutas = servicioRutas;
+                this.sentencias = sentencias;
+                this.servicioClavesAlternas = servicioClavesAlternas;
+                this.cacheEsquemas = cacheEsquemas;
+                this.ejecutorConsultas = ejecutorConsultas;
+                this.interruptores = interruptores;
+                this.tamanoBloque = Math.max(1, Math.min(MAXIMO_BLOQUE, tamanoBloque));
+                this.marcadores = String.join(",", Collections.nCopies(this.tamanoBloque, "?"));
+        }
+
+        /**
+         * Localiza la base de datos de la empresa del lote antes de comenzar a responder.
+         *
+         * @param solicitud lote solicitado.
+         * @return archivo {@code .fdb} o vacío si la empresa o el sufijo no son válidos.
+         */
+        public Optional<Path> localizarBaseDatos(SolicitudConsultaLote solicitud) {
+                Path rutaEmpresa = UtilidadesRutas.aPath(solicitud.rutaEmpresa());
+                if (rutaEmpresa == null) {
+                        return Optional.empty();
+                }
+                if (solicitud.sistema() == TipoSistemaAspel.SAE && !TablasSae.esSufijoPermitido(solicitud.sufijoTablas())) {
+                        LOGGER.warn("Sufijo de tablas no permitido: {}", solicitud.sufijoTablas());
+                        return Optional.empty();
+                }
+                return servicioRutas.localizarBaseDatos(rutaEmpresa);
+        }
+
+        /**
+         * Consulta los códigos del lote en el orden recibido y entrega los resultados bloque por bloque. Los códigos
+         * que no son clave principal se resuelven como claves alternas.
+         *
+         * @param solicitud  lote solicitado.
+         * @param rutaBd     archivo {@code .fdb} de la empresa.
+         * @param consumidor receptor de cada bloque de resultados.
+         * @throws SQLException                   cuando Firebird no responde.
+         * @throws IOException                    cuando el receptor no puede escribir la respuesta.
+         * @throws ConsultaRechazadaException     si un bloque no obtuvo lugar en el límite de la empresa.
+         * @throws PlazoVencidoException          si un bloque no terminó dentro de su plazo.
+         * @throws BaseDatosNoDisponibleException si el interruptor de la base se abrió durante el lote.
+         */
+        public void consultarLote(SolicitudConsultaLote solicitud, Path rutaBd, ConsumidorBloque consumidor)
+                        throws SQLException, IOException {
+                long inicio = System.currentTimeMillis();
+                List<String> codigos = solicitud.codigosProducto();
+                for (int desde = 0; desde < codigos.size(); desde += tamanoBloque) {
+                        List<String> bloque = codigos.subList(desde, Math.min(codigos.size(), desde + tamanoBloque));
+                        consumidor.aceptar(esperar(ejecutorConsultas.ejecutar(solicitud.rutaEmpresa(),
+                                        () -> consultarBloque(solicitud, rutaBd, bloque))));
+                }
+                LOGGER.info("Lote de {} códigos de {} consultado en {} ms", codigos.size(), rutaBd,
+                                System.currentTimeMillis() - inicio);
+        }
+
+        /**
+         * Lee un bloque con su propia conexión pasando por el interruptor de la base, igual que una consulta
+         * individual, y deja de cancelar sus sentencias antes de devolver la conexión. Se ejecuta en
+         * {@link EjecutorConsultas}, por lo que los errores de SQL viajan envueltos.
+         */
+        private List<ResultadoLoteDTO> consultarBloque(SolicitudConsultaLote solicitud, Path rutaBd, List<String> bloque) {
+                interruptores.autorizar(rutaBd);
+                boolean fallo = false;
+                try (Connection conexion = poolConexiones.obtenerConexion(rutaBd)) {
+                        try {
+                                LectorBloque lector = solicitud.sistema() == TipoSistemaAspel.SAE
+                                                ? new LectorSae(conexion, rutaBd, TablasSae.conSufijo(solicitud.sufijoTablas()))
+                                                : new LectorCaja(conexion, rutaBd);
+                                return resolverBloque(lector, bloque, solicitud.incluirImpuestos());
+                        } finally {
+                                PlazoConsulta.liberarSentenciasEnHiloActual();
+                        }
+                } catch (SQLException ex) {
+                        fallo = InterruptoresFirebird.esFallo(ex);
+                        throw new CompletionException(ex);
+                } catch (RuntimeException ex) {
+                        fallo = PlazoConsulta.vencidoEnHiloActual();
+                        throw ex;
+                } finally {
+                        interruptores.registrar(rutaBd, fallo);
+                }
+        }
+
+        private static List<ResultadoLoteDTO> esperar(CompletableFuture<List<ResultadoLoteDTO>> bloque)
+                        throws SQLException {
+                try {
+                        return bloque.join();
+                } catch (CompletionException ex) {
+                        if (ex.getCause() instanceof SQLException error) {
+                                throw error;
+                        }
+                        if (ex.getCause() instanceof RuntimeException error) {
+                                throw error;
+                        }
+                        throw ex;
+                }
+        }
+
+        /**
+         * Resuelve el bloque con a lo sumo dos lecturas por clave principal; los códigos que faltan se resuelven juntos
+         * como claves alternas.
+         */
+        private List<ResultadoLoteDTO> resolverBloque(LectorBloque lector, List<String> bloque, boolean incluirImpuestos)
+                        throws SQLException {
+                Set<String> claves = new LinkedHashSet<>();
+                for (String codigo : bloque) {
+                        claves.add(codigo.trim());
+                }
+                Map<String, ArticuloLote> articulos = lector.leer(new ArrayList<>(claves));
+                List<String> desconocidas = new ArrayList<>();
+                for (String clave : claves) {
+                        if (!articulos.containsKey(clave)) {
+                                desconocidas.add(clave);
+                        }
+                }
+                Alternas alternas = desconocidas.isEmpty() ? new Alternas(Map.of(), false)
+                                : lector.resolverAlternas(desconocidas);
+                Set<String> faltantes = new LinkedHashSet<>(alternas.principales().values());
+                faltantes.removeAll(articulos.keySet());
+                if (!faltantes.isEmpty()) {
+                        articulos.putAll(lector.leer(new ArrayList<>(faltantes)));
+                }
+                List<ResultadoLoteDTO> resultados = new ArrayList<>(bloque.size());
+                for (String codigo : bloque) {
+                        String clave = codigo.trim();
+                        ArticuloLote articulo = articulos.get(alternas.principales().getOrDefault(clave, clave));
+                        resultados.add(articulo != null
+                                        ? new ResultadoLoteDTO(codigo, true, articulo.aProducto(lector.esquema(articulo.claveImpuestos),
+                                                        incluirImpuestos), false)
+                                        : new ResultadoLoteDTO(codigo, false, null, alternas.pendientes()));
+                }
+                return resultados;
+        }
+
+        /**
+         * Asigna las claves a la lista {@code IN}, que siempre tiene el tamaño de bloque configurado repitiendo la
+         * última clave, para que Firebird y la caché de sentencias reutilicen un único plan.
+         */
+        private PreparedStatement prepararBloque(Connection conexion, String sql, List<String> claves) throws SQLException {
+                PreparedStatement ps = sentencias.preparar(conexion, sql);
+                for (int i = 0; i < tamanoBloque; i++) {
+                        ps.setString(i + 1, claves.get(Math.min(i, claves.size() - 1)));
+                }
+                return ps;
+        }
+
+        private static BigDecimal extraerBigDecimal(ResultSet rs, String columna) throws SQLException {
+                BigDecimal valor = UtilidadesDecimales.normalizarDouble(rs.getBigDecimal(columna));
+                return valor != null ? valor : BigDecimal.ZERO;
+        }
+
+        private static int compararAlmacenes(String primero, String segundo) {
+                try {
+                        return Integer.compare(Integer.parseInt(primero.trim()), Integer.parseInt(segundo.trim()));
+                } catch (NumberFormatException ex) {
+                        return primero.compareTo(segundo);
+                }
+        }
+
+        /**
+         * Recibe cada bloque de resultados en el orden de la solicitud.
+         */
+        @FunctionalInterface
+        public interface ConsumidorBloque {
+                void aceptar(List<ResultadoLoteDTO> resultados) throws IOException;
+        }
+
+        private interface LectorBloque {
+                /** Lee hasta {@code tamanoBloque} artículos por su clave principal. */
+                Map<String, ArticuloLote> leer(List<String> claves) throws SQLException;
+
+                /** Resuelve juntas hasta {@code tamanoBloque} claves alternas. */
+                Alternas resolverAlternas(List<String> claves) throws SQLException;
+
+                EsquemaImpuestos esquema(String clave) throws SQLException;
+        }
+
+        /**
+         * Claves principales de las claves alternas de un bloque; {@code pendientes} indica que las no resueltas
+         * esperan al índice de la empresa.
+         */
+        private record Alternas(Map<String, String> principales, boolean pendientes) {
+        }
+
+        private final class LectorSae implements LectorBloque {
+
+                private final Connection conexion;
+                private final Path rutaBd;
+                private final TablasSae tablas;
+
+                LectorSae(Connection conexion, Path rutaBd, TablasSae tablas) {
+                        this.conexion = conexion;
+                        this.rutaBd = rutaBd;
+                        this.tablas = tablas;
+                }
+
+                @Override
+                public Map<String, ArticuloLote> leer(List<String> claves) throws SQLException {
+                        Map<String, ArticuloLote> articulos = new HashMap<>();
+                        String sql = "SELECT cve_art, descr, exist, cve_esqimpu FROM " + tablas.productos()
+                                        + " WHERE cve_art IN (" + marcadores + ")";
+                        try (ResultSet rs = prepararBloque(conexion, sql, claves).executeQuery()) {
+                                while (rs.next()) {
+                                        String codigo = rs.getString("cve_art");
+                                        articulos.put(codigo.trim(), new ArticuloLote(codigo, rs.getString("descr"),
+                                                        extraerBigDecimal(rs, "exist"), rs.getString("cve_esqimpu")));
+                                }
+                        }
+                        if (articulos.isEmpty()) {
+                                return articulos;
+                        }
+                        String sqlAlternos = "SELECT cve_art, cve_alter FROM " + tablas.alternos() + " WHERE cve_art IN ("
+                                        + marcadores + ")";
+                        try (ResultSet rs = prepararBloque(conexion, sqlAlternos, claves).executeQuery()) {
+                                while (rs.next()) {
+                                        ArticuloLote articulo = articulos.get(rs.getString("cve_art").trim());
+                                        String alterna = rs.getString("cve_alter");
+                                        if (articulo != null && alterna != null && !alterna.isBlank()) {
+                                                articulo.alternos.add(alterna.trim());
+                                        }
+                                }
+                        }
+                        String sqlPrecios = "SELECT cve_art, cve_precio, precio FROM " + tablas.precios() + " WHERE cve_art IN ("
+                                        + marcadores + ")";
+                        try (ResultSet rs = prepararBloque(conexion, sqlPrecios, claves).executeQuery()) {
+                                while (rs.next()) {
+                                        ArticuloLote articulo = articulos.get(rs.getString("cve_art").trim());
+                                        if (articulo != null) {
+                                                articulo.agregarPrecio(rs.getInt("cve_precio"), extraerBigDecimal(rs, "precio"));
+                                        }
+                                }
+                        }
+                        String sqlExistencias = "SELECT cve_art, cve_alm, exist FROM " + tablas.existencias()
+                                        + " WHERE cve_art IN (" + marcadores + ")";
+                        try (ResultSet rs = prepararBloque(conexion, sqlExistencias, claves).executeQuery()) {
+                                while (rs.next()) {
+                                        ArticuloLote articulo = articulos.get(rs.getString("cve_art").trim());
+                                        if (articulo != null) {
+                                                articulo.existencias.add(new ExistenciaDetalleDTO(rs.getString("cve_alm"),
+                                                                extraerBigDecimal(rs, "exist")));
+                                        }
+                                }
+                        }
+                        return articulos;
+                }
+
+                /**
+                 * Las claves que el índice aún no conoce, o todas mientras se construye, se buscan en una sola consulta
+                 * por {@code cve_alter}, que está indexada.
+                 */
+                @Override
+                public Alternas resolverAlternas(List<String> claves) throws SQLException {
+                        Map<String, String> principales = new HashMap<>(
+                                        servicioClavesAlternas.resolverEnIndiceSae(rutaBd, tablas, claves).orElse(Map.of()));
+                        List<String> desconocidas = new ArrayList<>();
+                        for (String clave : claves) {
+                                if (!principales.containsKey(clave)) {
+                                        desconocidas.add(clave);
+                                }
+                        }
+                        if (!desconocidas.isEmpty()) {
+                                String sql = "SELECT cve_alter, cve_art FROM " + tablas.alternos() + " WHERE cve_alter IN ("
+                                                + marcadores + ")";
+                                try (ResultSet rs = prepararBloque(conexion, sql, desconocidas).executeQuery()) {
+                                        while (rs.next()) {
+                                                principales.putIfAbsent(rs.getString("cve_alter").trim(), rs.getString("cve_art").trim());
+                                        }
+                                }
+                        }
+                        return new Alternas(principales, false);
+                }
+
+                @Override
+                public EsquemaImpuestos esquema(String clave) throws SQLException {
+                        return cacheEsquemas.obtenerSae(conexion, rutaBd, tablas, clave);
+                }
+        }
+
+        private final class LectorCaja implements LectorBloque {
+
+                private final Connection conexion;
+                private final Path rutaBd;
+
+                LectorCaja(Connection conexion, Path rutaBd) {
+                        this.conexion = conexion;
+                        this.rutaBd = rutaBd;
+                }
+
+                @Override
+                public Map<String, ArticuloLote> leer(List<String> claves) throws SQLException {
+                        Map<String, ArticuloLote> articulos = new HashMap<>();
+                        String sql = "SELECT producto, descripcio, existencia, esqimp, clvalter1, clvalter2, clvalter3, preciop, precio2, precio3, precio4"
+                                        + " FROM catinven WHERE producto IN (" + marcadores + ")";
+                        try (ResultSet rs = prepararBloque(conexion, sql, claves).executeQuery()) {
+                                while (rs.next()) {
+                                        String codigo = rs.getString("producto");
+                                        ArticuloLote articulo = new ArticuloLote(codigo, rs.getString("descripcio"),
+                                                        extraerBigDecimal(rs, "existencia"), rs.getString("esqimp"));
+                                        for (String columna : List.of("clvalter1", "clvalter2", "clvalter3")) {
+                                                String alterna = rs.getString(columna);
+                                                if (alterna != null && !alterna.isBlank()) {
+                                                        articulo.alternos.add(alterna.trim());
+                                                }
+                                        }
+                                        // Igual que la consulta individual: un precio nulo se entrega como cero.
+                                        List<String> columnasPrecio = List.of("preciop", "precio2", "precio3", "precio4");
+                                        for (int i = 0; i < columnasPrecio.size(); i++) {
+                                                articulo.agregarPrecio(i + 1, extraerBigDecimal(rs, columnasPrecio.get(i)));
+                                        }
+                                        articulos.put(codigo.trim(), articulo);
+                                }
+                        }
+                        if (articulos.isEmpty()) {
+                                return articulos;
+                        }
+                        String sqlExistencias = "SELECT producto, tienda, existienda FROM exist WHERE producto IN ("
+                                        + marcadores + ")";
+                        try (ResultSet rs = prepararBloque(conexion, sqlExistencias, claves).executeQuery()) {
+                                while (rs.next()) {
+                                        ArticuloLote articulo = articulos.get(rs.getString("producto").trim());
+                                        if (articulo != null) {
+                                                articulo.existencias.add(new ExistenciaDetalleDTO(rs.getString("tienda"),
+                                                                extraerBigDecimal(rs, "existienda")));
+                                        }
+                                }
+                        }
+                        return articulos;
+                }
+
+                /**
+                 * {@code clvalter1..3} no están indexadas en Firebird: solo se responde desde el índice en memoria y,
+                 * mientras se construye, las claves quedan pendientes.
+                 */
+                @Override
+                public Alternas resolverAlternas(List<String> claves) {
+                        return servicioClavesAlternas.resolverEnIndiceCaja(rutaBd, claves)
+                                        .map(principales -> new Alternas(principales, false))
+                                        .orElseGet(() -> new Alternas(Map.of(), true));
+                }
+
+                @Override
+                public EsquemaImpuestos esquema(String clave) throws SQLException {
+                        return cacheEsquemas.obtenerCaja(conexion, rutaBd, clave);
+                }
+        }
+
+        private static final class ArticuloLote {
+                private final String codigo;
+                private final String descripcion;
+                private final BigDecimal existenciaTotal;
+                private final String claveImpuestos;
+                private final List<String> alternos = new ArrayList<>();
+                private final List<PrecioLista> precios = new ArrayList<>();
+                private final List<ExistenciaDetalleDTO> existencias = new ArrayList<>();
+
+                ArticuloLote(String codigo, String descripcion, BigDecimal existenciaTotal, String claveImpuestos) {
+                        this.codigo = codigo;
+                        this.descripcion = descripcion;
+                        this.existenciaTotal = existenciaTotal;
+                        this.claveImpuestos = claveImpuestos;
+                }
+
+                void agregarPrecio(int lista, BigDecimal precio) {
+                        precios.add(new PrecioLista(lista, precio));
+                }
+
+                ProductoConsultadoDTO aProducto(EsquemaImpuestos esquema, boolean incluirImpuestos) {
+                        List<PrecioProductoDTO> listaPrecios = new ArrayList<>(precios.size());
+                        for (PrecioLista precio : precios) {
+                                BigDecimal base = precio.precio();
+                                BigDecimal conImpuesto = incluirImpuestos ? base.add(esquema.calcularImpuestos(base)) : base;
+                                listaPrecios.add(new PrecioProductoDTO(precio.lista(), base, conImpuesto));
+                        }
+                        listaPrecios.sort(Comparator.comparingInt(PrecioProductoDTO::lista));
+                        existencias.sort(Comparator.comparing(ExistenciaDetalleDTO::almacen, ServicioConsultaLote::compararAlmacenes));
+                        return new ProductoConsultadoDTO(codigo, descripcion, List.copyOf(alternos), claveImpuestos,
+                                        existenciaTotal, List.copyOf(existencias), listaPrecios, null, incluirImpuestos);
+                }
+        }
+}
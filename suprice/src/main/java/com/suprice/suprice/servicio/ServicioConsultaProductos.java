@@ -1,29 +1,36 @@
 package com.suprice.suprice.servicio;
 
-import java.io.IOException;
 import java.math.BigDecimal;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.SQLTimeoutException;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.suprice.suprice.modelo.ExistenciaDetalleDTO;
 import com.suprice.suprice.modelo.PrecioProductoDTO;
 import com.suprice.suprice.modelo.ProductoConsultadoDTO;
 import com.suprice.suprice.modelo.SolicitudConsultaProducto;
-import com.suprice.suprice.util.UtilidadesImpuestos;
+import com.suprice.suprice.modelo.TipoSistemaAspel;
+import com.suprice.suprice.servicio.InstantaneaCatalogo.Articulo;
+import com.suprice.suprice.servicio.InstantaneaCatalogo.PrecioLista;
+import com.suprice.suprice.servicio.MetricasConsulta.Fase;
+import com.suprice.suprice.servicio.MetricasConsulta.Medicion;
+import com.suprice.suprice.servicio.MetricasConsulta.Resultado;
+import com.suprice.suprice.util.UtilidadesDecimales;
 import com.suprice.suprice.util.UtilidadesRutas;
 
 /**
@@ -34,28 +41,75 @@ public class ServicioConsultaProductos {
 
         private static final Logger LOGGER = LoggerFactory.getLogger(ServicioConsultaProductos.class);
 
-        private final String host;
-        private final String puerto;
-        private final String usuario;
-        private final String contrasena;
-
-        public ServicioConsultaProductos() {
-                this.host = System.getenv().getOrDefault("FIREBIRD_HOST", "localhost");
-                this.puerto = System.getenv().getOrDefault("FIREBIRD_PORT", "3050");
-                this.usuario = System.getenv().getOrDefault("FIREBIRD_USUARIO", "SYSDBA");
-                this.contrasena = System.getenv().getOrDefault("FIREBIRD_CONTRASENA", "masterkey");
+        private static final String SEPARADOR_ELEMENTO = String.valueOf((char) 31);
+        private static final String SEPARADOR_CAMPO = String.valueOf((char) 30);
+
+        private final PoolConexionesFirebird poolConexiones;
+        private final ServicioRutasEmpresa servicioRutas;
+        private final CacheSentenciasPreparadas sentencias;
+        private final ServicioCatalogoProductos servicioCatalogo;
+        private final ServicioClavesAlternas servicioClavesAlternas;
+        private final ServicioImagenesProducto servicioImagenes;
+        private final InterruptoresFirebird interruptores;
+        private final CacheEsquemasImpuestos cacheEsquemas;
+        private final MetricasConsulta metricas;
+        private final boolean consultaCombinadaHabilitada;
+        private final Set<String> esquemasSinConsultaCombinada = ConcurrentHashMap.newKeySet();
+
+        public ServicioConsultaProductos(PoolConexionesFirebird poolConexiones, ServicioRutasEmpresa servicioRutas,
+                        CacheSentenciasPreparadas sentencias, ServicioCatalogoProductos servicioCatalogo,
+                        ServicioClavesAlternas servicioClavesAlternas, ServicioImagenesProducto servicioImagenes,
+                        InterruptoresFirebird interruptores, CacheEsquemasImpuestos cacheEsquemas, MetricasConsulta metricas,
+                        @Value("${suprice.sae.consulta-combinada:true}") boolean consultaCombinadaHabilitada) {
+                this.poolConexiones = poolConexiones;
+                this.servicioRutas = servicioRutas;
+                this.sentencias = sentencias;
+                this.servicioCatalogo = servicioCatalogo;
+                this.servicioClavesAlternas = servicioClavesAlternas;
+                this.servicioImagenes = servicioImagenes;
+                this.interruptores = interruptores;
+                this.cacheEsquemas = cacheEsquemas;
+                this.metricas = metricas;
+                this.consultaCombinadaHabilitada = consultaCombinadaHabilitada;
         }
 
+        /**
+         * Consulta un producto. Los errores se registran y se responden como producto no localizado, salvo cuando
+         * vence el {@link PlazoConsulta} del hilo actual, el interruptor de la base está abierto o el índice de claves
+         * alternas de Caja aún se construye. El tiempo de cada fase se registra en {@link MetricasConsulta}.
+         *
+         * @throws PlazoVencidoException          si la consulta no terminó dentro de su plazo.
+         * @throws BaseDatosNoDisponibleException si la base de la empresa no responde.
+         * @throws IndiceEnPreparacionException   si el código no es clave principal y aún no puede resolverse como
+         *                                        clave alterna.
+         */
         public Optional<ProductoConsultadoDTO> consultarProducto(SolicitudConsultaProducto solicitud) {
-                try {
-                        return switch (solicitud.sistema()) {
-                        case SAE -> consultarProductoSae(solicitud);
-                        case CAJA -> consultarProductoCaja(solicitud);
-                        };
-                } catch (Exception ex) {
-                        LOGGER.error("Error inesperado consultando producto {}: {}", solicitud.codigoProducto(),
-                                        ex.getMessage(), ex);
-                        return Optional.empty();
+                try (Medicion medicion = metricas.iniciar(solicitud.sistema())) {
+                        try {
+                                Optional<ProductoConsultadoDTO> producto = switch (solicitud.sistema()) {
+                                case SAE -> consultarProductoSae(solicitud);
+                                case CAJA -> consultarProductoCaja(solicitud);
+                                };
+                                medicion.concluir(producto.isPresent() ? Resultado.ENCONTRADO : Resultado.NO_ENCONTRADO);
+                                return producto;
+                        } catch (PlazoVencidoException ex) {
+                                medicion.concluir(Resultado.VENCIDA);
+                                throw ex;
+                        } catch (BaseDatosNoDisponibleException | IndiceEnPreparacionException ex) {
+                                medicion.concluir(Resultado.NO_DISPONIBLE);
+                                throw ex;
+                        } catch (Exception ex) {
+                                if (ex instanceof SQLTimeoutException || PlazoConsulta.vencidoEnHiloActual()) {
+                                        medicion.concluir(Resultado.VENCIDA);
+                                        LOGGER.warn("Consulta del producto {} cancelada por tiempo: {}", solicitud.codigoProducto(),
+                                                        ex.getMessage());
+                                        throw new PlazoVencidoException(ex);
+                                }
+                                medicion.concluir(Resultado.ERROR);
+                                LOGGER.error("Error inesperado consultando producto {}: {}", solicitud.codigoProducto(),
+                                                ex.getMessage(), ex);
+                                return Optional.empty();
+                        }
                 }
         }
 
@@ -70,32 +124,156 @@ public class ServicioConsultaProductos {
                         LOGGER.warn("No se localizó base de datos Firebird en {}", rutaEmpresa);
                         return Optional.empty();
                 }
-                String sufijo = solicitud.sufijoTablas().toUpperCase();
-                String tablaProductos = "INVE" + sufijo;
-                String tablaAlternos = "CVES_ALTER" + sufijo;
-                String tablaImpuestos = "IMPU" + sufijo;
-                String tablaExistencias = "MULT" + sufijo;
-                String tablaPrecios = "PRECIO_X_PROD" + sufijo;
-
-                try (Connection conexion = abrirConexion(rutaBd)) {
-                        ProductoBasico producto = obtenerProductoBasico(conexion, tablaProductos,
-                                        solicitud.codigoProducto());
-                        if (producto == null) {
+                metricas.confirmarEmpresa(rutaEmpresa);
+                if (!TablasSae.esSufijoPermitido(solicitud.sufijoTablas())) {
+                        LOGGER.warn("Sufijo de tablas no permitido: {}", solicitud.sufijoTablas());
+                        return Optional.empty();
+                }
+                TablasSae tablas = TablasSae.conSufijo(solicitud.sufijoTablas());
+                String codigo = solicitud.codigoProducto();
+                InstantaneaCatalogo instantanea = servicioCatalogo
+                                .obtener(TipoSistemaAspel.SAE, rutaBd, solicitud.sufijoTablas()).orElse(null);
+
+                return conConexion(rutaBd, conexion -> {
+                        Optional<ProductoConsultadoDTO> producto = buscarProductoSae(conexion, rutaEmpresa, rutaBd, tablas,
+                                        instantanea, codigo, solicitud.incluirImpuestos());
+                        if (producto.isPresent()) {
+                                return producto;
+                        }
+                        Optional<String> principal = metricas.medir(Fase.RESOLVER_CLAVE_ALTERNA,
+                                        () -> servicioClavesAlternas.resolverSae(rutaBd, tablas, conexion, codigo));
+                        if (principal.isEmpty() || principal.get().equals(codigo.trim())) {
                                 return Optional.empty();
                         }
-                        List<String> alternos = obtenerClavesAlternas(conexion, tablaAlternos, solicitud.codigoProducto());
-                        EsquemaImpuestos esquema = obtenerEsquemaImpuestos(conexion, tablaImpuestos,
-                                        producto.claveImpuestos());
-                        List<PrecioProductoDTO> precios = obtenerPrecios(conexion, tablaPrecios, solicitud.codigoProducto(),
-                                        esquema, solicitud.incluirImpuestos());
-                        List<ExistenciaDetalleDTO> existencias = obtenerExistencias(conexion, tablaExistencias,
-                                        solicitud.codigoProducto());
-                        BigDecimal existenciaTotal = producto.existenciaTotal();
-                        String imagen = cargarImagenProducto(rutaEmpresa, producto.claveImagen());
-                        return Optional.of(new ProductoConsultadoDTO(producto.codigo(), producto.descripcion(), alternos,
-                                        producto.claveImpuestos(), existenciaTotal, existencias, precios, imagen,
-                                        solicitud.incluirImpuestos()));
+                        return buscarProductoSae(conexion, rutaEmpresa, rutaBd, tablas, instantanea, principal.get(),
+                                        solicitud.incluirImpuestos());
+                });
+        }
+
+        private Optional<ProductoConsultadoDTO> buscarProductoSae(Connection conexion, Path rutaEmpresa, Path rutaBd,
+                        TablasSae tablas, InstantaneaCatalogo instantanea, String codigo, boolean incluirImpuestos)
+                        throws SQLException {
+                Articulo articulo = instantanea != null ? instantanea.buscar(codigo) : null;
+                if (articulo != null) {
+                        String sql = "SELECT i.exist AS total, m.cve_alm AS almacen, m.exist AS existencia FROM "
+                                        + tablas.productos() + " i LEFT JOIN " + tablas.existencias()
+                                        + " m ON m.cve_art = i.cve_art WHERE i.cve_art = ? ORDER BY m.cve_alm";
+                        ExistenciasEnVivo existencias = metricas.medir(Fase.CONSULTA_EXISTENCIAS,
+                                        () -> obtenerExistenciasEnVivo(conexion, sql, codigo));
+                        return Optional.ofNullable(existencias).map(leidas -> construirDesdeCatalogo(rutaEmpresa,
+                                        instantanea, articulo, leidas, incluirImpuestos));
+                }
+                ResultadoSae resultado = null;
+                boolean resuelto = false;
+                String claveEsquema = rutaBd + "|" + tablas.productos();
+                if (consultaCombinadaHabilitada && !esquemasSinConsultaCombinada.contains(claveEsquema)) {
+                        try {
+                                resultado = obtenerProductoSaeCombinado(conexion, rutaBd, tablas, codigo, incluirImpuestos);
+                                resuelto = true;
+                        } catch (SQLException ex) {
+                                if (InterruptoresFirebird.esErrorDeConexion(ex) || PlazoConsulta.vencidoEnHiloActual()) {
+                                        throw ex;
+                                }
+                                if (esErrorDeSintaxis(ex)) {
+                                        esquemasSinConsultaCombinada.add(claveEsquema);
+                                        LOGGER.warn("La consulta combinada no es compatible con {} ({}); se usarán consultas individuales: {}",
+                                                        rutaBd, tablas.productos(), ex.getMessage());
+                                } else {
+                                        LOGGER.debug("Falló la consulta combinada en {} ({}); se repite con consultas individuales: {}",
+                                                        rutaBd, tablas.productos(), ex.getMessage());
+                                }
+                        }
+                }
+                if (!resuelto) {
+                        resultado = obtenerProductoSaeSecuencial(conexion, rutaBd, tablas, codigo, incluirImpuestos);
+                }
+                if (resultado == null) {
+                        return Optional.empty();
+                }
+                ProductoBasico producto = resultado.producto();
+                String imagen = construirUrlImagen(rutaEmpresa, producto.claveImagen());
+                return Optional.of(new ProductoConsultadoDTO(producto.codigo(), producto.descripcion(),
+                                resultado.alternos(), producto.claveImpuestos(), producto.existenciaTotal(),
+                                resultado.existencias(), resultado.precios(), imagen, incluirImpuestos));
+        }
+
+        private ResultadoSae obtenerProductoSaeSecuencial(Connection conexion, Path rutaBd, TablasSae tablas,
+                        String codigo, boolean incluirImpuestos) throws SQLException {
+                ProductoBasico producto = metricas.medir(Fase.CONSULTA_PRODUCTO,
+                                () -> obtenerProductoBasico(conexion, tablas.productos(), codigo));
+                if (producto == null) {
+                        return null;
                 }
+                List<String> alternos = metricas.medir(Fase.CONSULTA_ALTERNOS,
+                                () -> obtenerClavesAlternas(conexion, tablas.alternos(), codigo));
+                EsquemaImpuestos esquema = obtenerEsquemaSae(conexion, rutaBd, tablas, producto.claveImpuestos(),
+                                incluirImpuestos);
+                List<PrecioProductoDTO> precios = metricas.medir(Fase.CONSULTA_PRECIOS,
+                                () -> obtenerPrecios(conexion, tablas.precios(), codigo, esquema, incluirImpuestos));
+                List<ExistenciaDetalleDTO> existencias = metricas.medir(Fase.CONSULTA_EXISTENCIAS,
+                                () -> obtenerExistencias(conexion, tablas.existencias(), codigo));
+                return new ResultadoSae(producto, alternos, precios, existencias);
+        }
+
+        /**
+         * Obtiene el producto, claves alternas, precios y existencias en un solo viaje a Firebird. Las filas de detalle
+         * se agregan con {@code LIST} usando separadores de control ASCII, con los números como enteros escalados de
+         * {@link UtilidadesDecimales} para que valgan lo mismo que en las consultas individuales. El esquema de
+         * impuestos sale de {@link CacheEsquemasImpuestos} una vez cerrado el cursor: en autocommit Jaybird cierra los
+         * cursores abiertos de la conexión al ejecutar otra sentencia, y la caché puede consultar la tabla de impuestos.
+         */
+        private ResultadoSae obtenerProductoSaeCombinado(Connection conexion, Path rutaBd, TablasSae tablas,
+                        String codigo, boolean incluirImpuestos) throws SQLException {
+                String sql = "SELECT i.cve_art, i.descr, i.exist, i.cve_esqimpu, i.cve_imagen,"
+                                + " (SELECT LIST(TRIM(a.cve_alter), ASCII_CHAR(31)) FROM " + tablas.alternos()
+                                + " a WHERE a.cve_art = i.cve_art) AS alternos,"
+                                + " (SELECT LIST(p.cve_precio || ASCII_CHAR(30) || "
+                                + UtilidadesDecimales.expresionEscalada("p.precio") + ", ASCII_CHAR(31)) FROM "
+                                + tablas.precios() + " p WHERE p.cve_art = i.cve_art) AS precios,"
+                                + " (SELECT LIST(m.cve_alm || ASCII_CHAR(30) || "
+                                + UtilidadesDecimales.expresionEscalada("m.exist") + ", ASCII_CHAR(31)) FROM "
+                                + tablas.existencias() + " m WHERE m.cve_art = i.cve_art) AS existencias"
+                                + " FROM " + tablas.productos() + " i WHERE i.cve_art = ?";
+                PreparedStatement ps = sentencias.preparar(conexion, sql);
+                ps.setString(1, codigo);
+                ProductoBasico producto;
+                String listaAlternos;
+                String listaPrecios;
+                String listaExistencias;
+                try (ResultSet rs = metricas.medir(Fase.CONSULTA_COMBINADA, ps::executeQuery)) {
+                        if (!rs.next()) {
+                                return null;
+                        }
+                        producto = new ProductoBasico(rs.getString("cve_art"), rs.getString("descr"),
+                                        UtilidadesDecimales.normalizarDouble(rs.getBigDecimal("exist")),
+                                        rs.getString("cve_esqimpu"), rs.getString("cve_imagen"));
+                        listaAlternos = rs.getString("alternos");
+                        listaPrecios = rs.getString("precios");
+                        listaExistencias = rs.getString("existencias");
+                }
+                EsquemaImpuestos esquema = obtenerEsquemaSae(conexion, rutaBd, tablas, producto.claveImpuestos(),
+                                incluirImpuestos);
+                List<String> alternos = new ArrayList<>();
+                for (String clave : separarLista(listaAlternos)) {
+                        agregarSiNoVacio(alternos, clave);
+                }
+                List<PrecioProductoDTO> precios = new ArrayList<>();
+                for (String elemento : separarLista(listaPrecios)) {
+                        String[] partes = elemento.split(SEPARADOR_CAMPO, 2);
+                        BigDecimal precioBase = UtilidadesDecimales.desdeEscalado(partes[1]);
+                        BigDecimal precioConImpuestos = aplicarImpuestos(precioBase, esquema, incluirImpuestos);
+                        precios.add(new PrecioProductoDTO(Integer.parseInt(partes[0].trim()), precioBase,
+                                        precioConImpuestos));
+                }
+                precios.sort(Comparator.comparingInt(PrecioProductoDTO::lista));
+                List<ExistenciaDetalleDTO> existencias = new ArrayList<>();
+                for (String elemento : separarLista(listaExistencias)) {
+                        String[] partes = elemento.split(SEPARADOR_CAMPO, 2);
+                        existencias.add(
+                                        new ExistenciaDetalleDTO(partes[0], UtilidadesDecimales.desdeEscalado(partes[1])));
+                }
+                existencias.sort(Comparator.comparing(ExistenciaDetalleDTO::almacen, this::compararAlmacenes));
+                return new ResultadoSae(producto, alternos, precios, existencias);
         }
 
         private Optional<ProductoConsultadoDTO> consultarProductoCaja(SolicitudConsultaProducto solicitud)
@@ -109,50 +287,156 @@ public class ServicioConsultaProductos {
                         LOGGER.warn("No se localizó base de datos Firebird para Aspel Caja en {}", rutaEmpresa);
                         return Optional.empty();
                 }
-                try (Connection conexion = abrirConexion(rutaBd)) {
-                        ProductoCaja producto = obtenerProductoCaja(conexion, solicitud.codigoProducto());
-                        if (producto == null) {
+                metricas.confirmarEmpresa(rutaEmpresa);
+                InstantaneaCatalogo instantanea = servicioCatalogo.obtener(TipoSistemaAspel.CAJA, rutaBd, "").orElse(null);
+                String codigo = solicitud.codigoProducto();
+                return conConexion(rutaBd, conexion -> {
+                        Optional<ProductoConsultadoDTO> producto = buscarProductoCaja(conexion, rutaEmpresa, rutaBd,
+                                        instantanea, codigo, solicitud.incluirImpuestos());
+                        if (producto.isPresent()) {
+                                return producto;
+                        }
+                        Optional<String> principal = metricas.medir(Fase.RESOLVER_CLAVE_ALTERNA,
+                                        () -> servicioClavesAlternas.resolverCaja(rutaBd, codigo));
+                        if (principal.isEmpty() || principal.get().equals(codigo.trim())) {
                                 return Optional.empty();
                         }
-                        EsquemaImpuestos esquema = obtenerEsquemaCaja(conexion, producto.esquemaImpuestos());
-                        List<PrecioProductoDTO> precios = construirPreciosCaja(producto, esquema,
+                        return buscarProductoCaja(conexion, rutaEmpresa, rutaBd, instantanea, principal.get(),
                                         solicitud.incluirImpuestos());
-                        List<ExistenciaDetalleDTO> existencias = obtenerExistenciasCaja(conexion,
-                                        solicitud.codigoProducto());
-                        List<String> alternos = producto.alternativos();
-                        String imagen = cargarImagenProducto(rutaEmpresa, producto.claveImagen());
-                        return Optional.of(new ProductoConsultadoDTO(producto.codigo(), producto.descripcion(), alternos,
-                                        producto.esquemaImpuestos(), producto.existenciaTotal(), existencias, precios, imagen,
-                                        solicitud.incluirImpuestos()));
+                });
+        }
+
+        private Optional<ProductoConsultadoDTO> buscarProductoCaja(Connection conexion, Path rutaEmpresa, Path rutaBd,
+                        InstantaneaCatalogo instantanea, String codigo, boolean incluirImpuestos) throws SQLException {
+                Articulo articulo = instantanea != null ? instantanea.buscar(codigo) : null;
+                if (articulo != null) {
+                        String sql = "SELECT c.existencia AS total, e.tienda AS almacen, e.existienda AS existencia"
+                                        + " FROM catinven c LEFT JOIN exist e ON e.producto = c.producto WHERE c.producto = ?"
+                                        + " ORDER BY e.tienda";
+                        ExistenciasEnVivo existencias = metricas.medir(Fase.CONSULTA_EXISTENCIAS,
+                                        () -> obtenerExistenciasEnVivo(conexion, sql, codigo));
+                        return Optional.ofNullable(existencias).map(leidas -> construirDesdeCatalogo(rutaEmpresa,
+                                        instantanea, articulo, leidas, incluirImpuestos));
+                }
+                ProductoCaja producto = metricas.medir(Fase.CONSULTA_PRODUCTO, () -> obtenerProductoCaja(conexion, codigo));
+                if (producto == null) {
+                        return Optional.empty();
+                }
+                EsquemaImpuestos esquema = incluirImpuestos
+                                ? metricas.medir(Fase.CONSULTA_IMPUESTOS,
+                                                () -> cacheEsquemas.obtenerCaja(conexion, rutaBd, producto.esquemaImpuestos()))
+                                : EsquemaImpuestos.vacio();
+                List<PrecioProductoDTO> precios = construirPreciosCaja(producto, esquema, incluirImpuestos);
+                List<ExistenciaDetalleDTO> existencias = metricas.medir(Fase.CONSULTA_EXISTENCIAS,
+                                () -> obtenerExistenciasCaja(conexion, codigo));
+                List<String> alternos = producto.alternativos();
+                String imagen = construirUrlImagen(rutaEmpresa, producto.claveImagen());
+                return Optional.of(new ProductoConsultadoDTO(producto.codigo(), producto.descripcion(), alternos,
+                                producto.esquemaImpuestos(), producto.existenciaTotal(), existencias, precios, imagen,
+                                incluirImpuestos));
+        }
+
+        /**
+         * Lee en vivo la existencia total y por almacén de un artículo atendido desde la instantánea del catálogo.
+         *
+         * @return existencias leídas o {@code null} si el artículo ya no existe en Firebird.
+         */
+        private ExistenciasEnVivo obtenerExistenciasEnVivo(Connection conexion, String sql, String codigo)
+                        throws SQLException {
+                PreparedStatement ps = sentencias.preparar(conexion, sql);
+                ps.setString(1, codigo);
+                try (ResultSet rs = ps.executeQuery()) {
+                        BigDecimal total = null;
+                        boolean encontrado = false;
+                        List<ExistenciaDetalleDTO> detalle = new ArrayList<>();
+                        while (rs.next()) {
+                                if (!encontrado) {
+                                        total = extraerBigDecimal(rs, "total");
+                                        encontrado = true;
+                                }
+                                String almacen = rs.getString("almacen");
+                                if (almacen != null) {
+                                        detalle.add(new ExistenciaDetalleDTO(almacen, extraerBigDecimal(rs, "existencia")));
+                                }
+                        }
+                        return encontrado ? new ExistenciasEnVivo(total, detalle) : null;
+                }
+        }
+
+        private ProductoConsultadoDTO construirDesdeCatalogo(Path rutaEmpresa, InstantaneaCatalogo instantanea,
+                        Articulo articulo, ExistenciasEnVivo existencias, boolean incluirImpuestos) {
+                EsquemaImpuestos esquema = instantanea.esquema(articulo.claveImpuestos());
+                List<PrecioProductoDTO> precios = new ArrayList<>(articulo.precios().size());
+                for (PrecioLista precio : articulo.precios()) {
+                        BigDecimal base = precio.precio();
+                        BigDecimal conImpuesto = aplicarImpuestos(base, esquema, incluirImpuestos);
+                        precios.add(new PrecioProductoDTO(precio.lista(), base, conImpuesto));
                 }
+                String imagen = construirUrlImagen(rutaEmpresa, articulo.claveImagen());
+                return new ProductoConsultadoDTO(articulo.codigo(), articulo.descripcion(), articulo.alternos(),
+                                articulo.claveImpuestos(), existencias.total(), existencias.detalle(), precios, imagen,
+                                incluirImpuestos);
         }
 
         private Optional<Path> localizarBaseDatos(Path carpetaEmpresa) {
-                return UtilidadesRutas.buscarArchivoPorExtension(carpetaEmpresa, ".fdb");
+                return metricas.medir(Fase.LOCALIZAR_BASE_DATOS, () -> servicioRutas.localizarBaseDatos(carpetaEmpresa));
         }
 
         private Connection abrirConexion(Path rutaBd) throws SQLException {
-                String url = String.format("jdbc:firebirdsql://%s:%s%s", host, puerto,
-                                UtilidadesRutas.normalizarParaConexion(rutaBd));
-                Properties propiedades = new Properties();
-                propiedades.setProperty("user", usuario);
-                propiedades.setProperty("password", contrasena);
-                propiedades.setProperty("encoding", "UTF8");
-                return DriverManager.getConnection(url, propiedades);
+                return metricas.medir(Fase.CONEXION, () -> poolConexiones.obtenerConexion(rutaBd));
+        }
+
+        private EsquemaImpuestos obtenerEsquemaSae(Connection conexion, Path rutaBd, TablasSae tablas, String clave,
+                        boolean incluirImpuestos) throws SQLException {
+                if (!incluirImpuestos) {
+                        return EsquemaImpuestos.vacio();
+                }
+                return metricas.medir(Fase.CONSULTA_IMPUESTOS, () -> cacheEsquemas.obtenerSae(conexion, rutaBd, tablas, clave));
+        }
+
+        private BigDecimal aplicarImpuestos(BigDecimal base, EsquemaImpuestos esquema, boolean incluirImpuestos) {
+                if (!incluirImpuestos) {
+                        return base;
+                }
+                return metricas.medir(Fase.CALCULO_IMPUESTOS, () -> base.add(esquema.calcularImpuestos(base)));
+        }
+
+        /**
+         * Ejecuta la operación con una conexión a la base indicada pasando por su interruptor, que solo cuenta como
+         * fallo lo que indica {@link InterruptoresFirebird#esFallo(SQLException)}. El plazo deja de cancelar las
+         * sentencias antes de que la conexión vuelva al pool.
+         */
+        private <T> T conConexion(Path rutaBd, OperacionConexion<T> operacion) throws SQLException {
+                interruptores.autorizar(rutaBd);
+                boolean fallo = false;
+                try (Connection conexion = abrirConexion(rutaBd)) {
+                        try {
+                                return operacion.ejecutar(conexion);
+                        } finally {
+                                PlazoConsulta.liberarSentenciasEnHiloActual();
+                        }
+                } catch (SQLException ex) {
+                        fallo = InterruptoresFirebird.esFallo(ex);
+                        throw ex;
+                } catch (RuntimeException ex) {
+                        fallo = PlazoConsulta.vencidoEnHiloActual();
+                        throw ex;
+                } finally {
+                        interruptores.registrar(rutaBd, fallo);
+                }
         }
 
         private ProductoBasico obtenerProductoBasico(Connection conexion, String tablaProductos, String codigo)
                         throws SQLException {
                 String sql = "SELECT cve_art, descr, exist, cve_esqimpu, cve_imagen FROM " + tablaProductos
                                 + " WHERE cve_art = ?";
-                try (PreparedStatement ps = conexion.prepareStatement(sql)) {
-                        ps.setString(1, codigo);
-                        try (ResultSet rs = ps.executeQuery()) {
-                                if (rs.next()) {
-                                        return new ProductoBasico(rs.getString("cve_art"), rs.getString("descr"),
-                                                        rs.getBigDecimal("exist"), rs.getString("cve_esqimpu"),
-                                                        rs.getString("cve_imagen"));
-                                }
+                PreparedStatement ps = sentencias.preparar(conexion, sql);
+                ps.setString(1, codigo);
+                try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                                return new ProductoBasico(rs.getString("cve_art"), rs.getString("descr"),
+                                                UtilidadesDecimales.normalizarDouble(rs.getBigDecimal("exist")),
+                                                rs.getString("cve_esqimpu"), rs.getString("cve_imagen"));
                         }
                 }
                 return null;
@@ -161,62 +445,32 @@ public class ServicioConsultaProductos {
         private List<String> obtenerClavesAlternas(Connection conexion, String tablaAlternos, String codigo)
                         throws SQLException {
                 String sql = "SELECT cve_alter FROM " + tablaAlternos + " WHERE cve_art = ?";
-                try (PreparedStatement ps = conexion.prepareStatement(sql)) {
-                        ps.setString(1, codigo);
-                        try (ResultSet rs = ps.executeQuery()) {
-                                List<String> claves = new ArrayList<>();
-                                while (rs.next()) {
-                                        String clave = rs.getString("cve_alter");
-                                        if (clave != null && !clave.isBlank()) {
-                                                claves.add(clave.trim());
-                                        }
+                PreparedStatement ps = sentencias.preparar(conexion, sql);
+                ps.setString(1, codigo);
+                try (ResultSet rs = ps.executeQuery()) {
+                        List<String> claves = new ArrayList<>();
+                        while (rs.next()) {
+                                String clave = rs.getString("cve_alter");
+                                if (clave != null && !clave.isBlank()) {
+                                        claves.add(clave.trim());
                                 }
-                                return claves;
                         }
+                        return claves;
                 }
         }
 
-        private EsquemaImpuestos obtenerEsquemaImpuestos(Connection conexion, String tablaImpuestos,
-                        String claveImpuestos) throws SQLException {
-                if (claveImpuestos == null || claveImpuestos.isBlank()) {
-                        return EsquemaImpuestos.vacio();
-                }
-                String sql = "SELECT impuesto1, impuesto2, impuesto3, impuesto4, imp1aplica, imp2aplica, imp3aplica, imp4aplica FROM "
-                                + tablaImpuestos + " WHERE cve_esqimpu = ?";
-                try (PreparedStatement ps = conexion.prepareStatement(sql)) {
-                        ps.setString(1, claveImpuestos);
-                        try (ResultSet rs = ps.executeQuery()) {
-                                if (rs.next()) {
-                                        return new EsquemaImpuestos(
-                                                        extraerBigDecimal(rs, "impuesto1"),
-                                                        extraerBigDecimal(rs, "impuesto2"),
-                                                        extraerBigDecimal(rs, "impuesto3"),
-                                                        extraerBigDecimal(rs, "impuesto4"),
-                                                        rs.getInt("imp1aplica"),
-                                                        rs.getInt("imp2aplica"),
-                                                        rs.getInt("imp3aplica"),
-                                                        rs.getInt("imp4aplica"));
-                                }
-                        }
-                }
-                return EsquemaImpuestos.vacio();
-        }
-
         private List<PrecioProductoDTO> obtenerPrecios(Connection conexion, String tablaPrecios, String codigo,
                         EsquemaImpuestos esquema, boolean incluirImpuestos) throws SQLException {
                 String sql = "SELECT cve_precio, precio FROM " + tablaPrecios + " WHERE cve_art = ? ORDER BY cve_precio";
                 List<PrecioProductoDTO> precios = new ArrayList<>();
-                try (PreparedStatement ps = conexion.prepareStatement(sql)) {
-                        ps.setString(1, codigo);
-                        try (ResultSet rs = ps.executeQuery()) {
-                                while (rs.next()) {
-                                        int lista = rs.getInt("cve_precio");
-                                        BigDecimal precioBase = extraerBigDecimal(rs, "precio");
-                                        BigDecimal impuesto = esquema.calcularImpuestos(precioBase);
-                                        BigDecimal precioConImpuestos = precioBase.add(impuesto);
-                                        precios.add(new PrecioProductoDTO(lista, precioBase,
-                                                        incluirImpuestos ? precioConImpuestos : precioBase));
-                                }
+                PreparedStatement ps = sentencias.preparar(conexion, sql);
+                ps.setString(1, codigo);
+                try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                                int lista = rs.getInt("cve_precio");
+                                BigDecimal precioBase = extraerBigDecimal(rs, "precio");
+                                BigDecimal precioConImpuestos = aplicarImpuestos(precioBase, esquema, incluirImpuestos);
+                                precios.add(new PrecioProductoDTO(lista, precioBase, precioConImpuestos));
                         }
                 }
                 return precios;
@@ -226,14 +480,13 @@ public class ServicioConsultaProductos {
                         throws SQLException {
                 String sql = "SELECT cve_alm, exist FROM " + tablaExistencias + " WHERE cve_art = ? ORDER BY cve_alm";
                 List<ExistenciaDetalleDTO> existencias = new ArrayList<>();
-                try (PreparedStatement ps = conexion.prepareStatement(sql)) {
-                        ps.setString(1, codigo);
-                        try (ResultSet rs = ps.executeQuery()) {
-                                while (rs.next()) {
-                                        String almacen = rs.getString("cve_alm");
-                                        BigDecimal existencia = extraerBigDecimal(rs, "exist");
-                                        existencias.add(new ExistenciaDetalleDTO(almacen, existencia));
-                                }
+                PreparedStatement ps = sentencias.preparar(conexion, sql);
+                ps.setString(1, codigo);
+                try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                                String almacen = rs.getString("cve_alm");
+                                BigDecimal existencia = extraerBigDecimal(rs, "exist");
+                                existencias.add(new ExistenciaDetalleDTO(almacen, existencia));
                         }
                 }
                 return existencias;
@@ -242,52 +495,27 @@ public class ServicioConsultaProductos {
         private ProductoCaja obtenerProductoCaja(Connection conexion, String codigo) throws SQLException {
                 String sql = "SELECT producto, descripcio, existencia, esqimp, clvalter1, clvalter2, clvalter3, preciop, precio2, precio3, precio4, imagen"
                                 + " FROM catinven WHERE producto = ?";
-                try (PreparedStatement ps = conexion.prepareStatement(sql)) {
-                        ps.setString(1, codigo);
-                        try (ResultSet rs = ps.executeQuery()) {
-                                if (rs.next()) {
-                                        List<String> alternos = new ArrayList<>();
-                                        agregarSiNoVacio(alternos, rs.getString("clvalter1"));
-                                        agregarSiNoVacio(alternos, rs.getString("clvalter2"));
-                                        agregarSiNoVacio(alternos, rs.getString("clvalter3"));
-                                        List<BigDecimal> precios = List.of(
-                                                        extraerBigDecimal(rs, "preciop"),
-                                                        extraerBigDecimal(rs, "precio2"),
-                                                        extraerBigDecimal(rs, "precio3"),
-                                                        extraerBigDecimal(rs, "precio4"));
-                                        return new ProductoCaja(rs.getString("producto"), rs.getString("descripcio"),
-                                                        extraerBigDecimal(rs, "existencia"), rs.getString("esqimp"),
-                                                        precios, alternos, rs.getString("imagen"));
-                                }
+                PreparedStatement ps = sentencias.preparar(conexion, sql);
+                ps.setString(1, codigo);
+                try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                                List<String> alternos = new ArrayList<>();
+                                agregarSiNoVacio(alternos, rs.getString("clvalter1"));
+                                agregarSiNoVacio(alternos, rs.getString("clvalter2"));
+                                agregarSiNoVacio(alternos, rs.getString("clvalter3"));
+                                List<BigDecimal> precios = List.of(
+                                                extraerBigDecimal(rs, "preciop"),
+                                                extraerBigDecimal(rs, "precio2"),
+                                                extraerBigDecimal(rs, "precio3"),
+                                                extraerBigDecimal(rs, "precio4"));
+                                return new ProductoCaja(rs.getString("producto"), rs.getString("descripcio"),
+                                                extraerBigDecimal(rs, "existencia"), rs.getString("esqimp"),
+                                                precios, alternos, rs.getString("imagen"));
                         }
                 }
                 return null;
         }
 
-        private EsquemaImpuestos obtenerEsquemaCaja(Connection conexion, String clave) throws SQLException {
-                        if (clave == null || clave.isBlank()) {
-                                return EsquemaImpuestos.vacio();
-                        }
-                        String sql = "SELECT porcen1, porcen2, porcen3, porcen4, aplica1, aplica2, aplica3, aplica4 FROM esqimp WHERE clave = ?";
-                        try (PreparedStatement ps = conexion.prepareStatement(sql)) {
-                                ps.setString(1, clave);
-                                try (ResultSet rs = ps.executeQuery()) {
-                                        if (rs.next()) {
-                                                return new EsquemaImpuestos(
-                                                                extraerBigDecimal(rs, "porcen1"),
-                                                                extraerBigDecimal(rs, "porcen2"),
-                                                                extraerBigDecimal(rs, "porcen3"),
-                                                                extraerBigDecimal(rs, "porcen4"),
-                                                                rs.getInt("aplica1"),
-                                                                rs.getInt("aplica2"),
-                                                                rs.getInt("aplica3"),
-                                                                rs.getInt("aplica4"));
-                                        }
-                                }
-                        }
-                        return EsquemaImpuestos.vacio();
-        }
-
         private List<PrecioProductoDTO> construirPreciosCaja(ProductoCaja producto, EsquemaImpuestos esquema,
                         boolean incluirImpuestos) {
                 List<PrecioProductoDTO> lista = new ArrayList<>();
@@ -297,9 +525,8 @@ public class ServicioConsultaProductos {
                         if (base == null) {
                                 continue;
                         }
-                        BigDecimal impuesto = esquema.calcularImpuestos(base);
-                        BigDecimal conImpuesto = base.add(impuesto);
-                        lista.add(new PrecioProductoDTO(i + 1, base, incluirImpuestos ? conImpuesto : base));
+                        BigDecimal conImpuesto = aplicarImpuestos(base, esquema, incluirImpuestos);
+                        lista.add(new PrecioProductoDTO(i + 1, base, conImpuesto));
                 }
                 return lista;
         }
@@ -308,13 +535,12 @@ public class ServicioConsultaProductos {
                         throws SQLException {
                 String sql = "SELECT tienda, existienda FROM exist WHERE producto = ? ORDER BY tienda";
                 List<ExistenciaDetalleDTO> lista = new ArrayList<>();
-                try (PreparedStatement ps = conexion.prepareStatement(sql)) {
-                        ps.setString(1, codigo);
-                        try (ResultSet rs = ps.executeQuery()) {
-                                while (rs.next()) {
-                                        lista.add(new ExistenciaDetalleDTO(rs.getString("tienda"),
-                                                        extraerBigDecimal(rs, "existienda")));
-                                }
+                PreparedStatement ps = sentencias.preparar(conexion, sql);
+                ps.setString(1, codigo);
+                try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                                lista.add(new ExistenciaDetalleDTO(rs.getString("tienda"),
+                                                extraerBigDecimal(rs, "existienda")));
                         }
                 }
                 return lista;
@@ -327,38 +553,46 @@ public class ServicioConsultaProductos {
         }
 
         private BigDecimal extraerBigDecimal(ResultSet rs, String columna) throws SQLException {
-                BigDecimal valor = rs.getBigDecimal(columna);
+                BigDecimal valor = UtilidadesDecimales.normalizarDouble(rs.getBigDecimal(columna));
                 return valor != null ? valor : BigDecimal.ZERO;
         }
 
-        private String cargarImagenProducto(Path rutaEmpresa, String claveImagen) {
-                if (claveImagen == null || claveImagen.isBlank()) {
-                        return null;
-                }
-                Path carpetaImagenes = rutaEmpresa.resolve("Imagenes");
-                Path archivoPng = carpetaImagenes.resolve(claveImagen + ".png");
-                Path archivoJpg = carpetaImagenes.resolve(claveImagen + ".jpg");
-                Path archivo = Files.exists(archivoPng) ? archivoPng : Files.exists(archivoJpg) ? archivoJpg : null;
-                if (archivo == null || !Files.exists(archivo)) {
-                        return null;
+        private List<String> separarLista(String lista) {
+                if (lista == null || lista.isEmpty()) {
+                        return List.of();
                 }
+                return List.of(lista.split(SEPARADOR_ELEMENTO));
+        }
+
+        private int compararAlmacenes(String primero, String segundo) {
                 try {
-                        byte[] datos = Files.readAllBytes(archivo);
-                        String extension = obtenerExtension(archivo.getFileName().toString());
-                        String base64 = Base64.getEncoder().encodeToString(datos);
-                        return "data:image/" + extension + ";base64," + base64;
-                } catch (IOException ex) {
-                        LOGGER.warn("No fue posible cargar la imagen {}: {}", archivo, ex.getMessage());
-                        return null;
+                        return Integer.compare(Integer.parseInt(primero.trim()), Integer.parseInt(segundo.trim()));
+                } catch (NumberFormatException ex) {
+                        return primero.compareTo(segundo);
                 }
         }
 
-        private String obtenerExtension(String nombreArchivo) {
-                int indice = nombreArchivo.lastIndexOf('.') + 1;
-                if (indice <= 0 || indice >= nombreArchivo.length()) {
-                        return "png";
+        /**
+         * Errores al preparar la sentencia ({@code LIST} o una columna que la versión de Firebird no reconoce); solo
+         * éstos desactivan la consulta combinada para la base.
+         */
+        private boolean esErrorDeSintaxis(SQLException ex) {
+                String estado = ex.getSQLState();
+                return ex instanceof SQLSyntaxErrorException || (estado != null && estado.startsWith("42"));
+        }
+
+        private String construirUrlImagen(Path rutaEmpresa, String claveImagen) {
+                if (claveImagen == null || claveImagen.isBlank()) {
+                        return null;
                 }
-                return nombreArchivo.substring(indice);
+                return metricas.medir(Fase.IMAGEN, () -> servicioImagenes.construirUrl(rutaEmpresa, claveImagen));
+        }
+
+        private record ExistenciasEnVivo(BigDecimal total, List<ExistenciaDetalleDTO> detalle) {
+        }
+
+        private record ResultadoSae(ProductoBasico producto, List<String> alternos, List<PrecioProductoDTO> precios,
+                        List<ExistenciaDetalleDTO> existencias) {
         }
 
         private record ProductoBasico(String codigo, String descripcion, BigDecimal existenciaTotal, String claveImpuestos,
@@ -369,28 +603,8 @@ public class ServicioConsultaProductos {
                         List<BigDecimal> precios, List<String> alternativos, String claveImagen) {
         }
 
-        private static class EsquemaImpuestos {
-                private final List<BigDecimal> porcentajes;
-                private final List<Integer> reglas;
-
-                EsquemaImpuestos(BigDecimal impuesto1, BigDecimal impuesto2, BigDecimal impuesto3, BigDecimal impuesto4,
-                                Integer regla1, Integer regla2, Integer regla3, Integer regla4) {
-                        this.porcentajes = List.of(
-                                        impuesto1 != null ? impuesto1 : BigDecimal.ZERO,
-                                        impuesto2 != null ? impuesto2 : BigDecimal.ZERO,
-                                        impuesto3 != null ? impuesto3 : BigDecimal.ZERO,
-                                        impuesto4 != null ? impuesto4 : BigDecimal.ZERO);
-                        this.reglas = List.of(regla1 != null ? regla1 : 0, regla2 != null ? regla2 : 0,
-                                        regla3 != null ? regla3 : 0, regla4 != null ? regla4 : 0);
-                }
-
-                static EsquemaImpuestos vacio() {
-                        return new EsquemaImpuestos(BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, 0, 0,
-                                        0, 0);
-                }
-
-                BigDecimal calcularImpuestos(BigDecimal precioBase) {
-                        return UtilidadesImpuestos.calcularTotalImpuestos(precioBase, porcentajes, reglas);
-                }
+        @FunctionalInterface
+        private interface OperacionConexion<T> {
+                T ejecutar(Connection conexion) throws SQLException;
         }
 }
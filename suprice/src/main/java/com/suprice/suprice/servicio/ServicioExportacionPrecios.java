@@ -0,0 +1,379 @@
+package com.suprice.suprice.servicio;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.suprice.suprice.modelo.FormatoExportacion;
+import com.suprice.suprice.modelo.SolicitudExportacionPrecios;
+import com.suprice.suprice.modelo.TipoSistemaAspel;
+import com.suprice.suprice.util.UtilidadesDecimales;
+import com.suprice.suprice.util.UtilidadesRutas;
+
+/**
+ * Exporta la lista de precios completa de una empresa. Los artículos se recorren con un cursor de solo avance y cada
+ * precio se escribe, con sus impuestos calculados, en cuanto se lee; la memoria usada no depende del tamaño del
+ * catálogo. Cada exportación ocupa durante minutos una de las pocas conexiones del pool de su base, por lo que se
+ * admiten a lo sumo {@code suprice.exportacion.maximo-por-empresa} exportaciones simultáneas por empresa y su resultado
+ * se registra en el interruptor de la base.
+ */
+@Service
+public class ServicioExportacionPrecios {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(ServicioExportacionPrecios.class);
+
+        private static final int TAMANO_BUFFER = 64 * 1024;
+        private static final long REINTENTAR_EN_SEGUNDOS = 30;
+        private static final String ENCABEZADO_CSV = "clave,descripcion,esquema_impuestos,lista,precio,impuestos,precio_con_impuestos";
+
+        private final PoolConexionesFirebird poolConexiones;
+        private final ServicioRutasEmpresa servicioRutas;
+        private final CacheEsquemasImpuestos cacheEsquemas;
+        private final InterruptoresFirebird interruptores;
+        private final JsonFactory fabricaJson;
+        private final int tamanoLectura;
+        private final boolean comprimir;
+        private final int maximoPorEmpresa;
+        private final Map<Path, Semaphore> enCurso = new ConcurrentHashMap<>();
+
+        public ServicioExportacionPrecios(PoolConexionesFirebird poolConexiones, ServicioRutasEmpresa servicioRutas,
+                        CacheEsquemasImpuestos cacheEsquemas, InterruptoresFirebird interruptores, ObjectMapper objectMapper,
+                        @Value("${suprice.exportacion.tamano-lectura:2000}") int tamanoLectura,
+                        @Value("${suprice.exportacion.comprimir:true}") boolean comprimir,
+                        @Value("${suprice.exportacion.maximo-por-empresa:1}") int maximoPorEmpresa) {
+                this.poolConexiones = poolConexiones;
+                this.servicioRutas = servicioRutas;
+                this.cacheEsquemas = cacheEsquemas;
+                this.interruptores = interruptores;
+                this.fabricaJson = objectMapper.getFactory();
+                this.tamanoLectura = Math.max(1, tamanoLectura);
+                this.comprimir = comprimir;
+                this.maximoPorEmpresa = Math.max(1, maximoPorEmpresa);
+        }
+
+        /**
+         * Localiza la base de datos de la empresa antes de comenzar a responder.
+         *
+         * @param solicitud exportación solicitada.
+         * @return archivo {@code .fdb} o vacío si la empresa o el sufijo no son válidos.
+         */
+        public Optional<Path> localizarBaseDatos(SolicitudExportacionPrecios solicitud) {
+                Path rutaEmpresa = UtilidadesRutas.aPath(solicitud.rutaEmpresa());
+                if (rutaEmpresa == null) {
+                        return Optional.empty();
+                }
+                if (solicitud.sistema() == TipoSistemaAspel.SAE && !TablasSae.esSufijoPermitido(solicitud.sufijoTablas())) {
+                        LOGGER.warn("Sufijo de tablas no permitido: {}", solicitud.sufijoTablas());
+                        return Optional.empty();
+                }
+                return servicioRutas.localizarBaseDatos(rutaEmpresa);
+        }
+
+        /**
+         * @param aceptaCodificacion valor del encabezado {@code Accept-Encoding} del cliente.
+         * @return si la exportación debe comprimirse con gzip.
+         */
+        public boolean debeComprimir(String aceptaCodificacion) {
+                return comprimir && aceptaCodificacion != null
+                                && aceptaCodificacion.toLowerCase(Locale.ROOT).contains("gzip");
+        }
+
+        /**
+         * Reserva un lugar para exportar la lista de precios de la empresa. Cada reserva debe terminar con
+         * {@link #liberar(Path)}.
+         *
+         * @param rutaBd archivo {@code .fdb} de la empresa.
+         * @throws ConsultaRechazadaException si la empresa ya tiene el máximo de exportaciones en curso.
+         */
+        public void reservar(Path rutaBd) {
+                if (!enCurso.computeIfAbsent(rutaBd, ruta -> new Semaphore(maximoPorEmpresa)).tryAcquire()) {
+                        throw new ConsultaRechazadaException("La empresa ya tiene una exportación de precios en curso", true,
+                                        REINTENTAR_EN_SEGUNDOS);
+                }
+        }
+
+        /**
+         * Libera el lugar tomado con {@link #reservar(Path)}.
+         */
+        public void liberar(Path rutaBd) {
+                Semaphore lugares = enCurso.get(rutaBd);
+                if (lugares != null) {
+                        lugares.release();
+                }
+        }
+
+        /**
+         * Escribe un renglón por cada precio de cada artículo, en el orden en que Firebird los entrega.
+         *
+         * @param solicitud  exportación solicitada.
+         * @param rutaBd     archivo {@code .fdb} de la empresa.
+         * @param salida     flujo de la respuesta; no se cierra.
+         * @param comprimida si se escribe comprimido con gzip.
+         * @return cantidad de precios exportados.
+         * @throws SQLException cuando Firebird no responde.
+         * @throws IOException  cuando no es posible escribir la respuesta.
+         * @throws BaseDatosNoDisponibleException si el interruptor de la base está abierto.
+         */
+        public long exportar(SolicitudExportacionPrecios solicitud, Path rutaBd, OutputStream salida, boolean comprimida)
+                        throws SQLException, IOException {
+                long inicio = System.currentTimeMillis();
+                GZIPOutputStream gzip = comprimida ? new GZIPOutputStream(salida, TAMANO_BUFFER) : null;
+                Writer escritor = new BufferedWriter(
+                                new OutputStreamWriter(gzip != null ? gzip : salida, StandardCharsets.UTF_8), TAMANO_BUFFER);
+                EscritorPrecios renglones = solicitud.formato() == FormatoExportacion.CSV ? new EscritorCsv(escritor)
+                                : new EscritorNdjson(fabricaJson.createGenerator(escritor));
+                long total;
+                RegistroInterruptor registro = new RegistroInterruptor(rutaBd);
+                try (Connection conexion = poolConexiones.obtenerConexion(rutaBd)) {
+                        total = solicitud.sistema() == TipoSistemaAspel.SAE
+                                        ? exportarSae(conexion, rutaBd, TablasSae.conSufijo(solicitud.sufijoTablas()), renglones,
+                                                        registro)
+                                        : exportarCaja(conexion, rutaBd, renglones, registro);
+                } catch (SQLException ex) {
+                        registro.error(ex);
+                        throw ex;
+                } finally {
+                        registro.terminar();
+                }
+                renglones.terminar();
+                escritor.flush();
+                if (gzip != null) {
+                        gzip.finish();
+                }
+                salida.flush();
+                LOGGER.info("Lista de precios de {} exportada en {}: {} precios en {} ms", rutaBd, solicitud.formato(), total,
+                                System.currentTimeMillis() - inicio);
+                return total;
+        }
+
+        /**
+         * Recorre {@code INVE} unida con {@code PRECIO_X_PROD}. Los esquemas de impuestos se obtienen completos antes de
+         * abrir el cursor, por lo que no se ejecuta otra sentencia en la conexión mientras se lee.
+         */
+        private long exportarSae(Connection conexion, Path rutaBd, TablasSae tablas, EscritorPrecios renglones,
+                        RegistroInterruptor registro) throws SQLException, IOException {
+                Map<String, EsquemaImpuestos> esquemas = cacheEsquemas.obtenerTodosSae(conexion, rutaBd, tablas);
+                String sql = "SELECT i.cve_art, i.descr, i.cve_esqimpu, p.cve_precio, p.precio FROM " + tablas.productos()
+                                + " i JOIN " + tablas.precios() + " p ON p.cve_art = i.cve_art";
+                long total = 0;
+                try (PreparedStatement ps = prepararLectura(conexion, sql); ResultSet rs = ps.executeQuery()) {
+                        registro.respondio();
+                        while (rs.next()) {
+                                BigDecimal precio = UtilidadesDecimales.normalizarDouble(rs.getBigDecimal(5));
+                                if (precio == null) {
+                                        continue;
+                                }
+                                String claveImpuestos = recortar(rs.getString(3));
+                                renglones.escribir(recortar(rs.getString(1)), recortar(rs.getString(2)), claveImpuestos,
+                                                rs.getInt(4), precio, esquema(esquemas, claveImpuestos).calcularImpuestos(precio));
+                                total++;
+                        }
+                }
+                return total;
+        }
+
+        /**
+         * Recorre {@code catinven}, que guarda los cuatro precios de Caja en columnas del propio artículo.
+         */
+        private long exportarCaja(Connection conexion, Path rutaBd, EscritorPrecios renglones,
+                        RegistroInterruptor registro) throws SQLException, IOException {
+                Map<String, EsquemaImpuestos> esquemas = cacheEsquemas.obtenerTodosCaja(conexion, rutaBd);
+                String sql = "SELECT producto, descripcio, esqimp, preciop, precio2, precio3, precio4 FROM catinven";
+                long total = 0;
+                try (PreparedStatement ps = prepararLectura(conexion, sql); ResultSet rs = ps.executeQuery()) {
+                        registro.respondio();
+                        while (rs.next()) {
+                                String codigo = recortar(rs.getString(1));
+                                String descripcion = recortar(rs.getString(2));
+                                String claveImpuestos = recortar(rs.getString(3));
+                                EsquemaImpuestos esquema = esquema(esquemas, claveImpuestos);
+                                for (int lista = 1; lista <= 4; lista++) {
+                                        BigDecimal precio = UtilidadesDecimales
+                                                        .normalizarDouble(rs.getBigDecimal(3 + lista));
+                                        if (precio != null) {
+                                                renglones.escribir(codigo, descripcion, claveImpuestos, lista, precio,
+                                                                esquema.calcularImpuestos(precio));
+                                                total++;
+                                        }
+                                }
+                        }
+                }
+                return total;
+        }
+
+        /**
+         * Registra en el interruptor el resultado de una exportación en cuanto Firebird entrega el cursor, para no
+         * retener durante toda la lectura la consulta de prueba de un interruptor semiabierto. Un error de conexión
+         * posterior se registra como un fallo aparte.
+         */
+        private final class RegistroInterruptor {
+
+                private final Path rutaBd;
+                private boolean pendiente = true;
+
+                RegistroInterruptor(Path rutaBd) {
+                        interruptores.autorizar(rutaBd);
+                        this.rutaBd = rutaBd;
+                }
+
+                void respondio() {
+                        registrar(false);
+                }
+
+                void error(SQLException ex) {
+                        boolean fallo = InterruptoresFirebird.esFallo(ex);
+                        if (pendiente) {
+                                registrar(fallo);
+                        } else if (fallo) {
+                                try {
+                                        interruptores.autorizar(rutaBd);
+                                } catch (BaseDatosNoDisponibleException abierto) {
+                                        return;
+                                }
+                                interruptores.registrar(rutaBd, true);
+                        }
+                }
+
+                /** Un error de escritura antes de abrir el cursor no es un fallo de la base. */
+                void terminar() {
+                        registrar(false);
+                }
+
+                private void registrar(boolean fallo) {
+                        if (pendiente) {
+                                pendiente = false;
+                                interruptores.registrar(rutaBd, fallo);
+                        }
+                }
+        }
+
+        private PreparedStatement prepararLectura(Connection conexion, String sql) throws SQLException {
+                PreparedStatement ps = conexion.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(tamanoLectura);
+                return ps;
+        }
+
+        private static EsquemaImpuestos esquema(Map<String, EsquemaImpuestos> esquemas, String clave) {
+                return clave != null ? esquemas.getOrDefault(clave, EsquemaImpuestos.vacio()) : EsquemaImpuestos.vacio();
+        }
+
+        private static String recortar(String valor) {
+                return valor != null ? valor.trim() : null;
+        }
+
+        private interface EscritorPrecios {
+                void escribir(String codigo, String descripcion, String claveImpuestos, int lista, BigDecimal precio,
+                                BigDecimal impuestos) throws IOException;
+
+                void terminar() throws IOException;
+        }
+
+        private static final class EscritorCsv implements EscritorPrecios {
+
+                private final Writer escritor;
+
+                EscritorCsv(Writer escritor) throws IOException {
+                        this.escritor = escritor;
+                        escritor.write(ENCABEZADO_CSV);
+                        escritor.write("\r\n");
+                }
+
+                @Override
+                public void escribir(String codigo, String descripcion, String claveImpuestos, int lista, BigDecimal precio,
+                                BigDecimal impuestos) throws IOException {
+                        escribirCampo(codigo);
+                        escritor.write(',');
+                        escribirCampo(descripcion);
+                        escritor.write(',');
+                        escribirCampo(claveImpuestos);
+                        escritor.write(',');
+                        escritor.write(Integer.toString(lista));
+                        escritor.write(',');
+                        escritor.write(precio.toPlainString());
+                        escritor.write(',');
+                        escritor.write(impuestos.toPlainString());
+                        escritor.write(',');
+                        escritor.write(precio.add(impuestos).toPlainString());
+                        escritor.write("\r\n");
+                }
+
+                /**
+                 * Escribe el campo entre comillas solo cuando contiene comas, comillas o saltos de línea (RFC 4180).
+                 */
+                private void escribirCampo(String valor) throws IOException {
+                        if (valor == null) {
+                                return;
+                        }
+                        for (int i = 0; i < valor.length(); i++) {
+                                char caracter = valor.charAt(i);
+                                if (caracter == ',' || caracter == '"' || caracter == '\n' || caracter == '\r') {
+                                        escritor.write('"');
+                                        escritor.write(valor.replace("\"", "\"\""));
+                                        escritor.write('"');
+                                        return;
+                                }
+                        }
+                        escritor.write(valor);
+                }
+
+                @Override
+                public void terminar() {
+                        // El escritor se vacía al terminar la exportación.
+                }
+        }
+
+        private static final class EscritorNdjson implements EscritorPrecios {
+
+                private final JsonGenerator generador;
+
+                EscritorNdjson(JsonGenerator generador) {
+                        this.generador = generador;
+                        generador.setRootValueSeparator(null);
+                        generador.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                }
+
+                @Override
+                public void escribir(String codigo, String descripcion, String claveImpuestos, int lista, BigDecimal precio,
+                                BigDecimal impuestos) throws IOException {
+                        generador.writeStartObject();
+                        generador.writeStringField("codigo", codigo);
+                        generador.writeStringField("descripcion", descripcion);
+                        generador.writeStringField("claveImpuestos", claveImpuestos);
+                        generador.writeNumberField("lista", lista);
+                        generador.writeNumberField("precio", precio);
+                        generador.writeNumberField("impuestos", impuestos);
+                        generador.writeNumberField("precioConImpuestos", precio.add(impuestos));
+                        generador.writeEndObject();
+                        generador.writeRaw('\n');
+                }
+
+                @Override
+                public void terminar() throws IOException {
+                        generador.flush();
+                }
+        }
+}
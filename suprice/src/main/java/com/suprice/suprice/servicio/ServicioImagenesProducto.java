@@ -0,0 +1,122 @@
+package com.suprice.suprice.servicio;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.suprice.suprice.util.UtilidadesRutas;
+
+/**
+ * Localiza las imágenes de los productos y construye la URL con la que el navegador las descarga por separado de
+ * la consulta, de modo que puedan almacenarse en su caché.
+ */
+@Service
+public class ServicioImagenesProducto {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(ServicioImagenesProducto.class);
+
+        public static final String RUTA_IMAGEN = "/api/productos/imagen";
+
+        private final ServicioRutasEmpresa servicioRutas;
+        private final ServicioMiniaturas servicioMiniaturas;
+
+        public ServicioImagenesProducto(ServicioRutasEmpresa servicioRutas, ServicioMiniaturas servicioMiniaturas) {
+                this.servicioRutas = servicioRutas;
+                this.servicioMiniaturas = servicioMiniaturas;
+        }
+
+        /**
+         * Construye la URL de la miniatura predeterminada de la imagen del producto. La fecha de modificación del
+         * archivo forma parte de la URL para que una imagen reemplazada se descargue de nuevo aunque el navegador
+         * conserve la anterior.
+         *
+         * @param rutaEmpresa carpeta de la empresa.
+         * @param claveImagen clave de imagen registrada en Aspel.
+         * @return URL relativa o {@code null} cuando el producto no tiene imagen.
+         */
+        public String construirUrl(Path rutaEmpresa, String claveImagen) {
+                int tamano = servicioMiniaturas.tamanoPredeterminado();
+                return localizar(rutaEmpresa, claveImagen)
+                                .map(imagen -> RUTA_IMAGEN + "?empresa=" + codificar(rutaEmpresa.toString()) + "&clave="
+                                                + codificar(claveImagen.trim()) + (tamano > 0 ? "&tamano=" + tamano : "")
+                                                + "&v=" + Long.toHexString(imagen.modificacion()))
+                                .orElse(null);
+        }
+
+        /**
+         * Localiza la imagen solicitada por el navegador.
+         *
+         * @param rutaEmpresa carpeta de la empresa tal como aparece en la URL.
+         * @param claveImagen clave de imagen; no puede contener separadores de ruta.
+         * @return imagen con sus atributos o vacío si no existe.
+         */
+        public Optional<ImagenProducto> localizar(String rutaEmpresa, String claveImagen) {
+                Path carpeta = UtilidadesRutas.aPath(rutaEmpresa);
+                if (carpeta == null) {
+                        return Optional.empty();
+                }
+                return localizar(carpeta, claveImagen);
+        }
+
+        private Optional<ImagenProducto> localizar(Path rutaEmpresa, String claveImagen) {
+                if (!esClaveValida(claveImagen)) {
+                        return Optional.empty();
+                }
+                Path archivo = servicioRutas.localizarImagen(rutaEmpresa, claveImagen).orElse(null);
+                if (archivo == null) {
+                        return Optional.empty();
+                }
+                try {
+                        BasicFileAttributes atributos = Files.readAttributes(archivo, BasicFileAttributes.class);
+                        String nombre = archivo.getFileName().toString().toLowerCase(Locale.ROOT);
+                        return Optional.of(new ImagenProducto(archivo, nombre.endsWith(".png") ? "image/png" : "image/jpeg",
+                                        atributos.size(), atributos.lastModifiedTime().toMillis()));
+                } catch (IOException ex) {
+                        LOGGER.warn("No fue posible leer la imagen {}: {}", archivo, ex.getMessage());
+                        return Optional.empty();
+                }
+        }
+
+        private static boolean esClaveValida(String claveImagen) {
+                return claveImagen != null && !claveImagen.isBlank() && claveImagen.indexOf('/') < 0
+                                && claveImagen.indexOf('\\') < 0 && !claveImagen.contains("..");
+        }
+
+        private static String codificar(String valor) {
+                return URLEncoder.encode(valor, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Archivo de imagen de un producto.
+         *
+         * @param archivo      ruta del archivo.
+         * @param tipo         tipo MIME.
+         * @param tamano       tamaño en bytes.
+         * @param modificacion fecha de modificación en milisegundos.
+         */
+        public record ImagenProducto(Path archivo, String tipo, long tamano, long modificacion) {
+
+                /**
+                 * Etiqueta de entidad derivada del tamaño y la fecha de modificación del archivo.
+                 */
+                public String etiqueta() {
+                        return "\"" + Long.toHexString(tamano) + "-" + Long.toHexString(modificacion) + "\"";
+                }
+
+                /**
+                 * Etiqueta de entidad de la miniatura del lado indicado.
+                 */
+                public String etiqueta(int lado) {
+                        return "\"" + Long.toHexString(tamano) + "-" + Long.toHexString(modificacion) + "-" + lado + "\"";
+                }
+        }
+}
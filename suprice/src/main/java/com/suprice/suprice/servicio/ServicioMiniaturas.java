@@ -0,0 +1,352 @@
+package com.suprice.suprice.servicio;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.suprice.suprice.modelo.EstadisticasMiniaturasDTO;
+import com.suprice.suprice.servicio.ServicioImagenesProducto.ImagenProducto;
+import com.suprice.suprice.util.CacheLruPonderada;
+
+/**
+ * Genera miniaturas de las imágenes de producto en unos cuantos tamaños fijos y las conserva en una caché en memoria
+ * acotada por bytes, respaldada por una caché en disco local.
+ * <p>
+ * La clave de cada miniatura incluye la carpeta de la empresa, la clave de imagen, la fecha de modificación del
+ * archivo original y el tamaño, por lo que una imagen reemplazada genera miniaturas nuevas sin invalidar nada.
+ */
+@Service
+public class ServicioMiniaturas {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(ServicioMiniaturas.class);
+
+        private static final float CALIDAD_JPEG = 0.85f;
+
+        private final Set<Integer> tamanos;
+        private final int tamanoPredeterminado;
+        private final CacheLruPonderada<String, Miniatura> cacheMemoria;
+        private final Path carpetaDisco;
+        private final long discoMaximo;
+        private final Semaphore generaciones;
+
+        private final Map<String, CompletableFuture<Miniatura>> enProceso = new ConcurrentHashMap<>();
+        private final AtomicLong pesoDisco = new AtomicLong();
+        private final LongAdder aciertosMemoria = new LongAdder();
+        private final LongAdder aciertosDisco = new LongAdder();
+        private final LongAdder generadas = new LongAdder();
+
+        public ServicioMiniaturas(@Value("${suprice.imagenes.miniaturas.tamanos:64,200,400}") List<Integer> tamanos,
+                        @Value("${suprice.imagenes.miniaturas.tamano-predeterminado:200}") int tamanoPredeterminado,
+                        @Value("${suprice.imagenes.miniaturas.memoria-maxima-mb:32}") long memoriaMaximaMb,
+                        @Value("${suprice.imagenes.miniaturas.carpeta:${java.io.tmpdir}/suprice-miniaturas}") String carpeta,
+                        @Value("${suprice.imagenes.miniaturas.disco-maximo-mb:512}") long discoMaximoMb,
+                        @Value("${suprice.imagenes.miniaturas.generaciones-simultaneas:2}") int generacionesSimultaneas) {
+                this.tamanos = new TreeSet<>(tamanos);
+                this.tamanoPredeterminado = this.tamanos.contains(tamanoPredeterminado) ? tamanoPredeterminado : 0;
+                this.cacheMemoria = new CacheLruPonderada<>(memoriaMaximaMb * 1024 * 1024, miniatura -> miniatura.datos().length);
+                this.discoMaximo = discoMaximoMb * 1024 * 1024;
+                this.generaciones = new Semaphore(Math.max(1, generacionesSimultaneas), true);
+                this.carpetaDisco = prepararCarpeta(carpeta);
+        }
+
+        public boolean esTamanoPermitido(int tamano) {
+                return tamanos.contains(tamano);
+        }
+
+        /**
+         * @return tamaño usado en las URL de las consultas o {@code 0} para entregar la imagen original.
+         */
+        public int tamanoPredeterminado() {
+                return tamanoPredeterminado;
+        }
+
+        /**
+         * Obtiene la miniatura de la imagen, generándola solo si no está en memoria ni en disco. Las solicitudes
+         * simultáneas de la misma miniatura esperan a una única generación.
+         *
+         * @param rutaEmpresa carpeta de la empresa.
+         * @param claveImagen clave de imagen registrada en Aspel.
+         * @param imagen      archivo original.
+         * @param tamano      lado mayor de la miniatura en píxeles; debe ser uno de los tamaños permitidos.
+         * @return miniatura codificada.
+         * @throws IOException cuando la imagen original no puede leerse o decodificarse.
+         */
+        public Miniatura obtener(Path rutaEmpresa, String claveImagen, ImagenProducto imagen, int tamano)
+                        throws IOException {
+                if (!esTamanoPermitido(tamano)) {
+                        throw new IllegalArgumentException("Tamaño de miniatura no permitido: " + tamano);
+                }
+                String clave = rutaEmpresa + "|" + claveImagen.trim().toLowerCase(Locale.ROOT) + "|"
+                                + imagen.modificacion() + "|" + tamano;
+                Miniatura miniatura = cacheMemoria.obtener(clave);
+                if (miniatura != null) {
+                        aciertosMemoria.increment();
+                        return miniatura;
+                }
+                CompletableFuture<Miniatura> propia = new CompletableFuture<>();
+                CompletableFuture<Miniatura> existente = enProceso.putIfAbsent(clave, propia);
+                if (existente != null) {
+                        return esperar(existente);
+                }
+                try {
+                        String nombre = nombreEnDisco(clave);
+                        miniatura = leerDeDisco(nombre);
+                        if (miniatura != null) {
+                                aciertosDisco.increment();
+                        } else {
+                                miniatura = generar(imagen.archivo(), tamano);
+                                generadas.increment();
+                                guardarEnDisco(nombre, miniatura);
+                        }
+                        cacheMemoria.guardar(clave, miniatura);
+                        propia.complete(miniatura);
+                        return miniatura;
+                } catch (IOException | RuntimeException ex) {
+                        propia.completeExceptionally(ex);
+                        throw ex;
+                } finally {
+                        enProceso.remove(clave, propia);
+                }
+        }
+
+        public EstadisticasMiniaturasDTO obtenerEstadisticas() {
+                return new EstadisticasMiniaturasDTO(List.copyOf(tamanos), cacheMemoria.tamano(), cacheMemoria.peso(),
+                                cacheMemoria.pesoMaximo(), carpetaDisco != null ? carpetaDisco.toString() : null,
+                                pesoDisco.get(), discoMaximo, aciertosMemoria.sum(), aciertosDisco.sum(), generadas.sum());
+        }
+
+        private Miniatura esperar(CompletableFuture<Miniatura> existente) throws IOException {
+                try {
+                        return existente.join();
+                } catch (CompletionException ex) {
+                        if (ex.getCause() instanceof IOException causa) {
+                                throw causa;
+                        }
+                        throw ex;
+                }
+        }
+
+        private Miniatura generar(Path archivo, int tamano) throws IOException {
+                try {
+                        generaciones.acquire();
+                } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Generación de miniatura interrumpida", ex);
+                }
+                try {
+                        BufferedImage original = ImageIO.read(archivo.toFile());
+                        if (original == null) {
+                                throw new IOException("Formato de imagen no admitido: " + archivo.getFileName());
+                        }
+                        boolean transparente = original.getColorModel().hasAlpha();
+                        BufferedImage reducida = reducir(original, tamano, transparente);
+                        return transparente ? new Miniatura(codificarPng(reducida), "image/png")
+                                        : new Miniatura(codificarJpeg(reducida), "image/jpeg");
+                } finally {
+                        generaciones.release();
+                }
+        }
+
+        /**
+         * Reduce la imagen a la mitad en pasos sucesivos antes del ajuste final para evitar el dentado que produce
+         * una sola interpolación bilineal con factores grandes.
+         */
+        private BufferedImage reducir(BufferedImage original, int tamano, boolean transparente) {
+                double escala = Math.min(1.0, (double) tamano / Math.max(original.getWidth(), original.getHeight()));
+                int anchoFinal = Math.max(1, (int) Math.round(original.getWidth() * escala));
+                int altoFinal = Math.max(1, (int) Math.round(original.getHeight() * escala));
+                int tipo = transparente ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+                BufferedImage actual = original;
+                int ancho = original.getWidth();
+                int alto = original.getHeight();
+                do {
+                        ancho = Math.max(anchoFinal, ancho / 2);
+                        alto = Math.max(altoFinal, alto / 2);
+                        BufferedImage siguiente = new BufferedImage(ancho, alto, tipo);
+                        Graphics2D grafico = siguiente.createGraphics();
+                        try {
+                                grafico.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                                grafico.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                                grafico.drawImage(actual, 0, 0, ancho, alto, null);
+                        } finally {
+                                grafico.dispose();
+                        }
+                        actual = siguiente;
+                } while (ancho != anchoFinal || alto != altoFinal);
+                return actual;
+        }
+
+        private byte[] codificarJpeg(BufferedImage imagen) throws IOException {
+                ImageWriter escritor = ImageIO.getImageWritersByFormatName("jpeg").next();
+                ByteArrayOutputStream salida = new ByteArrayOutputStream();
+                try (ImageOutputStream flujo = ImageIO.createImageOutputStream(salida)) {
+                        ImageWriteParam parametros = escritor.getDefaultWriteParam();
+                        parametros.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                        parametros.setCompressionQuality(CALIDAD_JPEG);
+                        escritor.setOutput(flujo);
+                        escritor.write(null, new IIOImage(imagen, null, null), parametros);
+                } finally {
+                        escritor.dispose();
+                }
+                return salida.toByteArray();
+        }
+
+        private byte[] codificarPng(BufferedImage imagen) throws IOException {
+                ByteArrayOutputStream salida = new ByteArrayOutputStream();
+                ImageIO.write(imagen, "png", salida);
+                return salida.toByteArray();
+        }
+
+        private Miniatura leerDeDisco(String nombre) {
+                if (carpetaDisco == null) {
+                        return null;
+                }
+                for (String tipo : List.of("image/jpeg", "image/png")) {
+                        Path archivo = carpetaDisco.resolve(nombre + extension(tipo));
+                        if (Files.isRegularFile(archivo)) {
+                                try {
+                                        byte[] datos = Files.readAllBytes(archivo);
+                                        Files.setLastModifiedTime(archivo, FileTime.fromMillis(System.currentTimeMillis()));
+                                        return new Miniatura(datos, tipo);
+                                } catch (IOException ex) {
+                                        LOGGER.debug("No fue posible leer la miniatura {}: {}", archivo, ex.getMessage());
+                                }
+                        }
+                }
+                return null;
+        }
+
+        private void guardarEnDisco(String nombre, Miniatura miniatura) {
+                if (carpetaDisco == null) {
+                        return;
+                }
+                Path destino = carpetaDisco.resolve(nombre + extension(miniatura.tipo()));
+                try {
+                        Path temporal = Files.createTempFile(carpetaDisco, nombre, ".tmp");
+                        Files.write(temporal, miniatura.datos());
+                        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        if (pesoDisco.addAndGet(miniatura.datos().length) > discoMaximo) {
+                                depurarDisco();
+                        }
+                } catch (IOException ex) {
+                        LOGGER.warn("No fue posible guardar la miniatura {}: {}", destino, ex.getMessage());
+                }
+        }
+
+        /**
+         * Elimina las miniaturas en disco usadas menos recientemente hasta dejar la carpeta al 90% de su límite.
+         */
+        private synchronized void depurarDisco() {
+                if (pesoDisco.get() <= discoMaximo) {
+                        return;
+                }
+                long objetivo = discoMaximo * 9 / 10;
+                try (Stream<Path> archivos = Files.list(carpetaDisco)) {
+                        List<Path> ordenados = archivos.filter(Files::isRegularFile)
+                                        .sorted(Comparator.comparing(this::leerModificacion))
+                                        .toList();
+                        long total = ordenados.stream().mapToLong(this::leerTamano).sum();
+                        for (Path archivo : ordenados) {
+                                if (total <= objetivo) {
+                                        break;
+                                }
+                                long tamano = leerTamano(archivo);
+                                Files.deleteIfExists(archivo);
+                                total -= tamano;
+                        }
+                        pesoDisco.set(total);
+                } catch (IOException | UncheckedIOException ex) {
+                        LOGGER.warn("No fue posible depurar la caché de miniaturas {}: {}", carpetaDisco, ex.getMessage());
+                }
+        }
+
+        private Path prepararCarpeta(String carpeta) {
+                if (carpeta == null || carpeta.isBlank()) {
+                        return null;
+                }
+                try {
+                        Path ruta = Files.createDirectories(Path.of(carpeta).toAbsolutePath().normalize());
+                        try (Stream<Path> archivos = Files.list(ruta)) {
+                                pesoDisco.set(archivos.filter(Files::isRegularFile).mapToLong(this::leerTamano).sum());
+                        }
+                        return ruta;
+                } catch (IOException | UncheckedIOException ex) {
+                        LOGGER.warn("No se usará caché de miniaturas en disco ({}): {}", carpeta, ex.getMessage());
+                        return null;
+                }
+        }
+
+        private FileTime leerModificacion(Path archivo) {
+                try {
+                        return Files.getLastModifiedTime(archivo);
+                } catch (IOException ex) {
+                        return FileTime.fromMillis(0);
+                }
+        }
+
+        private long leerTamano(Path archivo) {
+                try {
+                        return Files.size(archivo);
+                } catch (IOException ex) {
+                        return 0;
+                }
+        }
+
+        private static String nombreEnDisco(String clave) {
+                try {
+                        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                        return HexFormat.of().formatHex(digest.digest(clave.getBytes(StandardCharsets.UTF_8)));
+                } catch (NoSuchAlgorithmException ex) {
+                        throw new IllegalStateException("SHA-256 no disponible", ex);
+                }
+        }
+
+        private static String extension(String tipo) {
+                return "image/png".equals(tipo) ? ".png" : ".jpg";
+        }
+
+        /**
+         * Miniatura codificada.
+         *
+         * @param datos bytes de la imagen.
+         * @param tipo  tipo MIME.
+         */
+        public record Miniatura(byte[] datos, String tipo) {
+        }
+}
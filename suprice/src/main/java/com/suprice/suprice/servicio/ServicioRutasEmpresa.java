@@ -0,0 +1,153 @@
+package com.suprice.suprice.servicio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.suprice.suprice.util.CacheLru;
+import com.suprice.suprice.util.UtilidadesRutas;
+
+/**
+ * Resuelve y recuerda la ubicación de la base Firebird y de las imágenes de cada carpeta de empresa.
+ * <p>
+ * Las entradas se validan con la fecha de modificación de las carpetas en lugar de un {@code WatchService},
+ * ya que las carpetas de empresa suelen residir en recursos compartidos de red que no notifican cambios.
+ */
+@Service
+public class ServicioRutasEmpresa {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(ServicioRutasEmpresa.class);
+
+        private static final String CARPETA_IMAGENES = "Imagenes";
+
+        private final CacheLru<Path, UbicacionBaseDatos> cacheBasesDatos;
+        private final CacheLru<Path, ListadoImagenes> cacheImagenes;
+        private final long vigenciaNegativaMs;
+
+        public ServicioRutasEmpresa(@Value("${suprice.rutas.cache.maximo-empresas:256}") int maximoEmpresas,
+                        @Value("${suprice.rutas.cache.vigencia-negativa-ms:30000}") long vigenciaNegativaMs) {
+                this.cacheBasesDatos = new CacheLru<>(maximoEmpresas);
+                this.cacheImagenes = new CacheLru<>(maximoEmpresas);
+                this.vigenciaNegativaMs = vigenciaNegativaMs;
+        }
+
+        /**
+         * Localiza el archivo {@code .fdb} de la empresa, recorriendo la carpeta únicamente cuando la ubicación
+         * recordada ya no es válida.
+         *
+         * @param rutaEmpresa carpeta de la empresa.
+         * @return ruta de la base de datos o vacío si no existe.
+         */
+        public Optional<Path> localizarBaseDatos(Path rutaEmpresa) {
+                UbicacionBaseDatos ubicacion = cacheBasesDatos.obtener(rutaEmpresa);
+                if (ubicacion != null && ubicacion.esVigente(rutaEmpresa, vigenciaNegativaMs)) {
+                        return Optional.ofNullable(ubicacion.archivo());
+                }
+                FileTime modificacion = leerModificacion(rutaEmpresa);
+                Optional<Path> encontrada = UtilidadesRutas.buscarArchivoPorExtension(rutaEmpresa, ".fdb");
+                if (modificacion != null) {
+                        cacheBasesDatos.guardar(rutaEmpresa,
+                                        new UbicacionBaseDatos(encontrada.orElse(null), modificacion, System.currentTimeMillis()));
+                }
+                return encontrada;
+        }
+
+        /**
+         * Localiza la imagen PNG o JPG asociada a la clave indicada dentro de la carpeta {@code Imagenes}.
+         *
+         * @param rutaEmpresa carpeta de la empresa.
+         * @param claveImagen clave de imagen registrada en Aspel.
+         * @return archivo de imagen o vacío si no existe.
+         */
+        public Optional<Path> localizarImagen(Path rutaEmpresa, String claveImagen) {
+                Path carpeta = rutaEmpresa.resolve(CARPETA_IMAGENES);
+                FileTime modificacion = leerModificacion(carpeta);
+                ListadoImagenes listado = cacheImagenes.obtener(carpeta);
+                if (listado == null || !Objects.equals(listado.modificacion(), modificacion)) {
+                        listado = listarImagenes(carpeta, modificacion);
+                        cacheImagenes.guardar(carpeta, listado);
+                }
+                String base = claveImagen.trim().toLowerCase(Locale.ROOT);
+                Path archivo = listado.archivos().get(base + ".png");
+                if (archivo == null) {
+                        archivo = listado.archivos().get(base + ".jpg");
+                }
+                return Optional.ofNullable(archivo);
+        }
+
+        /**
+         * Registra la base ya localizada por {@link ServicioConfiguracionAspel} para que la primera consulta de la
+         * empresa no recorra su carpeta.
+         *
+         * @param rutaEmpresa carpeta de la empresa.
+         * @param baseDatos   archivo {@code .fdb} encontrado.
+         */
+        public void precargar(Path rutaEmpresa, Path baseDatos) {
+                UbicacionBaseDatos ubicacion = cacheBasesDatos.obtener(rutaEmpresa);
+                if (ubicacion == null || !baseDatos.equals(ubicacion.archivo())) {
+                        cacheBasesDatos.guardar(rutaEmpresa, new UbicacionBaseDatos(baseDatos, null, System.currentTimeMillis()));
+                }
+        }
+
+        /**
+         * Descarta la información recordada de una empresa.
+         *
+         * @param rutaEmpresa carpeta de la empresa.
+         */
+        public void invalidar(Path rutaEmpresa) {
+                cacheBasesDatos.eliminar(rutaEmpresa);
+                cacheImagenes.eliminar(rutaEmpresa.resolve(CARPETA_IMAGENES));
+        }
+
+        private ListadoImagenes listarImagenes(Path carpeta, FileTime modificacion) {
+                if (modificacion == null) {
+                        return new ListadoImagenes(null, Map.of());
+                }
+                Map<String, Path> archivos = new HashMap<>();
+                try (Stream<Path> stream = Files.list(carpeta)) {
+                        stream.forEach(archivo -> {
+                                String nombre = archivo.getFileName().toString().toLowerCase(Locale.ROOT);
+                                if (nombre.endsWith(".png") || nombre.endsWith(".jpg")) {
+                                        archivos.putIfAbsent(nombre, archivo);
+                                }
+                        });
+                } catch (IOException ex) {
+                        LOGGER.warn("No fue posible listar las imágenes de {}: {}", carpeta, ex.getMessage());
+                }
+                return new ListadoImagenes(modificacion, Map.copyOf(archivos));
+        }
+
+        private static FileTime leerModificacion(Path carpeta) {
+                try {
+                        return Files.getLastModifiedTime(carpeta);
+                } catch (IOException ex) {
+                        return null;
+                }
+        }
+
+        private record UbicacionBaseDatos(Path archivo, FileTime modificacionCarpeta, long verificadaEn) {
+
+                boolean esVigente(Path rutaEmpresa, long vigenciaNegativaMs) {
+                        if (archivo != null) {
+                                return Files.isRegularFile(archivo);
+                        }
+                        return System.currentTimeMillis() - verificadaEn < vigenciaNegativaMs
+                                        && modificacionCarpeta.equals(leerModificacion(rutaEmpresa));
+                }
+        }
+
+        private record ListadoImagenes(FileTime modificacion, Map<String, Path> archivos) {
+        }
+}
@@ -5,48 +5,75 @@ import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.mindrot.jbcrypt.BCrypt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.suprice.suprice.modelo.EstadisticasAutenticacionDTO;
 import com.suprice.suprice.modelo.PeticionUsuarioAdmin;
 import com.suprice.suprice.modelo.RespuestaOperacionDTO;
 import com.suprice.suprice.modelo.RolUsuario;
 import com.suprice.suprice.modelo.UsuarioDTO;
 import com.suprice.suprice.modelo.UsuarioEntidad;
+import com.suprice.suprice.util.CacheLruSegmentada;
 
 import jakarta.annotation.PostConstruct;
 
 /**
- * Gestiona la persistencia de usuarios en SQLite.
+ * Gestiona la persistencia de usuarios en SQLite. Los usuarios leídos, incluidos los nombres que no existen, se
+ * conservan en una caché acotada por vigencia que se invalida al crear o eliminar usuarios, para que los inicios de
+ * sesión simultáneos no se formen en la base.
+ * <p>
+ * Las consultas usan el pool de lectura y las escrituras, junto con las lecturas que las preceden dentro de una
+ * transacción, la única conexión de escritura. El esquema lo crea {@code MigradorEsquemaSqlite} antes de este
+ * servicio.
  */
 @Service
 public class ServicioUsuarios {
 
         private static final Logger LOGGER = LoggerFactory.getLogger(ServicioUsuarios.class);
 
+        private static final int SEGMENTOS_CACHE = 16;
+
         private final JdbcTemplate jdbcTemplate;
+        private final JdbcTemplate jdbcLectura;
+        private final VerificadorContrasenas verificador;
+        private final CacheLruSegmentada<String, UsuarioEnCache> usuarios;
+        private final long vigenciaNanos;
+        private final LongAdder aciertos = new LongAdder();
+        private final LongAdder cargas = new LongAdder();
 
         private final RowMapper<UsuarioEntidad> mapeadorUsuarios = this::mapearUsuario;
 
-        public ServicioUsuarios(JdbcTemplate jdbcTemplate) {
+        public ServicioUsuarios(JdbcTemplate jdbcTemplate,
+                        @Qualifier("plantillaSqliteLectura") JdbcTemplate jdbcLectura, VerificadorContrasenas verificador,
+                        @Value("${suprice.usuarios.cache.maximo:256}") int maximoUsuarios,
+                        @Value("${suprice.usuarios.cache.vigencia-ms:300000}") long vigenciaMs) {
                 this.jdbcTemplate = jdbcTemplate;
+                this.jdbcLectura = jdbcLectura;
+                this.verificador = verificador;
+                this.usuarios = new CacheLruSegmentada<>(maximoUsuarios, SEGMENTOS_CACHE);
+                this.vigenciaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, vigenciaMs));
         }
 
         @PostConstruct
         public void inicializar() {
-                jdbcTemplate.execute(
-                                "CREATE TABLE IF NOT EXISTS usuarios (nombre_usuario TEXT PRIMARY KEY, contrasena TEXT NOT NULL, rol TEXT NOT NULL)");
                 crearAdminPorDefecto();
         }
 
         private void crearAdminPorDefecto() {
-                Optional<UsuarioEntidad> admin = buscarUsuario("admin");
+                Optional<UsuarioEntidad> admin = leerUsuario(jdbcTemplate, "admin");
                 if (admin.isPresent()) {
                         return;
                 }
@@ -57,26 +84,44 @@ public class ServicioUsuarios {
         }
 
         public Optional<UsuarioEntidad> buscarUsuario(String nombreUsuario) {
+                UsuarioEnCache enCache = usuarios.obtener(nombreUsuario);
+                if (enCache != null && System.nanoTime() - enCache.cargadoEn() < vigenciaNanos) {
+                        aciertos.increment();
+                        return enCache.usuario();
+                }
                 try {
-                        return jdbcTemplate.query("SELECT nombre_usuario, contrasena, rol FROM usuarios WHERE nombre_usuario = ?",
-                                        mapeadorUsuarios, nombreUsuario).stream().findFirst();
+                        Optional<UsuarioEntidad> usuario = leerUsuario(jdbcLectura, nombreUsuario);
+                        usuarios.guardar(nombreUsuario, new UsuarioEnCache(usuario, System.nanoTime()));
+                        return usuario;
                 } catch (Exception ex) {
                         LOGGER.error("Error al buscar usuario {}: {}", nombreUsuario, ex.getMessage());
                         return Optional.empty();
                 }
         }
 
+        /**
+         * Busca al usuario una sola vez y verifica su contraseña en {@link VerificadorContrasenas}.
+         *
+         * @return el usuario si las credenciales son correctas.
+         * @throws AutenticacionSaturadaException si la verificación no pudo atenderse a tiempo.
+         */
+        public Optional<UsuarioEntidad> autenticar(String nombreUsuario, String contrasenaPlano) {
+                return buscarUsuario(nombreUsuario)
+                                .filter(usuario -> verificador.verificar(contrasenaPlano, usuario.contrasena()));
+        }
+
         public boolean validarCredenciales(String nombreUsuario, String contrasenaPlano) {
-                Optional<UsuarioEntidad> usuarioOpt = buscarUsuario(nombreUsuario);
-                if (usuarioOpt.isEmpty()) {
-                        return false;
-                }
-                UsuarioEntidad usuario = usuarioOpt.get();
-                return BCrypt.checkpw(contrasenaPlano, usuario.contrasena());
+                return autenticar(nombreUsuario, contrasenaPlano).isPresent();
+        }
+
+        public EstadisticasAutenticacionDTO obtenerEstadisticas() {
+                return new EstadisticasAutenticacionDTO(usuarios.tamano(), usuarios.capacidad(),
+                                TimeUnit.NANOSECONDS.toMillis(vigenciaNanos), aciertos.sum(), cargas.sum(), verificador.hilos(),
+                                verificador.enCurso(), verificador.enCola(), verificador.rechazadas());
         }
 
         public List<UsuarioDTO> listarUsuarios() {
-                return jdbcTemplate
+                return jdbcLectura
                                 .query("SELECT nombre_usuario, contrasena, rol FROM usuarios ORDER BY nombre_usuario",
                                                 mapeadorUsuarios)
                                 .stream().map(this::convertirADTO).toList();
@@ -87,13 +132,14 @@ public class ServicioUsuarios {
                 if (peticion.nombreUsuario().equalsIgnoreCase("admin")) {
                         return new RespuestaOperacionDTO(false, "El usuario admin no puede ser reemplazado");
                 }
-                if (buscarUsuario(peticion.nombreUsuario()).isPresent()) {
+                if (leerUsuario(jdbcTemplate, peticion.nombreUsuario()).isPresent()) {
                         return new RespuestaOperacionDTO(false, "El usuario ya existe");
                 }
                 String hash = BCrypt.hashpw(peticion.contrasena(), BCrypt.gensalt(10));
                 int filas = jdbcTemplate.update(
                                 "INSERT INTO usuarios(nombre_usuario, contrasena, rol) VALUES(?,?,?)",
                                 peticion.nombreUsuario(), hash, peticion.rol().name());
+                invalidar(peticion.nombreUsuario());
                 return new RespuestaOperacionDTO(filas > 0,
                                 filas > 0 ? "Usuario creado" : "No fue posible crear el usuario");
         }
@@ -104,9 +150,32 @@ public class ServicioUsuarios {
                         return new RespuestaOperacionDTO(false, "El usuario administrador no puede eliminarse");
                 }
                 int filas = jdbcTemplate.update("DELETE FROM usuarios WHERE nombre_usuario = ?", nombreUsuario);
+                invalidar(nombreUsuario);
                 return new RespuestaOperacionDTO(filas > 0, filas > 0 ? "Usuario eliminado" : "Usuario no encontrado");
         }
 
+        private Optional<UsuarioEntidad> leerUsuario(JdbcTemplate plantilla, String nombreUsuario) {
+                cargas.increment();
+                return plantilla.query("SELECT nombre_usuario, contrasena, rol FROM usuarios WHERE nombre_usuario = ?",
+                                mapeadorUsuarios, nombreUsuario).stream().findFirst();
+        }
+
+        /**
+         * Descarta al usuario de la caché ahora y, dentro de una transacción, otra vez al terminarla, para que una
+         * lectura concurrente no vuelva a guardar la versión anterior.
+         */
+        private void invalidar(String nombreUsuario) {
+                usuarios.eliminar(nombreUsuario);
+                if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                                @Override
+                                public void afterCompletion(int estado) {
+                                        usuarios.eliminar(nombreUsuario);
+                                }
+                        });
+                }
+        }
+
         private UsuarioDTO convertirADTO(UsuarioEntidad entidad) {
                 return new UsuarioDTO(entidad.nombreUsuario(), entidad.rol());
         }
@@ -115,4 +184,7 @@ public class ServicioUsuarios {
                 RolUsuario rol = RolUsuario.valueOf(rs.getString("rol"));
                 return new UsuarioEntidad(rs.getString("nombre_usuario"), rs.getString("contrasena"), rol);
         }
+
+        private record UsuarioEnCache(Optional<UsuarioEntidad> usuario, long cargadoEn) {
+        }
 }
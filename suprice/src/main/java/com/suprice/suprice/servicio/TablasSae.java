@@ -0,0 +1,24 @@
+package com.suprice.suprice.servicio;
+
+import java.util.regex.Pattern;
+
+/**
+ * Nombres de las tablas SAE de una empresa. El sufijo se concatena al SQL y forma parte de la llave de la caché de
+ * sentencias, por lo que solo se aceptan los sufijos numéricos que asigna Aspel.
+ */
+record TablasSae(String productos, String alternos, String impuestos, String existencias, String precios) {
+
+        private static final Pattern SUFIJO_PERMITIDO = Pattern.compile("\\d{2}");
+
+        static boolean esSufijoPermitido(String sufijo) {
+                return sufijo != null && SUFIJO_PERMITIDO.matcher(sufijo).matches();
+        }
+
+        static TablasSae conSufijo(String sufijo) {
+                if (!esSufijoPermitido(sufijo)) {
+                        throw new IllegalArgumentException("Sufijo de tablas no permitido: " + sufijo);
+                }
+                return new TablasSae("INVE" + sufijo, "CVES_ALTER" + sufijo, "IMPU" + sufijo, "MULT" + sufijo,
+                                "PRECIO_X_PROD" + sufijo);
+        }
+}
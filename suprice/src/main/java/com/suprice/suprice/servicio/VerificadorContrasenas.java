@@ -0,0 +1,157 @@
+package com.suprice.suprice.servicio;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mindrot.jbcrypt.BCrypt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Verifica contraseñas BCrypt en un pool propio de pocos hilos con cola acotada. Cada verificación ocupa un núcleo
+ * durante decenas de milisegundos, así que una ráfaga de inicios de sesión (todas las terminales de una tienda al
+ * abrir) se forma en esta cola en lugar de competir por CPU con las consultas de productos.
+ * <p>
+ * Publica en Micrometer la duración de cada verificación, las verificaciones en curso y en cola y las rechazadas
+ * ({@code suprice.autenticacion.*}).
+ */
+@Component
+public class VerificadorContrasenas implements MeterBinder {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(VerificadorContrasenas.class);
+
+        private static final String METRICA_VERIFICACION = "suprice.autenticacion.verificacion";
+
+        private final ThreadPoolExecutor ejecutor;
+        private final long esperaMaximaMs;
+        private final long reintentarEnSegundos;
+        private final AtomicInteger enCurso = new AtomicInteger();
+        private final LongAdder rechazadas = new LongAdder();
+        private volatile MeterRegistry registro;
+
+        public VerificadorContrasenas(@Value("${suprice.autenticacion.hilos-verificacion:2}") int hilos,
+                        @Value("${suprice.autenticacion.cola-maxima:64}") int colaMaxima,
+                        @Value("${suprice.autenticacion.espera-maxima-ms:5000}") long esperaMaximaMs) {
+                int tamano = Math.max(1, hilos);
+                AtomicInteger contador = new AtomicInteger();
+                this.ejecutor = new ThreadPoolExecutor(tamano, tamano, 60, TimeUnit.SECONDS,
+                                new LinkedBlockingQueue<>(Math.max(1, colaMaxima)), tarea -> {
+                                        Thread hilo = new Thread(tarea, "verificacion-contrasena-" + contador.incrementAndGet());
+                                        hilo.setDaemon(true);
+                                        return hilo;
+                                }, new ThreadPoolExecutor.AbortPolicy());
+                this.ejecutor.allowCoreThreadTimeOut(true);
+                this.esperaMaximaMs = Math.max(1, esperaMaximaMs);
+                this.reintentarEnSegundos = Math.max(1, (this.esperaMaximaMs + 999) / 1000);
+                LOGGER.info("Verificación de contraseñas con {} hilos y cola de {}", tamano, Math.max(1, colaMaxima));
+        }
+
+        /**
+         * Compara la contraseña con su hash BCrypt en el pool de verificación y espera el resultado.
+         *
+         * @param contrasenaPlano contraseña capturada.
+         * @param hash            hash almacenado del usuario.
+         * @return si la contraseña corresponde al hash.
+         * @throws AutenticacionSaturadaException si la cola está llena o la verificación no termina a tiempo.
+         */
+        public boolean verificar(String contrasenaPlano, String hash) {
+                Future<Boolean> resultado;
+                try {
+                        resultado = ejecutor.submit(() -> medir(contrasenaPlano, hash));
+                } catch (RejectedExecutionException ex) {
+                        rechazadas.increment();
+                        throw new AutenticacionSaturadaException("El servidor está atendiendo el máximo de inicios de sesión",
+                                        reintentarEnSegundos);
+                }
+                try {
+                        return resultado.get(esperaMaximaMs, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ex) {
+                        resultado.cancel(true);
+                        rechazadas.increment();
+                        throw new AutenticacionSaturadaException("El inicio de sesión tardó demasiado; intente de nuevo",
+                                        reintentarEnSegundos);
+                } catch (InterruptedException ex) {
+                        resultado.cancel(true);
+                        Thread.currentThread().interrupt();
+                        throw new AutenticacionSaturadaException("El inicio de sesión fue interrumpido", reintentarEnSegundos);
+                } catch (ExecutionException ex) {
+                        // Un hash con formato inválido no corresponde a ninguna contraseña.
+                        LOGGER.warn("No fue posible verificar la contraseña: {}", ex.getCause().getMessage());
+                        return false;
+                }
+        }
+
+        public int hilos() {
+                return ejecutor.getMaximumPoolSize();
+        }
+
+        public int enCurso() {
+                return enCurso.get();
+        }
+
+        public int enCola() {
+                return ejecutor.getQueue().size();
+        }
+
+        public long rechazadas() {
+                return rechazadas.sum();
+        }
+
+        @Override
+        public void bindTo(MeterRegistry registro) {
+                this.registro = registro;
+                Gauge.builder("suprice.autenticacion.activas", enCurso, AtomicInteger::get)
+                                .description("Verificaciones de contraseña en ejecución")
+                                .register(registro);
+                Gauge.builder("suprice.autenticacion.cola", this, VerificadorContrasenas::enCola)
+                                .description("Verificaciones de contraseña esperando un hilo")
+                                .register(registro);
+                FunctionCounter.builder("suprice.autenticacion.rechazadas", rechazadas, LongAdder::sum)
+                                .description("Inicios de sesión rechazados por saturación o espera vencida")
+                                .register(registro);
+                new ExecutorServiceMetrics(ejecutor, "verificacion-contrasenas", Tags.empty()).bindTo(registro);
+        }
+
+        @PreDestroy
+        public void detener() {
+                ejecutor.shutdownNow();
+        }
+
+        private boolean medir(String contrasenaPlano, String hash) {
+                enCurso.incrementAndGet();
+                long inicio = System.nanoTime();
+                boolean valida = false;
+                try {
+                        valida = BCrypt.checkpw(contrasenaPlano, hash);
+                        return valida;
+                } finally {
+                        enCurso.decrementAndGet();
+                        MeterRegistry actual = registro;
+                        if (actual != null) {
+                                Timer.builder(METRICA_VERIFICACION)
+                                                .description("Duración de la verificación BCrypt de una contraseña")
+                                                .tag("resultado", valida ? "valida" : "invalida")
+                                                .register(actual)
+                                                .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+                        }
+                }
+        }
+}
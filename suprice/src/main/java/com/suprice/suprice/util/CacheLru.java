@@ -0,0 +1,97 @@
+package com.suprice.suprice.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Caché acotada y sincronizada que desaloja el elemento usado menos recientemente.
+ *
+ * @param <K> tipo de la clave.
+ * @param <V> tipo del valor almacenado.
+ */
+public final class CacheLru<K, V> {
+
+        private final int capacidad;
+        private final BiConsumer<K, V> alDesalojar;
+        private final LinkedHashMap<K, V> elementos;
+
+        public CacheLru(int capacidad) {
+                this(capacidad, (clave, valor) -> {
+                });
+        }
+
+        /**
+         * @param capacidad   número máximo de elementos retenidos.
+         * @param alDesalojar acción ejecutada sobre cada elemento que sale de la caché.
+         */
+        public CacheLru(int capacidad, BiConsumer<K, V> alDesalojar) {
+                this.capacidad = Math.max(1, capacidad);
+                this.alDesalojar = alDesalojar;
+                this.elementos = new LinkedHashMap<>(16, 0.75f, true) {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<K, V> masAntiguo) {
+                                if (size() > CacheLru.this.capacidad) {
+                                        CacheLru.this.alDesalojar.accept(masAntiguo.getKey(), masAntiguo.getValue());
+                                        return true;
+                                }
+                                return false;
+                        }
+                };
+        }
+
+        public synchronized V obtener(K clave) {
+                return elementos.get(clave);
+        }
+
+        public synchronized void guardar(K clave, V valor) {
+                V anterior = elementos.put(clave, valor);
+                if (anterior != null && anterior != valor) {
+                        alDesalojar.accept(clave, anterior);
+                }
+        }
+
+        public synchronized V eliminar(K clave) {
+                V valor = elementos.remove(clave);
+                if (valor != null) {
+                        alDesalojar.accept(clave, valor);
+                }
+                return valor;
+        }
+
+        /**
+         * Elimina los elementos cuya clave cumple la condición.
+         *
+         * @return cantidad de elementos eliminados.
+         */
+        public synchronized int eliminarSi(Predicate<K> condicion) {
+                int eliminados = 0;
+                Iterator<Map.Entry<K, V>> iterador = elementos.entrySet().iterator();
+                while (iterador.hasNext()) {
+                        Map.Entry<K, V> entrada = iterador.next();
+                        if (condicion.test(entrada.getKey())) {
+                                iterador.remove();
+                                alDesalojar.accept(entrada.getKey(), entrada.getValue());
+                                eliminados++;
+                        }
+                }
+                return eliminados;
+        }
+
+        public synchronized void limpiar() {
+                elementos.forEach(alDesalojar);
+                elementos.clear();
+        }
+
+        public synchronized int tamano() {
+                return elementos.size();
+        }
+
+        public int capacidad() {
+                return capacidad;
+        }
+}
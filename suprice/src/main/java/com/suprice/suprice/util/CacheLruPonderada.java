@@ -0,0 +1,72 @@
+package com.suprice.suprice.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Caché sincronizada acotada por el peso total de sus valores (por ejemplo, bytes) que desaloja los elementos usados
+ * menos recientemente hasta volver a quedar dentro del límite.
+ *
+ * @param <K> tipo de la clave.
+ * @param <V> tipo del valor almacenado.
+ */
+public final class CacheLruPonderada<K, V> {
+
+        private final long pesoMaximo;
+        private final ToLongFunction<V> pesador;
+        private final LinkedHashMap<K, V> elementos = new LinkedHashMap<>(16, 0.75f, true);
+        private long pesoActual;
+
+        /**
+         * @param pesoMaximo peso total máximo retenido.
+         * @param pesador    función que calcula el peso de cada valor.
+         */
+        public CacheLruPonderada(long pesoMaximo, ToLongFunction<V> pesador) {
+                this.pesoMaximo = Math.max(0, pesoMaximo);
+                this.pesador = pesador;
+        }
+
+        public synchronized V obtener(K clave) {
+                return elementos.get(clave);
+        }
+
+        /**
+         * Guarda el valor si su peso no excede por sí solo el máximo, desalojando los elementos más antiguos que sea
+         * necesario.
+         */
+        public synchronized void guardar(K clave, V valor) {
+                long peso = pesador.applyAsLong(valor);
+                V anterior = elementos.remove(clave);
+                if (anterior != null) {
+                        pesoActual -= pesador.applyAsLong(anterior);
+                }
+                if (peso > pesoMaximo) {
+                        return;
+                }
+                elementos.put(clave, valor);
+                pesoActual += peso;
+                Iterator<V> iterador = elementos.values().iterator();
+                while (pesoActual > pesoMaximo && iterador.hasNext()) {
+                        pesoActual -= pesador.applyAsLong(iterador.next());
+                        iterador.remove();
+                }
+        }
+
+        public synchronized void limpiar() {
+                elementos.clear();
+                pesoActual = 0;
+        }
+
+        public synchronized int tamano() {
+                return elementos.size();
+        }
+
+        public synchronized long peso() {
+                return pesoActual;
+        }
+
+        public long pesoMaximo() {
+                return pesoMaximo;
+        }
+}
@@ -0,0 +1,60 @@
+package com.suprice.suprice.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Caché acotada que reparte sus claves entre varios {@link CacheLru} independientes, de modo que las peticiones
+ * simultáneas sobre claves distintas casi nunca esperan el mismo candado. Cada segmento desaloja por su cuenta el
+ * elemento usado menos recientemente.
+ *
+ * @param <K> tipo de la clave.
+ * @param <V> tipo del valor almacenado.
+ */
+public final class CacheLruSegmentada<K, V> {
+
+        private final List<CacheLru<K, V>> segmentos;
+        private final int capacidad;
+
+        /**
+         * @param capacidad número máximo de elementos retenidos entre todos los segmentos.
+         * @param segmentos cantidad de segmentos; se ajusta para que cada uno tenga al menos un lugar.
+         */
+        public CacheLruSegmentada(int capacidad, int segmentos) {
+                this.capacidad = Math.max(1, capacidad);
+                int cantidad = Math.max(1, Math.min(segmentos, this.capacidad));
+                this.segmentos = new ArrayList<>(cantidad);
+                for (int i = 0; i < cantidad; i++) {
+                        this.segmentos.add(new CacheLru<>((this.capacidad + cantidad - 1) / cantidad));
+                }
+        }
+
+        public V obtener(K clave) {
+                return segmento(clave).obtener(clave);
+        }
+
+        public void guardar(K clave, V valor) {
+                segmento(clave).guardar(clave, valor);
+        }
+
+        public V eliminar(K clave) {
+                return segmento(clave).eliminar(clave);
+        }
+
+        public void limpiar() {
+                segmentos.forEach(CacheLru::limpiar);
+        }
+
+        public int tamano() {
+                return segmentos.stream().mapToInt(CacheLru::tamano).sum();
+        }
+
+        public int capacidad() {
+                return capacidad;
+        }
+
+        private CacheLru<K, V> segmento(K clave) {
+                int hash = clave.hashCode();
+                return segmentos.get(Math.floorMod(hash ^ (hash >>> 16), segmentos.size()));
+        }
+}
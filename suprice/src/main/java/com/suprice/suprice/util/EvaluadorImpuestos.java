@@ -0,0 +1,262 @@
+package com.suprice.suprice.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Esquema de cuatro impuestos compuestos compilado una sola vez. Produce exactamente el mismo resultado que
+ * {@link UtilidadesImpuestos#calcularTotalImpuestos(BigDecimal, java.util.List, java.util.List)}: cada impuesto se
+ * redondea a cuatro decimales con {@link RoundingMode#HALF_UP} sobre la base más los impuestos anteriores que indica
+ * su regla.
+ * <p>
+ * Los importes se manejan como enteros escalados a 10<sup>4</sup> y cada porcentaje como su valor sin escala y el
+ * divisor que le corresponde, por lo que el cálculo habitual no crea objetos intermedios; si algún producto excede
+ * el rango de {@code long} se repite con {@link BigDecimal}.
+ */
+public final class EvaluadorImpuestos {
+
+        private static final int ESCALA = 4;
+        private static final BigDecimal CIEN = BigDecimal.valueOf(100);
+        private static final long[] POTENCIAS_DIEZ = new long[19];
+
+        static {
+                POTENCIAS_DIEZ[0] = 1;
+                for (int i = 1; i < POTENCIAS_DIEZ.length; i++) {
+                        POTENCIAS_DIEZ[i] = POTENCIAS_DIEZ[i - 1] * 10;
+                }
+        }
+
+        private static final EvaluadorImpuestos SIN_IMPUESTOS = compilar(BigDecimal.ZERO, BigDecimal.ZERO,
+                        BigDecimal.ZERO, BigDecimal.ZERO, 0, 0, 0, 0);
+
+        private final BigDecimal porcentaje1;
+        private final BigDecimal porcentaje2;
+        private final BigDecimal porcentaje3;
+        private final BigDecimal porcentaje4;
+        private final long factor1;
+        private final long factor2;
+        private final long factor3;
+        private final long factor4;
+        private final long divisor1;
+        private final long divisor2;
+        private final long divisor3;
+        private final long divisor4;
+        /** Cantidad de impuestos anteriores que se suman a la base de cada impuesto. */
+        private final int acumula2;
+        private final int acumula3;
+        private final int acumula4;
+        private final boolean escalable;
+        private final boolean exento;
+
+        private EvaluadorImpuestos(BigDecimal[] porcentajes, int[] reglas) {
+                this.porcentaje1 = porcentajes[0];
+                this.porcentaje2 = porcentajes[1];
+                this.porcentaje3 = porcentajes[2];
+                this.porcentaje4 = porcentajes[3];
+                long[] factores = new long[4];
+                long[] divisores = new long[4];
+                boolean todosEscalables = true;
+                for (int i = 0; i < 4; i++) {
+                        todosEscalables &= escalar(porcentajes[i], factores, divisores, i);
+                }
+                this.escalable = todosEscalables;
+                this.factor1 = factores[0];
+                this.factor2 = factores[1];
+                this.factor3 = factores[2];
+                this.factor4 = factores[3];
+                this.divisor1 = divisores[0];
+                this.divisor2 = divisores[1];
+                this.divisor3 = divisores[2];
+                this.divisor4 = divisores[3];
+                this.acumula2 = Math.min(Math.max(reglas[1], 0), 1);
+                this.acumula3 = Math.min(Math.max(reglas[2], 0), 2);
+                this.acumula4 = Math.min(Math.max(reglas[3], 0), 3);
+                this.exento = porcentaje1.signum() == 0 && porcentaje2.signum() == 0 && porcentaje3.signum() == 0
+                                && porcentaje4.signum() == 0;
+        }
+
+        /**
+         * Compila un esquema. Los porcentajes nulos equivalen a cero y las reglas indican cuántos impuestos anteriores
+         * se suman a la base (0 = solo la base).
+         */
+        public static EvaluadorImpuestos compilar(BigDecimal impuesto1, BigDecimal impuesto2, BigDecimal impuesto3,
+                        BigDecimal impuesto4, int regla1, int regla2, int regla3, int regla4) {
+                return new EvaluadorImpuestos(
+                                new BigDecimal[] { normalizar(impuesto1), normalizar(impuesto2), normalizar(impuesto3),
+                                                normalizar(impuesto4) },
+                                new int[] { regla1, regla2, regla3, regla4 });
+        }
+
+        /**
+         * @return evaluador de un esquema sin impuestos.
+         */
+        public static EvaluadorImpuestos sinImpuestos() {
+                return SIN_IMPUESTOS;
+        }
+
+        /**
+         * Calcula la suma de los impuestos de un precio.
+         *
+         * @param precioBase precio sin impuestos.
+         * @return total de impuestos con escala 4, o {@link BigDecimal#ZERO} si el precio es nulo.
+         */
+        public BigDecimal calcular(BigDecimal precioBase) {
+                if (precioBase == null) {
+                        return BigDecimal.ZERO;
+                }
+                BigDecimal base = precioBase.setScale(ESCALA, RoundingMode.HALF_UP);
+                if (exento) {
+                        return BigDecimal.valueOf(0, ESCALA);
+                }
+                if (escalable && base.precision() <= 18) {
+                        try {
+                                return BigDecimal.valueOf(calcularEscalado(base.unscaledValue().longValue()), ESCALA);
+                        } catch (ArithmeticException ex) {
+                                // Fuera del rango de long: se resuelve con BigDecimal.
+                        }
+                }
+                return calcularExacto(base);
+        }
+
+        /**
+         * Calcula los impuestos de una lista de precios, por ejemplo para exportar listas de precios completas.
+         *
+         * @param preciosBase precios sin impuestos; los nulos producen {@link BigDecimal#ZERO}.
+         * @return total de impuestos de cada precio en la misma posición.
+         */
+        public BigDecimal[] calcular(BigDecimal[] preciosBase) {
+                BigDecimal[] impuestos = new BigDecimal[preciosBase.length];
+                for (int i = 0; i < preciosBase.length; i++) {
+                        impuestos[i] = calcular(preciosBase[i]);
+                }
+                return impuestos;
+        }
+
+        /**
+         * Calcula los impuestos de precios expresados como enteros escalados a 10<sup>4</sup> (1.5 = 15000).
+         *
+         * @param basesEscaladas precios sin impuestos con cuatro decimales implícitos.
+         * @param impuestos      arreglo del mismo tamaño donde se escribe el total de impuestos escalado.
+         * @throws ArithmeticException si algún cálculo excede el rango de {@code long}.
+         */
+        public void calcular(long[] basesEscaladas, long[] impuestos) {
+                if (impuestos.length < basesEscaladas.length) {
+                        throw new IllegalArgumentException("El arreglo de impuestos es más corto que el de precios");
+                }
+                if (!escalable) {
+                        for (int i = 0; i < basesEscaladas.length; i++) {
+                                impuestos[i] = calcularExacto(BigDecimal.valueOf(basesEscaladas[i], ESCALA)).unscaledValue()
+                                                .longValueExact();
+                        }
+                        return;
+                }
+                for (int i = 0; i < basesEscaladas.length; i++) {
+                        impuestos[i] = calcularEscalado(basesEscaladas[i]);
+                }
+        }
+
+        public boolean esExento() {
+                return exento;
+        }
+
+        private long calcularEscalado(long base) {
+                long impuesto1 = factor1 == 0 ? 0 : aplicar(base, factor1, divisor1);
+                long impuesto2 = factor2 == 0 ? 0 : aplicar(acumula2 == 0 ? base : Math.addExact(base, impuesto1), factor2,
+                                divisor2);
+                long impuesto3 = 0;
+                if (factor3 != 0) {
+                        long base3 = base;
+                        if (acumula3 > 0) {
+                                base3 = Math.addExact(base3, impuesto1);
+                        }
+                        if (acumula3 > 1) {
+                                base3 = Math.addExact(base3, impuesto2);
+                        }
+                        impuesto3 = aplicar(base3, factor3, divisor3);
+                }
+                long impuesto4 = 0;
+                if (factor4 != 0) {
+                        long base4 = base;
+                        if (acumula4 > 0) {
+                                base4 = Math.addExact(base4, impuesto1);
+                        }
+                        if (acumula4 > 1) {
+                                base4 = Math.addExact(base4, impuesto2);
+                        }
+                        if (acumula4 > 2) {
+                                base4 = Math.addExact(base4, impuesto3);
+                        }
+                        impuesto4 = aplicar(base4, factor4, divisor4);
+                }
+                return Math.addExact(Math.addExact(impuesto1, impuesto2), Math.addExact(impuesto3, impuesto4));
+        }
+
+        /**
+         * Equivale a {@code base * porcentaje / 100} redondeado a cuatro decimales con HALF_UP.
+         */
+        private static long aplicar(long base, long factor, long divisor) {
+                long producto = Math.multiplyExact(base, factor);
+                long cociente = producto / divisor;
+                long residuo = Math.abs(producto % divisor);
+                if (residuo >= divisor - residuo) {
+                        cociente += Long.signum(producto);
+                }
+                return cociente;
+        }
+
+        private BigDecimal calcularExacto(BigDecimal base) {
+                BigDecimal impuesto1 = aplicar(base, porcentaje1);
+                BigDecimal impuesto2 = aplicar(acumula2 == 0 ? base : base.add(impuesto1), porcentaje2);
+                BigDecimal base3 = base;
+                if (acumula3 > 0) {
+                        base3 = base3.add(impuesto1);
+                }
+                if (acumula3 > 1) {
+                        base3 = base3.add(impuesto2);
+                }
+                BigDecimal impuesto3 = aplicar(base3, porcentaje3);
+                BigDecimal base4 = base;
+                if (acumula4 > 0) {
+                        base4 = base4.add(impuesto1);
+                }
+                if (acumula4 > 1) {
+                        base4 = base4.add(impuesto2);
+                }
+                if (acumula4 > 2) {
+                        base4 = base4.add(impuesto3);
+                }
+                BigDecimal impuesto4 = aplicar(base4, porcentaje4);
+                return impuesto1.add(impuesto2).add(impuesto3).add(impuesto4).setScale(ESCALA, RoundingMode.HALF_UP);
+        }
+
+        private static BigDecimal aplicar(BigDecimal base, BigDecimal porcentaje) {
+                if (porcentaje.signum() == 0) {
+                        return BigDecimal.ZERO;
+                }
+                return base.multiply(porcentaje).divide(CIEN, ESCALA, RoundingMode.HALF_UP);
+        }
+
+        /**
+         * Descompone el porcentaje en su valor sin escala y en el divisor {@code 10^(escala + 2)} que devuelve el
+         * impuesto con cuatro decimales; indica si ambos caben en un {@code long}.
+         */
+        private static boolean escalar(BigDecimal porcentaje, long[] factores, long[] divisores, int posicion) {
+                if (porcentaje.signum() == 0) {
+                        factores[posicion] = 0;
+                        divisores[posicion] = 1;
+                        return true;
+                }
+                BigDecimal ajustado = porcentaje.scale() < 0 ? porcentaje.setScale(0) : porcentaje;
+                int exponente = ajustado.scale() + 2;
+                if (exponente >= POTENCIAS_DIEZ.length || ajustado.unscaledValue().bitLength() > 62) {
+                        return false;
+                }
+                factores[posicion] = ajustado.unscaledValue().longValue();
+                divisores[posicion] = POTENCIAS_DIEZ[exponente];
+                return true;
+        }
+
+        private static BigDecimal normalizar(BigDecimal porcentaje) {
+                return porcentaje != null ? porcentaje : BigDecimal.ZERO;
+        }
+}
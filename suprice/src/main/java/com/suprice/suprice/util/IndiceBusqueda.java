@@ -0,0 +1,554 @@
+package com.suprice.suprice.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Índice invertido inmutable para buscar artículos por palabras de su descripción o de su clave.
+ * <p>
+ * Los textos se normalizan quitando acentos y mayúsculas ({@code "Piña"} se indexa como {@code "pina"}) y se separan
+ * en palabras. El diccionario de palabras está ordenado, de modo que todas las que comienzan con un prefijo ocupan un
+ * rango contiguo de identificadores; cada palabra apunta a los documentos que la contienen y cada documento a sus
+ * palabras, todo en arreglos de enteros. Para tolerar errores de captura, las palabras de cuatro o más letras también
+ * se comparan por distancia de edición contra los candidatos que comparten trigramas.
+ * <p>
+ * Cada palabra buscada debe coincidir con alguna palabra del artículo: exacta, como prefijo o aproximada, en ese
+ * orden de relevancia.
+ */
+public final class IndiceBusqueda {
+
+        private static final int PUNTOS_EXACTA = 4;
+        private static final int PUNTOS_PREFIJO = 2;
+        private static final int PUNTOS_APROXIMADA = 1;
+        private static final int PUNTOS_PRIMERA_PALABRA = 1;
+        private static final int LONGITUD_MINIMA_APROXIMADA = 4;
+        private static final int[] VACIO = new int[0];
+
+        /** Mayor puntuación primero; a igualdad, la descripción más corta (la más específica) y luego la clave. */
+        private static final Comparator<Coincidencia> ORDEN = Comparator.comparingInt(Coincidencia::puntuacion).reversed()
+                        .thenComparingInt(coincidencia -> coincidencia.descripcion().length())
+                        .thenComparing(Coincidencia::codigo);
+
+        private final String[] codigos;
+        private final String[] descripciones;
+        private final String[] palabras;
+        private final int[] inicioDocumentos;
+        private final int[] documentos;
+        private final int[] inicioPalabras;
+        private final int[] palabrasDocumento;
+        private final Map<String, int[]> trigramas;
+        private final Map<String, Documento> cambios;
+
+        private IndiceBusqueda(String[] codigos, String[] descripciones, String[] palabras, int[] inicioDocumentos,
+                        int[] documentos, int[] inicioPalabras, int[] palabrasDocumento, Map<String, int[]> trigramas,
+                        Map<String, Documento> cambios) {
+                this.codigos = codigos;
+                this.descripciones = descripciones;
+                this.palabras = palabras;
+                this.inicioDocumentos = inicioDocumentos;
+                this.documentos = documentos;
+                this.inicioPalabras = inicioPalabras;
+                this.palabrasDocumento = palabrasDocumento;
+                this.trigramas = trigramas;
+                this.cambios = cambios;
+        }
+
+        public static Constructor constructor() {
+                return new Constructor();
+        }
+
+        /**
+         * Convierte un texto a minúsculas sin acentos y lo separa en palabras de letras y dígitos.
+         */
+        public static List<String> normalizar(String texto) {
+                if (texto == null || texto.isBlank()) {
+                        return List.of();
+                }
+                String plegado = Normalizer.normalize(texto, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+                List<String> resultado = new ArrayList<>();
+                StringBuilder actual = new StringBuilder();
+                for (int i = 0; i < plegado.length(); i++) {
+                        char caracter = plegado.charAt(i);
+                        if (Character.getType(caracter) == Character.NON_SPACING_MARK) {
+                                continue;
+                        }
+                        if (Character.isLetterOrDigit(caracter)) {
+                                actual.append(caracter);
+                        } else if (!actual.isEmpty()) {
+                                resultado.add(actual.toString());
+                                actual.setLength(0);
+                        }
+                }
+                if (!actual.isEmpty()) {
+                        resultado.add(actual.toString());
+                }
+                return resultado;
+        }
+
+        /**
+         * Busca los artículos cuyas palabras coinciden con todas las palabras del texto.
+         *
+         * @param texto    texto capturado.
+         * @param desde    posición del primer resultado a devolver.
+         * @param cantidad máximo de resultados a devolver.
+         * @return total de coincidencias y la página solicitada, ordenada de mayor a menor relevancia.
+         */
+        public Resultado buscar(String texto, int desde, int cantidad) {
+                List<String> consulta = List.copyOf(new LinkedHashSet<>(normalizar(texto)));
+                if (consulta.isEmpty() || cantidad <= 0) {
+                        return new Resultado(0, List.of());
+                }
+                Criterio[] criterios = new Criterio[consulta.size()];
+                int masSelectivo = 0;
+                for (int i = 0; i < criterios.length; i++) {
+                        criterios[i] = criterio(consulta.get(i));
+                        if (criterios[i].costo() < criterios[masSelectivo].costo()) {
+                                masSelectivo = i;
+                        }
+                }
+                int limite = desde + cantidad;
+                PriorityQueue<Coincidencia> mejores = new PriorityQueue<>(limite + 1, ORDEN.reversed());
+                int total = 0;
+                Criterio selectivo = criterios[masSelectivo];
+                if (selectivo.hasta() - selectivo.desde() + selectivo.aproximadas().length == 1) {
+                        int palabra = selectivo.hasta() > selectivo.desde() ? selectivo.desde() : selectivo.aproximadas()[0];
+                        for (int i = inicioDocumentos[palabra]; i < inicioDocumentos[palabra + 1]; i++) {
+                                total += evaluar(documentos[i], criterios, mejores, limite);
+                        }
+                } else {
+                        long[] marcados = candidatos(selectivo);
+                        for (int bloque = 0; bloque < marcados.length; bloque++) {
+                                long bits = marcados[bloque];
+                                while (bits != 0) {
+                                        total += evaluar(bloque * 64 + Long.numberOfTrailingZeros(bits), criterios, mejores, limite);
+                                        bits &= bits - 1;
+                                }
+                        }
+                }
+                for (Documento cambio : cambios.values()) {
+                        int puntos = puntuar(cambio.palabras(), consulta);
+                        if (puntos > 0) {
+                                total++;
+                                conservar(mejores, puntos, cambio.codigo(), cambio.descripcion(), limite);
+                        }
+                }
+                List<Coincidencia> ordenadas = new ArrayList<>(mejores);
+                ordenadas.sort(ORDEN);
+                return new Resultado(total,
+                                desde >= ordenadas.size() ? List.of() : List.copyOf(ordenadas.subList(desde, ordenadas.size())));
+        }
+
+        /**
+         * Devuelve una copia con los artículos indicados agregados o reemplazados. Los cambios se revisan uno por uno en
+         * cada búsqueda, por lo que deben ser pocos respecto del índice. Los artículos eliminados no pueden descartarse
+         * así; quien mantiene el índice debe reconstruirlo periódicamente.
+         *
+         * @param nuevos descripciones indexadas por clave principal.
+         */
+        public IndiceBusqueda conCambios(Map<String, String> nuevos) {
+                Map<String, Documento> combinados = new HashMap<>(cambios);
+                nuevos.forEach((codigo, descripcion) -> combinados.put(codigo.trim(),
+                                Documento.de(codigo.trim(), descripcion != null ? descripcion.trim() : "")));
+                return new IndiceBusqueda(codigos, descripciones, palabras, inicioDocumentos, documentos, inicioPalabras,
+                                palabrasDocumento, trigramas, Collections.unmodifiableMap(combinados));
+        }
+
+        /**
+         * @return artículos con los que se construyó el índice, sin contar los cambios.
+         */
+        public int articulos() {
+                return codigos.length;
+        }
+
+        /**
+         * @return artículos que pueden aparecer en los resultados: los del índice más los agregados como cambios.
+         */
+        public int vigentes() {
+                int vigentes = codigos.length;
+                for (String codigo : cambios.keySet()) {
+                        if (Arrays.binarySearch(codigos, codigo) < 0) {
+                                vigentes++;
+                        }
+                }
+                return vigentes;
+        }
+
+        public int palabras() {
+                return palabras.length;
+        }
+
+        public int cambios() {
+                return cambios.size();
+        }
+
+        /**
+         * @return 1 si el documento coincide con todas las palabras buscadas, 0 en otro caso.
+         */
+        private int evaluar(int documento, Criterio[] criterios, PriorityQueue<Coincidencia> mejores, int limite) {
+                if (!cambios.isEmpty() && cambios.containsKey(codigos[documento])) {
+                        return 0;
+                }
+                int puntos = puntuar(documento, criterios);
+                if (puntos == 0) {
+                        return 0;
+                }
+                conservar(mejores, puntos, codigos[documento], descripciones[documento], limite);
+                return 1;
+        }
+
+        /**
+         * Agrega la coincidencia si entra entre las mejores; solo se crea el objeto cuando entra.
+         */
+        private static void conservar(PriorityQueue<Coincidencia> mejores, int puntos, String codigo, String descripcion,
+                        int limite) {
+                if (mejores.size() >= limite) {
+                        Coincidencia peor = mejores.peek();
+                        int comparacion = peor.puntuacion() != puntos ? Integer.compare(peor.puntuacion(), puntos)
+                                        : Integer.compare(descripcion.length(), peor.descripcion().length());
+                        if (comparacion > 0 || (comparacion == 0 && codigo.compareTo(peor.codigo()) >= 0)) {
+                                return;
+                        }
+                        mejores.poll();
+                }
+                mejores.add(new Coincidencia(codigo, descripcion, puntos));
+        }
+
+        /**
+         * Resuelve una palabra buscada a identificadores del diccionario: la exacta, el rango de las que la tienen como
+         * prefijo y las aproximadas fuera de ese rango.
+         */
+        private Criterio criterio(String palabra) {
+                int desde = primeraNoMenor(palabra);
+                int hasta = desde;
+                while (hasta < palabras.length && palabras[hasta].startsWith(palabra)) {
+                        hasta++;
+                }
+                int exacta = desde < palabras.length && palabras[desde].equals(palabra) ? desde : -1;
+                int[] aproximadas = aproximadas(palabra, desde, hasta);
+                long costo = inicioDocumentos[hasta] - inicioDocumentos[desde];
+                for (int aproximada : aproximadas) {
+                        costo += inicioDocumentos[aproximada + 1] - inicioDocumentos[aproximada];
+                }
+                return new Criterio(palabra, exacta, desde, hasta, aproximadas, costo);
+        }
+
+        private int primeraNoMenor(String palabra) {
+                int inferior = 0;
+                int superior = palabras.length;
+                while (inferior < superior) {
+                        int medio = (inferior + superior) >>> 1;
+                        if (palabras[medio].compareTo(palabra) < 0) {
+                                inferior = medio + 1;
+                        } else {
+                                superior = medio;
+                        }
+                }
+                return inferior;
+        }
+
+        private int[] aproximadas(String palabra, int excluirDesde, int excluirHasta) {
+                if (!admiteAproximadas(palabra)) {
+                        return VACIO;
+                }
+                int maximo = distanciaPermitida(palabra);
+                Set<String> propios = trigramas(palabra);
+                // Una transposición de letras contiguas altera hasta cuatro trigramas; las demás ediciones, tres.
+                int requeridos = Math.max(1, propios.size() - 4 * maximo);
+                Map<Integer, Integer> compartidos = new HashMap<>();
+                for (String trigrama : propios) {
+                        for (int candidata : trigramas.getOrDefault(trigrama, VACIO)) {
+                                compartidos.merge(candidata, 1, Integer::sum);
+                        }
+                }
+                int[] resultado = new int[compartidos.size()];
+                int cantidad = 0;
+                for (Map.Entry<Integer, Integer> entrada : compartidos.entrySet()) {
+                        int candidata = entrada.getKey();
+                        if (entrada.getValue() >= requeridos && (candidata < excluirDesde || candidata >= excluirHasta)
+                                        && distancia(palabra, palabras[candidata], maximo) <= maximo) {
+                                resultado[cantidad++] = candidata;
+                        }
+                }
+                int[] ordenado = Arrays.copyOf(resultado, cantidad);
+                Arrays.sort(ordenado);
+                return ordenado;
+        }
+
+        /**
+         * Marca en un mapa de bits los documentos de las palabras del criterio más selectivo, sin repetir y en orden.
+         */
+        private long[] candidatos(Criterio criterio) {
+                long[] marcados = new long[(codigos.length + 63) >>> 6];
+                for (int palabra = criterio.desde(); palabra < criterio.hasta(); palabra++) {
+                        marcar(marcados, palabra);
+                }
+                for (int palabra : criterio.aproximadas()) {
+                        marcar(marcados, palabra);
+                }
+                return marcados;
+        }
+
+        private void marcar(long[] marcados, int palabra) {
+                for (int i = inicioDocumentos[palabra]; i < inicioDocumentos[palabra + 1]; i++) {
+                        marcados[documentos[i] >>> 6] |= 1L << documentos[i];
+                }
+        }
+
+        /**
+         * @return suma de la mejor coincidencia de cada palabra buscada, o cero si alguna no coincide.
+         */
+        private int puntuar(int documento, Criterio[] criterios) {
+                int inicio = inicioPalabras[documento];
+                int fin = inicioPalabras[documento + 1];
+                int total = 0;
+                for (int c = 0; c < criterios.length; c++) {
+                        Criterio criterio = criterios[c];
+                        int mejor = 0;
+                        for (int i = inicio; i < fin && mejor < PUNTOS_EXACTA; i++) {
+                                int palabra = palabrasDocumento[i];
+                                int puntos = palabra == criterio.exacta() ? PUNTOS_EXACTA
+                                                : palabra >= criterio.desde() && palabra < criterio.hasta() ? PUNTOS_PREFIJO
+                                                                : Arrays.binarySearch(criterio.aproximadas(), palabra) >= 0 ? PUNTOS_APROXIMADA
+                                                                                : 0;
+                                if (puntos > mejor) {
+                                        mejor = puntos;
+                                        if (c == 0 && i == inicio) {
+                                                total += PUNTOS_PRIMERA_PALABRA;
+                                        }
+                                }
+                        }
+                        if (mejor == 0) {
+                                return 0;
+                        }
+                        total += mejor;
+                }
+                return total;
+        }
+
+        private static int puntuar(String[] propias, List<String> consulta) {
+                int total = 0;
+                for (int c = 0; c < consulta.size(); c++) {
+                        String buscada = consulta.get(c);
+                        int maximo = admiteAproximadas(buscada) ? distanciaPermitida(buscada) : -1;
+                        int mejor = 0;
+                        for (int i = 0; i < propias.length && mejor < PUNTOS_EXACTA; i++) {
+                                String palabra = propias[i];
+                                int puntos = palabra.equals(buscada) ? PUNTOS_EXACTA
+                                                : palabra.startsWith(buscada) ? PUNTOS_PREFIJO
+                                                                : maximo > 0 && distancia(buscada, palabra, maximo) <= maximo ? PUNTOS_APROXIMADA
+                                                                                : 0;
+                                if (puntos > mejor) {
+                                        mejor = puntos;
+                                        if (c == 0 && i == 0) {
+                                                total += PUNTOS_PRIMERA_PALABRA;
+                                        }
+                                }
+                        }
+                        if (mejor == 0) {
+                                return 0;
+                        }
+                        total += mejor;
+                }
+                return total;
+        }
+
+        /**
+         * Las claves, medidas y demás palabras con dígitos solo se buscan exactas o por prefijo.
+         */
+        private static boolean admiteAproximadas(String palabra) {
+                return palabra.length() >= LONGITUD_MINIMA_APROXIMADA && !tieneDigitos(palabra);
+        }
+
+        private static boolean tieneDigitos(String palabra) {
+                for (int i = 0; i < palabra.length(); i++) {
+                        if (Character.isDigit(palabra.charAt(i))) {
+                                return true;
+                        }
+                }
+                return false;
+        }
+
+        private static int distanciaPermitida(String palabra) {
+                return palabra.length() >= 8 ? 2 : 1;
+        }
+
+        private static Set<String> trigramas(String palabra) {
+                String extendida = "$" + palabra + "$";
+                Set<String> resultado = new LinkedHashSet<>();
+                for (int i = 0; i + 3 <= extendida.length(); i++) {
+                        resultado.add(extendida.substring(i, i + 3));
+                }
+                return resultado;
+        }
+
+        /**
+         * Distancia de edición con transposiciones de letras contiguas. Deja de calcular en cuanto supera el máximo y
+         * entonces devuelve {@code maximo + 1}.
+         */
+        static int distancia(String a, String b, int maximo) {
+                if (Math.abs(a.length() - b.length()) > maximo) {
+                        return maximo + 1;
+                }
+                int[] anterior2 = new int[b.length() + 1];
+                int[] anterior = new int[b.length() + 1];
+                int[] actual = new int[b.length() + 1];
+                for (int j = 0; j <= b.length(); j++) {
+                        anterior[j] = j;
+                }
+                for (int i = 1; i <= a.length(); i++) {
+                        actual[0] = i;
+                        int minimoFila = i;
+                        for (int j = 1; j <= b.length(); j++) {
+                                int costo = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                                int valor = Math.min(Math.min(anterior[j] + 1, actual[j - 1] + 1), anterior[j - 1] + costo);
+                                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                                        valor = Math.min(valor, anterior2[j - 2] + 1);
+                                }
+                                actual[j] = valor;
+                                minimoFila = Math.min(minimoFila, valor);
+                        }
+                        if (minimoFila > maximo) {
+                                return maximo + 1;
+                        }
+                        int[] rotado = anterior2;
+                        anterior2 = anterior;
+                        anterior = actual;
+                        actual = rotado;
+                }
+                return Math.min(anterior[b.length()], maximo + 1);
+        }
+
+        /**
+         * Artículo encontrado con su puntuación de relevancia.
+         */
+        public record Coincidencia(String codigo, String descripcion, int puntuacion) {
+        }
+
+        /**
+         * Página de resultados junto con el total de coincidencias.
+         */
+        public record Resultado(int total, List<Coincidencia> coincidencias) {
+        }
+
+        private record Criterio(String palabra, int exacta, int desde, int hasta, int[] aproximadas, long costo) {
+        }
+
+        private record Documento(String codigo, String descripcion, String[] palabras) {
+
+                static Documento de(String codigo, String descripcion) {
+                        return new Documento(codigo, descripcion, palabrasDe(codigo, descripcion).toArray(String[]::new));
+                }
+        }
+
+        /**
+         * Palabras de la descripción seguidas de las de la clave, sin repetir.
+         */
+        private static Set<String> palabrasDe(String codigo, String descripcion) {
+                Set<String> resultado = new LinkedHashSet<>(normalizar(descripcion));
+                resultado.addAll(normalizar(codigo));
+                return resultado;
+        }
+
+        /**
+         * Acumula artículos y construye el índice. Si una clave se agrega más de una vez se conserva la última. Los
+         * documentos se numeran en el orden de sus claves para poder buscar una clave por bisección.
+         */
+        public static final class Constructor {
+
+                private final Map<String, String> articulos = new TreeMap<>();
+
+                private Constructor() {
+                }
+
+                public Constructor agregar(String codigo, String descripcion) {
+                        if (codigo != null && !codigo.isBlank()) {
+                                articulos.put(codigo.trim(), descripcion != null ? descripcion.trim() : "");
+                        }
+                        return this;
+                }
+
+                public IndiceBusqueda construir() {
+                        int cantidad = articulos.size();
+                        String[] codigos = new String[cantidad];
+                        String[] descripciones = new String[cantidad];
+                        Map<String, Integer> provisionales = new HashMap<>();
+                        List<String> diccionario = new ArrayList<>();
+                        int[][] palabrasPorDocumento = new int[cantidad][];
+                        int documento = 0;
+                        int totalPalabras = 0;
+                        for (Map.Entry<String, String> articulo : articulos.entrySet()) {
+                                codigos[documento] = articulo.getKey();
+                                descripciones[documento] = articulo.getValue();
+                                Set<String> propias = palabrasDe(articulo.getKey(), articulo.getValue());
+                                int[] identificadores = new int[propias.size()];
+                                int i = 0;
+                                for (String palabra : propias) {
+                                        Integer identificador = provisionales.get(palabra);
+                                        if (identificador == null) {
+                                                identificador = diccionario.size();
+                                                provisionales.put(palabra, identificador);
+                                                diccionario.add(palabra);
+                                        }
+                                        identificadores[i++] = identificador;
+                                }
+                                palabrasPorDocumento[documento++] = identificadores;
+                                totalPalabras += identificadores.length;
+                        }
+                        String[] palabras = diccionario.toArray(String[]::new);
+                        Arrays.sort(palabras);
+                        int[] definitivo = new int[palabras.length];
+                        for (int i = 0; i < palabras.length; i++) {
+                                definitivo[provisionales.get(palabras[i])] = i;
+                        }
+                        int[] inicioPalabras = new int[cantidad + 1];
+                        int[] palabrasDocumento = new int[totalPalabras];
+                        int[] frecuencias = new int[palabras.length];
+                        int posicion = 0;
+                        for (int d = 0; d < cantidad; d++) {
+                                inicioPalabras[d] = posicion;
+                                for (int provisional : palabrasPorDocumento[d]) {
+                                        int palabra = definitivo[provisional];
+                                        palabrasDocumento[posicion++] = palabra;
+                                        frecuencias[palabra]++;
+                                }
+                                palabrasPorDocumento[d] = null;
+                        }
+                        inicioPalabras[cantidad] = posicion;
+                        int[] inicioDocumentos = new int[palabras.length + 1];
+                        for (int i = 0; i < palabras.length; i++) {
+                                inicioDocumentos[i + 1] = inicioDocumentos[i] + frecuencias[i];
+                        }
+                        int[] siguiente = Arrays.copyOf(inicioDocumentos, palabras.length);
+                        int[] documentos = new int[totalPalabras];
+                        for (int d = 0; d < cantidad; d++) {
+                                for (int i = inicioPalabras[d]; i < inicioPalabras[d + 1]; i++) {
+                                        documentos[siguiente[palabrasDocumento[i]]++] = d;
+                                }
+                        }
+                        Map<String, List<Integer>> porTrigrama = new HashMap<>();
+                        for (int i = 0; i < palabras.length; i++) {
+                                if (palabras[i].length() >= LONGITUD_MINIMA_APROXIMADA - 1 && !tieneDigitos(palabras[i])) {
+                                        for (String trigrama : trigramas(palabras[i])) {
+                                                porTrigrama.computeIfAbsent(trigrama, clave -> new ArrayList<>()).add(i);
+                                        }
+                                }
+                        }
+                        Map<String, int[]> trigramas = new HashMap<>(porTrigrama.size() * 2);
+                        porTrigrama.forEach((trigrama, lista) -> trigramas.put(trigrama,
+                                        lista.stream().mapToInt(Integer::intValue).toArray()));
+                        return new IndiceBusqueda(codigos, descripciones, palabras, inicioDocumentos, documentos, inicioPalabras,
+                                        palabrasDocumento, trigramas, Map.of());
+                }
+        }
+}
@@ -0,0 +1,118 @@
+package com.suprice.suprice.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice inmutable de cadenas hacia cadenas con direccionamiento abierto y sondeo lineal.
+ * <p>
+ * A diferencia de un {@link HashMap}, no crea un nodo por entrada: las claves se guardan en un arreglo y cada una
+ * apunta a la posición de su valor dentro de un segundo arreglo sin duplicados, de modo que las muchas claves que
+ * comparten un mismo valor solo lo almacenan una vez.
+ */
+public final class IndiceHashCompacto {
+
+        private final String[] claves;
+        private final int[] posiciones;
+        private final String[] valores;
+        private final int mascara;
+        private final int tamano;
+
+        private IndiceHashCompacto(String[] claves, int[] posiciones, String[] valores, int tamano) {
+                this.claves = claves;
+                this.posiciones = posiciones;
+                this.valores = valores;
+                this.mascara = claves.length - 1;
+                this.tamano = tamano;
+        }
+
+        public static Constructor constructor() {
+                return new Constructor();
+        }
+
+        /**
+         * Busca el valor asociado a la clave.
+         *
+         * @param clave clave a buscar.
+         * @return valor asociado o {@code null} si no existe.
+         */
+        public String buscar(String clave) {
+                if (clave == null) {
+                        return null;
+                }
+                int indice = dispersar(clave) & mascara;
+                while (true) {
+                        String actual = claves[indice];
+                        if (actual == null) {
+                                return null;
+                        }
+                        if (actual.equals(clave)) {
+                                return valores[posiciones[indice]];
+                        }
+                        indice = (indice + 1) & mascara;
+                }
+        }
+
+        public int tamano() {
+                return tamano;
+        }
+
+        private static int dispersar(String clave) {
+                int hash = clave.hashCode();
+                return hash ^ (hash >>> 16);
+        }
+
+        /**
+         * Acumula pares clave-valor y construye el índice. Si una clave se agrega más de una vez se conserva el primer
+         * valor recibido.
+         */
+        public static final class Constructor {
+
+                private final List<String> claves = new ArrayList<>();
+                private final List<Integer> posiciones = new ArrayList<>();
+                private final Map<String, Integer> valores = new HashMap<>();
+
+                private Constructor() {
+                }
+
+                public Constructor agregar(String clave, String valor) {
+                        if (clave == null || valor == null) {
+                                return this;
+                        }
+                        Integer posicion = valores.computeIfAbsent(valor, llave -> valores.size());
+                        claves.add(clave);
+                        posiciones.add(posicion);
+                        return this;
+                }
+
+                public IndiceHashCompacto construir() {
+                        int capacidad = Integer.highestOneBit(Math.max(4, (int) (claves.size() / 0.6)) - 1) << 1;
+                        String[] tablaClaves = new String[capacidad];
+                        int[] tablaPosiciones = new int[capacidad];
+                        int mascara = capacidad - 1;
+                        int tamano = 0;
+                        for (int i = 0; i < claves.size(); i++) {
+                                String clave = claves.get(i);
+                                int indice = dispersar(clave) & mascara;
+                                boolean repetida = false;
+                                while (tablaClaves[indice] != null) {
+                                        if (tablaClaves[indice].equals(clave)) {
+                                                repetida = true;
+                                                break;
+                                        }
+                                        indice = (indice + 1) & mascara;
+                                }
+                                if (!repetida) {
+                                        tablaClaves[indice] = clave;
+                                        tablaPosiciones[indice] = posiciones.get(i);
+                                        tamano++;
+                                }
+                        }
+                        String[] tablaValores = new String[valores.size()];
+                        valores.forEach((valor, posicion) -> tablaValores[posicion] = valor);
+                        return new IndiceHashCompacto(tablaClaves, tablaPosiciones, tablaValores, tamano);
+                }
+        }
+}
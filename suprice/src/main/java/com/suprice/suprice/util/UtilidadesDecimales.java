@@ -0,0 +1,58 @@
+package com.suprice.suprice.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversión de las columnas {@code DOUBLE PRECISION} de Aspel a {@link BigDecimal}.
+ * <p>
+ * Jaybird entrega {@code getBigDecimal} con la expansión binaria exacta del valor ({@code 23.2} llega como
+ * {@code 23.199999999999999289...}), y el texto que Firebird genera para un {@code DOUBLE} tiene 15 o 16 dígitos
+ * según la versión, por lo que ninguno de los dos sirve para comparar. Todo valor leído se redondea aquí a
+ * {@value #DECIMALES} decimales multiplicándolo por {@value #FACTOR} y redondeando a entero con la mitad alejándose
+ * de cero, que es lo que hace Firebird con {@code CAST(valor * 1000000 AS BIGINT)}; así un precio o una existencia
+ * valen lo mismo leídos con {@code getBigDecimal} o dentro de un {@code LIST}.
+ */
+public final class UtilidadesDecimales {
+
+        public static final int DECIMALES = 6;
+        public static final long FACTOR = 1_000_000L;
+
+        private UtilidadesDecimales() {
+        }
+
+        /**
+         * Redondea un valor leído de una columna {@code DOUBLE PRECISION} con {@code getBigDecimal}.
+         *
+         * @param valor valor leído; puede ser {@code null}.
+         * @return valor con a lo sumo {@value #DECIMALES} decimales y sin ceros a la derecha, o {@code null}.
+         */
+        public static BigDecimal normalizarDouble(BigDecimal valor) {
+                if (valor == null) {
+                        return null;
+                }
+                BigDecimal escalado = new BigDecimal(valor.doubleValue() * FACTOR).setScale(0, RoundingMode.HALF_UP);
+                return sinCeros(escalado.movePointLeft(DECIMALES));
+        }
+
+        /**
+         * Expresión SQL que convierte una columna {@code DOUBLE PRECISION} en el entero que
+         * {@link #desdeEscalado(String)} interpreta; los nulos se entregan como cero.
+         */
+        public static String expresionEscalada(String columna) {
+                return "CAST(COALESCE(" + columna + ", 0) * " + FACTOR + " AS BIGINT)";
+        }
+
+        /**
+         * Convierte el texto de {@link #expresionEscalada(String)} al mismo valor que
+         * {@link #normalizarDouble(BigDecimal)} da para la columna leída directamente.
+         */
+        public static BigDecimal desdeEscalado(String texto) {
+                return sinCeros(BigDecimal.valueOf(Long.parseLong(texto.trim()), DECIMALES));
+        }
+
+        private static BigDecimal sinCeros(BigDecimal valor) {
+                BigDecimal recortado = valor.stripTrailingZeros();
+                return recortado.scale() < 0 ? recortado.setScale(0) : recortado;
+        }
+}
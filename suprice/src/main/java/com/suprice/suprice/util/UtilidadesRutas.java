@@ -4,6 +4,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Conjunto de utilidades para trabajar con rutas de archivos en el sistema operativo.
@@ -39,10 +40,10 @@ public final class UtilidadesRutas {
                 if (!Files.isDirectory(carpeta)) {
                         return Optional.empty();
                 }
-                try {
-                        return Files.walk(carpeta, 4)
-                                        .filter(Files::isRegularFile)
-                                        .filter(path -> path.getFileName().toString().toLowerCase().endsWith(extension.toLowerCase()))
+                String extensionMinusculas = extension.toLowerCase();
+                try (Stream<Path> stream = Files.walk(carpeta, 4)) {
+                        return stream.filter(Files::isRegularFile)
+                                        .filter(path -> path.getFileName().toString().toLowerCase().endsWith(extensionMinusculas))
                                         .findFirst();
                 } catch (Exception ex) {
                         return Optional.empty();
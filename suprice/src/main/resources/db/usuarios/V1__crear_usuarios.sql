@@ -0,0 +1,6 @@
+-- Tabla original; IF NOT EXISTS conserva las bases creadas antes de las migraciones.
+CREATE TABLE IF NOT EXISTS usuarios (
+    nombre_usuario TEXT PRIMARY KEY,
+    contrasena TEXT NOT NULL,
+    rol TEXT NOT NULL
+);
@@ -0,0 +1,149 @@
+package com.suprice.suprice.servicio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.suprice.suprice.servicio.InstantaneaCatalogo.Articulo;
+import com.suprice.suprice.servicio.InstantaneaCatalogo.PrecioLista;
+
+class CatalogoMapeadoTest {
+
+	/** Claves distintas con el mismo {@link String#hashCode()}, que caen en la misma casilla del índice. */
+	private static final List<String> COLISIONES = List.of("AaAa", "AaBB", "BBAa", "BBBB");
+
+	@TempDir
+	Path carpeta;
+
+	private static Articulo articulo(String codigo, String descripcion, String impuestos, String imagen,
+			List<String> alternos, PrecioLista... precios) {
+		return new Articulo(codigo, descripcion, impuestos, imagen, alternos, List.of(precios));
+	}
+
+	private static PrecioLista precio(int lista, String valor) {
+		return new PrecioLista(lista, new BigDecimal(valor));
+	}
+
+	private CatalogoMapeado escribir(List<Articulo> articulos) throws IOException {
+		try (CatalogoMapeado.Escritor escritor = CatalogoMapeado.escritor(carpeta, "empresa")) {
+			for (Articulo articulo : articulos) {
+				escritor.agregar(articulo);
+			}
+			return escritor.terminar();
+		}
+	}
+
+	private static List<Articulo> variados() {
+		List<Articulo> articulos = new ArrayList<>();
+		articulos.add(articulo("SIN-NADA", "Sin precios ni alternos", "1", null, List.of()));
+		articulos.add(articulo("NULOS", null, null, null, List.of(), precio(1, "10")));
+		articulos.add(articulo("VARIOS", "Jabón de tocador 150 g", "1", "IMG-7",
+				List.of("7501000000017", "JT150", "ñandú"), precio(1, "23.2"), precio(2, "22.040000"),
+				precio(3, "0"), precio(4, "-1.5"), precio(5, "1E+2"), precio(6, "0.000001")));
+		articulos.add(articulo("  CON-ESPACIOS ", "Clave con espacios", "2", null, List.of("ALT-1"),
+				precio(1, "5.5")));
+		for (int i = 0; i < COLISIONES.size(); i++) {
+			articulos.add(articulo(COLISIONES.get(i), "Colisión " + i, i % 2 == 0 ? "1" : "2", null,
+					List.of("C" + i), precio(1, String.valueOf(i + 1))));
+		}
+		return articulos;
+	}
+
+	@Test
+	void leeLoQueEscribe() throws IOException {
+		List<Articulo> articulos = variados();
+		for (int i = 0; i < 5000; i++) {
+			articulos.add(articulo("ART" + i, "Artículo " + i, String.valueOf(i % 7), i % 3 == 0 ? "I" + i : null,
+					i % 4 == 0 ? List.of() : List.of("B" + i), precio(1, i + ".25"), precio(2, i + ".5")));
+		}
+		CatalogoMapeado catalogo = escribir(articulos);
+
+		CatalogoMapeado reabierto = CatalogoMapeado.abrir(catalogo.archivo());
+
+		assertEquals(articulos.size(), catalogo.tamano());
+		assertEquals(articulos.size(), reabierto.tamano());
+		for (Articulo articulo : articulos) {
+			assertEquals(articulo, catalogo.buscar(articulo.codigo().trim()), articulo.codigo());
+			assertEquals(articulo, reabierto.buscar(articulo.codigo().trim()), articulo.codigo());
+		}
+	}
+
+	@Test
+	void distingueClavesConLaMismaDispersion() throws IOException {
+		CatalogoMapeado catalogo = escribir(variados().stream().filter(a -> !a.codigo().equals("BBAa")).toList());
+
+		assertEquals("Colisión 0", catalogo.buscar("AaAa").descripcion());
+		assertEquals("Colisión 1", catalogo.buscar("AaBB").descripcion());
+		assertEquals("Colisión 3", catalogo.buscar("BBBB").descripcion());
+		assertNull(catalogo.buscar("BBAa"));
+		assertNull(catalogo.buscar("AaAb"));
+		assertNull(catalogo.buscar("CON-ESPACIOS "));
+		assertNull(catalogo.buscar("ALT-1"));
+		assertNull(catalogo.buscar(null));
+		assertEquals("  CON-ESPACIOS ", catalogo.buscar("CON-ESPACIOS").codigo());
+	}
+
+	@Test
+	void incorporaCambiosSobreElArchivo() throws IOException {
+		CatalogoMapeado catalogo = escribir(variados());
+		Articulo reemplazo = articulo("VARIOS", "Jabón de tocador 200 g", null, null, List.of(), precio(1, "30"));
+		Articulo nuevo = articulo("BBAb", null, null, null, List.of("N1", "N2"));
+		Articulo colision = articulo("AaAa", "Colisión cambiada", "3", null, List.of());
+
+		ArticulosCatalogo cambiado = catalogo.conCambios(Map.of("VARIOS", reemplazo, "BBAb", nuevo));
+		assertEquals(reemplazo, cambiado.buscar("VARIOS"));
+		assertEquals(nuevo, cambiado.buscar("BBAb"));
+		assertEquals("Colisión 1", cambiado.buscar("AaBB").descripcion());
+		assertEquals(catalogo.tamano() + 1, cambiado.tamano());
+		assertSame(catalogo.archivo(), cambiado.archivo());
+
+		ArticulosCatalogo otraVez = cambiado.conCambios(Map.of("AaAa", colision));
+		assertEquals(colision, otraVez.buscar("AaAa"));
+		assertEquals(reemplazo, otraVez.buscar("VARIOS"));
+		assertEquals(cambiado.tamano(), otraVez.tamano());
+
+		assertEquals("Jabón de tocador 150 g", catalogo.buscar("VARIOS").descripcion());
+		assertNull(catalogo.buscar("BBAb"));
+	}
+
+	@Test
+	void catalogoVacio() throws IOException {
+		CatalogoMapeado vacio = escribir(List.of());
+		assertEquals(0, vacio.tamano());
+		assertNull(vacio.buscar("AaAa"));
+
+		Articulo nuevo = articulo("AaAa", "Nuevo", null, null, List.of());
+		ArticulosCatalogo cambiado = vacio.conCambios(Map.of("AaAa", nuevo));
+		assertEquals(1, cambiado.tamano());
+		assertEquals(nuevo, cambiado.buscar("AaAa"));
+	}
+
+	@Test
+	void dejaSoloElArchivoPublicado() throws IOException {
+		CatalogoMapeado catalogo = escribir(variados());
+		try (Stream<Path> archivos = Files.list(carpeta)) {
+			assertEquals(List.of(catalogo.archivo()), archivos.toList());
+		}
+		assertTrue(catalogo.archivo().getFileName().toString().endsWith(CatalogoMapeado.EXTENSION));
+
+		try (CatalogoMapeado.Escritor escritor = CatalogoMapeado.escritor(carpeta, "incompleto")) {
+			escritor.agregar(articulo("X", "Sin terminar", null, null, List.of()));
+		}
+		try (Stream<Path> archivos = Files.list(carpeta)) {
+			assertEquals(List.of(catalogo.archivo()), archivos.toList());
+		}
+	}
+}
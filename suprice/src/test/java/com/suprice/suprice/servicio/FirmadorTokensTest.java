@@ -0,0 +1,124 @@
+package com.suprice.suprice.servicio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.Test;
+
+import com.suprice.suprice.modelo.RolUsuario;
+import com.suprice.suprice.modelo.UsuarioSesion;
+
+class FirmadorTokensTest {
+
+	private static final byte[] CLAVE = "clave-de-prueba-de-32-bytes-o-mas".getBytes(StandardCharsets.US_ASCII);
+	private static final String CLAVE_BASE64 = Base64.getEncoder().encodeToString(CLAVE);
+	private static final Base64.Encoder CODIFICADOR = Base64.getUrlEncoder().withoutPadding();
+
+	private static FirmadorTokens firmador() {
+		return new FirmadorTokens(true, CLAVE_BASE64, 3_600_000);
+	}
+
+	private static long ahora() {
+		return System.currentTimeMillis() / 1000;
+	}
+
+	private static String usuario(String nombre) {
+		return CODIFICADOR.encodeToString(nombre.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** Firma el contenido con la clave de prueba, como lo haría una instancia que la comparte. */
+	private static String firmado(String contenido) throws Exception {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(CLAVE, "HmacSHA256"));
+		return contenido + "." + CODIFICADOR.encodeToString(mac.doFinal(contenido.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	private static void assertRechazado(String token) {
+		assertEquals(Optional.empty(), firmador().verificar(token), token);
+	}
+
+	@Test
+	void verificaLosTokensQueEmite() {
+		FirmadorTokens firmador = firmador();
+		String token = firmador.emitir(new UsuarioSesion("maría.lópez", RolUsuario.ADMINISTRADOR));
+
+		UsuarioSesion sesion = firmador.verificar(token).orElseThrow();
+		assertEquals("maría.lópez", sesion.getNombreUsuario());
+		assertEquals(RolUsuario.ADMINISTRADOR, sesion.getRol());
+		assertTrue(firmador().verificar(token).isPresent(), "otra instancia con la misma clave");
+		assertEquals(3600, firmador.vigenciaSegundos());
+	}
+
+	@Test
+	void rechazaFirmaAlterada() {
+		String token = firmador().emitir(new UsuarioSesion("ana", RolUsuario.CONSULTA));
+		int inicioFirma = token.lastIndexOf('.') + 1;
+		char original = token.charAt(inicioFirma);
+		assertRechazado(token.substring(0, inicioFirma) + (original == 'A' ? 'B' : 'A') + token.substring(inicioFirma + 1));
+		assertRechazado(token.substring(0, inicioFirma));
+		assertRechazado(token.substring(0, token.length() - 2));
+	}
+
+	@Test
+	void rechazaRolOUsuarioAlterados() {
+		String token = firmador().emitir(new UsuarioSesion("ana", RolUsuario.CONSULTA));
+		assertRechazado(token.replace(".CONSULTA.", ".ADMINISTRADOR."));
+		assertRechazado(token.replace("." + usuario("ana") + ".", "." + usuario("admin") + "."));
+		String vencimiento = token.substring(0, token.indexOf('.'));
+		assertRechazado(token.replaceFirst(vencimiento, String.valueOf(Long.parseLong(vencimiento) + 86_400)));
+	}
+
+	@Test
+	void rechazaTokenVencido() throws Exception {
+		assertTrue(firmador().verificar(firmado((ahora() + 60) + ".CONSULTA." + usuario("ana"))).isPresent());
+		assertRechazado(firmado((ahora() - 1) + ".CONSULTA." + usuario("ana")));
+	}
+
+	@Test
+	void rechazaCantidadDeCamposIncorrecta() throws Exception {
+		long vence = ahora() + 60;
+		assertRechazado(firmado(vence + ".CONSULTA"));
+		assertRechazado(firmado(vence + ".CONSULTA." + usuario("ana") + ".extra"));
+		assertRechazado(firmado(String.valueOf(vence)));
+		assertRechazado("sinpuntos");
+		assertRechazado(".firma");
+		assertRechazado("");
+		assertRechazado(null);
+	}
+
+	@Test
+	void rechazaBase64YCamposInvalidos() throws Exception {
+		long vence = ahora() + 60;
+		String token = firmado(vence + ".CONSULTA." + usuario("ana"));
+		assertRechazado(token.substring(0, token.lastIndexOf('.') + 1) + "no+es/base64!");
+		assertRechazado(firmado(vence + ".CONSULTA.@@@"));
+		assertRechazado(firmado(vence + ".SUPERUSUARIO." + usuario("ana")));
+		assertRechazado(firmado("mañana.CONSULTA." + usuario("ana")));
+	}
+
+	@Test
+	void rechazaTokensDeOtraClave() {
+		byte[] otra = new byte[32];
+		FirmadorTokens ajeno = new FirmadorTokens(true, Base64.getEncoder().encodeToString(otra), 3_600_000);
+		assertRechazado(ajeno.emitir(new UsuarioSesion("ana", RolUsuario.CONSULTA)));
+
+		FirmadorTokens aleatorio = new FirmadorTokens(false, "", 3_600_000);
+		assertRechazado(aleatorio.emitir(new UsuarioSesion("ana", RolUsuario.CONSULTA)));
+	}
+
+	@Test
+	void exigeClaveDeAlMenos32Bytes() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new FirmadorTokens(true, Base64.getEncoder().encodeToString(new byte[31]), 3_600_000));
+		assertThrows(IllegalArgumentException.class, () -> new FirmadorTokens(true, "no es base64", 3_600_000));
+		new FirmadorTokens(true, Base64.getEncoder().encodeToString(new byte[32]), 3_600_000);
+	}
+}
@@ -0,0 +1,103 @@
+package com.suprice.suprice.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compara {@link EvaluadorImpuestos} con {@link UtilidadesImpuestos#calcularTotalImpuestos} en todas las
+ * combinaciones de reglas y en los límites del redondeo HALF_UP a cuatro decimales.
+ */
+class EvaluadorImpuestosTest {
+
+	private static final String[] PORCENTAJES = { "0", "16", "8", "0.5", "26.5", "3.0005", "100", "6.25",
+			"0.0001", "160.00", "1E+1" };
+
+	private static final String[] BASES = { "0", "1", "0.00005", "0.00004999", "0.00015", "1.00005", "0.125",
+			"12.345649", "12.34565", "99.99995", "99.999949", "1234.56785", "-1.00005", "-12.34565",
+			"9999999999.9999", "123456789012345.6789", "1E+20", "0.1E-10" };
+
+	@Test
+	void coincideConUtilidadesEnTodasLasReglas() {
+		int comparaciones = 0;
+		for (int regla2 = -1; regla2 <= 3; regla2++) {
+			for (int regla3 = -1; regla3 <= 3; regla3++) {
+				for (int regla4 = -1; regla4 <= 4; regla4++) {
+					for (String[] porcentajes : combinacionesPorcentajes()) {
+						comparaciones += comparar(porcentajes, new int[] { 0, regla2, regla3, regla4 });
+					}
+				}
+			}
+		}
+		assertTrue(comparaciones > 100_000);
+	}
+
+	@Test
+	void coincideConPorcentajesQueNoCabenEnLong() {
+		String[] porcentajes = { "16.123456789012345678901", "8", "0.33333333333333333333", "1E-30" };
+		comparar(porcentajes, new int[] { 0, 1, 2, 3 });
+	}
+
+	@Test
+	void calculaPreciosEscalados() {
+		EvaluadorImpuestos evaluador = EvaluadorImpuestos.compilar(new BigDecimal("8"), new BigDecimal("3.0005"),
+				new BigDecimal("26.5"), new BigDecimal("16"), 0, 1, 2, 3);
+		long[] bases = { 0, 1, 5, 15, 10_000, 123_456_785, -123_456_785, 999_999_999_999L };
+		long[] impuestos = new long[bases.length];
+		evaluador.calcular(bases, impuestos);
+		for (int i = 0; i < bases.length; i++) {
+			BigDecimal esperado = evaluador.calcular(BigDecimal.valueOf(bases[i], 4));
+			assertEquals(esperado, BigDecimal.valueOf(impuestos[i], 4), "base escalada " + bases[i]);
+		}
+	}
+
+	@Test
+	void calculaListasDePrecios() {
+		EvaluadorImpuestos evaluador = EvaluadorImpuestos.compilar(new BigDecimal("16"), null, null, null, 0, 0, 0, 0);
+		BigDecimal[] impuestos = evaluador.calcular(new BigDecimal[] { new BigDecimal("10"), null });
+		assertEquals(new BigDecimal("1.6000"), impuestos[0]);
+		assertEquals(BigDecimal.ZERO, impuestos[1]);
+	}
+
+	@Test
+	void esquemaSinImpuestos() {
+		EvaluadorImpuestos evaluador = EvaluadorImpuestos.sinImpuestos();
+		assertTrue(evaluador.esExento());
+		assertEquals(new BigDecimal("0.0000"), evaluador.calcular(new BigDecimal("123.45")));
+		assertEquals(BigDecimal.ZERO, evaluador.calcular((BigDecimal) null));
+	}
+
+	private static int comparar(String[] porcentajes, int[] reglas) {
+		BigDecimal[] valores = Arrays.stream(porcentajes).map(BigDecimal::new).toArray(BigDecimal[]::new);
+		EvaluadorImpuestos evaluador = EvaluadorImpuestos.compilar(valores[0], valores[1], valores[2], valores[3],
+				reglas[0], reglas[1], reglas[2], reglas[3]);
+		List<Integer> listaReglas = Arrays.stream(reglas).boxed().toList();
+		for (String texto : BASES) {
+			BigDecimal base = new BigDecimal(texto);
+			BigDecimal esperado = UtilidadesImpuestos.calcularTotalImpuestos(base, Arrays.asList(valores), listaReglas);
+			assertEquals(esperado, evaluador.calcular(base), () -> "base " + texto + ", porcentajes "
+					+ Arrays.toString(porcentajes) + ", reglas " + Arrays.toString(reglas));
+		}
+		return BASES.length;
+	}
+
+	/**
+	 * Toma cuatro porcentajes por combinación rotando la lista para cubrir ceros intercalados y órdenes distintos.
+	 */
+	private static List<String[]> combinacionesPorcentajes() {
+		List<String[]> combinaciones = new ArrayList<>();
+		for (int i = 0; i < PORCENTAJES.length; i++) {
+			for (int j = 0; j < PORCENTAJES.length; j += 2) {
+				combinaciones.add(new String[] { PORCENTAJES[i], PORCENTAJES[j], PORCENTAJES[(i + j) % PORCENTAJES.length],
+						PORCENTAJES[(i * 3 + j + 1) % PORCENTAJES.length] });
+			}
+		}
+		return combinaciones;
+	}
+}
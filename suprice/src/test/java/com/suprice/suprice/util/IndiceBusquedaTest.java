@@ -0,0 +1,149 @@
+package com.suprice.suprice.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.suprice.suprice.util.IndiceBusqueda.Coincidencia;
+import com.suprice.suprice.util.IndiceBusqueda.Resultado;
+
+class IndiceBusquedaTest {
+
+	private static IndiceBusqueda indice() {
+		return IndiceBusqueda.constructor()
+				.agregar("A001", "Jugo de piña 1 L")
+				.agregar("A002", "Piña en almíbar")
+				.agregar("A003", "Manzana roja")
+				.agregar("A004", "Manzanilla té 20 sobres")
+				.agregar("A005", "Agua mineral 600 ml")
+				.agregar("B-100", "Cable USB tipo C")
+				.agregar("  A006 ", "  Jabón de manzana  ")
+				.construir();
+	}
+
+	private static List<String> codigos(Resultado resultado) {
+		return resultado.coincidencias().stream().map(Coincidencia::codigo).toList();
+	}
+
+	@Test
+	void normalizaAcentosMayusculasYSeparadores() {
+		assertEquals(List.of("pina", "colada", "1", "5l"), IndiceBusqueda.normalizar("PIÑA-Colada  1 5L"));
+		assertEquals(List.of("almibar", "cafe"), IndiceBusqueda.normalizar("Almíbar/Café"));
+		assertEquals(List.of(), IndiceBusqueda.normalizar("  "));
+		assertEquals(List.of(), IndiceBusqueda.normalizar(null));
+	}
+
+	@Test
+	void encuentraSinImportarAcentos() {
+		IndiceBusqueda indice = indice();
+		assertEquals(List.of("A002", "A001"), codigos(indice.buscar("pina", 0, 10)));
+		assertEquals(List.of("A002", "A001"), codigos(indice.buscar("PIÑA", 0, 10)));
+		assertEquals(List.of("A002"), codigos(indice.buscar("almibar", 0, 10)));
+		assertEquals(List.of("A006"), codigos(indice.buscar("jabon", 0, 10)));
+	}
+
+	@Test
+	void todasLasPalabrasDebenCoincidir() {
+		IndiceBusqueda indice = indice();
+		assertEquals(List.of("A001"), codigos(indice.buscar("jugo piña", 0, 10)));
+		assertEquals(0, indice.buscar("jugo manzana", 0, 10).total());
+	}
+
+	@Test
+	void buscaPorPrefijoDespuesDeLaExacta() {
+		Resultado resultado = indice().buscar("manzana", 0, 10);
+		assertEquals(List.of("A003", "A006"), codigos(resultado));
+
+		Resultado prefijo = indice().buscar("manz", 0, 10);
+		assertEquals(3, prefijo.total());
+		assertTrue(codigos(prefijo).containsAll(List.of("A003", "A004", "A006")));
+		assertTrue(resultado.coincidencias().get(0).puntuacion() > prefijo.coincidencias().get(0).puntuacion());
+	}
+
+	@Test
+	void buscaPorClave() {
+		IndiceBusqueda indice = indice();
+		assertEquals(List.of("B-100"), codigos(indice.buscar("b 100", 0, 10)));
+		assertEquals(List.of("A006"), codigos(indice.buscar("a006", 0, 10)));
+	}
+
+	@Test
+	void toleraErroresDeCapturaEnPalabrasLargas() {
+		IndiceBusqueda indice = indice();
+		assertEquals(List.of("A005"), codigos(indice.buscar("minreal", 0, 10)));
+		assertEquals(List.of("A005"), codigos(indice.buscar("mineral", 0, 10)));
+		assertEquals(List.of("A003", "A006"), codigos(indice.buscar("manzanna", 0, 10)));
+		assertEquals(List.of("B-100"), codigos(indice.buscar("cabel", 0, 10)));
+		Resultado exacta = indice.buscar("mineral", 0, 1);
+		Resultado aproximada = indice.buscar("minreal", 0, 1);
+		assertTrue(exacta.coincidencias().get(0).puntuacion() > aproximada.coincidencias().get(0).puntuacion());
+	}
+
+	@Test
+	void cuentaTransposicionesComoUnaEdicion() {
+		assertEquals(1, IndiceBusqueda.distancia("minreal", "mineral", 2));
+		assertEquals(1, IndiceBusqueda.distancia("manzanna", "manzana", 2));
+		assertEquals(2, IndiceBusqueda.distancia("mnazaan", "manzana", 2));
+		assertEquals(2, IndiceBusqueda.distancia("agua", "mineral", 1));
+	}
+
+	@Test
+	void noAproximaPalabrasCortasNiConDigitos() {
+		IndiceBusqueda indice = indice();
+		assertEquals(0, indice.buscar("ta", 0, 10).total());
+		assertEquals(0, indice.buscar("jgo", 0, 10).total());
+		assertEquals(0, indice.buscar("601", 0, 10).total());
+		assertEquals(List.of("A005"), codigos(indice.buscar("600", 0, 10)));
+	}
+
+	@Test
+	void paginaLosResultadosEnOrdenEstable() {
+		IndiceBusqueda.Constructor constructor = IndiceBusqueda.constructor();
+		for (int i = 0; i < 95; i++) {
+			constructor.agregar(String.format("C%03d", i), "Galleta surtida " + "x".repeat(i % 7));
+		}
+		IndiceBusqueda indice = constructor.construir();
+		Resultado completo = indice.buscar("galleta", 0, 200);
+		assertEquals(95, completo.total());
+		assertEquals(95, completo.coincidencias().size());
+
+		List<String> paginado = new ArrayList<>();
+		for (int pagina = 0; pagina < 5; pagina++) {
+			Resultado resultado = indice.buscar("galleta", pagina * 20, 20);
+			assertEquals(95, resultado.total());
+			paginado.addAll(codigos(resultado));
+		}
+		assertEquals(codigos(completo), paginado);
+		assertEquals(List.of(), indice.buscar("galleta", 100, 20).coincidencias());
+		assertEquals(0, indice.buscar("galleta", 0, 0).total());
+	}
+
+	@Test
+	void incorporaCambiosSinReconstruir() {
+		IndiceBusqueda original = indice();
+		IndiceBusqueda actualizado = original.conCambios(Map.of("A003", "Manzana verde", "Z900", "Piña natural"));
+
+		assertEquals(List.of("A003"), codigos(actualizado.buscar("verde", 0, 10)));
+		assertEquals(0, actualizado.buscar("roja", 0, 10).total());
+		assertEquals(3, actualizado.buscar("piña", 0, 10).total());
+		assertEquals(1, original.buscar("roja", 0, 10).total());
+
+		assertEquals(7, original.vigentes());
+		assertEquals(7, actualizado.articulos());
+		assertEquals(8, actualizado.vigentes());
+		assertEquals(2, actualizado.cambios());
+	}
+
+	@Test
+	void indiceVacio() {
+		IndiceBusqueda vacio = IndiceBusqueda.constructor().agregar(" ", "sin clave").construir();
+		assertEquals(0, vacio.articulos());
+		assertEquals(0, vacio.buscar("algo", 0, 10).total());
+		assertEquals(List.of("N1"), codigos(vacio.conCambios(Map.of("N1", "algo nuevo")).buscar("algo", 0, 10)));
+	}
+}
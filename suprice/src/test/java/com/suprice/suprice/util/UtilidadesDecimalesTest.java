@@ -0,0 +1,53 @@
+package com.suprice.suprice.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class UtilidadesDecimalesTest {
+
+	/** Lo que Firebird entrega para {@code CAST(valor * 1000000 AS BIGINT)}: redondeo con la mitad alejándose de cero. */
+	private static String escaladoFirebird(double valor) {
+		return new BigDecimal(valor * UtilidadesDecimales.FACTOR).setScale(0, RoundingMode.HALF_UP).toPlainString();
+	}
+
+	@Test
+	void quitaLaExpansionBinariaDeJaybird() {
+		assertEquals(new BigDecimal("23.2"), UtilidadesDecimales.normalizarDouble(new BigDecimal(23.2)));
+		assertEquals(new BigDecimal("23.2"), UtilidadesDecimales.normalizarDouble(new BigDecimal(23.199999999999996)));
+		assertEquals(new BigDecimal("100"), UtilidadesDecimales.normalizarDouble(new BigDecimal(100.0)));
+		assertEquals(new BigDecimal("0"), UtilidadesDecimales.normalizarDouble(new BigDecimal(0.0)));
+		assertEquals(new BigDecimal("-0.333333"), UtilidadesDecimales.normalizarDouble(new BigDecimal(-1.0 / 3)));
+		assertNull(UtilidadesDecimales.normalizarDouble(null));
+	}
+
+	@Test
+	void leeElTextoEscalado() {
+		assertEquals(new BigDecimal("23.2"), UtilidadesDecimales.desdeEscalado("23200000"));
+		assertEquals(new BigDecimal("-1.5"), UtilidadesDecimales.desdeEscalado(" -1500000 "));
+		assertEquals(new BigDecimal("0.000001"), UtilidadesDecimales.desdeEscalado("1"));
+		assertEquals("CAST(COALESCE(p.precio, 0) * 1000000 AS BIGINT)", UtilidadesDecimales.expresionEscalada("p.precio"));
+	}
+
+	@Test
+	void ambosCaminosDanElMismoValor() {
+		Random azar = new Random(7);
+		for (int i = 0; i < 100_000; i++) {
+			double valor = switch (i % 4) {
+				case 0 -> Math.round(azar.nextDouble() * 200_000) / 100.0;
+				case 1 -> azar.nextDouble() * Math.pow(10, azar.nextInt(9)) * 3 / 7;
+				case 2 -> -azar.nextDouble() * 1000;
+				default -> azar.nextInt(1_000_000) / 1_000_000.0 + 0.0000005;
+			};
+			assertEquals(UtilidadesDecimales.normalizarDouble(new BigDecimal(valor)),
+					UtilidadesDecimales.desdeEscalado(escaladoFirebird(valor)), () -> "valor " + valor);
+			assertEquals(UtilidadesDecimales.normalizarDouble(new BigDecimal(valor)),
+					UtilidadesDecimales.normalizarDouble(BigDecimal.valueOf(valor)), () -> "valor " + valor);
+		}
+	}
+}